@@ -2,8 +2,10 @@ package academy.mindswap.rentacarapi;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class RentACarApiApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,306 @@
+package academy.mindswap.rentacarapi.availability;
+
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.persistence.projection.CarClassificationProjection;
+import academy.mindswap.rentacarapi.persistence.projection.RentIntervalProjection;
+import academy.mindswap.rentacarapi.persistence.repository.CarRepository;
+import academy.mindswap.rentacarapi.persistence.repository.RentRepository;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory calendar of the whole fleet. Each car gets a slot and each day keeps a bitset with the
+ * slots of the cars booked on that day, so date range searches are a few bitset AND/OR operations.
+ * Booked days are derived from the {@link RentIntervalIndex}, so the calendar is only enabled with it.
+ * Only days from today on are kept, past days are pruned daily and searched in the database
+ */
+@Component
+public class FleetCalendar {
+
+    private static final Logger LOGGER = LogManager.getLogger(FleetCalendar.class);
+
+    private final CarRepository carRepository;
+    private final RentRepository rentRepository;
+    private final RentIntervalIndex rentIntervalIndex;
+    private final ZoneId zoneId = ZoneId.systemDefault();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Long, Integer> carSlots = new HashMap<>();
+    private final BitSet usedSlots = new BitSet();
+    private final Map<CarSegment, BitSet> segmentSlots = new EnumMap<>(CarSegment.class);
+    private final Map<CarBrands, BitSet> brandSlots = new EnumMap<>(CarBrands.class);
+    private final Map<Long, BitSet> bookedSlotsByDay = new HashMap<>();
+    private long[] slotCarIds = new long[64];
+    private long firstDay;
+
+    public FleetCalendar(CarRepository carRepository, RentRepository rentRepository, RentIntervalIndex rentIntervalIndex) {
+        this.carRepository = carRepository;
+        this.rentRepository = rentRepository;
+        this.rentIntervalIndex = rentIntervalIndex;
+
+        for (CarSegment carSegment : CarSegment.values()) {
+            segmentSlots.put(carSegment, new BitSet());
+        }
+        for (CarBrands brand : CarBrands.values()) {
+            brandSlots.put(brand, new BitSet());
+        }
+    }
+
+    /**
+     * Load cars and booked days from the database
+     */
+    @PostConstruct
+    public void load() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        LOGGER.info("Loading fleet calendar from database");
+
+        for (CarClassificationProjection car : carRepository.findAllCarClassifications()) {
+            addCar(car.getCarId(), car.getBrand(), car.getCarSegment());
+        }
+
+        lock.writeLock().lock();
+        try {
+            firstDay = LocalDate.now(zoneId).toEpochDay();
+
+            for (RentIntervalProjection rent : rentRepository.findAllRentIntervals()) {
+                Integer slot = carSlots.get(rent.getCarId());
+
+                if (slot == null) {
+                    continue;
+                }
+
+                for (long day = Math.max(firstDay, toEpochDay(rent.getBeginDate())); day <= toEpochDay(rent.getEndDate()); day++) {
+                    bookedSlotsByDay.computeIfAbsent(day, key -> new BitSet()).set(slot);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        LOGGER.info("Fleet calendar loaded with {} cars and {} days", carSlots.size(), bookedSlotsByDay.size());
+    }
+
+    /**
+     * Check if the calendar is kept up to date and can answer searches
+     * @return true if enabled
+     */
+    public boolean isEnabled() {
+        return rentIntervalIndex.isEnabled();
+    }
+
+    /**
+     * Check if the calendar still has the booked days of a search starting on the given day
+     * @param from first day of the search
+     * @return true if the day was not pruned
+     */
+    public boolean covers(LocalDate from) {
+        lock.readLock().lock();
+        try {
+            return from.toEpochDay() >= firstDay;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Prune the days before today, no rent can be booked on them anymore
+     */
+    @Scheduled(cron = "${rentacar.fleet-calendar.prune-cron:0 5 0 * * *}")
+    public void pruneDays() {
+        pruneDaysBefore(LocalDate.now(zoneId));
+    }
+
+    /**
+     * Prune the days before the given one
+     * @param day the first day to keep
+     */
+    public void pruneDaysBefore(LocalDate day) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            firstDay = Math.max(firstDay, day.toEpochDay());
+            int previousDays = bookedSlotsByDay.size();
+            bookedSlotsByDay.keySet().removeIf(bookedDay -> bookedDay < firstDay);
+
+            LOGGER.info("Pruned {} days before {} from the fleet calendar", previousDays - bookedSlotsByDay.size(), day);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Add car to the calendar
+     * @param carId
+     * @param brand
+     * @param carSegment
+     */
+    public void addCar(long carId, CarBrands brand, CarSegment carSegment) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            int slot = carSlots.computeIfAbsent(carId, id -> usedSlots.nextClearBit(0));
+
+            if (slot >= slotCarIds.length) {
+                slotCarIds = Arrays.copyOf(slotCarIds, slotCarIds.length * 2);
+            }
+
+            slotCarIds[slot] = carId;
+            usedSlots.set(slot);
+            segmentSlots.values().forEach(slots -> slots.clear(slot));
+            brandSlots.values().forEach(slots -> slots.clear(slot));
+            segmentSlots.get(carSegment).set(slot);
+            brandSlots.get(brand).set(slot);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove car and its booked days from the calendar
+     * @param carId
+     */
+    public void removeCar(long carId) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            Integer slot = carSlots.remove(carId);
+
+            if (slot == null) {
+                return;
+            }
+
+            usedSlots.clear(slot);
+            segmentSlots.values().forEach(slots -> slots.clear(slot));
+            brandSlots.values().forEach(slots -> slots.clear(slot));
+            bookedSlotsByDay.values().forEach(slots -> slots.clear(slot));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Recompute the booked days of a car between the given dates from the {@link RentIntervalIndex}.
+     * Must be called after the index is updated on rent creation, return or deletion
+     * @param carId
+     * @param beginDate
+     * @param endDate
+     */
+    public void refreshCarDays(long carId, Date beginDate, Date endDate) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            Integer slot = carSlots.get(carId);
+
+            if (slot == null) {
+                return;
+            }
+
+            for (long day = Math.max(firstDay, toEpochDay(beginDate)); day <= toEpochDay(endDate); day++) {
+                long dayBegin = toEpochMilli(day);
+                long dayEnd = toEpochMilli(day + 1) - 1;
+
+                if (rentIntervalIndex.hasRentBetween(carId, dayBegin, dayEnd)) {
+                    bookedSlotsByDay.computeIfAbsent(day, key -> new BitSet()).set(slot);
+                } else {
+                    BitSet bookedSlots = bookedSlotsByDay.get(day);
+                    if (bookedSlots != null) {
+                        bookedSlots.clear(slot);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Find cars without booked days between the given dates. Days before the first kept day have no
+     * booked cars, see {@link #covers(LocalDate)}
+     * @param from first day
+     * @param to last day
+     * @param carSegments segments to include, all if empty
+     * @param brands brands to include, all if empty
+     * @return list of car ids sorted by id
+     */
+    public List<Long> findAvailableCarIds(LocalDate from, LocalDate to,
+                                          Collection<CarSegment> carSegments, Collection<CarBrands> brands) {
+        lock.readLock().lock();
+        try {
+            BitSet candidates = union(segmentSlots, carSegments);
+            candidates.and(union(brandSlots, brands));
+
+            BitSet bookedSlots = new BitSet();
+            for (long day = from.toEpochDay(); day <= to.toEpochDay(); day++) {
+                BitSet bookedSlotsOfDay = bookedSlotsByDay.get(day);
+                if (bookedSlotsOfDay != null) {
+                    bookedSlots.or(bookedSlotsOfDay);
+                }
+            }
+            candidates.andNot(bookedSlots);
+
+            List<Long> carIds = new ArrayList<>(candidates.cardinality());
+            for (int slot = candidates.nextSetBit(0); slot >= 0; slot = candidates.nextSetBit(slot + 1)) {
+                carIds.add(slotCarIds[slot]);
+            }
+            Collections.sort(carIds);
+
+            return carIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    int dayCount() {
+        lock.readLock().lock();
+        try {
+            return bookedSlotsByDay.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private <K> BitSet union(Map<K, BitSet> slotsByKey, Collection<K> keys) {
+        if (keys == null || keys.isEmpty()) {
+            return (BitSet) usedSlots.clone();
+        }
+
+        BitSet slots = new BitSet();
+        for (K key : keys) {
+            slots.or(slotsByKey.get(key));
+        }
+        return slots;
+    }
+
+    private long toEpochDay(Date date) {
+        return LocalDate.ofInstant(date.toInstant(), zoneId).toEpochDay();
+    }
+
+    private long toEpochMilli(long epochDay) {
+        return LocalDate.ofEpochDay(epochDay).atStartOfDay(zoneId).toInstant().toEpochMilli();
+    }
+}
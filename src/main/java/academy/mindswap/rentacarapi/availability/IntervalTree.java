@@ -0,0 +1,215 @@
+package academy.mindswap.rentacarapi.availability;
+
+/**
+ * AVL tree of closed intervals ordered by begin, augmented with the max end of each subtree.
+ * Overlap queries, inserts and removals run in O(log n).
+ * This class is not thread safe, callers must synchronize the access
+ */
+class IntervalTree {
+
+    private Node root;
+    private int size;
+
+    /**
+     * Check if any stored interval overlaps the closed interval [begin, end]
+     * @param begin
+     * @param end
+     * @return true if there is at least one overlapping interval
+     */
+    boolean overlaps(long begin, long end) {
+        Node node = root;
+
+        while (node != null) {
+            if (node.begin <= end && begin <= node.end) {
+                return true;
+            }
+
+            // If some interval on the left ends after begin, any overlap must be on the left
+            if (node.left != null && node.left.maxEnd >= begin) {
+                node = node.left;
+            } else {
+                node = node.right;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Insert the interval identified by id
+     * @param id
+     * @param begin
+     * @param end
+     */
+    void insert(long id, long begin, long end) {
+        root = insert(root, id, begin, end);
+        size++;
+    }
+
+    /**
+     * Remove the interval identified by id and begin
+     * @param id
+     * @param begin
+     * @return true if the interval was found and removed
+     */
+    boolean remove(long id, long begin) {
+        int previousSize = size;
+        root = remove(root, id, begin);
+        return size < previousSize;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Get the height of the tree, below 1.45 log2(size + 2) while it is balanced
+     * @return the number of nodes in the longest path from the root
+     */
+    int height() {
+        return height(root);
+    }
+
+    private Node insert(Node node, long id, long begin, long end) {
+        if (node == null) {
+            return new Node(id, begin, end);
+        }
+
+        if (compare(begin, id, node) < 0) {
+            node.left = insert(node.left, id, begin, end);
+        } else {
+            node.right = insert(node.right, id, begin, end);
+        }
+
+        return rebalance(node);
+    }
+
+    private Node remove(Node node, long id, long begin) {
+        if (node == null) {
+            return null;
+        }
+
+        int comparison = compare(begin, id, node);
+
+        if (comparison < 0) {
+            node.left = remove(node.left, id, begin);
+        } else if (comparison > 0) {
+            node.right = remove(node.right, id, begin);
+        } else {
+            size--;
+
+            if (node.left == null) {
+                return node.right;
+            }
+            if (node.right == null) {
+                return node.left;
+            }
+
+            // Replace the removed node by its in-order successor
+            Node successor = node.right;
+            while (successor.left != null) {
+                successor = successor.left;
+            }
+
+            Node replacement = new Node(successor.id, successor.begin, successor.end);
+            replacement.left = node.left;
+            replacement.right = removeMin(node.right);
+            return rebalance(replacement);
+        }
+
+        return rebalance(node);
+    }
+
+    private Node removeMin(Node node) {
+        if (node.left == null) {
+            return node.right;
+        }
+
+        node.left = removeMin(node.left);
+        return rebalance(node);
+    }
+
+    private static int compare(long begin, long id, Node node) {
+        int comparison = Long.compare(begin, node.begin);
+        return comparison != 0 ? comparison : Long.compare(id, node.id);
+    }
+
+    private static Node rebalance(Node node) {
+        update(node);
+        int balance = height(node.left) - height(node.right);
+
+        if (balance > 1) {
+            if (height(node.left.left) < height(node.left.right)) {
+                node.left = rotateLeft(node.left);
+            }
+            return rotateRight(node);
+        }
+
+        if (balance < -1) {
+            if (height(node.right.right) < height(node.right.left)) {
+                node.right = rotateRight(node.right);
+            }
+            return rotateLeft(node);
+        }
+
+        return node;
+    }
+
+    private static Node rotateRight(Node node) {
+        Node pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private static Node rotateLeft(Node node) {
+        Node pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = node;
+        update(node);
+        update(pivot);
+        return pivot;
+    }
+
+    private static void update(Node node) {
+        node.height = 1 + Math.max(height(node.left), height(node.right));
+
+        long maxEnd = node.end;
+        if (node.left != null) {
+            maxEnd = Math.max(maxEnd, node.left.maxEnd);
+        }
+        if (node.right != null) {
+            maxEnd = Math.max(maxEnd, node.right.maxEnd);
+        }
+        node.maxEnd = maxEnd;
+    }
+
+    private static int height(Node node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static final class Node {
+
+        private final long id;
+        private final long begin;
+        private final long end;
+        private long maxEnd;
+        private int height;
+        private Node left;
+        private Node right;
+
+        private Node(long id, long begin, long end) {
+            this.id = id;
+            this.begin = begin;
+            this.end = end;
+            this.maxEnd = end;
+            this.height = 1;
+        }
+    }
+}
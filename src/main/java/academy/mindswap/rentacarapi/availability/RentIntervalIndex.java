@@ -0,0 +1,192 @@
+package academy.mindswap.rentacarapi.availability;
+
+import academy.mindswap.rentacarapi.persistence.projection.RentIntervalProjection;
+import academy.mindswap.rentacarapi.persistence.repository.RentRepository;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index with the booked periods of each car, used to answer availability checks
+ * without going to the database. It is filled from the rents table at startup and must be kept
+ * up to date every time a rent is created, returned or deleted
+ */
+@Component
+public class RentIntervalIndex {
+
+    private static final Logger LOGGER = LogManager.getLogger(RentIntervalIndex.class);
+
+    private final RentRepository rentRepository;
+    private final boolean enabled;
+    private final boolean verify;
+
+    private final Map<Long, IntervalTree> carIntervals = new ConcurrentHashMap<>();
+    private final Map<Long, RentInterval> rentIntervals = new ConcurrentHashMap<>();
+
+    public RentIntervalIndex(RentRepository rentRepository,
+                             @Value("${rentacar.rent-index.enabled:true}") boolean enabled,
+                             @Value("${rentacar.rent-index.verify:false}") boolean verify) {
+        this.rentRepository = rentRepository;
+        this.enabled = enabled;
+        this.verify = verify;
+    }
+
+    /**
+     * Load the booked periods of all rents from the database
+     */
+    @PostConstruct
+    public void load() {
+        if (!enabled) {
+            LOGGER.info("Rent interval index is disabled. Availability will be checked in the database");
+            return;
+        }
+
+        LOGGER.info("Loading rent interval index from database");
+
+        for (RentIntervalProjection rent : rentRepository.findAllRentIntervals()) {
+            addRent(rent.getRentId(), rent.getCarId(), rent.getBeginDate(), rent.getEndDate());
+        }
+
+        LOGGER.info("Rent interval index loaded with {} rents of {} cars", rentIntervals.size(), carIntervals.size());
+    }
+
+    /**
+     * Check if the index should be used to answer availability checks
+     * @return true if enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Check if the index answers should be cross-checked against the database
+     * @return true if in verify mode
+     */
+    public boolean isVerify() {
+        return verify;
+    }
+
+    /**
+     * Check if car has no booked period overlapping the given dates
+     * @param carId
+     * @param beginDate
+     * @param endDate
+     * @return true if available and false if not
+     */
+    public boolean isCarAvailableBetweenDates(long carId, Date beginDate, Date endDate) {
+        return !hasRentBetween(carId, beginDate.getTime(), endDate.getTime());
+    }
+
+    /**
+     * Check if car has any booked period overlapping the given instants
+     * @param carId
+     * @param begin epoch millis
+     * @param end epoch millis
+     * @return true if there is an overlapping rent
+     */
+    public boolean hasRentBetween(long carId, long begin, long end) {
+        IntervalTree intervals = carIntervals.get(carId);
+
+        if (intervals == null) {
+            return false;
+        }
+
+        synchronized (intervals) {
+            return intervals.overlaps(begin, end);
+        }
+    }
+
+    /**
+     * Add the booked period of a rent
+     * @param rentId
+     * @param carId
+     * @param beginDate
+     * @param endDate
+     */
+    public void addRent(long rentId, long carId, Date beginDate, Date endDate) {
+        if (!enabled) {
+            return;
+        }
+
+        // A rent moved to another car leaves the intervals of its previous car
+        RentInterval previousCarInterval = rentIntervals.get(rentId);
+        if (previousCarInterval != null && previousCarInterval.carId != carId) {
+            removeRent(rentId);
+        }
+
+        RentInterval rentInterval = new RentInterval(carId, beginDate.getTime(), endDate.getTime());
+        IntervalTree intervals = carIntervals.computeIfAbsent(carId, id -> new IntervalTree());
+
+        synchronized (intervals) {
+            RentInterval previous = rentIntervals.put(rentId, rentInterval);
+            if (previous != null) {
+                intervals.remove(rentId, previous.begin);
+            }
+            intervals.insert(rentId, rentInterval.begin, rentInterval.end);
+        }
+    }
+
+    /**
+     * Change the end of the booked period of a rent, e.g. when the car is returned
+     * @param rentId
+     * @param endDate
+     */
+    public void updateRentEnd(long rentId, Date endDate) {
+        RentInterval rentInterval = rentIntervals.get(rentId);
+
+        if (rentInterval == null) {
+            return;
+        }
+
+        addRent(rentId, rentInterval.carId, new Date(rentInterval.begin), endDate);
+    }
+
+    /**
+     * Remove the booked period of a rent
+     * @param rentId
+     */
+    public void removeRent(long rentId) {
+        RentInterval rentInterval = rentIntervals.get(rentId);
+
+        if (rentInterval == null) {
+            return;
+        }
+
+        IntervalTree intervals = carIntervals.get(rentInterval.carId);
+
+        synchronized (intervals) {
+            if (rentIntervals.remove(rentId, rentInterval)) {
+                intervals.remove(rentId, rentInterval.begin);
+            }
+        }
+    }
+
+    /**
+     * Get the car booked by a rent
+     * @param rentId
+     * @return the car id or null if the rent is not indexed
+     */
+    public Long getCarId(long rentId) {
+        RentInterval rentInterval = rentIntervals.get(rentId);
+        return rentInterval == null ? null : rentInterval.carId;
+    }
+
+    private static final class RentInterval {
+
+        private final long carId;
+        private final long begin;
+        private final long end;
+
+        private RentInterval(long carId, long begin, long end) {
+            this.carId = carId;
+            this.begin = begin;
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package academy.mindswap.rentacarapi.booking;
+
+import academy.mindswap.rentacarapi.exception.BookingInterruptedException;
+import academy.mindswap.rentacarapi.exception.RentacarApiException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Single-writer sequencer for rent commands. Each car is mapped to one of N partitions and every
+ * partition applies its commands in order on a single thread, so commands for the same car never
+ * run concurrently while commands for different partitions run in parallel.
+ * When disabled, commands run directly on the caller thread
+ */
+@Component
+public class BookingSequencer {
+
+    private static final Logger LOGGER = LogManager.getLogger(BookingSequencer.class);
+
+    private static final ThreadLocal<Integer> CURRENT_PARTITION = new ThreadLocal<>();
+
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final ExecutorService[] partitions;
+
+    public BookingSequencer(TransactionTemplate transactionTemplate,
+                            @Value("${rentacar.booking-sequencer.enabled:false}") boolean enabled,
+                            @Value("${rentacar.booking-sequencer.partitions:0}") int partitions) {
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+
+        int numOfPartitions = partitions > 0 ? partitions : Runtime.getRuntime().availableProcessors();
+        this.partitions = new ExecutorService[enabled ? numOfPartitions : 0];
+
+        for (int i = 0; i < this.partitions.length; i++) {
+            int partition = i;
+            this.partitions[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(() -> {
+                    CURRENT_PARTITION.set(partition);
+                    runnable.run();
+                }, "booking-partition-" + partition);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        LOGGER.info("Booking sequencer {} with {} partitions", enabled ? "enabled" : "disabled", this.partitions.length);
+    }
+
+    /**
+     * Check if the commands are being sequenced by car
+     * @return true if enabled
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Run a command in the partition of the given car and wait for the result.
+     * The car id is only resolved when the sequencer is enabled
+     * @param carId supplier of the car the command applies to
+     * @param command the command
+     * @param <T> the result type
+     * @return the command result
+     */
+    public <T> T execute(LongSupplier carId, Supplier<T> command) {
+        if (!enabled) {
+            return command.get();
+        }
+
+        int partition = (int) Math.floorMod(carId.getAsLong(), (long) partitions.length);
+
+        // Commands issued from the partition thread itself can't wait for it
+        if (Integer.valueOf(partition).equals(CURRENT_PARTITION.get())) {
+            return transactionTemplate.execute(status -> command.get());
+        }
+
+        Future<T> result = partitions[partition].submit(() -> transactionTemplate.execute(status -> command.get()));
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            result.cancel(false);
+            throw new BookingInterruptedException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RentacarApiException(cause.getMessage(), cause);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService partition : partitions) {
+            partition.shutdown();
+        }
+    }
+}
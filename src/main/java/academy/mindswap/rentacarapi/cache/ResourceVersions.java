@@ -0,0 +1,108 @@
+package academy.mindswap.rentacarapi.cache;
+
+import academy.mindswap.rentacarapi.enumerator.ResourceCollection;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Versions used to build the strong entity tags of conditional GETs. Single resources are tagged with
+ * their id and entity version. Each collection has a counter incremented on every change of any of its
+ * resources, so list endpoints are tagged without reading the list. The counters live in memory, so
+ * collection tags include a random instance id and never match tags issued before a restart
+ */
+@Component
+public class ResourceVersions {
+
+    private final String instanceId = Long.toString(ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE, 36);
+    private final Map<ResourceCollection, AtomicLong> collectionVersions = new EnumMap<>(ResourceCollection.class);
+    private final Map<ResourceCollection, List<Runnable>> listeners = new EnumMap<>(ResourceCollection.class);
+
+    public ResourceVersions() {
+        for (ResourceCollection collection : ResourceCollection.values()) {
+            collectionVersions.put(collection, new AtomicLong());
+            listeners.put(collection, new CopyOnWriteArrayList<>());
+        }
+    }
+
+    /**
+     * Increment the collection version after a resource was created, changed or deleted.
+     * Inside a transaction the version is only incremented after the commit, so the new
+     * version is never seen together with the old data
+     * @param collection
+     */
+    public void increment(ResourceCollection collection) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            incrementNow(collection);
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                incrementNow(collection);
+            }
+        });
+    }
+
+    /**
+     * Run the listener on every change of the collection, from the thread that made the change
+     * @param collection
+     * @param listener must not block
+     */
+    public void addListener(ResourceCollection collection, Runnable listener) {
+        listeners.get(collection).add(listener);
+    }
+
+    /**
+     * Get the current version of a collection
+     * @param collection
+     * @return the version
+     */
+    public long getCollectionVersion(ResourceCollection collection) {
+        return collectionVersions.get(collection).get();
+    }
+
+    /**
+     * Get the entity tag of a collection. Must be read before the list, so a change made
+     * while the list is being read makes the next request miss
+     * @param collection
+     * @return the quoted entity tag
+     */
+    public String getCollectionTag(ResourceCollection collection) {
+        return getCollectionTag(collection, getCollectionVersion(collection));
+    }
+
+    /**
+     * Get the entity tag of a collection at the given version
+     * @param collection
+     * @param version
+     * @return the quoted entity tag
+     */
+    public String getCollectionTag(ResourceCollection collection, long version) {
+        return "\"" + collection.getName() + "-" + instanceId + "-" + version + "\"";
+    }
+
+    /**
+     * Get the entity tag of a single resource
+     * @param collection
+     * @param id
+     * @param version the entity version
+     * @return the quoted entity tag
+     */
+    public static String getEntityTag(ResourceCollection collection, long id, int version) {
+        return "\"" + collection.getName() + "-" + id + "-v" + version + "\"";
+    }
+
+    private void incrementNow(ResourceCollection collection) {
+        collectionVersions.get(collection).incrementAndGet();
+        listeners.get(collection).forEach(Runnable::run);
+    }
+}
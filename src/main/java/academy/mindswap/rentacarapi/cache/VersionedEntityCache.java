@@ -0,0 +1,145 @@
+package academy.mindswap.rentacarapi.cache;
+
+import academy.mindswap.rentacarapi.persistence.entity.AbstractEntity;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through LRU cache of entities by id. Entries are read-only snapshots, callers must not
+ * modify them. Invalidation leaves the version the entity reached, so a load that started before the
+ * change and returns an older version is not cached. Hits, misses, evictions and stale loads are
+ * published as metrics
+ * @param <K> the id type
+ * @param <V> the entity type
+ */
+public class VersionedEntityCache<K, V extends AbstractEntity> implements MeterBinder {
+
+    private static final Logger LOGGER = LogManager.getLogger(VersionedEntityCache.class);
+
+    private final String name;
+    private final int maxSize;
+    private final Map<K, Entry<V>> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder staleLoads = new LongAdder();
+
+    public VersionedEntityCache(String name, int maxSize) {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+                if (size() <= VersionedEntityCache.this.maxSize) {
+                    return false;
+                }
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Get the entity from the cache, or load it and cache it on a miss
+     * @param key the entity id
+     * @param loader loads the entity from the database
+     * @return the entity, empty if it doesn't exist
+     */
+    public Optional<V> get(K key, Function<K, Optional<V>> loader) {
+        int minVersion;
+
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+
+            if (entry != null && entry.value != null) {
+                hits.increment();
+                return Optional.of(entry.value);
+            }
+
+            minVersion = entry == null ? Integer.MIN_VALUE : entry.minVersion;
+        }
+
+        misses.increment();
+
+        // Load outside the lock, so a slow query doesn't block the other keys
+        Optional<V> value = loader.apply(key);
+
+        value.ifPresent(entity -> put(key, entity, minVersion));
+
+        return value;
+    }
+
+    /**
+     * Remove the entity from the cache after it changed. Loads older than the given version are not cached
+     * @param key the entity id
+     * @param version the version of the entity after the change
+     */
+    public void invalidate(K key, int version) {
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            int minVersion = entry == null ? version : Math.max(entry.minVersion, version);
+            entries.put(key, new Entry<>(null, minVersion));
+        }
+    }
+
+    /**
+     * Remove the entity from the cache after it was deleted. It won't be cached again
+     * @param key the entity id
+     */
+    public void invalidateDeleted(K key) {
+        invalidate(key, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("rentacar.cache.hits", hits, LongAdder::sum).tag("cache", name).register(registry);
+        FunctionCounter.builder("rentacar.cache.misses", misses, LongAdder::sum).tag("cache", name).register(registry);
+        FunctionCounter.builder("rentacar.cache.evictions", evictions, LongAdder::sum).tag("cache", name).register(registry);
+        FunctionCounter.builder("rentacar.cache.stale.loads", staleLoads, LongAdder::sum).tag("cache", name).register(registry);
+        Gauge.builder("rentacar.cache.size", entries, map -> {
+            synchronized (map) {
+                return map.size();
+            }
+        }).tag("cache", name).register(registry);
+    }
+
+    private void put(K key, V value, int loadMinVersion) {
+        synchronized (entries) {
+            Entry<V> entry = entries.get(key);
+            int minVersion = entry == null ? loadMinVersion : Math.max(entry.minVersion, loadMinVersion);
+
+            // The entity changed while it was being loaded
+            if (value.getVersion() < minVersion) {
+                staleLoads.increment();
+                LOGGER.debug("Not caching stale {} {} with version {} older than {}", name, key, value.getVersion(), minVersion);
+                return;
+            }
+
+            if (entry == null || entry.value == null || entry.value.getVersion() <= value.getVersion()) {
+                entries.put(key, new Entry<>(value, value.getVersion()));
+            }
+        }
+    }
+
+    private static final class Entry<V> {
+
+        private final V value;
+        private final int minVersion;
+
+        private Entry(V value, int minVersion) {
+            this.value = value;
+            this.minVersion = minVersion;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package academy.mindswap.rentacarapi.catalog;
+
+import academy.mindswap.rentacarapi.cache.ResourceVersions;
+import academy.mindswap.rentacarapi.command.car.CarDetailsDto;
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.enumerator.ResourceCollection;
+import academy.mindswap.rentacarapi.exception.DatabaseCommunicationException;
+import academy.mindswap.rentacarapi.persistence.repository.CarRepository;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The whole fleet listing, kept serialized as JSON and optionally gzip compressed, so it is served
+ * without going to the database. Every change of the cars collection schedules a rebuild in a
+ * background thread, changes made during a rebuild schedule another one. Until the rebuild finishes
+ * the previous snapshot is served, tagged with the cars version it was built from
+ */
+@Component
+public class FleetSnapshot {
+
+    private static final Logger LOGGER = LogManager.getLogger(FleetSnapshot.class);
+
+    private static final List<CarBrands> ALL_BRANDS = Arrays.asList(CarBrands.values());
+    private static final List<CarSegment> ALL_SEGMENTS = Arrays.asList(CarSegment.values());
+
+    private final CarRepository carRepository;
+    private final ResourceVersions resourceVersions;
+    private final ObjectMapper objectMapper;
+    private final int pageSize;
+    private final boolean gzip;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "fleet-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+    // Not a monitor, the first requests may wait on it while the cars are queried, and a virtual thread
+    // blocked in a synchronized method keeps its carrier thread
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private volatile Snapshot snapshot;
+
+    public FleetSnapshot(CarRepository carRepository, ResourceVersions resourceVersions, ObjectMapper objectMapper,
+                         @Value("${rentacar.cars.snapshot.page-size:1000}") int pageSize,
+                         @Value("${rentacar.cars.snapshot.gzip:true}") boolean gzip) {
+        this.carRepository = carRepository;
+        this.resourceVersions = resourceVersions;
+        this.objectMapper = objectMapper;
+        this.pageSize = pageSize;
+        this.gzip = gzip;
+
+        resourceVersions.addListener(ResourceCollection.CARS, this::requestRebuild);
+    }
+
+    /**
+     * Build the first snapshot in the background
+     */
+    @PostConstruct
+    public void load() {
+        requestRebuild();
+    }
+
+    /**
+     * Get the latest snapshot, building it if the first build didn't finish yet
+     * @return {@link Snapshot}
+     */
+    public Snapshot getSnapshot() {
+        Snapshot currentSnapshot = snapshot;
+
+        if (currentSnapshot != null) {
+            return currentSnapshot;
+        }
+
+        try {
+            return rebuild();
+        } catch (Exception e) {
+            LOGGER.error("Failed while building fleet snapshot", e);
+            throw new DatabaseCommunicationException(e);
+        }
+    }
+
+    /**
+     * Schedule a rebuild, unless one is already waiting to start
+     */
+    public void requestRebuild() {
+        if (!rebuildPending.compareAndSet(false, true)) {
+            return;
+        }
+
+        executor.execute(() -> {
+            rebuildPending.set(false);
+
+            try {
+                rebuild();
+            } catch (Exception e) {
+                LOGGER.error("Failed while rebuilding fleet snapshot. Serving the previous one", e);
+            }
+        });
+    }
+
+    private Snapshot rebuild() throws IOException {
+        rebuildLock.lock();
+
+        try {
+            return buildSnapshot();
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    private Snapshot buildSnapshot() throws IOException {
+        // Read the version before the cars, so a change made while reading schedules a newer snapshot
+        long version = resourceVersions.getCollectionVersion(ResourceCollection.CARS);
+
+        if (snapshot != null && snapshot.version >= version) {
+            return snapshot;
+        }
+
+        long start = System.nanoTime();
+        ByteArrayOutputStream json = new ByteArrayOutputStream(8192);
+        int cars = 0;
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(json)) {
+            generator.writeStartArray();
+
+            long afterCarId = 0;
+            List<CarDetailsDto> page;
+
+            do {
+                page = carRepository.findCarDetailsPageByCarId(ALL_BRANDS, ALL_SEGMENTS, null, null, null,
+                        afterCarId, PageRequest.of(0, pageSize));
+
+                for (CarDetailsDto car : page) {
+                    objectMapper.writeValue(generator, car);
+                }
+
+                if (!page.isEmpty()) {
+                    afterCarId = page.get(page.size() - 1).getCarId();
+                    cars += page.size();
+                }
+            } while (page.size() == pageSize);
+
+            generator.writeEndArray();
+        }
+
+        byte[] jsonBytes = json.toByteArray();
+        byte[] gzipBytes = null;
+
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(jsonBytes.length / 4 + 64);
+            try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressed, 8192)) {
+                gzipOutputStream.write(jsonBytes);
+            }
+            gzipBytes = compressed.toByteArray();
+        }
+
+        String eTag = resourceVersions.getCollectionTag(ResourceCollection.CARS, version);
+        snapshot = new Snapshot(version, eTag, jsonBytes, gzipBytes);
+
+        LOGGER.info("Fleet snapshot of version {} built with {} cars, {} bytes, {} gzipped in {} ms", version, cars,
+                jsonBytes.length, gzipBytes == null ? 0 : gzipBytes.length, (System.nanoTime() - start) / 1_000_000);
+
+        return snapshot;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * A serialized fleet listing. The byte arrays are shared by all requests and must not be modified
+     */
+    public static final class Snapshot {
+
+        private final long version;
+        private final String eTag;
+        private final byte[] json;
+        private final byte[] gzipJson;
+
+        private Snapshot(long version, String eTag, byte[] json, byte[] gzipJson) {
+            this.version = version;
+            this.eTag = eTag;
+            this.json = json;
+            this.gzipJson = gzipJson;
+        }
+
+        /**
+         * Get the entity tag of the plain JSON
+         * @return the quoted entity tag
+         */
+        public String getETag() {
+            return eTag;
+        }
+
+        /**
+         * Get the entity tag of the gzip compressed JSON, strong tags must differ between encodings
+         * @return the quoted entity tag
+         */
+        public String getGzipETag() {
+            return eTag.substring(0, eTag.length() - 1) + "-gzip\"";
+        }
+
+        /**
+         * Get the JSON array with all cars
+         * @return the shared JSON bytes
+         */
+        public byte[] getJson() {
+            return json;
+        }
+
+        /**
+         * Get the gzip compressed JSON array with all cars
+         * @return the shared compressed bytes, null if compression is disabled
+         */
+        public byte[] getGzipJson() {
+            return gzipJson;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package academy.mindswap.rentacarapi.catalog;
+
+import academy.mindswap.rentacarapi.persistence.projection.CarPlateProjection;
+import academy.mindswap.rentacarapi.persistence.repository.CarRepository;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-memory index of car plates. Plates are normalized to upper case letters and digits, so
+ * "aa-12-bb" and "AA 12 BB" are the same plate. That is stricter than the unique constraint of the
+ * plate column on purpose, a car can't be registered twice by writing its plate differently. Exact lookups use a hash map and prefix searches
+ * a sorted map. It is filled from the cars table at startup and must be kept up to date every time
+ * a car is created, updated or deleted
+ */
+@Component
+public class PlateIndex {
+
+    private static final Logger LOGGER = LogManager.getLogger(PlateIndex.class);
+
+    private final CarRepository carRepository;
+
+    private final Map<String, Long> carIdsByPlate = new ConcurrentHashMap<>();
+    private final NavigableMap<String, Long> sortedPlates = new ConcurrentSkipListMap<>();
+    private final Map<Long, String> platesByCarId = new ConcurrentHashMap<>();
+
+    public PlateIndex(CarRepository carRepository) {
+        this.carRepository = carRepository;
+    }
+
+    /**
+     * Load the plates of all cars from the database
+     */
+    @PostConstruct
+    public void load() {
+        LOGGER.info("Loading plate index from database");
+
+        for (CarPlateProjection car : carRepository.findAllCarPlates()) {
+            Long otherCarId = carIdsByPlate.get(normalize(car.getPlate()));
+
+            if (otherCarId != null) {
+                LOGGER.warn("Cars {} and {} have the same normalized plate {}", otherCarId, car.getCarId(), car.getPlate());
+            }
+
+            putCar(car.getCarId(), car.getPlate());
+        }
+
+        LOGGER.info("Plate index loaded with {} plates", carIdsByPlate.size());
+    }
+
+    /**
+     * Normalize plate to upper case letters and digits
+     * @param plate
+     * @return the normalized plate
+     */
+    public static String normalize(String plate) {
+        StringBuilder normalizedPlate = new StringBuilder(plate.length());
+
+        for (int i = 0; i < plate.length(); i++) {
+            char character = plate.charAt(i);
+            if (Character.isLetterOrDigit(character)) {
+                normalizedPlate.append(Character.toUpperCase(character));
+            }
+        }
+
+        return normalizedPlate.toString();
+    }
+
+    /**
+     * Get the car with the given plate
+     * @param plate
+     * @return the car id or null if there is no car with the plate
+     */
+    public Long findCarId(String plate) {
+        return carIdsByPlate.get(normalize(plate));
+    }
+
+    /**
+     * Get the cars with plates starting with the given prefix
+     * @param prefix
+     * @param limit max number of cars
+     * @return list of car ids sorted by plate
+     */
+    public List<Long> findCarIdsByPrefix(String prefix, int limit) {
+        String normalizedPrefix = normalize(prefix);
+        List<Long> carIds = new ArrayList<>();
+
+        for (Map.Entry<String, Long> entry : sortedPlates.tailMap(normalizedPrefix, true).entrySet()) {
+            if (carIds.size() >= limit || !entry.getKey().startsWith(normalizedPrefix)) {
+                break;
+            }
+            carIds.add(entry.getValue());
+        }
+
+        return carIds;
+    }
+
+    /**
+     * Check if the plate, or one that only differs in case or punctuation, belongs to another car
+     * @param plate
+     * @param carId the car being created or updated, 0 for a new car
+     * @return true if another car has the plate
+     */
+    public boolean isPlateTaken(String plate, long carId) {
+        Long plateCarId = findCarId(plate);
+        return plateCarId != null && plateCarId != carId;
+    }
+
+    /**
+     * Add car or change its plate
+     * @param carId
+     * @param plate
+     */
+    public synchronized void putCar(long carId, String plate) {
+        String normalizedPlate = normalize(plate);
+        String previousPlate = platesByCarId.put(carId, normalizedPlate);
+
+        if (previousPlate != null && !previousPlate.equals(normalizedPlate)) {
+            carIdsByPlate.remove(previousPlate, carId);
+            sortedPlates.remove(previousPlate, carId);
+        }
+
+        carIdsByPlate.put(normalizedPlate, carId);
+        sortedPlates.put(normalizedPlate, carId);
+    }
+
+    /**
+     * Remove car
+     * @param carId
+     */
+    public synchronized void removeCar(long carId) {
+        String plate = platesByCarId.remove(carId);
+
+        if (plate != null) {
+            carIdsByPlate.remove(plate, carId);
+            sortedPlates.remove(plate, carId);
+        }
+    }
+}
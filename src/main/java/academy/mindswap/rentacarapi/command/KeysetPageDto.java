@@ -0,0 +1,24 @@
+package academy.mindswap.rentacarapi.command;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * DTO to retrieve a page of a keyset paginated list
+ */
+@Data
+@Builder
+public class KeysetPageDto<T> {
+
+    private List<T> content;
+    private Long nextCursor;
+
+    /**
+     * Sort value of the last element, for lists not sorted by id. Sent back with the cursor
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long nextSortKey;
+}
@@ -2,6 +2,7 @@ package academy.mindswap.rentacarapi.command.car;
 
 import academy.mindswap.rentacarapi.enumerator.CarBrands;
 import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 
@@ -13,6 +14,7 @@ import java.util.Date;
  */
 @Data
 @Builder
+@AllArgsConstructor
 public class CarDetailsDto {
 
     private long carId;
@@ -23,4 +25,12 @@ public class CarDetailsDto {
     private String plate;
     private BigDecimal dailyPrice;
     private boolean available;
+
+    /**
+     * Constructor used by query projections, the daily price is taken from the segment
+     */
+    public CarDetailsDto(long carId, CarBrands brand, String modelDescription, CarSegment carSegment,
+                         Date dateOfPurchase, String plate, boolean available) {
+        this(carId, brand, modelDescription, carSegment, dateOfPurchase, plate, carSegment.getDailyPrice(), available);
+    }
 }
@@ -0,0 +1,16 @@
+package academy.mindswap.rentacarapi.command.car;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * DTO to retrieve a rejected row of a car import
+ */
+@Data
+@Builder
+public class CarImportErrorDto {
+
+    private long line;
+    private String plate;
+    private String message;
+}
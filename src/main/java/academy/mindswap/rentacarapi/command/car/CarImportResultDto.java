@@ -0,0 +1,19 @@
+package academy.mindswap.rentacarapi.command.car;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * DTO to retrieve the result of a car import, with the rejected rows
+ */
+@Data
+@Builder
+public class CarImportResultDto {
+
+    private long importedCars;
+    private long rejectedRows;
+    private boolean errorsTruncated;
+    private List<CarImportErrorDto> errors;
+}
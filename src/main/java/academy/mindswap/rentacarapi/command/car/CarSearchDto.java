@@ -0,0 +1,28 @@
+package academy.mindswap.rentacarapi.command.car;
+
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.enumerator.CarSortField;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * DTO with the filters, the sorting and the cursor of a car search request
+ */
+@Data
+@Builder
+public class CarSearchDto {
+
+    private List<CarBrands> brands;
+    private List<CarSegment> carSegments;
+    private Boolean available;
+    private LocalDate purchasedFrom;
+    private LocalDate purchasedTo;
+    private CarSortField sort;
+    private Long afterSortKey;
+    private long afterCarId;
+    private int limit;
+}
@@ -8,6 +8,7 @@ import lombok.Data;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.PastOrPresent;
+import javax.validation.constraints.Size;
 import java.util.Date;
 
 /**
@@ -30,6 +31,7 @@ public class CreateOrUpdateCarDto {
     private Date dateOfPurchase;
 
     @NotBlank(message = "Must have plate")
+    @Size(max = 8, message = "Must have at most 8 characters")
     private String plate;
 
     @Override
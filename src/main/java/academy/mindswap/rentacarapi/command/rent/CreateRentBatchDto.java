@@ -0,0 +1,25 @@
+package academy.mindswap.rentacarapi.command.rent;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * DTO for multiple rents creation request
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CreateRentBatchDto {
+
+    @NotEmpty(message = "Must have at least one rent")
+    @Size(max = 200, message = "Can't have more than 200 rents")
+    private List<@Valid CreateOrUpdateRentDto> rents;
+}
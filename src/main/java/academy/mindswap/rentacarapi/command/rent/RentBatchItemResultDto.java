@@ -0,0 +1,17 @@
+package academy.mindswap.rentacarapi.command.rent;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * DTO to retrieve the result of each rent of a multiple rents creation request
+ */
+@Data
+@Builder
+public class RentBatchItemResultDto {
+
+    private int index;
+    private int status;
+    private String message;
+    private RentDetailsDto rent;
+}
@@ -1,5 +1,7 @@
 package academy.mindswap.rentacarapi.command.rent;
 
+import academy.mindswap.rentacarapi.enumerator.RentStatus;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 
@@ -11,6 +13,7 @@ import java.util.Date;
  */
 @Data
 @Builder
+@AllArgsConstructor
 public class RentDetailsDto {
 
     private long rentId;
@@ -22,4 +25,5 @@ public class RentDetailsDto {
     private Date endDate;
     private BigDecimal expectedPrice;
     private BigDecimal finalPrice;
+    private RentStatus status;
 }
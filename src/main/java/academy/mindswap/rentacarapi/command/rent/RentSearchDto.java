@@ -0,0 +1,23 @@
+package academy.mindswap.rentacarapi.command.rent;
+
+import academy.mindswap.rentacarapi.enumerator.RentStatus;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * DTO with the filters and the cursor of a rent list request
+ */
+@Data
+@Builder
+public class RentSearchDto {
+
+    private Long userId;
+    private Long carId;
+    private RentStatus status;
+    private LocalDate from;
+    private LocalDate to;
+    private long afterRentId;
+    private int limit;
+}
@@ -0,0 +1,21 @@
+package academy.mindswap.rentacarapi.command.report;
+
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDate;
+
+/**
+ * DTO to retrieve the occupancy of a car segment on a day
+ */
+@Data
+@Builder
+public class OccupancyReportDto {
+
+    private LocalDate day;
+    private CarSegment carSegment;
+    private long bookedCars;
+    private long fleetCars;
+    private double occupancy;
+}
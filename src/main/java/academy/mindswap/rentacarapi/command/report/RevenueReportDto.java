@@ -0,0 +1,20 @@
+package academy.mindswap.rentacarapi.command.report;
+
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * DTO to retrieve the revenue of a car segment on a day
+ */
+@Data
+@Builder
+public class RevenueReportDto {
+
+    private LocalDate day;
+    private CarSegment carSegment;
+    private BigDecimal revenue;
+}
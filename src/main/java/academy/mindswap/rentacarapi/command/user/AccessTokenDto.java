@@ -0,0 +1,17 @@
+package academy.mindswap.rentacarapi.command.user;
+
+import lombok.Builder;
+import lombok.Data;
+
+/**
+ * DTO to retrieve the access token issued on login, with the authenticated user
+ */
+@Data
+@Builder
+public class AccessTokenDto {
+
+    private String accessToken;
+    private String tokenType;
+    private long expiresIn;
+    private UserDetailsDto user;
+}
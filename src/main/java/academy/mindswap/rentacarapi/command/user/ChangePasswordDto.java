@@ -0,0 +1,21 @@
+package academy.mindswap.rentacarapi.command.user;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotBlank;
+
+/**
+ * DTO for user password change request
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangePasswordDto {
+
+    @NotBlank(message = "Must have a password")
+    private String password;
+}
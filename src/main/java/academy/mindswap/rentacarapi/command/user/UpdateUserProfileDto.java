@@ -0,0 +1,28 @@
+package academy.mindswap.rentacarapi.command.user;
+
+import lombok.Builder;
+import lombok.Data;
+
+import javax.validation.constraints.Email;
+import javax.validation.constraints.Pattern;
+
+/**
+ * DTO for user profile partial update request. Fields left null are not changed
+ */
+@Data
+@Builder
+public class UpdateUserProfileDto {
+
+    @Pattern(regexp = ".*\\S.*", message = "Must have first name")
+    private String firstName;
+
+    @Pattern(regexp = ".*\\S.*", message = "Must have last name")
+    private String lastName;
+
+    @Pattern(regexp = ".*\\S.*", message = "Must have license ID")
+    private String licenseId;
+
+    @Email(message = "Email must be valid")
+    @Pattern(regexp = ".*\\S.*", message = "Email must be valid")
+    private String email;
+}
@@ -0,0 +1,102 @@
+package academy.mindswap.rentacarapi.config;
+
+import academy.mindswap.rentacarapi.exception.PasswordHashingOverloadedException;
+import academy.mindswap.rentacarapi.security.BoundedPasswordEncoder;
+import academy.mindswap.rentacarapi.security.CachingAuthenticationProvider;
+import academy.mindswap.rentacarapi.security.UserEntityDetailsService;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.provisioning.InMemoryUserDetailsManager;
+
+/**
+ * Password hashing and the credentials checked by basic authentication. Kept apart from
+ * {@link SecurityConfig}, which needs the authentication provider while it is being created
+ */
+@Configuration
+public class AuthenticationConfig {
+
+    /**
+     * BCrypt on a bounded pool of its own, so a login storm can't take every request thread
+     */
+    @Bean
+    public BoundedPasswordEncoder getPasswordEncoder(
+            @Value("${rentacar.security.password-hashing.bcrypt-strength:12}") int bcryptStrength,
+            @Value("${rentacar.security.password-hashing.threads:0}") int threads,
+            @Value("${rentacar.security.password-hashing.queue-size:64}") int queueSize,
+            @Value("${rentacar.security.password-hashing.timeout-ms:5000}") long timeoutMillis,
+            @Value("${rentacar.security.password-hashing.retry-after-seconds:2}") long retryAfterSeconds) {
+        int poolSize = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(bcryptStrength), poolSize, queueSize, timeoutMillis,
+                retryAfterSeconds);
+    }
+
+    /**
+     * Basic credentials of the admin or of the users table, checked with BCrypt once, then remembered
+     * for a short time
+     */
+    @Bean
+    public CachingAuthenticationProvider basicAuthenticationProvider(
+            PasswordEncoder passwordEncoder,
+            ObjectProvider<UserEntityDetailsService> userEntityDetailsService,
+            @Value("${rentacar.security.credentials-cache.ttl-seconds:60}") long ttlSeconds,
+            @Value("${rentacar.security.credentials-cache.max-size:10000}") int maxSize) {
+        DaoAuthenticationProvider authenticationProvider = new DaoAuthenticationProvider() {
+            @Override
+            protected void additionalAuthenticationChecks(UserDetails userDetails,
+                                                          UsernamePasswordAuthenticationToken authentication) {
+                // Handed to the authentication entry point, which answers 503 instead of 401
+                try {
+                    super.additionalAuthenticationChecks(userDetails, authentication);
+                } catch (PasswordHashingOverloadedException e) {
+                    throw new AuthenticationServiceException(e.getMessage(), e);
+                }
+            }
+        };
+        authenticationProvider.setPasswordEncoder(passwordEncoder);
+        authenticationProvider.setUserDetailsPasswordService(userEntityPasswordService(userEntityDetailsService));
+        authenticationProvider.setUserDetailsService(adminOrUserDetailsService(
+                new InMemoryUserDetailsManager(User.withUsername("admin")
+                        .password(passwordEncoder.encode("Caceteiros123"))
+                        .roles("ADMIN")
+                        .build()),
+                userEntityDetailsService));
+
+        return new CachingAuthenticationProvider(authenticationProvider, ttlSeconds, maxSize);
+    }
+
+    /**
+     * The users table is looked up on first use. The provider is a metrics binder, created with the meter
+     * registry, before the repositories that need the registry can be created
+     */
+    private UserDetailsService adminOrUserDetailsService(UserDetailsService adminDetailsService,
+                                                         ObjectProvider<UserEntityDetailsService> userEntityDetailsService) {
+        return username -> {
+            try {
+                return adminDetailsService.loadUserByUsername(username);
+            } catch (UsernameNotFoundException e) {
+                return userEntityDetailsService.getObject().loadUserByUsername(username);
+            }
+        };
+    }
+
+    /**
+     * Only the users table keeps its hashes, the admin one is made on every start with the current cost factor
+     */
+    private UserDetailsPasswordService userEntityPasswordService(
+            ObjectProvider<UserEntityDetailsService> userEntityDetailsService) {
+        return (user, newPassword) -> userEntityDetailsService.getObject().updatePassword(user, newPassword);
+    }
+}
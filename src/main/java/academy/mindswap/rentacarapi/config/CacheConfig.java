@@ -0,0 +1,27 @@
+package academy.mindswap.rentacarapi.config;
+
+import academy.mindswap.rentacarapi.cache.VersionedEntityCache;
+import academy.mindswap.rentacarapi.persistence.entity.CarEntity;
+import academy.mindswap.rentacarapi.persistence.entity.UserEntity;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class CacheConfig {
+
+    @Bean
+    public VersionedEntityCache<Long, CarEntity> carEntityCache(@Value("${rentacar.cache.cars.max-size:10000}") int maxSize) {
+        return new VersionedEntityCache<>("cars", maxSize);
+    }
+
+    @Bean
+    public VersionedEntityCache<Long, UserEntity> userEntityCache(@Value("${rentacar.cache.users.max-size:10000}") int maxSize) {
+        return new VersionedEntityCache<>("users", maxSize);
+    }
+
+    @Bean
+    public VersionedEntityCache<String, UserEntity> principalCache(@Value("${rentacar.cache.principals.max-size:10000}") int maxSize) {
+        return new VersionedEntityCache<>("principals", maxSize);
+    }
+}
@@ -1,27 +1,39 @@
 package academy.mindswap.rentacarapi.config;
 
+import academy.mindswap.rentacarapi.security.AccessTokenFilter;
+import academy.mindswap.rentacarapi.security.AccessTokenProvider;
 import academy.mindswap.rentacarapi.security.AuthenticatorEntryPoint;
+import academy.mindswap.rentacarapi.security.CachingAuthenticationProvider;
+import academy.mindswap.rentacarapi.security.ForbiddenAccessHandler;
+import academy.mindswap.rentacarapi.security.UserEntityDetailsService;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.config.http.SessionCreationPolicy;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 
 @Configuration
 @EnableWebSecurity
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
 
     private AuthenticatorEntryPoint authenticatorEntryPoint;
+    private AccessTokenProvider accessTokenProvider;
+    private ForbiddenAccessHandler forbiddenAccessHandler;
+    private ObjectProvider<UserEntityDetailsService> userEntityDetailsService;
 
     @Override
     protected void configure(HttpSecurity http) throws Exception {
         http
-                .exceptionHandling().authenticationEntryPoint(authenticatorEntryPoint)
+                .exceptionHandling()
+                .authenticationEntryPoint(authenticatorEntryPoint)
+                .accessDeniedHandler(forbiddenAccessHandler)
+                .and()
+                .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
                 .and()
                 .csrf()
                 .disable()
@@ -29,22 +41,43 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .antMatchers(HttpMethod.GET, "/main").permitAll()
                 .antMatchers(HttpMethod.POST, "/login").permitAll()
                 .antMatchers(HttpMethod.POST, "/api/users").permitAll()
-                .anyRequest().authenticated()
+                // Customers only reach their own user and rents, and browse the fleet
+                .mvcMatchers("/api/users/{userId}", "/api/users/{userId}/password")
+                .access("hasRole('ADMIN') or @userAccess.isUser(authentication, #userId)")
+                .mvcMatchers(HttpMethod.GET, "/api/rents/{rentId}/user/{userId}")
+                .access("hasRole('ADMIN') or @userAccess.isUser(authentication, #userId)")
+                .mvcMatchers(HttpMethod.GET, "/api/rents")
+                .access("hasRole('ADMIN') or @userAccess.isUser(authentication, request.getParameter('userId'))")
+                .mvcMatchers(HttpMethod.GET, "/api/cars", "/api/cars/**").authenticated()
+                // Every write, the users list, exports, reports and the rest are for admins
+                .anyRequest().hasRole("ADMIN")
+                .and()
+                .httpBasic()
                 .and()
-                .httpBasic();
+                // Bearer tokens issued by /login are verified before basic authentication, without BCrypt
+                .addFilterBefore(new AccessTokenFilter(accessTokenProvider, userEntityDetailsService, authenticatorEntryPoint),
+                        BasicAuthenticationFilter.class);
+    }
+
+    @Autowired
+    protected void configureGlobal(AuthenticationManagerBuilder auth,
+                                   CachingAuthenticationProvider basicAuthenticationProvider) {
+        auth.authenticationProvider(basicAuthenticationProvider);
     }
 
     @Autowired
-    protected void configureGlobal(AuthenticationManagerBuilder auth) throws Exception {
-        auth.inMemoryAuthentication()
-                .withUser("admin")
-                .password(getPasswordEncoder().encode("Caceteiros123"))
-                .roles("ADMIN");
+    public void setAccessTokenProvider(AccessTokenProvider accessTokenProvider) {
+        this.accessTokenProvider = accessTokenProvider;
     }
 
-    @Bean
-    public PasswordEncoder getPasswordEncoder() {
-        return new BCryptPasswordEncoder(12);
+    @Autowired
+    public void setUserEntityDetailsService(ObjectProvider<UserEntityDetailsService> userEntityDetailsService) {
+        this.userEntityDetailsService = userEntityDetailsService;
+    }
+
+    @Autowired
+    public void setForbiddenAccessHandler(ForbiddenAccessHandler forbiddenAccessHandler) {
+        this.forbiddenAccessHandler = forbiddenAccessHandler;
     }
 
     @Autowired
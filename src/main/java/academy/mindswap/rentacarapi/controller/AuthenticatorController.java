@@ -1,7 +1,8 @@
 package academy.mindswap.rentacarapi.controller;
 
+import academy.mindswap.rentacarapi.command.user.AccessTokenDto;
 import academy.mindswap.rentacarapi.command.user.UserAuthenticatedDto;
-import academy.mindswap.rentacarapi.command.user.UserDetailsDto;
+import academy.mindswap.rentacarapi.security.LoginRateLimiter;
 import academy.mindswap.rentacarapi.service.AuthenticationService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -13,6 +14,7 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 import java.util.Objects;
 
@@ -21,27 +23,38 @@ public class AuthenticatorController {
 
     private static Logger LOGGER = LogManager.getLogger(AuthenticatorController.class);
     private AuthenticationService authenticationService;
+    private LoginRateLimiter loginRateLimiter;
 
     @PostMapping("/login")
     public ResponseEntity<?> doLogin(@Valid @RequestBody UserAuthenticatedDto userAuthenticatedDto,
-                                     BindingResult bindingResult){
+                                     BindingResult bindingResult, HttpServletRequest request){
+
+        // Before looking up the user or checking the password
+        loginRateLimiter.acquire(request.getRemoteAddr(), userAuthenticatedDto.getEmail());
 
         if(bindingResult.hasErrors()){
             LOGGER.error("Invalid" , bindingResult.getFieldErrors());
             return new ResponseEntity<>(bindingResult.getFieldErrors(), HttpStatus.BAD_REQUEST);
         }
 
-        UserDetailsDto authenticatedUser = authenticationService.login(userAuthenticatedDto);
+        AccessTokenDto accessToken = authenticationService.login(userAuthenticatedDto);
 
-        if(Objects.isNull(authenticatedUser)){
+        if(Objects.isNull(accessToken)){
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
 
-        return new ResponseEntity<>(authenticatedUser, HttpStatus.OK);
+        LOGGER.info("Access token issued to user with id {}", accessToken.getUser().getUserId());
+
+        return new ResponseEntity<>(accessToken, HttpStatus.OK);
     }
 
     @Autowired
     public void setAuthenticationService(AuthenticationService authenticationService) {
         this.authenticationService = authenticationService;
     }
+
+    @Autowired
+    public void setLoginRateLimiter(LoginRateLimiter loginRateLimiter) {
+        this.loginRateLimiter = loginRateLimiter;
+    }
 }
@@ -1,19 +1,43 @@
 package academy.mindswap.rentacarapi.controller;
 
+import academy.mindswap.rentacarapi.cache.ResourceVersions;
+import academy.mindswap.rentacarapi.catalog.FleetSnapshot;
+import academy.mindswap.rentacarapi.command.KeysetPageDto;
 import academy.mindswap.rentacarapi.command.car.CarDetailsDto;
+import academy.mindswap.rentacarapi.command.car.CarImportResultDto;
+import academy.mindswap.rentacarapi.command.car.CarSearchDto;
 import academy.mindswap.rentacarapi.command.car.CreateOrUpdateCarDto;
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.enumerator.CarSortField;
+import academy.mindswap.rentacarapi.enumerator.ImportFormat;
+import academy.mindswap.rentacarapi.enumerator.ResourceCollection;
+import academy.mindswap.rentacarapi.exception.InvalidImportFormatException;
 import academy.mindswap.rentacarapi.persistence.entity.CarEntity;
+import academy.mindswap.rentacarapi.server.AcceptEncoding;
+import academy.mindswap.rentacarapi.service.CarImportService;
 import academy.mindswap.rentacarapi.service.CarService;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.zip.GZIPInputStream;
 
 /**
  * REST controller responsible for {@link CarEntity} related CRUD operations
@@ -25,9 +49,16 @@ public class CarController {
     private static Logger LOGGER = LogManager.getLogger(CarController.class);
 
     private final CarService carService;
+    private final CarImportService carImportService;
+    private final ResourceVersions resourceVersions;
+    private final FleetSnapshot fleetSnapshot;
 
-    public CarController(CarService carService) {
+    public CarController(CarService carService, CarImportService carImportService, ResourceVersions resourceVersions,
+                         FleetSnapshot fleetSnapshot) {
         this.carService = carService;
+        this.carImportService = carImportService;
+        this.resourceVersions = resourceVersions;
+        this.fleetSnapshot = fleetSnapshot;
     }
 
     /**
@@ -52,37 +83,217 @@ public class CarController {
         return new ResponseEntity<>(carDetails, HttpStatus.CREATED);
     }
 
+    /**
+     * Import cars, streamed row by row
+     *
+     * @param format          the import format, csv or ndjson
+     * @param contentEncoding the body encoding, the body is gzip decompressed if gzip
+     * @param inputStream     the request body
+     * @return the response entity with the number of imported cars and the rejected rows
+     */
+    @PostMapping("/import")
+    public ResponseEntity<CarImportResultDto> importCars(@RequestParam(defaultValue = "csv") String format,
+                                                         @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+                                                         InputStream inputStream) throws IOException {
+        LOGGER.info("Request to import cars as {}", format);
+
+        ImportFormat importFormat = Arrays.stream(ImportFormat.values())
+                .filter(value -> value.name().equalsIgnoreCase(format))
+                .findFirst()
+                .orElseThrow(() -> {
+                    LOGGER.error("Import format {} is not supported", format);
+                    return new InvalidImportFormatException();
+                });
+
+        boolean gzip = Objects.nonNull(contentEncoding) && contentEncoding.contains("gzip");
+
+        CarImportResultDto importResult = carImportService.importCars(importFormat,
+                gzip ? new GZIPInputStream(inputStream, 8192) : inputStream);
+
+        LOGGER.info("Car import processed. {} cars imported, {} rows rejected",
+                importResult.getImportedCars(), importResult.getRejectedRows());
+
+        return new ResponseEntity<>(importResult, HttpStatus.OK);
+    }
+
     /**
      * Get car be id
      *
-     * @param carId the car id
-     * @return the response entity
+     * @param carId      the car id
+     * @param webRequest the request, to check the If-None-Match header
+     * @return the response entity, not modified if the car version didn't change
      */
     @GetMapping("/{carId}")
-    public ResponseEntity<CarDetailsDto> getCarById(@PathVariable long carId) {
+    public ResponseEntity<CarDetailsDto> getCarById(@PathVariable long carId, WebRequest webRequest) {
         LOGGER.info("Request to get car by id - {}", carId);
 
+        String eTag = ResourceVersions.getEntityTag(ResourceCollection.CARS, carId, carService.getCarVersion(carId));
+
+        if (webRequest.checkNotModified(eTag)) {
+            LOGGER.info("Car with id {} not modified", carId);
+            return null;
+        }
+
         CarDetailsDto carDetails = carService.getCarById(carId);
 
         LOGGER.info("Retrieving car with id - {}", carDetails.getCarId());
 
+        return ResponseEntity.status(HttpStatus.OK)
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(carDetails);
+    }
+
+    /**
+     * Get car by plate
+     *
+     * @param plate the car plate
+     * @return the response entity
+     */
+    @GetMapping("/by-plate/{plate}")
+    public ResponseEntity<CarDetailsDto> getCarByPlate(@PathVariable String plate) {
+        LOGGER.info("Request to get car by plate - {}", plate);
+
+        CarDetailsDto carDetails = carService.getCarByPlate(plate);
+
+        LOGGER.info("Retrieving car with id - {}", carDetails.getCarId());
+
         return new ResponseEntity<>(carDetails, HttpStatus.OK);
     }
 
     /**
-     * Get all cars
+     * Get cars by plate prefix
      *
+     * @param prefix the beginning of the plate
+     * @param limit  max number of cars
      * @return the response entity
      */
+    @GetMapping("/by-plate")
+    public ResponseEntity<List<CarDetailsDto>> getCarsByPlatePrefix(@RequestParam String prefix,
+                                                                    @RequestParam(defaultValue = "20") int limit) {
+        LOGGER.info("Request to get cars with plate starting with {}", prefix);
+
+        List<CarDetailsDto> carsList = carService.getCarsByPlatePrefix(prefix, limit);
+
+        LOGGER.info("Retrieving {} cars with plate starting with {}", carsList.size(), prefix);
+
+        return new ResponseEntity<>(carsList, HttpStatus.OK);
+    }
+
+    /**
+     * Search cars, one page at a time
+     *
+     * @param brand         the brands to include, all if not provided
+     * @param segment       the segments to include, all if not provided
+     * @param available     the availability filter
+     * @param purchasedFrom the first day of the purchase date filter
+     * @param purchasedTo   the last day of the purchase date filter
+     * @param sort          the sort field, ties sorted by car id
+     * @param afterSortKey  the cursor, sort key of the previous page when not sorted by car id
+     * @param afterCarId    the cursor, last car id of the previous page
+     * @param limit         the page size
+     * @param webRequest    the request, to check the If-None-Match header
+     * @return the response entity, not modified if no car changed
+     */
     @GetMapping
-    public ResponseEntity<List<CarDetailsDto>> getCarsList() {
-        LOGGER.info("Request to get cars list");
+    public ResponseEntity<KeysetPageDto<CarDetailsDto>> searchCars(@RequestParam(required = false) List<CarBrands> brand,
+                                                                   @RequestParam(required = false) List<CarSegment> segment,
+                                                                   @RequestParam(required = false) Boolean available,
+                                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate purchasedFrom,
+                                                                   @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate purchasedTo,
+                                                                   @RequestParam(defaultValue = "CAR_ID") CarSortField sort,
+                                                                   @RequestParam(required = false) Long afterSortKey,
+                                                                   @RequestParam(defaultValue = "0") long afterCarId,
+                                                                   @RequestParam(defaultValue = "50") int limit,
+                                                                   WebRequest webRequest) {
+        CarSearchDto carSearchDto = CarSearchDto.builder()
+                .brands(brand)
+                .carSegments(segment)
+                .available(available)
+                .purchasedFrom(purchasedFrom)
+                .purchasedTo(purchasedTo)
+                .sort(sort)
+                .afterSortKey(afterSortKey)
+                .afterCarId(afterCarId)
+                .limit(limit)
+                .build();
+
+        LOGGER.info("Request to search cars - {}", carSearchDto);
+
+        String eTag = resourceVersions.getCollectionTag(ResourceCollection.CARS);
+
+        if (webRequest.checkNotModified(eTag)) {
+            LOGGER.info("Cars not modified");
+            return null;
+        }
+
+        KeysetPageDto<CarDetailsDto> carDetailsPage = carService.searchCars(carSearchDto);
+
+        LOGGER.info("Retrieving cars page with {} cars", carDetailsPage.getContent().size());
+
+        return ResponseEntity.status(HttpStatus.OK)
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(carDetailsPage);
+    }
+
+    /**
+     * Get all cars from the serialized fleet snapshot, without going to the database.
+     * The snapshot is rebuilt in the background after every car change
+     *
+     * @param acceptEncoding the accepted encodings, the gzip snapshot is sent if gzip is accepted
+     * @param webRequest     the request, to check the If-None-Match header
+     * @return the response entity, not modified if the snapshot didn't change
+     */
+    @GetMapping("/snapshot")
+    public ResponseEntity<byte[]> getFleetSnapshot(@RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                                   WebRequest webRequest) {
+        LOGGER.info("Request to get fleet snapshot");
+
+        FleetSnapshot.Snapshot snapshot = fleetSnapshot.getSnapshot();
+        boolean gzip = Objects.nonNull(snapshot.getGzipJson()) && AcceptEncoding.acceptsGzip(acceptEncoding);
+        String eTag = gzip ? snapshot.getGzipETag() : snapshot.getETag();
+
+        if (webRequest.checkNotModified(eTag)) {
+            LOGGER.info("Fleet snapshot not modified");
+            return null;
+        }
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setETag(eTag);
+        headers.setCacheControl(CacheControl.noCache().cachePrivate());
+        headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        LOGGER.info("Retrieving fleet snapshot");
+
+        return new ResponseEntity<>(gzip ? snapshot.getGzipJson() : snapshot.getJson(), headers, HttpStatus.OK);
+    }
+
+    /**
+     * Get cars available between dates
+     *
+     * @param from    the first day
+     * @param to      the last day
+     * @param segment the segments to include, all if not provided
+     * @param brand   the brands to include, all if not provided
+     * @return the response entity
+     */
+    @GetMapping("/available")
+    public ResponseEntity<List<CarDetailsDto>> getAvailableCars(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                                @RequestParam(required = false) List<CarSegment> segment,
+                                                                @RequestParam(required = false) List<CarBrands> brand) {
+        LOGGER.info("Request to get cars available between {} - {}, segments {} and brands {}", from, to, segment, brand);
 
-        List<CarDetailsDto> usersList = carService.getCarsList();
+        List<CarDetailsDto> availableCars = carService.getAvailableCars(from, to, segment, brand);
 
-        LOGGER.info("Retrieving cars list");
+        LOGGER.info("Retrieving {} available cars", availableCars.size());
 
-        return new ResponseEntity<>(usersList, HttpStatus.OK);
+        return new ResponseEntity<>(availableCars, HttpStatus.OK);
     }
 
     /**
@@ -1,18 +1,41 @@
 package academy.mindswap.rentacarapi.controller;
 
+import academy.mindswap.rentacarapi.cache.ResourceVersions;
+import academy.mindswap.rentacarapi.command.KeysetPageDto;
 import academy.mindswap.rentacarapi.command.rent.CreateOrUpdateRentDto;
+import academy.mindswap.rentacarapi.command.rent.CreateRentBatchDto;
+import academy.mindswap.rentacarapi.command.rent.RentBatchItemResultDto;
 import academy.mindswap.rentacarapi.command.rent.RentDetailsDto;
+import academy.mindswap.rentacarapi.command.rent.RentSearchDto;
+import academy.mindswap.rentacarapi.enumerator.ExportFormat;
+import academy.mindswap.rentacarapi.enumerator.RentStatus;
+import academy.mindswap.rentacarapi.enumerator.ResourceCollection;
+import academy.mindswap.rentacarapi.exception.InvalidExportFormatException;
 import academy.mindswap.rentacarapi.persistence.entity.RentEntity;
+import academy.mindswap.rentacarapi.server.AcceptEncoding;
+import academy.mindswap.rentacarapi.service.RentExportService;
 import academy.mindswap.rentacarapi.service.RentServiceImp;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * REST controller responsible for {@link RentEntity} related CRUD operations
@@ -24,9 +47,14 @@ public class RentController {
     private static final Logger LOGGER = LogManager.getLogger(RentController.class);
 
     private RentServiceImp rentService;
+    private RentExportService rentExportService;
+    private ResourceVersions resourceVersions;
 
-    public RentController(RentServiceImp rentService) {
+    public RentController(RentServiceImp rentService, RentExportService rentExportService,
+                          ResourceVersions resourceVersions) {
         this.rentService = rentService;
+        this.rentExportService = rentExportService;
+        this.resourceVersions = resourceVersions;
     }
 
     /**
@@ -51,37 +79,160 @@ public class RentController {
         return new ResponseEntity<>(rentDetails, HttpStatus.CREATED);
     }
 
+    /**
+     * Create multiple rents
+     *
+     * @param createRentBatchDto the new rents data
+     * @return the response entity with the result of each rent
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<?> createRents(@Valid @RequestBody CreateRentBatchDto createRentBatchDto, BindingResult bindingResult) {
+        LOGGER.info("Request to create {} new rent reservations",
+                createRentBatchDto.getRents() == null ? 0 : createRentBatchDto.getRents().size());
+
+        if (bindingResult.hasErrors()) {
+            LOGGER.error("Request to create new rents failed. RentBatchDto has errors - {}", bindingResult.getFieldErrors());
+            return new ResponseEntity<>(bindingResult.getFieldErrors(), HttpStatus.BAD_REQUEST);
+        }
+
+        List<RentBatchItemResultDto> rentResults = rentService.addNewRents(createRentBatchDto.getRents());
+
+        LOGGER.info("Rents batch processed. Retrieving the result of each rent");
+
+        return new ResponseEntity<>(rentResults, HttpStatus.OK);
+    }
+
     /**
      * Get rent by id
      *
-     * @param rentId the rent id
-     * @return the response entity
+     * @param userId     the user id, rents of other users are not found
+     * @param rentId     the rent id
+     * @param webRequest the request, to check the If-None-Match header
+     * @return the response entity, not modified if the rent version didn't change
      */
     @GetMapping("/{rentId}/user/{userId}")
-    public ResponseEntity<RentDetailsDto> getRentById(@PathVariable long userId, @PathVariable long rentId) {
+    public ResponseEntity<RentDetailsDto> getRentById(@PathVariable long userId, @PathVariable long rentId,
+                                                      WebRequest webRequest) {
         LOGGER.info("Request to get rent with id {}", rentId);
 
+        String eTag = ResourceVersions.getEntityTag(ResourceCollection.RENTS, rentId, rentService.getRentVersion(rentId, userId));
+
+        if (webRequest.checkNotModified(eTag)) {
+            LOGGER.info("Rent with id {} not modified", rentId);
+            return null;
+        }
+
         RentDetailsDto rentDetails = rentService.getRentById(rentId, userId);
 
         LOGGER.info("Retrieving rent with id {}", rentId);
 
-        return new ResponseEntity<>(rentDetails, HttpStatus.OK);
+        return ResponseEntity.status(HttpStatus.OK)
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(rentDetails);
     }
 
     /**
-     * Get rent list
+     * Get rent list page
      *
-     * @return the response entity
+     * @param userId      the user id filter
+     * @param carId       the car id filter
+     * @param status      the rent status filter
+     * @param from        the first day of the date window filter
+     * @param to          the last day of the date window filter
+     * @param afterRentId the cursor, last rent id of the previous page
+     * @param limit       the page size
+     * @param webRequest  the request, to check the If-None-Match header
+     * @return the response entity, not modified if no rent changed
      */
     @GetMapping
-    public ResponseEntity<List<RentDetailsDto>> getRentList() {
-        LOGGER.info("Request to get rents list");
+    public ResponseEntity<KeysetPageDto<RentDetailsDto>> getRentList(@RequestParam(required = false) Long userId,
+                                                                     @RequestParam(required = false) Long carId,
+                                                                     @RequestParam(required = false) RentStatus status,
+                                                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                     @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                                     @RequestParam(defaultValue = "0") long afterRentId,
+                                                                     @RequestParam(defaultValue = "50") int limit,
+                                                                     WebRequest webRequest) {
+        RentSearchDto rentSearchDto = RentSearchDto.builder()
+                .userId(userId)
+                .carId(carId)
+                .status(status)
+                .from(from)
+                .to(to)
+                .afterRentId(afterRentId)
+                .limit(limit)
+                .build();
+
+        LOGGER.info("Request to get rents list page - {}", rentSearchDto);
 
-        List<RentDetailsDto> rentDetailsDtoList = rentService.getRentsList();
+        String eTag = resourceVersions.getCollectionTag(ResourceCollection.RENTS);
+
+        if (webRequest.checkNotModified(eTag)) {
+            LOGGER.info("Rents not modified");
+            return null;
+        }
 
-        LOGGER.info("Retrieving rents list");
+        KeysetPageDto<RentDetailsDto> rentDetailsPage = rentService.getRentsList(rentSearchDto);
 
-        return new ResponseEntity<>(rentDetailsDtoList, HttpStatus.OK);
+        LOGGER.info("Retrieving rents list page with {} rents", rentDetailsPage.getContent().size());
+
+        return ResponseEntity.status(HttpStatus.OK)
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(rentDetailsPage);
+    }
+
+    /**
+     * Export rents history, streamed row by row
+     *
+     * @param format         the export format, ndjson or csv
+     * @param since          only rents expected to begin on or after this day
+     * @param afterRentId    the last rent id already exported, to resume an export
+     * @param acceptEncoding the accepted encodings, the export is gzip compressed if gzip is accepted
+     * @return the response entity
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportRents(@RequestParam(defaultValue = "ndjson") String format,
+                                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate since,
+                                                             @RequestParam(defaultValue = "0") long afterRentId,
+                                                             @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        LOGGER.info("Request to export rents as {} since {} after id {}", format, since, afterRentId);
+
+        ExportFormat exportFormat = Arrays.stream(ExportFormat.values())
+                .filter(value -> value.name().equalsIgnoreCase(format))
+                .findFirst()
+                .orElseThrow(() -> {
+                    LOGGER.error("Export format {} is not supported", format);
+                    return new InvalidExportFormatException();
+                });
+
+        Date sinceDate = Objects.isNull(since) ? null : Date.from(since.atStartOfDay(ZoneId.systemDefault()).toInstant());
+        boolean gzip = AcceptEncoding.acceptsGzip(acceptEncoding);
+
+        StreamingResponseBody responseBody = outputStream -> {
+            if (gzip) {
+                GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream, 8192);
+                rentExportService.exportRents(exportFormat, sinceDate, afterRentId, gzipOutputStream);
+                gzipOutputStream.finish();
+            } else {
+                rentExportService.exportRents(exportFormat, sinceDate, afterRentId, outputStream);
+            }
+        };
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_TYPE, exportFormat.getContentType());
+        headers.setContentDisposition(ContentDisposition.attachment()
+                .filename("rents." + exportFormat.getExtension())
+                .build());
+        headers.set(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+
+        LOGGER.info("Streaming rents export");
+
+        return new ResponseEntity<>(responseBody, headers, HttpStatus.OK);
     }
 
     /**
@@ -118,6 +269,57 @@ public class RentController {
         return new ResponseEntity<>(rentDetailsDto, HttpStatus.OK);
     }
 
+    /**
+     * Cancel rent
+     *
+     * @param rentId the rent id
+     * @return the response entity
+     */
+    @PutMapping("/{rentId}/cancel")
+    public ResponseEntity<RentDetailsDto> cancelRent(@PathVariable long rentId) {
+        LOGGER.info("Request to cancel rent with id {}", rentId);
+
+        RentDetailsDto rentDetails = rentService.cancelRent(rentId);
+
+        LOGGER.info("Rent with id {} cancelled successfully", rentId);
+
+        return new ResponseEntity<>(rentDetails, HttpStatus.OK);
+    }
+
+    /**
+     * Mark rent as no-show
+     *
+     * @param rentId the rent id
+     * @return the response entity
+     */
+    @PutMapping("/{rentId}/no-show")
+    public ResponseEntity<RentDetailsDto> markRentAsNoShow(@PathVariable long rentId) {
+        LOGGER.info("Request to mark rent with id {} as no-show", rentId);
+
+        RentDetailsDto rentDetails = rentService.markRentAsNoShow(rentId);
+
+        LOGGER.info("Rent with id {} marked as no-show successfully", rentId);
+
+        return new ResponseEntity<>(rentDetails, HttpStatus.OK);
+    }
+
+    /**
+     * Get overdue rents, active rents past their expected end date
+     *
+     * @param limit max number of rents
+     * @return the response entity
+     */
+    @GetMapping("/overdue")
+    public ResponseEntity<List<RentDetailsDto>> getOverdueRents(@RequestParam(defaultValue = "50") int limit) {
+        LOGGER.info("Request to get {} overdue rents", limit);
+
+        List<RentDetailsDto> rents = rentService.getOverdueRents(limit);
+
+        LOGGER.info("Retrieving {} overdue rents", rents.size());
+
+        return new ResponseEntity<>(rents, HttpStatus.OK);
+    }
+
     /**
      * Delete rent
      *
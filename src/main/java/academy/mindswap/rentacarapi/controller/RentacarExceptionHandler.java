@@ -2,6 +2,7 @@ package academy.mindswap.rentacarapi.controller;
 
 import academy.mindswap.rentacarapi.exception.*;
 import academy.mindswap.rentacarapi.error.Error;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ControllerAdvice;
@@ -15,7 +16,8 @@ public class RentacarExceptionHandler {
 
     @ExceptionHandler(value = {
             UserNotFoundException.class,
-            CarNotFoundException.class})
+            CarNotFoundException.class,
+            RentNotFoundException.class})
     public ResponseEntity<Error> handlerNotFoundException(Exception ex, HttpServletRequest request) {
         return buildErrorResponse(ex, request, HttpStatus.NOT_FOUND);
     }
@@ -23,17 +25,40 @@ public class RentacarExceptionHandler {
     @ExceptionHandler(value = {
             UserAlreadyExistsException.class,
             CarAlreadyExistsException.class,
-            CarNotAvailableException.class})
+            CarNotAvailableException.class,
+            InvalidRentStatusException.class})
     public ResponseEntity<Error> handlerConflictException(Exception ex, HttpServletRequest request) {
         return buildErrorResponse(ex, request, HttpStatus.CONFLICT);
     }
 
+    @ExceptionHandler(value = {
+            InvalidDateRangeException.class,
+            InvalidExportFormatException.class,
+            InvalidImportFormatException.class})
+    public ResponseEntity<Error> handlerBadRequestException(Exception ex, HttpServletRequest request) {
+        return buildErrorResponse(ex, request, HttpStatus.BAD_REQUEST);
+    }
+
     @ExceptionHandler(value = {
             AuthenticationFailureException.class})
     public ResponseEntity<Error> handleUnauthorizedException(Exception ex, HttpServletRequest request) {
         return buildErrorResponse(ex, request, HttpStatus.UNAUTHORIZED);
     }
 
+    @ExceptionHandler(value = {
+            TooManyAttemptsException.class})
+    public ResponseEntity<Error> handleTooManyRequestsException(TooManyAttemptsException ex,
+                                                                HttpServletRequest request) {
+        return withRetryAfter(buildErrorResponse(ex, request, HttpStatus.TOO_MANY_REQUESTS), ex.getRetryAfterSeconds());
+    }
+
+    @ExceptionHandler(value = {
+            PasswordHashingOverloadedException.class})
+    public ResponseEntity<Error> handleServiceUnavailableException(PasswordHashingOverloadedException ex,
+                                                                   HttpServletRequest request) {
+        return withRetryAfter(buildErrorResponse(ex, request, HttpStatus.SERVICE_UNAVAILABLE), ex.getRetryAfterSeconds());
+    }
+
     @ExceptionHandler(value = {
             DatabaseCommunicationException.class,
             Exception.class})
@@ -52,4 +77,10 @@ public class RentacarExceptionHandler {
 
         return new ResponseEntity<>(error, httpStatus);
     }
+
+    private ResponseEntity<Error> withRetryAfter(ResponseEntity<Error> response, long retryAfterSeconds) {
+        return ResponseEntity.status(response.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(response.getBody());
+    }
 }
\ No newline at end of file
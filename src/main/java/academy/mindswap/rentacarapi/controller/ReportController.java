@@ -0,0 +1,76 @@
+package academy.mindswap.rentacarapi.controller;
+
+import academy.mindswap.rentacarapi.command.report.OccupancyReportDto;
+import academy.mindswap.rentacarapi.command.report.RevenueReportDto;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.service.ReportService;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * REST controller responsible for management reports
+ */
+@RestController
+@RequestMapping("/api/reports")
+public class ReportController {
+
+    private static final Logger LOGGER = LogManager.getLogger(ReportController.class);
+
+    private final ReportService reportService;
+
+    public ReportController(ReportService reportService) {
+        this.reportService = reportService;
+    }
+
+    /**
+     * Get revenue per segment and day
+     *
+     * @param from    first day
+     * @param to      last day
+     * @param segment segments to include, all if not provided
+     * @return the response entity
+     */
+    @GetMapping("/revenue")
+    public ResponseEntity<List<RevenueReportDto>> getRevenue(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                             @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                             @RequestParam(required = false) List<CarSegment> segment) {
+        LOGGER.info("Request to get revenue between {} - {}", from, to);
+
+        List<RevenueReportDto> revenueList = reportService.getRevenue(from, to, segment);
+
+        LOGGER.info("Retrieving revenue of {} segment days", revenueList.size());
+
+        return new ResponseEntity<>(revenueList, HttpStatus.OK);
+    }
+
+    /**
+     * Get occupancy per segment and day
+     *
+     * @param from    first day
+     * @param to      last day
+     * @param segment segments to include, all if not provided
+     * @return the response entity
+     */
+    @GetMapping("/occupancy")
+    public ResponseEntity<List<OccupancyReportDto>> getOccupancy(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                                                 @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                                                 @RequestParam(required = false) List<CarSegment> segment) {
+        LOGGER.info("Request to get occupancy between {} - {}", from, to);
+
+        List<OccupancyReportDto> occupancyList = reportService.getOccupancy(from, to, segment);
+
+        LOGGER.info("Retrieving occupancy of {} segment days", occupancyList.size());
+
+        return new ResponseEntity<>(occupancyList, HttpStatus.OK);
+    }
+}
@@ -1,16 +1,24 @@
 package academy.mindswap.rentacarapi.controller;
 
+import academy.mindswap.rentacarapi.cache.ResourceVersions;
+import academy.mindswap.rentacarapi.command.user.ChangePasswordDto;
 import academy.mindswap.rentacarapi.command.user.CreateOrUpdateUserDto;
+import academy.mindswap.rentacarapi.command.user.UpdateUserProfileDto;
 import academy.mindswap.rentacarapi.command.user.UserDetailsDto;
+import academy.mindswap.rentacarapi.enumerator.ResourceCollection;
 import academy.mindswap.rentacarapi.persistence.entity.UserEntity;
+import academy.mindswap.rentacarapi.security.LoginRateLimiter;
 import academy.mindswap.rentacarapi.service.UserServiceImp;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
 
 import java.util.List;
@@ -27,21 +35,31 @@ public class UserController {
     private static final Logger LOGGER = LogManager.getLogger(UserController.class);
 
     private final UserServiceImp userService;
+    private final ResourceVersions resourceVersions;
+    private final LoginRateLimiter loginRateLimiter;
 
-    public UserController(UserServiceImp userService) {
+    public UserController(UserServiceImp userService, ResourceVersions resourceVersions,
+                          LoginRateLimiter loginRateLimiter) {
         this.userService = userService;
+        this.resourceVersions = resourceVersions;
+        this.loginRateLimiter = loginRateLimiter;
     }
 
     /**
      * Create new user
      *
      * @param createUserDto new user data
+     * @param request       the request, to limit the registrations by client address
      * @return the response entity
      */
     @PostMapping
-    public ResponseEntity<?> registration(@Valid @RequestBody CreateOrUpdateUserDto createUserDto, BindingResult bindingResult) {
+    public ResponseEntity<?> registration(@Valid @RequestBody CreateOrUpdateUserDto createUserDto, BindingResult bindingResult,
+                                          HttpServletRequest request) {
         LOGGER.info("Request to create new user - {}", createUserDto);
 
+        // Before hashing the password
+        loginRateLimiter.acquire(request.getRemoteAddr(), createUserDto.getEmail());
+
         if (bindingResult.hasErrors()) {
             LOGGER.error("Request to create new user failed. UserDto has errors - {}", bindingResult.getFieldErrors());
             return new ResponseEntity<>(bindingResult.getFieldErrors(), HttpStatus.BAD_REQUEST);
@@ -57,34 +75,56 @@ public class UserController {
     /**
      * Get user by id
      *
-     * @param userId the user id
-     * @return the response entity
+     * @param userId     the user id
+     * @param webRequest the request, to check the If-None-Match header
+     * @return the response entity, not modified if the user version didn't change
      */
     @GetMapping("/{userId}")
-    public ResponseEntity<UserDetailsDto> getUserById(@PathVariable long userId) {
+    public ResponseEntity<UserDetailsDto> getUserById(@PathVariable long userId, WebRequest webRequest) {
         LOGGER.info("Request to get user with id {}", userId);
 
+        String eTag = ResourceVersions.getEntityTag(ResourceCollection.USERS, userId, userService.getUserVersion(userId));
+
+        if (webRequest.checkNotModified(eTag)) {
+            LOGGER.info("User with id {} not modified", userId);
+            return null;
+        }
+
         UserDetailsDto userDetailsDto = userService.getUserById(userId);
 
         LOGGER.info("Retrieving user with id {}", userId);
 
-        return new ResponseEntity<>(userDetailsDto, OK);
+        return ResponseEntity.status(OK)
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(userDetailsDto);
     }
 
     /**
      * Get all users
      *
-     * @return the response entity
+     * @param webRequest the request, to check the If-None-Match header
+     * @return the response entity, not modified if no user changed
      */
     @GetMapping
-    public ResponseEntity<List<UserDetailsDto>> getAllUsers() {
+    public ResponseEntity<List<UserDetailsDto>> getAllUsers(WebRequest webRequest) {
         LOGGER.info("Request to get users list");
 
+        String eTag = resourceVersions.getCollectionTag(ResourceCollection.USERS);
+
+        if (webRequest.checkNotModified(eTag)) {
+            LOGGER.info("Users not modified");
+            return null;
+        }
+
         List<UserDetailsDto> usersList = userService.getUsersList();
 
         LOGGER.info("Retrieving users list");
 
-        return new ResponseEntity<>(usersList, OK);
+        return ResponseEntity.status(OK)
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .body(usersList);
     }
 
     /**
@@ -113,6 +153,58 @@ public class UserController {
         return new ResponseEntity<>(userDetailsDto, OK);
     }
 
+    /**
+     * Update some of the user profile fields. The password is kept, so it isn't hashed again
+     *
+     * @param userId               the user id
+     * @param updateUserProfileDto the fields to update
+     * @return the response entity
+     */
+    @PatchMapping("/{userId}")
+    public ResponseEntity<?> updateUserProfile(@PathVariable long userId,
+                                               @Valid @RequestBody UpdateUserProfileDto updateUserProfileDto,
+                                               BindingResult bindingResult) {
+
+        LOGGER.info("Request to update profile of user with id {} - {}", userId, updateUserProfileDto);
+
+        if (bindingResult.hasErrors()) {
+            LOGGER.error("Failed to update profile of user with id {}. UserDto has errors - {}", userId, bindingResult.getFieldErrors());
+            return new ResponseEntity<>(bindingResult.getFieldErrors(), HttpStatus.BAD_REQUEST);
+        }
+
+        UserDetailsDto userDetailsDto = userService.updateUserProfile(userId, updateUserProfileDto);
+
+        LOGGER.info("Profile of user with id {} updated successfully", userId);
+
+        return new ResponseEntity<>(userDetailsDto, OK);
+    }
+
+    /**
+     * Change user password
+     *
+     * @param userId            the user id
+     * @param changePasswordDto the new password
+     * @return the response entity
+     */
+    @PutMapping("/{userId}/password")
+    public ResponseEntity<?> changePassword(@PathVariable long userId,
+                                            @Valid @RequestBody ChangePasswordDto changePasswordDto,
+                                            BindingResult bindingResult) {
+
+        LOGGER.info("Request to change password of user with id {}", userId);
+
+        if (bindingResult.hasErrors()) {
+            LOGGER.error("Failed to change password of user with id {} - {}", userId, bindingResult.getFieldErrors());
+            return new ResponseEntity<>(bindingResult.getFieldErrors(), HttpStatus.BAD_REQUEST);
+        }
+
+        userService.changePassword(userId, changePasswordDto);
+
+        LOGGER.info("Password of user with id {} changed successfully", userId);
+
+        return new ResponseEntity<>(HttpStatus.NO_CONTENT);
+    }
+
     /**
      * Delete user
      *
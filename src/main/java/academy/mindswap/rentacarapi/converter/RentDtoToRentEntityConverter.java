@@ -1,6 +1,7 @@
 package academy.mindswap.rentacarapi.converter;
 
 import academy.mindswap.rentacarapi.command.rent.CreateOrUpdateRentDto;
+import academy.mindswap.rentacarapi.enumerator.RentStatus;
 import academy.mindswap.rentacarapi.persistence.entity.RentEntity;
 
 /**
@@ -17,6 +18,7 @@ public class RentDtoToRentEntityConverter {
         return RentEntity.builder()
                 .expectedBeginDate(createOrUpdateRentDto.getExpectedBeginDate())
                 .expectedEndDate(createOrUpdateRentDto.getExpectedEndDate())
+                .status(RentStatus.RESERVED)
                 .build();
     }
 }
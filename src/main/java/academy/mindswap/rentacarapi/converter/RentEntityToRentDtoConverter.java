@@ -25,6 +25,7 @@ public class RentEntityToRentDtoConverter {
                 .endDate(rentEntity.getEndDate())
                 .expectedPrice(rentEntity.getExpectedPrice())
                 .finalPrice(rentEntity.getFinalPrice())
+                .status(rentEntity.getStatus())
                 .build();
     }
 
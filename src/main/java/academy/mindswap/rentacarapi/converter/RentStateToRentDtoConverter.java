@@ -0,0 +1,30 @@
+package academy.mindswap.rentacarapi.converter;
+
+import academy.mindswap.rentacarapi.command.rent.RentDetailsDto;
+import academy.mindswap.rentacarapi.persistence.projection.RentStateProjection;
+
+/**
+ * Converter helper for rent converting between state projection and DTO
+ */
+public class RentStateToRentDtoConverter {
+
+    /**
+     * Convert from {@link RentStateProjection} to {@link RentDetailsDto}
+     * @param rentState
+     * @return {@link RentDetailsDto}
+     */
+    public static RentDetailsDto convert(RentStateProjection rentState) {
+        return RentDetailsDto.builder()
+                .rentId(rentState.getRentId())
+                .carId(rentState.getCarId())
+                .userId(rentState.getUserId())
+                .expectedBeginDate(rentState.getExpectedBeginDate())
+                .beginDate(rentState.getBeginDate())
+                .expectedEndDate(rentState.getExpectedEndDate())
+                .endDate(rentState.getEndDate())
+                .expectedPrice(rentState.getExpectedPrice())
+                .finalPrice(rentState.getFinalPrice())
+                .status(rentState.getStatus())
+                .build();
+    }
+}
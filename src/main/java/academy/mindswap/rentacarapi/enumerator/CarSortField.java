@@ -0,0 +1,9 @@
+package academy.mindswap.rentacarapi.enumerator;
+
+/**
+ * Enum of the fields a car search can be sorted by, ties are sorted by car id
+ */
+public enum CarSortField {
+    CAR_ID,
+    DATE_OF_PURCHASE
+}
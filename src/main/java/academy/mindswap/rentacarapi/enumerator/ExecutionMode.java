@@ -0,0 +1,9 @@
+package academy.mindswap.rentacarapi.enumerator;
+
+/**
+ * Enum of the threads requests are handled on, the Tomcat worker pool or a new virtual thread each
+ */
+public enum ExecutionMode {
+    PLATFORM,
+    VIRTUAL
+}
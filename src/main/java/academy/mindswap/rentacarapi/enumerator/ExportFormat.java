@@ -0,0 +1,33 @@
+package academy.mindswap.rentacarapi.enumerator;
+
+/**
+ * Enum of export formats with content type and file extension
+ */
+public enum ExportFormat {
+    NDJSON("application/x-ndjson", "ndjson"),
+    CSV("text/csv", "csv");
+
+    private String contentType;
+    private String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    /**
+     * Get content type
+     * @return the content type
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Get file extension
+     * @return the extension
+     */
+    public String getExtension() {
+        return extension;
+    }
+}
@@ -0,0 +1,9 @@
+package academy.mindswap.rentacarapi.enumerator;
+
+/**
+ * Enum of the formats cars are imported from
+ */
+public enum ImportFormat {
+    CSV,
+    NDJSON
+}
@@ -0,0 +1,29 @@
+package academy.mindswap.rentacarapi.enumerator;
+
+/**
+ * Enum of rent status
+ */
+public enum RentStatus {
+    RESERVED,
+    ACTIVE,
+    RETURNED,
+    CANCELLED,
+    NO_SHOW;
+
+    /**
+     * Check if the rent lifecycle allows changing from this status to the given one
+     * @param status the next status
+     * @return true if the transition is allowed
+     */
+    public boolean canChangeTo(RentStatus status) {
+        switch (this) {
+            case RESERVED:
+                return status == ACTIVE || status == CANCELLED || status == NO_SHOW;
+            case ACTIVE:
+                return status == RETURNED;
+            default:
+                return false;
+        }
+    }
+
+}
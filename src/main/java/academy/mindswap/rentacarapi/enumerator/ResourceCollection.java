@@ -0,0 +1,24 @@
+package academy.mindswap.rentacarapi.enumerator;
+
+/**
+ * Enum of the resource collections with versioned list endpoints
+ */
+public enum ResourceCollection {
+    CARS("cars"),
+    USERS("users"),
+    RENTS("rents");
+
+    private String name;
+
+    ResourceCollection(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get name
+     * @return the name used in entity tags
+     */
+    public String getName() {
+        return name;
+    }
+}
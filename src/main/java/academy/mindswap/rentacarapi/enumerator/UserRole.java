@@ -0,0 +1,9 @@
+package academy.mindswap.rentacarapi.enumerator;
+
+/**
+ * Enum of user roles, granted as ROLE_ authorities
+ */
+public enum UserRole {
+    CUSTOMER,
+    ADMIN
+}
@@ -16,12 +16,22 @@ public class ErrorMessages {
     public static final String CAR_NOT_FOUND = "Can't find the car with the provided id";
     public static final String CAR_ALREADY_EXISTS = "A car with the provided plate already exists";
     public static final String CAR_NOT_AVAILABLE = "The required car is not available at the moment";
+    public static final String INVALID_DATE_RANGE = "The provided date range is not valid";
 
     public static final String RENT_NOT_FOUND = "Can't find the rent with the provided id";
     public static final String CAR_ALREADY_DELIVERED = "The car has already been delivered to the customer";
     public static final String CAR_EXPECTED_TO_BE_UNAVAILABLE = "The car will be unavailable in the provided dates";
     public static final String CAN_NOT_RETURN_CAR = "The current rent status doesn't allow you to return the car";
     public static final String CAN_NOT_DELETE_CAR_ALREADY_DELIVERED = "The rent cannot be deleted because the car was already delivered";
+    public static final String INVALID_RENT_STATUS_CHANGE = "The current rent status doesn't allow this change";
+
+    public static final String INVALID_EXPORT_FORMAT = "The export format must be ndjson or csv";
+    public static final String INVALID_IMPORT_FORMAT = "The import must be ndjson or csv with a brand,modelDescription,carSegment,dateOfPurchase,plate header";
+
+    public static final String TOO_MANY_ATTEMPTS = "Too many attempts. Please wait before trying again.";
+    public static final String PASSWORD_HASHING_OVERLOADED = "Too many logins are being processed at the moment. Please try again later.";
+
+    public static final String BOOKING_INTERRUPTED = "The booking request was interrupted before being processed. Please try again.";
 
     public static final String DATABASE_COMMUNICATION_ERROR = "Something went wrong with our database connection. Please try again later.";
 }
@@ -0,0 +1,13 @@
+package academy.mindswap.rentacarapi.exception;
+
+import academy.mindswap.rentacarapi.error.ErrorMessages;
+
+/**
+ * A {@link RentacarApiException} for when a booking command is interrupted while waiting to be processed
+ */
+public class BookingInterruptedException extends RentacarApiException {
+
+    public BookingInterruptedException(Throwable cause) {
+        super(ErrorMessages.BOOKING_INTERRUPTED, cause);
+    }
+}
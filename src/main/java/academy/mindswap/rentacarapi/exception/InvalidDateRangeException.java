@@ -0,0 +1,13 @@
+package academy.mindswap.rentacarapi.exception;
+
+import academy.mindswap.rentacarapi.error.ErrorMessages;
+
+/**
+ * A {@link RentacarApiException} for when the requested date range is not valid
+ */
+public class InvalidDateRangeException extends RentacarApiException {
+
+    public InvalidDateRangeException() {
+        super(ErrorMessages.INVALID_DATE_RANGE);
+    }
+}
@@ -0,0 +1,13 @@
+package academy.mindswap.rentacarapi.exception;
+
+import academy.mindswap.rentacarapi.error.ErrorMessages;
+
+/**
+ * A {@link RentacarApiException} for when the requested export format is not supported
+ */
+public class InvalidExportFormatException extends RentacarApiException {
+
+    public InvalidExportFormatException() {
+        super(ErrorMessages.INVALID_EXPORT_FORMAT);
+    }
+}
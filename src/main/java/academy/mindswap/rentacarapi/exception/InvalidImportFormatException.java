@@ -0,0 +1,13 @@
+package academy.mindswap.rentacarapi.exception;
+
+import academy.mindswap.rentacarapi.error.ErrorMessages;
+
+/**
+ * A {@link RentacarApiException} for when the import body can't be read as the requested format
+ */
+public class InvalidImportFormatException extends RentacarApiException {
+
+    public InvalidImportFormatException() {
+        super(ErrorMessages.INVALID_IMPORT_FORMAT);
+    }
+}
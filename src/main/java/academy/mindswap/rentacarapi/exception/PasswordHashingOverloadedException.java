@@ -0,0 +1,24 @@
+package academy.mindswap.rentacarapi.exception;
+
+import academy.mindswap.rentacarapi.error.ErrorMessages;
+
+/**
+ * A {@link RentacarApiException} for when the password hashing pool is full, or a hash waited too long for it
+ */
+public class PasswordHashingOverloadedException extends RentacarApiException {
+
+    private final long retryAfterSeconds;
+
+    public PasswordHashingOverloadedException(long retryAfterSeconds, Throwable cause) {
+        super(ErrorMessages.PASSWORD_HASHING_OVERLOADED, cause);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Get the time the client should wait before trying again
+     * @return the seconds for the Retry-After header
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,24 @@
+package academy.mindswap.rentacarapi.exception;
+
+import academy.mindswap.rentacarapi.error.ErrorMessages;
+
+/**
+ * A {@link RentacarApiException} for when a client or an email made too many logins or registrations
+ */
+public class TooManyAttemptsException extends RentacarApiException {
+
+    private final long retryAfterSeconds;
+
+    public TooManyAttemptsException(long retryAfterSeconds) {
+        super(ErrorMessages.TOO_MANY_ATTEMPTS);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * Get the time the client should wait before trying again
+     * @return the seconds for the Retry-After header
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
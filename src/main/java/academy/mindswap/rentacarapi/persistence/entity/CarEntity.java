@@ -18,7 +18,10 @@ import java.util.Date;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "cars")
+@Table(name = "cars", indexes = {
+        @Index(name = "idx_cars_brand_segment_available", columnList = "brand, carSegment, available"),
+        @Index(name = "idx_cars_date_of_purchase", columnList = "dateOfPurchase")
+})
 public class CarEntity extends AbstractEntity{
 
     @Id
@@ -1,6 +1,7 @@
 package academy.mindswap.rentacarapi.persistence.entity;
 
 
+import academy.mindswap.rentacarapi.enumerator.RentStatus;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -18,11 +19,24 @@ import java.util.Date;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table(name = "rents")
+@Table(name = "rents", indexes = {
+        @Index(name = "idx_rents_status_car", columnList = "status, carId"),
+        @Index(name = "idx_rents_status_expected_end_date", columnList = "status, expectedEndDate")
+})
+@NamedEntityGraph(name = RentEntity.WITH_CAR_AND_USER, attributeNodes = {
+        @NamedAttributeNode("carEntity"),
+        @NamedAttributeNode("userEntity")
+})
 public class RentEntity extends AbstractEntity {
 
+    /**
+     * Fetch plan loading the car and the user of the rent in the same select
+     */
+    public static final String WITH_CAR_AND_USER = "RentEntity.withCarAndUser";
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "rent_sequence")
+    @SequenceGenerator(name = "rent_sequence", sequenceName = "rent_sequence", allocationSize = 50)
     private long rentId;
 
     @ManyToOne(fetch = FetchType.LAZY)
@@ -47,4 +61,8 @@ public class RentEntity extends AbstractEntity {
     private BigDecimal expectedPrice;
 
     private BigDecimal finalPrice;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private RentStatus status;
 }
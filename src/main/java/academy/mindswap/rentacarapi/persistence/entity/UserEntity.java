@@ -1,5 +1,6 @@
 package academy.mindswap.rentacarapi.persistence.entity;
 
+import academy.mindswap.rentacarapi.enumerator.UserRole;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -37,4 +38,14 @@ public class UserEntity extends AbstractEntity{
     @Column(nullable = false)
     private String password;
 
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    @Builder.Default
+    private UserRole role = UserRole.CUSTOMER;
+
+    // Access tokens issued with an older version are rejected, it is incremented when the password changes
+    @Column(nullable = false)
+    @Builder.Default
+    private int tokenVersion = 0;
+
 }
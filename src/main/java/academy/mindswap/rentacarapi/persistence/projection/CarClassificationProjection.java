@@ -0,0 +1,16 @@
+package academy.mindswap.rentacarapi.persistence.projection;
+
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+
+/**
+ * Projection with the attributes used to group cars
+ */
+public interface CarClassificationProjection {
+
+    long getCarId();
+
+    CarBrands getBrand();
+
+    CarSegment getCarSegment();
+}
@@ -0,0 +1,11 @@
+package academy.mindswap.rentacarapi.persistence.projection;
+
+/**
+ * Projection with the plate of a car
+ */
+public interface CarPlateProjection {
+
+    long getCarId();
+
+    String getPlate();
+}
@@ -0,0 +1,27 @@
+package academy.mindswap.rentacarapi.persistence.projection;
+
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.enumerator.RentStatus;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Projection with the rent data aggregated in the revenue and occupancy reports
+ */
+public interface RentAggregateProjection {
+
+    CarSegment getCarSegment();
+
+    RentStatus getStatus();
+
+    Date getExpectedBeginDate();
+
+    Date getExpectedEndDate();
+
+    Date getEndDate();
+
+    BigDecimal getExpectedPrice();
+
+    BigDecimal getFinalPrice();
+}
@@ -0,0 +1,17 @@
+package academy.mindswap.rentacarapi.persistence.projection;
+
+import java.util.Date;
+
+/**
+ * Projection with the period a rent keeps a car booked
+ */
+public interface RentIntervalProjection {
+
+    long getRentId();
+
+    long getCarId();
+
+    Date getBeginDate();
+
+    Date getEndDate();
+}
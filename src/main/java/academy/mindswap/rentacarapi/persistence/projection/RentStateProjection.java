@@ -0,0 +1,35 @@
+package academy.mindswap.rentacarapi.persistence.projection;
+
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.enumerator.RentStatus;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * Projection with the rent state and the data needed to price it, without loading entities
+ */
+public interface RentStateProjection {
+
+    long getRentId();
+
+    long getCarId();
+
+    long getUserId();
+
+    CarSegment getCarSegment();
+
+    Date getExpectedBeginDate();
+
+    Date getBeginDate();
+
+    Date getExpectedEndDate();
+
+    Date getEndDate();
+
+    BigDecimal getExpectedPrice();
+
+    BigDecimal getFinalPrice();
+
+    RentStatus getStatus();
+}
@@ -0,0 +1,13 @@
+package academy.mindswap.rentacarapi.persistence.projection;
+
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+
+/**
+ * Projection with the number of cars of a segment
+ */
+public interface SegmentCountProjection {
+
+    CarSegment getCarSegment();
+
+    long getCars();
+}
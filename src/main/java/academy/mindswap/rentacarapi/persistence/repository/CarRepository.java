@@ -1,11 +1,177 @@
 package academy.mindswap.rentacarapi.persistence.repository;
 
+import academy.mindswap.rentacarapi.command.car.CarDetailsDto;
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
 import academy.mindswap.rentacarapi.persistence.entity.CarEntity;
+import academy.mindswap.rentacarapi.persistence.projection.CarClassificationProjection;
+import academy.mindswap.rentacarapi.persistence.projection.CarPlateProjection;
+import academy.mindswap.rentacarapi.persistence.projection.SegmentCountProjection;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository for {@link CarEntity} persistence operations
  * This interface is implemented by Spring Data JPA
  */
 public interface CarRepository extends CrudRepository<CarEntity, Long> {
+
+    /**
+     * Get the brand and segment of every car
+     * @return list of {@link CarClassificationProjection}
+     */
+    @Query(value = "SELECT c.carId AS carId, c.brand AS brand, c.carSegment AS carSegment FROM CarEntity c")
+    List<CarClassificationProjection> findAllCarClassifications();
+
+    /**
+     * Get the version of a car
+     * @param carId
+     * @return the entity version
+     */
+    @Query(value = "SELECT c.version FROM CarEntity c WHERE c.carId = :carId")
+    Optional<Integer> findVersionByCarId(@Param("carId") long carId);
+
+    /**
+     * Change the car availability, only if it still has the expected current availability
+     * @param carId
+     * @param currentlyAvailable
+     * @param available
+     * @return number of updated rows, 0 if the availability was changed meanwhile
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE CarEntity c SET c.available = :available, c.version = c.version + 1 " +
+            "WHERE c.carId = :carId AND c.available = :currentlyAvailable")
+    int changeCarAvailability(@Param("carId") long carId,
+                              @Param("currentlyAvailable") boolean currentlyAvailable,
+                              @Param("available") boolean available);
+
+    /**
+     * Get the plate of every car
+     * @return list of {@link CarPlateProjection}
+     */
+    @Query(value = "SELECT c.carId AS carId, c.plate AS plate FROM CarEntity c")
+    List<CarPlateProjection> findAllCarPlates();
+
+    /**
+     * Get the date of purchase of a car
+     * @param carId
+     * @return the date of purchase
+     */
+    @Query(value = "SELECT c.dateOfPurchase FROM CarEntity c WHERE c.carId = :carId")
+    Optional<Date> findDateOfPurchaseByCarId(@Param("carId") long carId);
+
+    /**
+     * Get car by plate
+     * @param plate
+     * @return {@link CarEntity}
+     */
+    Optional<CarEntity> findByPlate(String plate);
+
+    /**
+     * Get the cars with the given plate, ignoring case and punctuation like the plate index
+     * @param normalizedPlate upper case letters and digits of the plate
+     * @return list of {@link CarEntity}, more than one only if the cars were created before the index
+     */
+    @Query(value = "SELECT c FROM CarEntity c " +
+            "WHERE UPPER(FUNCTION('REGEXP_REPLACE', c.plate, '[^A-Za-z0-9]', '')) = :normalizedPlate " +
+            "ORDER BY c.carId")
+    List<CarEntity> findByNormalizedPlate(@Param("normalizedPlate") String normalizedPlate);
+
+    /**
+     * Get a page of cars matching the filters with id greater than the cursor, sorted by id
+     * @param brands
+     * @param carSegments
+     * @param available
+     * @param purchasedFrom
+     * @param purchasedTo exclusive
+     * @param afterCarId cursor, the last car id of the previous page
+     * @param pageable with the page size
+     * @return list of {@link CarDetailsDto}
+     */
+    @Query(value = "SELECT new academy.mindswap.rentacarapi.command.car.CarDetailsDto(" +
+            "c.carId, c.brand, c.modelDescription, c.carSegment, c.dateOfPurchase, c.plate, c.available) " +
+            "FROM CarEntity c " +
+            "WHERE c.brand IN :brands AND c.carSegment IN :carSegments " +
+            "AND (:available IS NULL OR c.available = :available) " +
+            "AND (:purchasedFrom IS NULL OR c.dateOfPurchase >= :purchasedFrom) " +
+            "AND (:purchasedTo IS NULL OR c.dateOfPurchase < :purchasedTo) " +
+            "AND c.carId > :afterCarId " +
+            "ORDER BY c.carId")
+    List<CarDetailsDto> findCarDetailsPageByCarId(@Param("brands") Collection<CarBrands> brands,
+                                             @Param("carSegments") Collection<CarSegment> carSegments,
+                                             @Param("available") Boolean available,
+                                             @Param("purchasedFrom") Date purchasedFrom,
+                                             @Param("purchasedTo") Date purchasedTo,
+                                             @Param("afterCarId") long afterCarId,
+                                             Pageable pageable);
+
+    /**
+     * Get a page of cars matching the filters after the cursor, sorted by date of purchase and id.
+     * The cursor holds the date of purchase too, so it still works after its car was deleted
+     * @param brands
+     * @param carSegments
+     * @param available
+     * @param purchasedFrom
+     * @param purchasedTo exclusive
+     * @param afterDateOfPurchase cursor, the date of purchase of the last car of the previous page, null for the first page
+     * @param afterCarId cursor, the last car id of the previous page
+     * @param pageable with the page size
+     * @return list of {@link CarDetailsDto}
+     */
+    @Query(value = "SELECT new academy.mindswap.rentacarapi.command.car.CarDetailsDto(" +
+            "c.carId, c.brand, c.modelDescription, c.carSegment, c.dateOfPurchase, c.plate, c.available) " +
+            "FROM CarEntity c " +
+            "WHERE c.brand IN :brands AND c.carSegment IN :carSegments " +
+            "AND (:available IS NULL OR c.available = :available) " +
+            "AND (:purchasedFrom IS NULL OR c.dateOfPurchase >= :purchasedFrom) " +
+            "AND (:purchasedTo IS NULL OR c.dateOfPurchase < :purchasedTo) " +
+            "AND (:afterDateOfPurchase IS NULL OR c.dateOfPurchase > :afterDateOfPurchase " +
+            "OR (c.dateOfPurchase = :afterDateOfPurchase AND c.carId > :afterCarId)) " +
+            "ORDER BY c.dateOfPurchase, c.carId")
+    List<CarDetailsDto> findCarDetailsPageByDateOfPurchase(@Param("brands") Collection<CarBrands> brands,
+                                             @Param("carSegments") Collection<CarSegment> carSegments,
+                                             @Param("available") Boolean available,
+                                             @Param("purchasedFrom") Date purchasedFrom,
+                                             @Param("purchasedTo") Date purchasedTo,
+                                             @Param("afterDateOfPurchase") Date afterDateOfPurchase,
+                                             @Param("afterCarId") long afterCarId,
+                                             Pageable pageable);
+
+    /**
+     * Count cars of each segment
+     * @return list of {@link SegmentCountProjection}
+     */
+    @Query(value = "SELECT c.carSegment AS carSegment, COUNT(c) AS cars FROM CarEntity c GROUP BY c.carSegment")
+    List<SegmentCountProjection> countCarsBySegment();
+
+    /**
+     * Get cars of the given segments and brands without booking rents between dates
+     * @param carSegments
+     * @param brands
+     * @param beginDate
+     * @param endDate
+     * @return list of {@link CarEntity} sorted by id
+     */
+    @Query(value = "SELECT c FROM CarEntity c " +
+            "WHERE c.carSegment IN :carSegments AND c.brand IN :brands " +
+            "AND NOT EXISTS (SELECT r FROM RentEntity r WHERE r.carEntity = c " +
+            "AND r.status NOT IN (academy.mindswap.rentacarapi.enumerator.RentStatus.CANCELLED, " +
+            "academy.mindswap.rentacarapi.enumerator.RentStatus.NO_SHOW) " +
+            "AND r.expectedBeginDate <= :endDate " +
+            "AND COALESCE(r.endDate, r.expectedEndDate) >= :beginDate) " +
+            "ORDER BY c.carId")
+    List<CarEntity> findAvailableCarsBetweenDates(@Param("carSegments") Collection<CarSegment> carSegments,
+                                                  @Param("brands") Collection<CarBrands> brands,
+                                                  @Param("beginDate") Date beginDate,
+                                                  @Param("endDate") Date endDate);
 }
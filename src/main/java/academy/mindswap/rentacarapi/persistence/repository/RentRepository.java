@@ -1,11 +1,23 @@
 package academy.mindswap.rentacarapi.persistence.repository;
 
+import academy.mindswap.rentacarapi.command.rent.RentDetailsDto;
+import academy.mindswap.rentacarapi.enumerator.RentStatus;
 import academy.mindswap.rentacarapi.persistence.entity.RentEntity;
+import academy.mindswap.rentacarapi.persistence.projection.RentAggregateProjection;
+import academy.mindswap.rentacarapi.persistence.projection.RentIntervalProjection;
+import academy.mindswap.rentacarapi.persistence.projection.RentStateProjection;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -24,9 +36,10 @@ public interface RentRepository extends CrudRepository<RentEntity, Long> {
     @Query(value = "SELECT CASE WHEN EXISTS( " +
             "SELECT *\n" +
             "FROM rents t1\n" +
-            "WHERE t1.car_id = :carId\n" +
-            "AND (( :beginDate BETWEEN t1.expected_begin_date AND t1.expected_end_date)\n" +
-            "OR ( :endDate BETWEEN t1.expected_begin_date AND t1.expected_end_date))\n" +
+            "WHERE t1.status NOT IN ('CANCELLED', 'NO_SHOW')\n" +
+            "AND t1.car_id = :carId\n" +
+            "AND t1.expected_begin_date <= :endDate\n" +
+            "AND COALESCE(t1.end_date, t1.expected_end_date) >= :beginDate\n" +
             ") THEN 'FALSE' ELSE 'TRUE' END",
             nativeQuery = true
     )
@@ -34,6 +47,174 @@ public interface RentRepository extends CrudRepository<RentEntity, Long> {
                                   @Param("beginDate") Date beginDate,
                                   @Param("endDate") Date endDate);
 
+    /**
+     * Get the booked period of every booking rent. Returned rents end at the actual end date
+     * @return list of {@link RentIntervalProjection}
+     */
+    @Query(value = "SELECT r.rentId AS rentId, r.carEntity.carId AS carId, " +
+            "r.expectedBeginDate AS beginDate, COALESCE(r.endDate, r.expectedEndDate) AS endDate " +
+            "FROM RentEntity r " +
+            "WHERE r.status NOT IN (academy.mindswap.rentacarapi.enumerator.RentStatus.CANCELLED, " +
+            "academy.mindswap.rentacarapi.enumerator.RentStatus.NO_SHOW)")
+    List<RentIntervalProjection> findAllRentIntervals();
+
+    /**
+     * Get the data of every booking rent aggregated in the reports
+     * @return list of {@link RentAggregateProjection}
+     */
+    @Query(value = "SELECT r.carEntity.carSegment AS carSegment, r.status AS status, " +
+            "r.expectedBeginDate AS expectedBeginDate, r.expectedEndDate AS expectedEndDate, r.endDate AS endDate, " +
+            "r.expectedPrice AS expectedPrice, r.finalPrice AS finalPrice " +
+            "FROM RentEntity r " +
+            "WHERE r.status NOT IN (academy.mindswap.rentacarapi.enumerator.RentStatus.CANCELLED, " +
+            "academy.mindswap.rentacarapi.enumerator.RentStatus.NO_SHOW)")
+    List<RentAggregateProjection> findAllRentAggregates();
+
+    /**
+     * Get the booked periods of the given cars overlapping the dates
+     * @param carIds
+     * @param beginDate
+     * @param endDate
+     * @return list of {@link RentIntervalProjection}
+     */
+    @Query(value = "SELECT r.rentId AS rentId, r.carEntity.carId AS carId, " +
+            "r.expectedBeginDate AS beginDate, COALESCE(r.endDate, r.expectedEndDate) AS endDate " +
+            "FROM RentEntity r " +
+            "WHERE r.status NOT IN (academy.mindswap.rentacarapi.enumerator.RentStatus.CANCELLED, " +
+            "academy.mindswap.rentacarapi.enumerator.RentStatus.NO_SHOW) " +
+            "AND r.carEntity.carId IN :carIds " +
+            "AND r.expectedBeginDate <= :endDate " +
+            "AND COALESCE(r.endDate, r.expectedEndDate) >= :beginDate")
+    List<RentIntervalProjection> findRentIntervalsOfCarsBetweenDates(@Param("carIds") Collection<Long> carIds,
+                                                                     @Param("beginDate") Date beginDate,
+                                                                     @Param("endDate") Date endDate);
+
+    /**
+     * Get a page of rents with id greater than the cursor, matching the optional filters, sorted by id
+     * @param afterRentId cursor, the last rent id of the previous page
+     * @param userId
+     * @param carId
+     * @param status
+     * @param beginDate start of the date window
+     * @param endDate end of the date window, exclusive
+     * @param pageable with the page size
+     * @return list of {@link RentDetailsDto}
+     */
+    @Query(value = "SELECT new academy.mindswap.rentacarapi.command.rent.RentDetailsDto(" +
+            "r.rentId, r.carEntity.carId, r.userEntity.userId, r.expectedBeginDate, r.beginDate, " +
+            "r.expectedEndDate, r.endDate, r.expectedPrice, r.finalPrice, r.status) " +
+            "FROM RentEntity r " +
+            "WHERE r.rentId > :afterRentId " +
+            "AND (:userId IS NULL OR r.userEntity.userId = :userId) " +
+            "AND (:carId IS NULL OR r.carEntity.carId = :carId) " +
+            "AND (:status IS NULL OR r.status = :status) " +
+            "AND (:beginDate IS NULL OR r.expectedEndDate >= :beginDate) " +
+            "AND (:endDate IS NULL OR r.expectedBeginDate < :endDate) " +
+            "ORDER BY r.rentId")
+    List<RentDetailsDto> findRentDetailsPage(@Param("afterRentId") long afterRentId,
+                                             @Param("userId") Long userId,
+                                             @Param("carId") Long carId,
+                                             @Param("status") RentStatus status,
+                                             @Param("beginDate") Date beginDate,
+                                             @Param("endDate") Date endDate,
+                                             Pageable pageable);
+
+    /**
+     * Get the car id of a rent
+     * @param rentId
+     * @return the car id
+     */
+    @Query(value = "SELECT r.carEntity.carId FROM RentEntity r WHERE r.rentId = :rentId")
+    Optional<Long> findCarIdByRentId(@Param("rentId") long rentId);
+
+    /**
+     * Get the version of a rent of the user
+     * @param rentId
+     * @param userId
+     * @return the entity version, empty if the rent doesn't exist or is of another user
+     */
+    @Query(value = "SELECT r.version FROM RentEntity r WHERE r.rentId = :rentId AND r.userEntity.userId = :userId")
+    Optional<Integer> findVersionByRentIdAndUserId(@Param("rentId") long rentId, @Param("userId") long userId);
+
+    /**
+     * Get the rent state and the segment of its car
+     * @param rentId
+     * @return {@link RentStateProjection}
+     */
+    @Query(value = "SELECT r.rentId AS rentId, r.carEntity.carId AS carId, r.userEntity.userId AS userId, " +
+            "r.carEntity.carSegment AS carSegment, r.expectedBeginDate AS expectedBeginDate, r.beginDate AS beginDate, " +
+            "r.expectedEndDate AS expectedEndDate, r.endDate AS endDate, " +
+            "r.expectedPrice AS expectedPrice, r.finalPrice AS finalPrice, r.status AS status " +
+            "FROM RentEntity r WHERE r.rentId = :rentId")
+    Optional<RentStateProjection> findRentStateById(@Param("rentId") long rentId);
+
+    /**
+     * Get active rents that should have already been returned, sorted by expected end date
+     * @param now
+     * @param pageable with the page size
+     * @return list of {@link RentDetailsDto}
+     */
+    @Query(value = "SELECT new academy.mindswap.rentacarapi.command.rent.RentDetailsDto(" +
+            "r.rentId, r.carEntity.carId, r.userEntity.userId, r.expectedBeginDate, r.beginDate, " +
+            "r.expectedEndDate, r.endDate, r.expectedPrice, r.finalPrice, r.status) " +
+            "FROM RentEntity r " +
+            "WHERE r.status = academy.mindswap.rentacarapi.enumerator.RentStatus.ACTIVE " +
+            "AND r.expectedEndDate < :now " +
+            "ORDER BY r.expectedEndDate, r.rentId")
+    List<RentDetailsDto> findOverdueRents(@Param("now") Date now, Pageable pageable);
+
+    /**
+     * Change the rent status, only if it still has the expected current status
+     * @param rentId
+     * @param currentStatus
+     * @param newStatus
+     * @return number of updated rows, 0 if the status was changed meanwhile
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE RentEntity r SET r.status = :newStatus, r.version = r.version + 1 " +
+            "WHERE r.rentId = :rentId AND r.status = :currentStatus")
+    int changeRentStatus(@Param("rentId") long rentId,
+                         @Param("currentStatus") RentStatus currentStatus,
+                         @Param("newStatus") RentStatus newStatus);
+
+    /**
+     * Set the rent as active with its begin date, only if the rent is reserved
+     * @param rentId
+     * @param beginDate
+     * @return number of updated rows, 0 if the rent is not reserved
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE RentEntity r SET r.beginDate = :beginDate, " +
+            "r.status = academy.mindswap.rentacarapi.enumerator.RentStatus.ACTIVE, r.version = r.version + 1 " +
+            "WHERE r.rentId = :rentId AND r.status = academy.mindswap.rentacarapi.enumerator.RentStatus.RESERVED")
+    int markRentAsActive(@Param("rentId") long rentId,
+                         @Param("beginDate") Date beginDate);
+
+    /**
+     * Set the rent as returned with its end date and final price, only if the rent is active
+     * @param rentId
+     * @param endDate
+     * @param finalPrice
+     * @return number of updated rows, 0 if the rent is not active
+     */
+    @Transactional
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query(value = "UPDATE RentEntity r SET r.endDate = :endDate, r.finalPrice = :finalPrice, " +
+            "r.status = academy.mindswap.rentacarapi.enumerator.RentStatus.RETURNED, r.version = r.version + 1 " +
+            "WHERE r.rentId = :rentId AND r.status = academy.mindswap.rentacarapi.enumerator.RentStatus.ACTIVE")
+    int markRentAsReturned(@Param("rentId") long rentId,
+                           @Param("endDate") Date endDate,
+                           @Param("finalPrice") BigDecimal finalPrice);
+
+    /**
+     * Get rent with its car and user, loaded in a single select
+     * @param rentId
+     * @return {@link RentEntity}
+     */
+    @EntityGraph(value = RentEntity.WITH_CAR_AND_USER)
+    Optional<RentEntity> findWithCarAndUserByRentId(long rentId);
 
     @Query(value = "SELECT * FROM rents WHERE rent_id = :rentId AND user_id = :userId",
             nativeQuery = true)
@@ -5,6 +5,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -22,6 +23,21 @@ public interface UserRepository extends CrudRepository<UserEntity, Long> {
             nativeQuery = true)
     Optional<UserEntity> findByEmail(@Param("email") String email);
 
+    /**
+     * Get the email of every user
+     * @return list of emails
+     */
+    @Query(value = "SELECT u.email FROM UserEntity u")
+    List<String> findAllEmails();
+
+    /**
+     * Check if a user has the email
+     * @param email
+     * @return true if the email is registered
+     */
+    @Query(value = "SELECT COUNT(u) > 0 FROM UserEntity u WHERE u.email = :email")
+    boolean existsByEmail(@Param("email") String email);
+
    /* @Query(value = "SELECT * FROM users WHERE email = :email AND password = :password",
             nativeQuery = true)
     Optional<UserEntity> findByEmailAndPassword(@Param("email") String email,
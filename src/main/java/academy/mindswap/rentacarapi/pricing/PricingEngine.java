@@ -0,0 +1,202 @@
+package academy.mindswap.rentacarapi.pricing;
+
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Rent pricing engine. Prices are computed in long minor units (cents) from a rate table
+ * precomputed per {@link CarSegment}, and multipliers are expressed in basis points (10000 = 1x),
+ * so the calculation itself doesn't allocate. Only the final result is converted to {@link BigDecimal}.
+ * With the default rules the price is the daily rate times the number of days, at least one,
+ * exactly like the original formula
+ */
+@Component
+public class PricingEngine {
+
+    private static final Logger LOGGER = LogManager.getLogger(PricingEngine.class);
+
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final long NEUTRAL = 10_000L;
+    private static final int MINOR_UNITS_SCALE = 2;
+    private static final long[] SCALE_DIVISORS = {100L, 10L, 1L};
+
+    private final long[] dailyRates;
+    private final int[] dailyRateScales;
+    private final TimeZone timeZone;
+    private final long weekendMultiplier;
+    private final boolean[] seasonMonths = new boolean[13];
+    private final long seasonMultiplier;
+    private final long longRentalDays;
+    private final long longRentalDiscount;
+    private final long lateReturnPenalty;
+    private final boolean dailyRules;
+
+    public PricingEngine(@Value("${rentacar.pricing.weekend-multiplier-bp:10000}") long weekendMultiplier,
+                         @Value("${rentacar.pricing.season-months:}") int[] seasonMonths,
+                         @Value("${rentacar.pricing.season-multiplier-bp:10000}") long seasonMultiplier,
+                         @Value("${rentacar.pricing.long-rental-days:0}") long longRentalDays,
+                         @Value("${rentacar.pricing.long-rental-discount-bp:0}") long longRentalDiscount,
+                         @Value("${rentacar.pricing.late-return-penalty-bp:0}") long lateReturnPenalty) {
+        this.weekendMultiplier = weekendMultiplier;
+        this.seasonMultiplier = seasonMultiplier;
+        this.longRentalDays = longRentalDays;
+        this.longRentalDiscount = longRentalDiscount;
+        this.lateReturnPenalty = lateReturnPenalty;
+        this.timeZone = TimeZone.getDefault();
+
+        for (int month : seasonMonths) {
+            if (month < 1 || month > 12) {
+                throw new IllegalArgumentException("Invalid season month " + month);
+            }
+            this.seasonMonths[month] = true;
+        }
+
+        // Only walk day by day when a rule depends on the day
+        this.dailyRules = weekendMultiplier != NEUTRAL || (seasonMonths.length > 0 && seasonMultiplier != NEUTRAL);
+
+        CarSegment[] carSegments = CarSegment.values();
+        this.dailyRates = new long[carSegments.length];
+        this.dailyRateScales = new int[carSegments.length];
+        for (CarSegment carSegment : carSegments) {
+            BigDecimal dailyPrice = carSegment.getDailyPrice();
+            dailyRates[carSegment.ordinal()] = dailyPrice.movePointRight(MINOR_UNITS_SCALE).longValueExact();
+            dailyRateScales[carSegment.ordinal()] = Math.max(0, dailyPrice.scale());
+        }
+
+        LOGGER.info("Pricing engine rules - weekend: {}bp, season: {}bp, long rental: {}bp from {} days, late return: {}bp",
+                weekendMultiplier, seasonMultiplier, longRentalDiscount, longRentalDays, lateReturnPenalty);
+    }
+
+    /**
+     * Calculate the price of a rent between the given dates
+     * @param carSegment
+     * @param beginDate
+     * @param endDate
+     * @return {@link BigDecimal} the total price
+     */
+    public BigDecimal calculatePrice(CarSegment carSegment, Date beginDate, Date endDate) {
+        return toBigDecimal(calculatePrice(carSegment, beginDate.getTime(), endDate.getTime()),
+                dailyRateScales[carSegment.ordinal()]);
+    }
+
+    /**
+     * Calculate the final price of a returned rent, with the late return penalty
+     * for each day after the expected end date
+     * @param carSegment
+     * @param beginDate
+     * @param endDate
+     * @param expectedEndDate
+     * @return {@link BigDecimal} the total price
+     */
+    public BigDecimal calculateFinalPrice(CarSegment carSegment, Date beginDate, Date endDate, Date expectedEndDate) {
+        long price = calculatePrice(carSegment, beginDate.getTime(), endDate.getTime());
+
+        if (lateReturnPenalty > 0) {
+            long lateDays = toEpochDay(endDate.getTime()) - toEpochDay(expectedEndDate.getTime());
+            if (lateDays > 0) {
+                price += applyBasisPoints(dailyRates[carSegment.ordinal()] * lateDays, lateReturnPenalty);
+            }
+        }
+
+        return toBigDecimal(price, dailyRateScales[carSegment.ordinal()]);
+    }
+
+    /**
+     * Calculate the price of a rent between the given instants
+     * @param carSegment
+     * @param begin epoch millis
+     * @param end epoch millis
+     * @return the total price in minor units
+     */
+    public long calculatePrice(CarSegment carSegment, long begin, long end) {
+        long dailyRate = dailyRates[carSegment.ordinal()];
+        long beginDay = toEpochDay(begin);
+        long days = toEpochDay(end) - beginDay;
+
+        // A rent within a single day is charged as one day
+        if (days == 0L) {
+            days = 1L;
+        }
+
+        long price;
+
+        if (!dailyRules || days < 0L) {
+            price = dailyRate * days;
+        } else {
+            price = 0L;
+            for (long day = beginDay; day < beginDay + days; day++) {
+                price += applyBasisPoints(dailyRate, dayMultiplier(day));
+            }
+        }
+
+        if (longRentalDays > 0L && days >= longRentalDays) {
+            price -= applyBasisPoints(price, longRentalDiscount);
+        }
+
+        return price;
+    }
+
+    private long dayMultiplier(long epochDay) {
+        long multiplier = NEUTRAL;
+
+        // 1970-01-01 was a thursday, so days 5 and 6 of this week numbering are saturday and sunday
+        if (Math.floorMod(epochDay + 3L, 7L) >= 5L) {
+            multiplier = multiplier * weekendMultiplier / NEUTRAL;
+        }
+        if (seasonMonths[monthOfEpochDay(epochDay)]) {
+            multiplier = multiplier * seasonMultiplier / NEUTRAL;
+        }
+
+        return multiplier;
+    }
+
+    private long toEpochDay(long epochMilli) {
+        return Math.floorDiv(epochMilli + timeZone.getOffset(epochMilli), MILLIS_PER_DAY);
+    }
+
+    /**
+     * Month of the day, same calculation as {@link java.time.LocalDate#ofEpochDay(long)} without creating the date
+     */
+    private static int monthOfEpochDay(long epochDay) {
+        long zeroDay = epochDay + 719_528L - 60L;
+        long adjust = 0L;
+        if (zeroDay < 0L) {
+            long adjustCycles = (zeroDay + 1L) / 146_097L - 1L;
+            adjust = adjustCycles * 400L;
+            zeroDay += -adjustCycles * 146_097L;
+        }
+        long yearEst = (400L * zeroDay + 591L) / 146_097L;
+        long doyEst = zeroDay - (365L * yearEst + yearEst / 4L - yearEst / 100L + yearEst / 400L);
+        if (doyEst < 0L) {
+            yearEst--;
+            doyEst = zeroDay - (365L * yearEst + yearEst / 4L - yearEst / 100L + yearEst / 400L);
+        }
+        int marchMonth0 = (int) ((doyEst * 5L + 2L) / 153L);
+        return (marchMonth0 + 2) % 12 + 1;
+    }
+
+    /**
+     * Apply basis points to an amount in minor units, rounding half up
+     */
+    private static long applyBasisPoints(long amount, long basisPoints) {
+        long scaled = amount * basisPoints;
+        return scaled >= 0L ? (scaled + NEUTRAL / 2L) / NEUTRAL : -((-scaled + NEUTRAL / 2L) / NEUTRAL);
+    }
+
+    private static BigDecimal toBigDecimal(long minorUnits, int rateScale) {
+        BigDecimal price = BigDecimal.valueOf(minorUnits, MINOR_UNITS_SCALE);
+
+        // Keep the scale of the daily rate when exact, like the rate multiplied by a number of days
+        if (minorUnits % SCALE_DIVISORS[rateScale] == 0L) {
+            return price.setScale(rateScale);
+        }
+        return price;
+    }
+}
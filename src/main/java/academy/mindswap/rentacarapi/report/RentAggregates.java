@@ -0,0 +1,268 @@
+package academy.mindswap.rentacarapi.report;
+
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.enumerator.RentStatus;
+import academy.mindswap.rentacarapi.persistence.projection.RentAggregateProjection;
+import academy.mindswap.rentacarapi.persistence.repository.RentRepository;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory revenue and occupancy counters per car segment and day, updated incrementally every time
+ * a rent is created, returned, cancelled or deleted, so reports don't need to scan the rents table.
+ * The revenue of a rent is counted on its expected begin day, the final price once returned and
+ * the expected price before that. A rent occupies a car on every day of its booked period.
+ * A scheduled job recomputes the counters from the rents table and logs any drift
+ */
+@Component
+public class RentAggregates {
+
+    private static final Logger LOGGER = LogManager.getLogger(RentAggregates.class);
+
+    private static final int SEGMENTS = CarSegment.values().length;
+
+    private final RentRepository rentRepository;
+    private final ZoneId zoneId = ZoneId.systemDefault();
+
+    // Updates share the read lock, only starting and ending a rebuild take the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile Counters counters = new Counters();
+    // Updates made while a rebuild reads the rents table, null when not rebuilding
+    private Counters rebuildDeltas;
+
+    public RentAggregates(RentRepository rentRepository) {
+        this.rentRepository = rentRepository;
+    }
+
+    /**
+     * Build the counters from the database
+     */
+    @PostConstruct
+    public void load() {
+        LOGGER.info("Loading rent aggregates from database");
+        rebuild();
+    }
+
+    /**
+     * Count a new rent
+     * @param carSegment
+     * @param expectedBeginDate
+     * @param expectedEndDate
+     * @param expectedPrice
+     */
+    public void addRent(CarSegment carSegment, Date expectedBeginDate, Date expectedEndDate, BigDecimal expectedPrice) {
+        lock.readLock().lock();
+        try {
+            add(carSegment, expectedBeginDate, expectedEndDate, expectedPrice, 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Replace the expected period and price of a rent by the actual ones, when the car is returned
+     * @param carSegment
+     * @param expectedBeginDate
+     * @param expectedEndDate
+     * @param endDate
+     * @param expectedPrice
+     * @param finalPrice
+     */
+    public void returnRent(CarSegment carSegment, Date expectedBeginDate, Date expectedEndDate, Date endDate,
+                           BigDecimal expectedPrice, BigDecimal finalPrice) {
+        lock.readLock().lock();
+        try {
+            add(carSegment, expectedBeginDate, expectedEndDate, expectedPrice, -1);
+            add(carSegment, expectedBeginDate, endDate, finalPrice, 1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stop counting a reserved rent, when it is cancelled or deleted
+     * @param carSegment
+     * @param expectedBeginDate
+     * @param expectedEndDate
+     * @param expectedPrice
+     */
+    public void removeRent(CarSegment carSegment, Date expectedBeginDate, Date expectedEndDate, BigDecimal expectedPrice) {
+        lock.readLock().lock();
+        try {
+            add(carSegment, expectedBeginDate, expectedEndDate, expectedPrice, -1);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get the revenue of a segment on a day
+     * @param day
+     * @param carSegment
+     * @return the revenue in minor units
+     */
+    public long getRevenue(LocalDate day, CarSegment carSegment) {
+        return counters.get(counters.revenueByDay, day.toEpochDay(), carSegment);
+    }
+
+    /**
+     * Get the number of booked cars of a segment on a day
+     * @param day
+     * @param carSegment
+     * @return the number of booked cars
+     */
+    public long getBookedCars(LocalDate day, CarSegment carSegment) {
+        return counters.get(counters.bookedCarsByDay, day.toEpochDay(), carSegment);
+    }
+
+    /**
+     * Recompute the counters from the rents table in parallel and log any drift from the live counters.
+     * The updates made while the rents are read are recorded and applied to the rebuilt counters.
+     * A rent saved just before the read whose update is only counted after it started is counted
+     * twice, until the next rebuild
+     */
+    @Scheduled(initialDelayString = "${rentacar.reports.rebuild-interval-ms:3600000}",
+            fixedDelayString = "${rentacar.reports.rebuild-interval-ms:3600000}")
+    public synchronized void rebuild() {
+        long startTime = System.currentTimeMillis();
+
+        lock.writeLock().lock();
+        try {
+            rebuildDeltas = new Counters();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Counters rebuiltCounters = new Counters();
+        List<RentAggregateProjection> rents;
+
+        try {
+            rents = rentRepository.findAllRentAggregates();
+
+            rents.parallelStream().forEach(rent -> {
+                boolean returned = rent.getStatus() == RentStatus.RETURNED;
+                rebuiltCounters.add(rent.getCarSegment(), rent.getExpectedBeginDate(),
+                        returned ? rent.getEndDate() : rent.getExpectedEndDate(),
+                        returned ? rent.getFinalPrice() : rent.getExpectedPrice(), 1);
+            });
+        } catch (RuntimeException e) {
+            lock.writeLock().lock();
+            try {
+                rebuildDeltas = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        lock.writeLock().lock();
+        try {
+            rebuiltCounters.addAll(rebuildDeltas);
+            rebuildDeltas = null;
+
+            long drift = counters.countDifferences(rebuiltCounters);
+            if (drift > 0) {
+                LOGGER.warn("Rent aggregates drifted from the rents table in {} counters. Replacing them", drift);
+            }
+
+            counters = rebuiltCounters;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        LOGGER.info("Rent aggregates rebuilt from {} rents in {} ms", rents.size(), System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Count an update in the live counters, and in the deltas of the running rebuild.
+     * Callers hold the read lock
+     */
+    private void add(CarSegment carSegment, Date beginDate, Date endDate, BigDecimal price, int sign) {
+        counters.add(carSegment, beginDate, endDate, price, sign);
+
+        if (rebuildDeltas != null) {
+            rebuildDeltas.add(carSegment, beginDate, endDate, price, sign);
+        }
+    }
+
+    private long toEpochDay(Date date) {
+        return LocalDate.ofInstant(date.toInstant(), zoneId).toEpochDay();
+    }
+
+    private final class Counters {
+
+        private final Map<Long, LongAdder[]> revenueByDay = new ConcurrentHashMap<>();
+        private final Map<Long, LongAdder[]> bookedCarsByDay = new ConcurrentHashMap<>();
+
+        private void add(CarSegment carSegment, Date beginDate, Date endDate, BigDecimal price, int sign) {
+            long beginDay = toEpochDay(beginDate);
+            long revenue = price.movePointRight(2).setScale(0, RoundingMode.HALF_UP).longValueExact();
+
+            counter(revenueByDay, beginDay, carSegment).add(sign * revenue);
+
+            for (long day = beginDay; day <= toEpochDay(endDate); day++) {
+                counter(bookedCarsByDay, day, carSegment).add(sign);
+            }
+        }
+
+        private LongAdder counter(Map<Long, LongAdder[]> countersByDay, long day, CarSegment carSegment) {
+            return countersByDay.computeIfAbsent(day, key -> {
+                LongAdder[] segmentCounters = new LongAdder[SEGMENTS];
+                for (int i = 0; i < SEGMENTS; i++) {
+                    segmentCounters[i] = new LongAdder();
+                }
+                return segmentCounters;
+            })[carSegment.ordinal()];
+        }
+
+        private void addAll(Counters other) {
+            addAll(revenueByDay, other.revenueByDay);
+            addAll(bookedCarsByDay, other.bookedCarsByDay);
+        }
+
+        private void addAll(Map<Long, LongAdder[]> countersByDay, Map<Long, LongAdder[]> otherCountersByDay) {
+            otherCountersByDay.forEach((day, otherSegmentCounters) -> {
+                for (CarSegment carSegment : CarSegment.values()) {
+                    counter(countersByDay, day, carSegment).add(otherSegmentCounters[carSegment.ordinal()].sum());
+                }
+            });
+        }
+
+        private long get(Map<Long, LongAdder[]> countersByDay, long day, CarSegment carSegment) {
+            LongAdder[] segmentCounters = countersByDay.get(day);
+            return segmentCounters == null ? 0L : segmentCounters[carSegment.ordinal()].sum();
+        }
+
+        private long countDifferences(Counters other) {
+            return countDifferences(revenueByDay, other.revenueByDay) + countDifferences(bookedCarsByDay, other.bookedCarsByDay);
+        }
+
+        private long countDifferences(Map<Long, LongAdder[]> countersByDay, Map<Long, LongAdder[]> otherCountersByDay) {
+            Set<Long> days = new HashSet<>(countersByDay.keySet());
+            days.addAll(otherCountersByDay.keySet());
+
+            long differences = 0;
+            for (long day : days) {
+                for (CarSegment carSegment : CarSegment.values()) {
+                    if (get(countersByDay, day, carSegment) != get(otherCountersByDay, day, carSegment)) {
+                        differences++;
+                    }
+                }
+            }
+            return differences;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package academy.mindswap.rentacarapi.security;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Claims carried by an access token, named as the registered JWT claims
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AccessTokenClaims {
+
+    @JsonProperty("sub")
+    private long userId;
+
+    private String email;
+
+    private List<String> roles;
+
+    @JsonProperty("ver")
+    private int tokenVersion;
+
+    @JsonProperty("iat")
+    private long issuedAt;
+
+    @JsonProperty("exp")
+    private long expiresAt;
+}
@@ -0,0 +1,74 @@
+package academy.mindswap.rentacarapi.security;
+
+import academy.mindswap.rentacarapi.persistence.entity.UserEntity;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.AuthenticationEntryPoint;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Authenticates requests with a bearer access token issued on login. Requests without a bearer token
+ * go on to the next authentication filters, requests with an invalid, expired or revoked one are rejected.
+ * The token user is read through the principal cache, and its current role is granted
+ */
+public class AccessTokenFilter extends OncePerRequestFilter {
+
+    private static final Logger LOGGER = LogManager.getLogger(AccessTokenFilter.class);
+
+    private static final String BEARER = "Bearer ";
+
+    private final AccessTokenProvider accessTokenProvider;
+    private final ObjectProvider<UserEntityDetailsService> userEntityDetailsService;
+    private final AuthenticationEntryPoint authenticationEntryPoint;
+
+    public AccessTokenFilter(AccessTokenProvider accessTokenProvider,
+                             ObjectProvider<UserEntityDetailsService> userEntityDetailsService,
+                             AuthenticationEntryPoint authenticationEntryPoint) {
+        this.accessTokenProvider = accessTokenProvider;
+        this.userEntityDetailsService = userEntityDetailsService;
+        this.authenticationEntryPoint = authenticationEntryPoint;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+
+        if (authorization == null || !authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        Optional<AccessTokenClaims> claims = accessTokenProvider.verify(authorization.substring(BEARER.length()).trim());
+        Optional<UserEntity> user = claims.flatMap(userEntityDetailsService.getObject()::findAccessTokenUser);
+
+        if (user.isEmpty()) {
+            LOGGER.warn("Rejected invalid, expired or revoked access token on {} {}", request.getMethod(), request.getRequestURI());
+            SecurityContextHolder.clearContext();
+            authenticationEntryPoint.commence(request, response,
+                    new BadCredentialsException("Invalid, expired or revoked access token"));
+            return;
+        }
+
+        UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                user.get().getEmail(), null, AuthorityUtils.createAuthorityList("ROLE_" + user.get().getRole().name()));
+        authentication.setDetails(claims.get());
+
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,146 @@
+package academy.mindswap.rentacarapi.security;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Issues and verifies stateless access tokens. Tokens use the JWT compact format signed with HMAC-SHA256,
+ * so they are verified with the secret only. They carry the token version of the user, which the
+ * {@link AccessTokenFilter} checks against the current one, so a password change or a deleted user
+ * revokes them before they expire
+ */
+@Component
+public class AccessTokenProvider {
+
+    private static final Logger LOGGER = LogManager.getLogger(AccessTokenProvider.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String HEADER = Base64.getUrlEncoder().withoutPadding()
+            .encodeToString("{\"alg\":\"HS256\",\"typ\":\"JWT\"}".getBytes(StandardCharsets.UTF_8));
+
+    private final ObjectMapper objectMapper;
+    private final SecretKeySpec secretKey;
+    private final long ttlSeconds;
+    private final ThreadLocal<Mac> macs;
+
+    public AccessTokenProvider(ObjectMapper objectMapper,
+                               @Value("${rentacar.security.token.secret:}") String secret,
+                               @Value("${rentacar.security.token.ttl-seconds:3600}") long ttlSeconds) {
+        this.objectMapper = objectMapper;
+        this.ttlSeconds = ttlSeconds;
+
+        byte[] secretBytes;
+        if (secret.isBlank()) {
+            LOGGER.warn("No access token secret configured. Using a random one, tokens won't survive a restart");
+            secretBytes = new byte[32];
+            new SecureRandom().nextBytes(secretBytes);
+        } else {
+            secretBytes = Base64.getDecoder().decode(secret);
+        }
+
+        this.secretKey = new SecretKeySpec(secretBytes, ALGORITHM);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(secretKey);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Can't create " + ALGORITHM + " signer", e);
+            }
+        });
+    }
+
+    /**
+     * Get the token lifetime
+     * @return seconds a token is valid after being issued
+     */
+    public long getTtlSeconds() {
+        return ttlSeconds;
+    }
+
+    /**
+     * Issue a signed token for the user
+     * @param userId
+     * @param email
+     * @param roles
+     * @param tokenVersion the current token version of the user
+     * @return the token
+     */
+    public String issue(long userId, String email, List<String> roles, int tokenVersion) {
+        long now = System.currentTimeMillis() / 1000;
+
+        AccessTokenClaims claims = AccessTokenClaims.builder()
+                .userId(userId)
+                .email(email)
+                .roles(roles)
+                .tokenVersion(tokenVersion)
+                .issuedAt(now)
+                .expiresAt(now + ttlSeconds)
+                .build();
+
+        try {
+            String unsignedToken = HEADER + "." + encode(objectMapper.writeValueAsBytes(claims));
+            return unsignedToken + "." + encode(sign(unsignedToken));
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't serialize access token claims", e);
+        }
+    }
+
+    /**
+     * Verify the token signature and expiration
+     * @param token
+     * @return the token claims, empty if the token is malformed, tampered or expired
+     */
+    public Optional<AccessTokenClaims> verify(String token) {
+        int payloadStart = token.indexOf('.');
+        int signatureStart = token.lastIndexOf('.');
+
+        if (payloadStart < 0 || signatureStart == payloadStart || !HEADER.equals(token.substring(0, payloadStart))) {
+            return Optional.empty();
+        }
+
+        try {
+            String unsignedToken = token.substring(0, signatureStart);
+            byte[] signature = Base64.getUrlDecoder().decode(token.substring(signatureStart + 1));
+
+            // Constant time comparison, so the signature can't be guessed byte by byte
+            if (!MessageDigest.isEqual(sign(unsignedToken), signature)) {
+                return Optional.empty();
+            }
+
+            AccessTokenClaims claims = objectMapper.readValue(
+                    Base64.getUrlDecoder().decode(token.substring(payloadStart + 1, signatureStart)),
+                    AccessTokenClaims.class);
+
+            if (claims.getExpiresAt() <= System.currentTimeMillis() / 1000) {
+                return Optional.empty();
+            }
+
+            return Optional.of(claims);
+        } catch (IllegalArgumentException | IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    private byte[] sign(String unsignedToken) {
+        return macs.get().doFinal(unsignedToken.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private String encode(byte[] bytes) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+}
@@ -1,6 +1,7 @@
 package academy.mindswap.rentacarapi.security;
 
 import academy.mindswap.rentacarapi.error.Error;
+import academy.mindswap.rentacarapi.exception.PasswordHashingOverloadedException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -33,6 +34,15 @@ public class AuthenticatorEntryPoint implements AuthenticationEntryPoint {
         httpServletResponse.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
         httpServletResponse.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
 
+        // The credentials weren't checked because the password hashing pool is full
+        if (e.getCause() instanceof PasswordHashingOverloadedException) {
+            PasswordHashingOverloadedException overloaded = (PasswordHashingOverloadedException) e.getCause();
+            error.setMessage(overloaded.getMessage());
+            error.setException(overloaded.getClass().getSimpleName());
+            httpServletResponse.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(overloaded.getRetryAfterSeconds()));
+            httpServletResponse.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+
         objectMapper.writeValue(httpServletResponse.getOutputStream(), error);
     }
 }
@@ -0,0 +1,154 @@
+package academy.mindswap.rentacarapi.security;
+
+import academy.mindswap.rentacarapi.exception.PasswordHashingOverloadedException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the hashes and checks of a slow password encoder on a pool of its own, with a bounded queue,
+ * so at most the pool size of processors are busy with BCrypt however many logins arrive. When the
+ * queue is full, or a hash waits longer than the timeout, {@link PasswordHashingOverloadedException}
+ * is thrown right away instead of piling up request threads. Queue depth, hash latency and rejections
+ * are published as metrics.
+ * A hash that times out while waiting is removed from the queue, so it never runs and frees its slot.
+ * BCrypt doesn't stop when interrupted, so a hash that times out while running keeps its thread until it
+ * finishes. The processors busy with BCrypt stay bounded by the pool size, but until then that thread
+ * serves no caller and the hashes behind it wait longer
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder, MeterBinder {
+
+    private static final Logger LOGGER = LogManager.getLogger(BoundedPasswordEncoder.class);
+
+    private final PasswordEncoder delegate;
+    private final long timeoutMillis;
+    private final long retryAfterSeconds;
+    private final ThreadPoolExecutor executor;
+
+    private final LongAdder encodes = new LongAdder();
+    private final LongAdder encodeNanos = new LongAdder();
+    private final LongAdder matches = new LongAdder();
+    private final LongAdder matchNanos = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueSize, long timeoutMillis,
+                                  long retryAfterSeconds) {
+        this.delegate = delegate;
+        this.timeoutMillis = timeoutMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(() -> delegate.encode(rawPassword), encodes, encodeNanos);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(() -> delegate.matches(rawPassword, encodedPassword), matches, matchNanos);
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        // Only reads the hash prefix, cheap enough for the caller thread
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * Get the number of hashes waiting for a thread
+     * @return the queue depth
+     */
+    public int getQueuedHashes() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionTimer.builder("rentacar.password.hashing", encodes, LongAdder::sum, adder -> encodeNanos.sum(),
+                TimeUnit.NANOSECONDS).tag("operation", "encode").register(registry);
+        FunctionTimer.builder("rentacar.password.hashing", matches, LongAdder::sum, adder -> matchNanos.sum(),
+                TimeUnit.NANOSECONDS).tag("operation", "matches").register(registry);
+        FunctionCounter.builder("rentacar.password.hashing.rejected", rejections, LongAdder::sum)
+                .tag("reason", "queue-full").register(registry);
+        FunctionCounter.builder("rentacar.password.hashing.rejected", timeouts, LongAdder::sum)
+                .tag("reason", "timeout").register(registry);
+        Gauge.builder("rentacar.password.hashing.queue", this, BoundedPasswordEncoder::getQueuedHashes).register(registry);
+        Gauge.builder("rentacar.password.hashing.active", executor, ThreadPoolExecutor::getActiveCount).register(registry);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> T run(Callable<T> hash, LongAdder count, LongAdder totalNanos) {
+        Future<T> future;
+
+        try {
+            future = executor.submit(() -> {
+                long start = System.nanoTime();
+                try {
+                    return hash.call();
+                } finally {
+                    count.increment();
+                    totalNanos.add(System.nanoTime() - start);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rejections.increment();
+            LOGGER.warn("Password hashing queue is full, rejecting the request");
+            throw new PasswordHashingOverloadedException(retryAfterSeconds, e);
+        }
+
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            timeouts.increment();
+            LOGGER.warn("Password hashing didn't {} in {} ms, rejecting the request",
+                    cancel(future) ? "start" : "finish", timeoutMillis);
+            throw new PasswordHashingOverloadedException(retryAfterSeconds, e);
+        } catch (InterruptedException e) {
+            cancel(future);
+            Thread.currentThread().interrupt();
+            throw new PasswordHashingOverloadedException(retryAfterSeconds, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    /**
+     * Cancel a hash whose caller stopped waiting, removing it from the queue if it didn't start yet
+     * @return true if it never ran, false if it is still running and holds its thread until it finishes
+     */
+    private boolean cancel(Future<?> future) {
+        future.cancel(true);
+        return executor.remove((Runnable) future);
+    }
+}
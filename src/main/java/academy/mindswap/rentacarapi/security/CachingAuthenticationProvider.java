@@ -0,0 +1,199 @@
+package academy.mindswap.rentacarapi.security;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers successful username and password authentications for a short time, so clients sending
+ * the same basic credentials on every request don't pay a BCrypt check each time. Entries are keyed by
+ * an HMAC of the credentials with a random key kept in memory, the password is never stored.
+ * Failed authentications are not cached. Entries of a user are removed when the user changes, and the
+ * rest expire after the configured time. Each invalidation of a user takes a new generation, so an
+ * authentication still running when the user changed doesn't cache the revoked credentials after it.
+ * Hits and misses are published as metrics
+ */
+public class CachingAuthenticationProvider implements AuthenticationProvider, MeterBinder {
+
+    private static final Logger LOGGER = LogManager.getLogger(CachingAuthenticationProvider.class);
+
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private final AuthenticationProvider delegate;
+    private final long ttlNanos;
+    private final int maxSize;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final Map<String, Invalidation> invalidations = new ConcurrentHashMap<>();
+    private final ThreadLocal<Mac> macs;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public CachingAuthenticationProvider(AuthenticationProvider delegate, long ttlSeconds, int maxSize) {
+        this.delegate = delegate;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+        this.maxSize = maxSize;
+
+        byte[] secretBytes = new byte[32];
+        new SecureRandom().nextBytes(secretBytes);
+        SecretKeySpec secretKey = new SecretKeySpec(secretBytes, ALGORITHM);
+
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(ALGORITHM);
+                mac.init(secretKey);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Can't create " + ALGORITHM + " signer", e);
+            }
+        });
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        if (ttlNanos <= 0 || !(authentication.getCredentials() instanceof String)) {
+            return delegate.authenticate(authentication);
+        }
+
+        String username = authentication.getName();
+        String key = key(username, (String) authentication.getCredentials());
+        long now = System.nanoTime();
+
+        Entry entry = entries.get(key);
+
+        if (entry != null && now - entry.expiresAt < 0) {
+            hits.increment();
+            return entry.authentication;
+        }
+
+        misses.increment();
+
+        // Read before the check, a later invalidation of the user must not be undone by this result
+        long startGeneration = generation.get();
+
+        Authentication result = delegate.authenticate(authentication);
+
+        if (result != null && result.isAuthenticated()) {
+            cache(key, username, result, now, startGeneration);
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean supports(Class<?> authentication) {
+        return delegate.supports(authentication);
+    }
+
+    /**
+     * Forget the authentications of the user, after the password or the user itself changed
+     * @param username
+     */
+    public void invalidate(String username) {
+        if (username == null) {
+            return;
+        }
+
+        long now = System.nanoTime();
+
+        // Recorded before removing, so authentications caching after the removal see it
+        invalidations.put(username, new Invalidation(generation.incrementAndGet(), now));
+        entries.values().removeIf(entry -> entry.username.equals(username));
+
+        // Authentications don't run for longer than an entry lives
+        invalidations.values().removeIf(invalidation -> now - invalidation.invalidatedAt > ttlNanos);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("rentacar.cache.hits", hits, LongAdder::sum).tag("cache", "credentials").register(registry);
+        FunctionCounter.builder("rentacar.cache.misses", misses, LongAdder::sum).tag("cache", "credentials").register(registry);
+        Gauge.builder("rentacar.cache.size", entries, Map::size).tag("cache", "credentials").register(registry);
+    }
+
+    private void cache(String key, String username, Authentication result, long now, long startGeneration) {
+        if (isInvalidatedSince(username, startGeneration)) {
+            return;
+        }
+
+        if (entries.size() >= maxSize) {
+            entries.values().removeIf(entry -> now - entry.expiresAt >= 0);
+
+            if (entries.size() >= maxSize) {
+                LOGGER.debug("Credentials cache is full, not caching authentication of {}", username);
+                return;
+            }
+        }
+
+        // The cached result is handed to every request, so it must not hold the password
+        UsernamePasswordAuthenticationToken authenticated = new UsernamePasswordAuthenticationToken(
+                result.getPrincipal(), null, result.getAuthorities());
+        authenticated.setDetails(result.getDetails());
+        authenticated.eraseCredentials();
+
+        Entry entry = new Entry(username, authenticated, now + ttlNanos);
+        entries.put(key, entry);
+
+        // Invalidated between the check and the put, the invalidation may have missed the entry
+        if (isInvalidatedSince(username, startGeneration)) {
+            entries.remove(key, entry);
+        }
+    }
+
+    private boolean isInvalidatedSince(String username, long startGeneration) {
+        Invalidation invalidation = invalidations.get(username);
+        return invalidation != null && invalidation.generation > startGeneration;
+    }
+
+    private String key(String username, String password) {
+        Mac mac = macs.get();
+        // The length prefix keeps "ab" + "c" and "a" + "bc" apart
+        mac.update(Integer.toString(username.length()).getBytes(StandardCharsets.US_ASCII));
+        mac.update((byte) ':');
+        mac.update(username.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(mac.doFinal(password.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static final class Invalidation {
+
+        private final long generation;
+        private final long invalidatedAt;
+
+        private Invalidation(long generation, long invalidatedAt) {
+            this.generation = generation;
+            this.invalidatedAt = invalidatedAt;
+        }
+    }
+
+    private static final class Entry {
+
+        private final String username;
+        private final Authentication authentication;
+        private final long expiresAt;
+
+        private Entry(String username, Authentication authentication, long expiresAt) {
+            this.username = username;
+            this.authentication = authentication;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package academy.mindswap.rentacarapi.security;
+
+import academy.mindswap.rentacarapi.error.Error;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.web.access.AccessDeniedHandler;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Answers authenticated requests the user's role doesn't allow with 403, in the same body as the
+ * other errors
+ */
+@Component
+public class ForbiddenAccessHandler implements AccessDeniedHandler {
+
+    private static ObjectMapper objectMapper = new ObjectMapper();
+
+    @Override
+    public void handle(HttpServletRequest httpServletRequest, HttpServletResponse httpServletResponse,
+                       AccessDeniedException e) throws IOException {
+        Error error = Error.builder()
+                .timestamp(new Date())
+                .message(e.getMessage())
+                .method(httpServletRequest.getMethod())
+                .exception(e.getClass().getSimpleName())
+                .path(httpServletRequest.getRequestURI())
+                .build();
+
+        httpServletResponse.setHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE);
+        httpServletResponse.setStatus(HttpServletResponse.SC_FORBIDDEN);
+
+        objectMapper.writeValue(httpServletResponse.getOutputStream(), error);
+    }
+}
@@ -0,0 +1,75 @@
+package academy.mindswap.rentacarapi.security;
+
+import academy.mindswap.rentacarapi.exception.TooManyAttemptsException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * Limits the logins and registrations by client address and by email, before any database lookup or
+ * password hash. Each address and each email has a token bucket refilled at a steady rate
+ */
+@Component
+public class LoginRateLimiter implements MeterBinder {
+
+    private static final Logger LOGGER = LogManager.getLogger(LoginRateLimiter.class);
+
+    private final boolean enabled;
+    private final TokenBucketLimiter addressLimiter;
+    private final TokenBucketLimiter emailLimiter;
+
+    public LoginRateLimiter(@Value("${rentacar.security.rate-limit.enabled:true}") boolean enabled,
+                            @Value("${rentacar.security.rate-limit.address.capacity:20}") int addressCapacity,
+                            @Value("${rentacar.security.rate-limit.address.refill-per-minute:20}") int addressRefill,
+                            @Value("${rentacar.security.rate-limit.email.capacity:5}") int emailCapacity,
+                            @Value("${rentacar.security.rate-limit.email.refill-per-minute:5}") int emailRefill,
+                            @Value("${rentacar.security.rate-limit.expiry-tick-ms:1000}") long tickMillis) {
+        this.enabled = enabled;
+        this.addressLimiter = new TokenBucketLimiter("address", addressCapacity, addressRefill, tickMillis);
+        this.emailLimiter = new TokenBucketLimiter("email", emailCapacity, emailRefill, tickMillis);
+    }
+
+    /**
+     * Take a token for the client address and one for the email
+     * @param remoteAddress the client address
+     * @param email the email, may be null
+     * @throws TooManyAttemptsException if the address or the email ran out of tokens
+     */
+    public void acquire(String remoteAddress, String email) {
+        if (!enabled) {
+            return;
+        }
+
+        long waitMillis = addressLimiter.tryAcquire(remoteAddress);
+
+        if (waitMillis == 0 && email != null) {
+            waitMillis = emailLimiter.tryAcquire(email.trim().toLowerCase(Locale.ROOT));
+        }
+
+        if (waitMillis > 0) {
+            LOGGER.warn("Throttling login or registration from {} for {} ms", remoteAddress, waitMillis);
+            throw new TooManyAttemptsException((waitMillis + 999) / 1000);
+        }
+    }
+
+    /**
+     * Drop the buckets of the addresses and emails idle long enough to be full again
+     */
+    @Scheduled(fixedDelayString = "${rentacar.security.rate-limit.expiry-tick-ms:1000}")
+    public void expireIdleBuckets() {
+        addressLimiter.expireIdle();
+        emailLimiter.expireIdle();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        addressLimiter.bindTo(registry);
+        emailLimiter.bindTo(registry);
+    }
+}
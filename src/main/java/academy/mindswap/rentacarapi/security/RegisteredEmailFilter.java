@@ -0,0 +1,302 @@
+package academy.mindswap.rentacarapi.security;
+
+import academy.mindswap.rentacarapi.persistence.repository.UserRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bloom filter of the registered emails. When it answers that an email is not registered, that is
+ * certain and the database doesn't need to be asked, which is what most credential stuffing logins
+ * and new registrations get. When it answers that the email may be registered, the database decides.
+ * Emails are compared trimmed and in lower case, so the filter never misses an email the database
+ * collation would match. Bloom filters can't remove emails, so deleted and replaced emails are only
+ * counted, and the filter is rebuilt from the users table when they become too many or when the users
+ * outgrow the filter size. It is filled at startup and must be told of every email created or changed.
+ * Until then every email may be registered
+ */
+@Component
+public class RegisteredEmailFilter implements MeterBinder {
+
+    private static final Logger LOGGER = LogManager.getLogger(RegisteredEmailFilter.class);
+
+    private final ObjectProvider<UserRepository> userRepository;
+    private final int expectedEmails;
+    private final double falsePositiveRate;
+    private final double maxStaleRatio;
+
+    private final Object lock = new Object();
+    private volatile Filter filter;
+    private List<String> emailsAddedWhileRebuilding;
+
+    private final LongAdder absent = new LongAdder();
+    private final LongAdder mayBePresent = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    public RegisteredEmailFilter(ObjectProvider<UserRepository> userRepository,
+                                 @Value("${rentacar.users.email-filter.expected-emails:100000}") int expectedEmails,
+                                 @Value("${rentacar.users.email-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                                 @Value("${rentacar.users.email-filter.max-stale-ratio:0.2}") double maxStaleRatio) {
+        this.userRepository = userRepository;
+        this.expectedEmails = expectedEmails;
+        this.falsePositiveRate = falsePositiveRate;
+        this.maxStaleRatio = maxStaleRatio;
+    }
+
+    /**
+     * Fill the filter with the emails of the users table, once the application started. The filter is a
+     * metrics binder, created with the meter registry before the repositories can be
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        rebuild();
+    }
+
+    /**
+     * Normalize an email the way the filter compares them
+     * @param email
+     * @return the trimmed lower case email
+     */
+    public static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Check if the email may be registered
+     * @param email
+     * @return false if the email is certainly not registered, true if the database must be asked
+     */
+    public boolean mightContain(String email) {
+        Filter currentFilter = filter;
+
+        if (email == null || currentFilter == null) {
+            return true;
+        }
+
+        if (currentFilter.mightContain(normalize(email))) {
+            mayBePresent.increment();
+            return true;
+        }
+
+        absent.increment();
+        return false;
+    }
+
+    /**
+     * Record that the filter answered that an email may be registered, but the database didn't know it
+     */
+    public void recordFalsePositive() {
+        falsePositives.increment();
+    }
+
+    /**
+     * Add the email of a created user, or the new email of an updated user
+     * @param email
+     */
+    public void addEmail(String email) {
+        String normalizedEmail = normalize(email);
+
+        synchronized (lock) {
+            // Before the first load, the load reads it from the users table
+            if (filter != null) {
+                filter.put(normalizedEmail);
+            }
+
+            // Committed after the rebuild started reading the users, it may be missing from the new filter
+            if (emailsAddedWhileRebuilding != null) {
+                emailsAddedWhileRebuilding.add(normalizedEmail);
+            }
+        }
+    }
+
+    /**
+     * Count the email of a deleted user, or the old email of an updated user. It stays in the filter until
+     * the next rebuild
+     * @param email
+     */
+    public void removeEmail(String email) {
+        Filter currentFilter = filter;
+
+        if (currentFilter != null) {
+            currentFilter.staleEmails.incrementAndGet();
+        }
+    }
+
+    /**
+     * Rebuild the filter if too many of its emails are stale, or if the users outgrew it
+     */
+    @Scheduled(fixedDelayString = "${rentacar.users.email-filter.check-interval-ms:60000}")
+    public void rebuildIfNeeded() {
+        Filter currentFilter = filter;
+
+        if (currentFilter == null) {
+            return;
+        }
+
+        long emails = currentFilter.emails.get();
+        long staleEmails = currentFilter.staleEmails.get();
+
+        if (staleEmails > emails * maxStaleRatio || emails > currentFilter.capacity) {
+            LOGGER.info("Email filter has {} emails, {} stale, for a capacity of {}. Rebuilding it",
+                    emails, staleEmails, currentFilter.capacity);
+            rebuild();
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("rentacar.users.email.filter.lookups", absent, LongAdder::sum)
+                .tag("result", "absent").register(registry);
+        FunctionCounter.builder("rentacar.users.email.filter.lookups", mayBePresent, LongAdder::sum)
+                .tag("result", "maybe-present").register(registry);
+        FunctionCounter.builder("rentacar.users.email.filter.false.positives", falsePositives, LongAdder::sum)
+                .register(registry);
+        Gauge.builder("rentacar.users.email.filter.expected.false.positive.rate", this,
+                emailFilter -> emailFilter.filter == null ? 1 : emailFilter.filter.getExpectedFalsePositiveRate())
+                .register(registry);
+        Gauge.builder("rentacar.users.email.filter.observed.false.positive.rate", this,
+                RegisteredEmailFilter::getObservedFalsePositiveRate).register(registry);
+        Gauge.builder("rentacar.users.email.filter.stale.emails", this,
+                emailFilter -> emailFilter.filter == null ? 0 : emailFilter.filter.staleEmails.get()).register(registry);
+    }
+
+    /**
+     * Get the share of lookups of unregistered emails that the filter didn't rule out
+     * @return the observed false positive rate
+     */
+    public double getObservedFalsePositiveRate() {
+        double falsePositiveLookups = falsePositives.sum();
+        double negativeLookups = absent.sum() + falsePositiveLookups;
+
+        return negativeLookups == 0 ? 0 : falsePositiveLookups / negativeLookups;
+    }
+
+    private synchronized void rebuild() {
+        long startTime = System.currentTimeMillis();
+
+        synchronized (lock) {
+            emailsAddedWhileRebuilding = new ArrayList<>();
+        }
+
+        Filter newFilter;
+
+        try {
+            List<String> emails = userRepository.getObject().findAllEmails();
+            newFilter = new Filter(Math.max(expectedEmails, emails.size() * 2), falsePositiveRate);
+
+            for (String email : emails) {
+                newFilter.put(normalize(email));
+            }
+        } catch (RuntimeException e) {
+            synchronized (lock) {
+                emailsAddedWhileRebuilding = null;
+            }
+            throw e;
+        }
+
+        synchronized (lock) {
+            emailsAddedWhileRebuilding.forEach(newFilter::put);
+            emailsAddedWhileRebuilding = null;
+            filter = newFilter;
+        }
+
+        LOGGER.info("Email filter built with {} emails, {} bits and {} hashes in {} ms", newFilter.emails.get(),
+                newFilter.bits.length() * Long.SIZE, newFilter.hashes, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * A Bloom filter sized for a capacity and a false positive rate. Bits are set with compare and set,
+     * so lookups and additions don't lock
+     */
+    private static final class Filter {
+
+        private final long capacity;
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashes;
+        private final AtomicLong emails = new AtomicLong();
+        private final AtomicLong staleEmails = new AtomicLong();
+
+        private Filter(long capacity, double falsePositiveRate) {
+            this.capacity = capacity;
+
+            long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bits = new AtomicLongArray((int) Math.max(1, (optimalBits + Long.SIZE - 1) / Long.SIZE));
+            this.bitCount = (long) bits.length() * Long.SIZE;
+            this.hashes = (int) Math.max(1, Math.round((double) bitCount / capacity * Math.log(2)));
+        }
+
+        private void put(String email) {
+            byte[] bytes = email.getBytes(StandardCharsets.UTF_8);
+            long hash1 = hash(bytes, 0x9E3779B97F4A7C15L);
+            long hash2 = hash(bytes, 0xC2B2AE3D27D4EB4FL);
+
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+
+                long value;
+                do {
+                    value = bits.get(word);
+                } while ((value & mask) == 0 && !bits.compareAndSet(word, value, value | mask));
+            }
+
+            emails.incrementAndGet();
+        }
+
+        private boolean mightContain(String email) {
+            byte[] bytes = email.getBytes(StandardCharsets.UTF_8);
+            long hash1 = hash(bytes, 0x9E3779B97F4A7C15L);
+            long hash2 = hash(bytes, 0xC2B2AE3D27D4EB4FL);
+
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(hash1 + i * hash2, bitCount);
+
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private double getExpectedFalsePositiveRate() {
+            return Math.pow(1 - Math.exp(-(double) hashes * emails.get() / bitCount), hashes);
+        }
+
+        private static long hash(byte[] bytes, long seed) {
+            long hash = seed ^ bytes.length;
+
+            for (byte b : bytes) {
+                hash = (hash ^ (b & 0xFF)) * 0x100000001B3L;
+            }
+
+            // Final mix of MurmurHash3, spreads every input bit over the whole hash
+            hash ^= hash >>> 33;
+            hash *= 0xFF51AFD7ED558CCDL;
+            hash ^= hash >>> 33;
+            hash *= 0xC4CEB9FE1A85EC53L;
+            hash ^= hash >>> 33;
+
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package academy.mindswap.rentacarapi.security;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets by key, without locks on the request path. Each bucket keeps its tokens and last refill
+ * time packed in one {@link AtomicLong} updated with compare and set. Buckets idle long enough to be
+ * full again are dropped by a time wheel: every bucket is listed in the slot of the tick it was last
+ * used in, and each tick only the slot that became old enough is checked, so expiry never scans all keys
+ */
+public class TokenBucketLimiter implements MeterBinder {
+
+    private static final int TOKEN_SHIFT = 44;
+    private static final long TIME_MASK = (1L << TOKEN_SHIFT) - 1;
+    private static final long MILLI_TOKENS = 1000;
+    private static final long MAX_CAPACITY = ((1L << (Long.SIZE - 1 - TOKEN_SHIFT)) - 1) / MILLI_TOKENS;
+    private static final long REMOVED = -1;
+
+    private final String name;
+    private final long capacity;
+    private final long refillPerMinute;
+    private final long tickMillis;
+    private final LongSupplier clock;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Set<String>[] wheel;
+    private long lastExpiredTick;
+
+    private final LongAdder allowed = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    public TokenBucketLimiter(String name, int capacity, int refillPerMinute, long tickMillis) {
+        this(name, capacity, refillPerMinute, tickMillis, millisSince(System.nanoTime()));
+    }
+
+    @SuppressWarnings("unchecked")
+    TokenBucketLimiter(String name, int capacity, int refillPerMinute, long tickMillis, LongSupplier clock) {
+        if (capacity < 1 || capacity > MAX_CAPACITY || refillPerMinute < 1 || tickMillis < 1) {
+            throw new IllegalArgumentException("Invalid " + name + " rate limit: capacity " + capacity +
+                    ", refill per minute " + refillPerMinute + ", tick " + tickMillis + " ms");
+        }
+
+        this.name = name;
+        this.capacity = capacity * MILLI_TOKENS;
+        this.refillPerMinute = refillPerMinute;
+        this.tickMillis = tickMillis;
+        this.clock = clock;
+
+        // A bucket left alone for the whole wheel is full again
+        long fullRefillMillis = capacity * 60_000L / refillPerMinute + 1;
+        int wheelSize = (int) (fullRefillMillis / tickMillis) + 2;
+        this.wheel = new Set[wheelSize];
+        for (int slot = 0; slot < wheelSize; slot++) {
+            wheel[slot] = ConcurrentHashMap.newKeySet();
+        }
+        this.lastExpiredTick = clock.getAsLong() / tickMillis;
+    }
+
+    /**
+     * Take a token from the bucket of the key
+     * @param key
+     * @return 0 if a token was taken, otherwise the milliseconds until the next token
+     */
+    public long tryAcquire(String key) {
+        long now = clock.getAsLong();
+        Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket(capacity, now));
+
+        while (true) {
+            long state = bucket.state.get();
+
+            // Dropped by the wheel while we got it, use a new one
+            if (state == REMOVED) {
+                buckets.remove(key, bucket);
+                bucket = buckets.computeIfAbsent(key, k -> new Bucket(capacity, now));
+                continue;
+            }
+
+            long refilled = refill(state, now);
+            long tokens = refilled >>> TOKEN_SHIFT;
+
+            if (tokens < MILLI_TOKENS) {
+                throttled.increment();
+                return Math.max(1, ((MILLI_TOKENS - tokens) * 60 + refillPerMinute - 1) / refillPerMinute);
+            }
+
+            if (bucket.state.compareAndSet(state, refilled - (MILLI_TOKENS << TOKEN_SHIFT))) {
+                break;
+            }
+        }
+
+        long tick = now / tickMillis;
+        if (bucket.tick != tick) {
+            bucket.tick = tick;
+            wheel[(int) (tick % wheel.length)].add(key);
+        }
+
+        allowed.increment();
+        return 0;
+    }
+
+    /**
+     * Drop the buckets that are full again, checking the wheel slots of the ticks that became old enough
+     */
+    public synchronized void expireIdle() {
+        long currentTick = clock.getAsLong() / tickMillis;
+
+        for (long tick = Math.max(lastExpiredTick + 1, currentTick - wheel.length + 1); tick <= currentTick; tick++) {
+            // The slot about to be reused, listing the buckets last used a whole wheel ago
+            long oldTick = tick - wheel.length + 1;
+            int slot = (int) (oldTick % wheel.length);
+
+            if (oldTick >= 0) {
+                expireSlot(slot, oldTick, currentTick);
+            }
+        }
+
+        lastExpiredTick = currentTick;
+    }
+
+    /**
+     * Get the number of keys with a bucket
+     * @return the number of buckets
+     */
+    public int size() {
+        return buckets.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("rentacar.rate.limit.allowed", allowed, LongAdder::sum).tag("limiter", name).register(registry);
+        FunctionCounter.builder("rentacar.rate.limit.throttled", throttled, LongAdder::sum).tag("limiter", name).register(registry);
+        Gauge.builder("rentacar.rate.limit.buckets", this, TokenBucketLimiter::size).tag("limiter", name).register(registry);
+    }
+
+    private void expireSlot(int slot, long oldTick, long currentTick) {
+        long now = clock.getAsLong();
+
+        for (Iterator<String> keys = wheel[slot].iterator(); keys.hasNext(); ) {
+            String key = keys.next();
+            Bucket bucket = buckets.get(key);
+
+            if (bucket != null && bucket.tick > oldTick) {
+                // Used again since, and listed in this slot again after the wheel went around
+                if (bucket.tick % wheel.length != slot) {
+                    keys.remove();
+                }
+                continue;
+            }
+
+            keys.remove();
+
+            if (bucket == null) {
+                continue;
+            }
+
+            long state = bucket.state.get();
+
+            if (state != REMOVED && (refill(state, now) >>> TOKEN_SHIFT) >= capacity
+                    && bucket.state.compareAndSet(state, REMOVED)) {
+                buckets.remove(key, bucket);
+            } else if (state != REMOVED) {
+                // Not full yet or just used, check it again a whole wheel later
+                bucket.tick = currentTick;
+                wheel[(int) (currentTick % wheel.length)].add(key);
+            }
+        }
+    }
+
+    private long refill(long state, long now) {
+        long tokens = state >>> TOKEN_SHIFT;
+        long lastRefill = state & TIME_MASK;
+        long elapsed = Math.max(0, now - lastRefill);
+        long added = elapsed * refillPerMinute * MILLI_TOKENS / 60_000;
+
+        if (tokens + added >= capacity) {
+            return pack(capacity, now);
+        }
+
+        // Only move the refill time by the time turned into tokens, so the remainder isn't lost
+        return pack(tokens + added, lastRefill + added * 60_000 / (refillPerMinute * MILLI_TOKENS));
+    }
+
+    private static long pack(long milliTokens, long time) {
+        return (milliTokens << TOKEN_SHIFT) | (time & TIME_MASK);
+    }
+
+    private static LongSupplier millisSince(long startNanos) {
+        return () -> (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private static final class Bucket {
+
+        private final AtomicLong state;
+        private volatile long tick = -1;
+
+        private Bucket(long milliTokens, long now) {
+            this.state = new AtomicLong(pack(milliTokens, now));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package academy.mindswap.rentacarapi.security;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.stereotype.Component;
+
+/**
+ * Checks if the authenticated user is the owner of a resource, used by the access rules of
+ * {@link academy.mindswap.rentacarapi.config.SecurityConfig} as {@code @userAccess}
+ */
+@Component("userAccess")
+public class UserAccess {
+
+    /**
+     * Check if the authentication is the one of the given user
+     * @param authentication the basic or bearer authentication of the request
+     * @param userId the user id of the request path or parameter, may be missing or malformed
+     * @return true if the authenticated user has that id
+     */
+    public boolean isUser(Authentication authentication, String userId) {
+        if (authentication == null || userId == null) {
+            return false;
+        }
+
+        long id;
+        try {
+            id = Long.parseLong(userId);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+
+        if (authentication.getDetails() instanceof AccessTokenClaims) {
+            return ((AccessTokenClaims) authentication.getDetails()).getUserId() == id;
+        }
+
+        return authentication.getPrincipal() instanceof UserEntityPrincipal
+                && ((UserEntityPrincipal) authentication.getPrincipal()).getUserId() == id;
+    }
+}
@@ -0,0 +1,80 @@
+package academy.mindswap.rentacarapi.security;
+
+import academy.mindswap.rentacarapi.cache.VersionedEntityCache;
+import academy.mindswap.rentacarapi.persistence.entity.UserEntity;
+import academy.mindswap.rentacarapi.persistence.repository.UserRepository;
+import academy.mindswap.rentacarapi.service.UserService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Component;
+
+import java.util.Optional;
+
+/**
+ * Loads the users of the users table by email, with their id and role, for basic authentication.
+ * Users are read through the principal cache, which the user service invalidates on every change.
+ * Password hashes made with an older cost factor are replaced after a successful authentication
+ */
+@Component
+public class UserEntityDetailsService implements UserDetailsService, UserDetailsPasswordService {
+
+    private final UserRepository userRepository;
+    private final VersionedEntityCache<String, UserEntity> principalCache;
+    private final RegisteredEmailFilter registeredEmailFilter;
+    private UserService userService;
+
+    public UserEntityDetailsService(UserRepository userRepository,
+                                    VersionedEntityCache<String, UserEntity> principalCache,
+                                    RegisteredEmailFilter registeredEmailFilter) {
+        this.userRepository = userRepository;
+        this.principalCache = principalCache;
+        this.registeredEmailFilter = registeredEmailFilter;
+    }
+
+    @Override
+    public UserDetails loadUserByUsername(String email) {
+        if (!registeredEmailFilter.mightContain(email)) {
+            throw new UsernameNotFoundException("Unknown user");
+        }
+
+        UserEntity user = principalCache.get(email, userRepository::findByEmail)
+                .orElseThrow(() -> {
+                    registeredEmailFilter.recordFalsePositive();
+                    return new UsernameNotFoundException("Unknown user");
+                });
+
+        // A new instance each time, authentication erases its password afterwards
+        return new UserEntityPrincipal(user.getUserId(), user.getEmail(), user.getPassword(),
+                AuthorityUtils.createAuthorityList("ROLE_" + user.getRole().name()));
+    }
+
+    /**
+     * Get the user of an access token, if the token wasn't revoked since it was issued
+     * @param claims the claims of a verified token
+     * @return the user, empty if it was deleted or its password changed
+     */
+    public Optional<UserEntity> findAccessTokenUser(AccessTokenClaims claims) {
+        if (claims.getEmail() == null || !registeredEmailFilter.mightContain(claims.getEmail())) {
+            return Optional.empty();
+        }
+
+        return principalCache.get(claims.getEmail(), userRepository::findByEmail)
+                .filter(user -> user.getUserId() == claims.getUserId() && user.getTokenVersion() == claims.getTokenVersion());
+    }
+
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        userService.upgradePasswordHash(user.getUsername(), newPassword);
+
+        return ((UserEntityPrincipal) user).withPassword(newPassword);
+    }
+
+    @Autowired
+    public void setUserService(UserService userService) {
+        this.userService = userService;
+    }
+}
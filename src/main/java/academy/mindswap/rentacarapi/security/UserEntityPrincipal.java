@@ -0,0 +1,34 @@
+package academy.mindswap.rentacarapi.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+/**
+ * A user of the users table authenticated with basic credentials, with the id its own resources are
+ * checked against
+ */
+public class UserEntityPrincipal extends User {
+
+    private final long userId;
+
+    public UserEntityPrincipal(long userId, String email, String password,
+                               Collection<? extends GrantedAuthority> authorities) {
+        super(email, password, authorities);
+        this.userId = userId;
+    }
+
+    public long getUserId() {
+        return userId;
+    }
+
+    /**
+     * Copy the principal with a new password hash
+     * @param password
+     * @return {@link UserEntityPrincipal}
+     */
+    public UserEntityPrincipal withPassword(String password) {
+        return new UserEntityPrincipal(userId, getUsername(), password, getAuthorities());
+    }
+}
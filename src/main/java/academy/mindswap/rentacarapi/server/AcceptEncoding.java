@@ -0,0 +1,75 @@
+package academy.mindswap.rentacarapi.server;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Reads the Accept-Encoding request header. Each coding may carry a q-value, a coding with q=0 is
+ * not acceptable, and the * wildcard stands for the codings not listed
+ */
+public final class AcceptEncoding {
+
+    private static final String GZIP = "gzip";
+    private static final String X_GZIP = "x-gzip";
+    private static final String ANY = "*";
+
+    private AcceptEncoding() {
+    }
+
+    /**
+     * Check if a gzip compressed response is acceptable
+     * @param acceptEncoding the header value, may be null
+     * @return true if gzip, or the wildcard when gzip isn't listed, has a q-value above 0
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (Objects.isNull(acceptEncoding)) {
+            return false;
+        }
+
+        Double gzipQuality = null;
+        Double anyQuality = null;
+
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+
+            if (!coding.equals(GZIP) && !coding.equals(X_GZIP) && !coding.equals(ANY)) {
+                continue;
+            }
+
+            double quality = parseQuality(parts);
+
+            if (coding.equals(ANY)) {
+                anyQuality = quality;
+            } else {
+                gzipQuality = gzipQuality == null ? quality : Math.max(gzipQuality, quality);
+            }
+        }
+
+        if (gzipQuality != null) {
+            return gzipQuality > 0;
+        }
+        return anyQuality != null && anyQuality > 0;
+    }
+
+    /**
+     * Get the q-value of a coding, 1 when it has none and 0 when it can't be read
+     */
+    private static double parseQuality(String[] parts) {
+        for (int i = 1; i < parts.length; i++) {
+            String parameter = parts[i].trim();
+
+            if (parameter.length() > 1 && (parameter.charAt(0) == 'q' || parameter.charAt(0) == 'Q')
+                    && parameter.charAt(1) == '=') {
+                try {
+                    double quality = Double.parseDouble(parameter.substring(2).trim());
+                    return quality >= 0 && quality <= 1 ? quality : 0;
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+
+        return 1;
+    }
+}
@@ -0,0 +1,91 @@
+package academy.mindswap.rentacarapi.server;
+
+import academy.mindswap.rentacarapi.enumerator.ExecutionMode;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.coyote.ProtocolHandler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chooses the threads Tomcat handles requests on. In platform mode requests run on the Tomcat worker
+ * pool, so at most server.tomcat.threads.max requests wait on the database or on password hashing at
+ * a time. In virtual mode each request runs on a new virtual thread, which releases its carrier thread
+ * while blocked, so concurrency is bounded by the connection pool and the hashing pool instead.
+ * Virtual threads need a Java 21 runtime. They are created through reflection, so the project still
+ * builds for older ones, where virtual mode falls back to the worker pool with a warning
+ */
+@Component
+public class RequestExecutorCustomizer implements TomcatProtocolHandlerCustomizer<ProtocolHandler>, MeterBinder {
+
+    private static final Logger LOGGER = LogManager.getLogger(RequestExecutorCustomizer.class);
+
+    private final ExecutionMode executionMode;
+    private final ExecutorService executor;
+
+    public RequestExecutorCustomizer(@Value("${rentacar.server.execution-mode:platform}") ExecutionMode executionMode) {
+        this.executor = executionMode == ExecutionMode.VIRTUAL ? newVirtualThreadExecutor() : null;
+        this.executionMode = executor == null ? ExecutionMode.PLATFORM : ExecutionMode.VIRTUAL;
+
+        LOGGER.info("Handling requests on {} threads", this.executionMode.name().toLowerCase());
+    }
+
+    @Override
+    public void customize(ProtocolHandler protocolHandler) {
+        if (executor != null) {
+            protocolHandler.setExecutor(executor);
+        }
+    }
+
+    /**
+     * Get the mode requests are handled in, platform if virtual threads were asked for but aren't supported
+     * @return {@link ExecutionMode}
+     */
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("rentacar.server.execution.mode", () -> 1)
+                .tag("mode", executionMode.name().toLowerCase()).register(registry);
+    }
+
+    /**
+     * Stop the virtual thread executor after Tomcat stopped, Tomcat only stops the executors it created
+     */
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (executor != null) {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            // Thread.ofVirtual().name("http-virtual-", 0).factory()
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "http-virtual-", 0L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.warn("Virtual threads are not supported by Java {} ({}), handling requests on the worker pool",
+                    Runtime.version(), e.getCause() != null ? e.getCause() : e);
+            return null;
+        }
+    }
+}
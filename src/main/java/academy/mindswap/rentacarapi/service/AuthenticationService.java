@@ -1,10 +1,15 @@
 package academy.mindswap.rentacarapi.service;
 
 
+import academy.mindswap.rentacarapi.command.user.AccessTokenDto;
 import academy.mindswap.rentacarapi.command.user.UserAuthenticatedDto;
-import academy.mindswap.rentacarapi.command.user.UserDetailsDto;
 
 public interface AuthenticationService {
 
-     UserDetailsDto login(UserAuthenticatedDto userAuthenticatedDto);
+     /**
+      * Check the user credentials and issue an access token
+      * @param userAuthenticatedDto the email and password
+      * @return {@link AccessTokenDto} with the token and the user details
+      */
+     AccessTokenDto login(UserAuthenticatedDto userAuthenticatedDto);
 }
@@ -1,27 +1,42 @@
 package academy.mindswap.rentacarapi.service;
 
+import academy.mindswap.rentacarapi.command.user.AccessTokenDto;
 import academy.mindswap.rentacarapi.command.user.UserAuthenticatedDto;
-import academy.mindswap.rentacarapi.command.user.UserDetailsDto;
 import academy.mindswap.rentacarapi.converter.UserEntityToUserDtoConverter;
 import academy.mindswap.rentacarapi.exception.AuthenticationFailureException;
 import academy.mindswap.rentacarapi.persistence.entity.UserEntity;
+import academy.mindswap.rentacarapi.security.AccessTokenProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import java.util.List;
+
 @Service
 public class AuthenticationServiceImp implements AuthenticationService {
 
     private UserServiceImp userService;
     private PasswordEncoder passwordEncoder;
-
+    private AccessTokenProvider accessTokenProvider;
 
     @Override
-    public UserDetailsDto login(UserAuthenticatedDto userAuthenticatedDto) {
+    public AccessTokenDto login(UserAuthenticatedDto userAuthenticatedDto) {
         UserEntity user = userService.findUserByEmail(userAuthenticatedDto.getEmail());
 
+        // The only BCrypt check of the session, the following requests use the access token
         if (passwordEncoder.matches(userAuthenticatedDto.getPassword(), user.getPassword())) {
-            return UserEntityToUserDtoConverter.convert(user);
+            // Hashed with an older cost factor, the password is only known now
+            if (passwordEncoder.upgradeEncoding(user.getPassword())) {
+                userService.upgradePasswordHash(user.getEmail(), passwordEncoder.encode(userAuthenticatedDto.getPassword()));
+            }
+
+            return AccessTokenDto.builder()
+                    .accessToken(accessTokenProvider.issue(user.getUserId(), user.getEmail(),
+                            List.of(user.getRole().name()), user.getTokenVersion()))
+                    .tokenType("Bearer")
+                    .expiresIn(accessTokenProvider.getTtlSeconds())
+                    .user(UserEntityToUserDtoConverter.convert(user))
+                    .build();
         }
 
         throw new AuthenticationFailureException();
@@ -36,4 +51,9 @@ public class AuthenticationServiceImp implements AuthenticationService {
     public void setPasswordEncoder(PasswordEncoder passwordEncoder) {
         this.passwordEncoder = passwordEncoder;
     }
+
+    @Autowired
+    public void setAccessTokenProvider(AccessTokenProvider accessTokenProvider) {
+        this.accessTokenProvider = accessTokenProvider;
+    }
 }
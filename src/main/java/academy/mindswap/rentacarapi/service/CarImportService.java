@@ -0,0 +1,22 @@
+package academy.mindswap.rentacarapi.service;
+
+import academy.mindswap.rentacarapi.command.car.CarImportResultDto;
+import academy.mindswap.rentacarapi.enumerator.ImportFormat;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Common interface for car import service, provides methods to add many cars at once
+ */
+public interface CarImportService {
+
+    /**
+     * Read cars from the input stream and add the valid ones, rejecting rows with errors or duplicated plates
+     * @param format format of the rows
+     * @param inputStream where to read the rows from
+     * @return {@link CarImportResultDto} with the number of imported cars and the rejected rows
+     * @throws IOException if the input stream fails
+     */
+    CarImportResultDto importCars(ImportFormat format, InputStream inputStream) throws IOException;
+}
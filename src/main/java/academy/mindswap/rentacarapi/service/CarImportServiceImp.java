@@ -0,0 +1,385 @@
+package academy.mindswap.rentacarapi.service;
+
+import academy.mindswap.rentacarapi.availability.FleetCalendar;
+import academy.mindswap.rentacarapi.cache.ResourceVersions;
+import academy.mindswap.rentacarapi.catalog.PlateIndex;
+import academy.mindswap.rentacarapi.command.car.CarImportErrorDto;
+import academy.mindswap.rentacarapi.command.car.CarImportResultDto;
+import academy.mindswap.rentacarapi.command.car.CreateOrUpdateCarDto;
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.enumerator.ImportFormat;
+import academy.mindswap.rentacarapi.enumerator.ResourceCollection;
+import academy.mindswap.rentacarapi.error.ErrorMessages;
+import academy.mindswap.rentacarapi.exception.InvalidImportFormatException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * A {@link CarImportService} implementation that reads the body line by line and inserts the valid cars
+ * in chunks with batched JDBC statements, so memory usage doesn't depend on the number of rows.
+ * Plates are checked against the {@link PlateIndex} and, once per chunk, against the database
+ */
+@Service
+public class CarImportServiceImp implements CarImportService {
+
+    private static final Logger LOGGER = LogManager.getLogger(CarImportServiceImp.class);
+
+    private static final String[] CSV_HEADER = {"brand", "modelDescription", "carSegment", "dateOfPurchase", "plate"};
+
+    private static final String INSERT_CAR = "INSERT INTO cars (brand, model_description, car_segment, " +
+            "date_of_purchase, plate, available, version) VALUES (?, ?, ?, ?, ?, TRUE, 0)";
+    private static final String SELECT_CARS_BY_PLATE = "SELECT car_id, plate FROM cars WHERE plate IN (%s)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final PlateIndex plateIndex;
+    private final FleetCalendar fleetCalendar;
+    private final ResourceVersions resourceVersions;
+    private final ZoneId zoneId = ZoneId.systemDefault();
+    private final int chunkSize;
+    private final int maxErrors;
+
+    public CarImportServiceImp(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                               ObjectMapper objectMapper, Validator validator,
+                               PlateIndex plateIndex, FleetCalendar fleetCalendar, ResourceVersions resourceVersions,
+                               @Value("${rentacar.cars.import.chunk-size:500}") int chunkSize,
+                               @Value("${rentacar.cars.import.max-errors:1000}") int maxErrors) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.plateIndex = plateIndex;
+        this.fleetCalendar = fleetCalendar;
+        this.resourceVersions = resourceVersions;
+        this.chunkSize = chunkSize;
+        this.maxErrors = maxErrors;
+    }
+
+    /**
+     * @see CarImportService#importCars(ImportFormat, InputStream)
+     */
+    @Override
+    public CarImportResultDto importCars(ImportFormat format, InputStream inputStream) throws IOException {
+        LOGGER.debug("Importing cars as {}", format);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        ImportReport report = new ImportReport(maxErrors);
+        long line = 0;
+
+        if (format == ImportFormat.CSV) {
+            String header = reader.readLine();
+            line++;
+
+            if (Objects.isNull(header) || !isCsvHeader(header)) {
+                LOGGER.error("Car import has an invalid CSV header - {}", header);
+                throw new InvalidImportFormatException();
+            }
+        }
+
+        List<ImportRow> chunk = new ArrayList<>(chunkSize);
+        Set<String> chunkPlates = new HashSet<>();
+        String row;
+
+        while (Objects.nonNull(row = reader.readLine())) {
+            line++;
+
+            if (row.isBlank()) {
+                continue;
+            }
+
+            CreateOrUpdateCarDto car;
+            try {
+                car = format == ImportFormat.CSV
+                        ? parseCsvRow(row)
+                        : objectMapper.readValue(row, CreateOrUpdateCarDto.class);
+            } catch (JsonProcessingException | IllegalArgumentException | DateTimeException e) {
+                report.reject(line, null, "Malformed row - " + e.getMessage());
+                continue;
+            }
+
+            String violations = validate(car);
+            if (Objects.nonNull(violations)) {
+                report.reject(line, car.getPlate(), violations);
+                continue;
+            }
+
+            // Duplicates of the same chunk and of cars already known by the index
+            if (!chunkPlates.add(PlateIndex.normalize(car.getPlate())) || plateIndex.isPlateTaken(car.getPlate(), 0)) {
+                report.reject(line, car.getPlate(), ErrorMessages.CAR_ALREADY_EXISTS);
+                continue;
+            }
+
+            chunk.add(new ImportRow(line, car));
+
+            if (chunk.size() >= chunkSize) {
+                insertChunk(chunk, report);
+                chunk.clear();
+                chunkPlates.clear();
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            insertChunk(chunk, report);
+        }
+
+        LOGGER.info("Imported {} cars, rejected {} rows", report.importedCars, report.rejectedRows);
+
+        return report.toDto();
+    }
+
+    private void insertChunk(List<ImportRow> chunk, ImportReport report) {
+        LOGGER.debug("Inserting chunk of {} cars", chunk.size());
+
+        // Plates already in the database, e.g. added while the index was out of date
+        Set<String> existingPlates = new HashSet<>();
+        jdbcTemplate.query(selectCarsByPlate(chunk.size()), (RowCallbackHandler) resultSet ->
+                existingPlates.add(PlateIndex.normalize(resultSet.getString(2))), platesOf(chunk));
+
+        List<ImportRow> newRows = new ArrayList<>(chunk.size());
+        for (ImportRow importRow : chunk) {
+            if (existingPlates.contains(PlateIndex.normalize(importRow.car.getPlate()))) {
+                report.reject(importRow.line, importRow.car.getPlate(), ErrorMessages.CAR_ALREADY_EXISTS);
+            } else {
+                newRows.add(importRow);
+            }
+        }
+
+        if (newRows.isEmpty()) {
+            return;
+        }
+
+        List<ImportRow> insertedRows;
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(INSERT_CAR, newRows, newRows.size(), this::setCarParameters));
+            insertedRows = newRows;
+        } catch (DataIntegrityViolationException e) {
+            // A plate was added meanwhile, insert one by one to find which rows are rejected
+            LOGGER.warn("Chunk of {} cars violates a constraint. Inserting row by row", newRows.size());
+            insertedRows = insertRowByRow(newRows, report);
+        }
+
+        if (insertedRows.isEmpty()) {
+            return;
+        }
+
+        // Add the new cars to the in-memory indexes
+        Map<String, CreateOrUpdateCarDto> carsByPlate = insertedRows.stream()
+                .collect(Collectors.toMap(importRow -> importRow.car.getPlate(), importRow -> importRow.car));
+
+        jdbcTemplate.query(selectCarsByPlate(insertedRows.size()), (RowCallbackHandler) resultSet -> {
+            long carId = resultSet.getLong(1);
+            CreateOrUpdateCarDto car = carsByPlate.get(resultSet.getString(2));
+
+            if (Objects.nonNull(car)) {
+                plateIndex.putCar(carId, car.getPlate());
+                fleetCalendar.addCar(carId, car.getBrand(), car.getCarSegment());
+            }
+        }, platesOf(insertedRows));
+
+        resourceVersions.increment(ResourceCollection.CARS);
+        report.importedCars += insertedRows.size();
+    }
+
+    private List<ImportRow> insertRowByRow(List<ImportRow> rows, ImportReport report) {
+        List<ImportRow> insertedRows = new ArrayList<>(rows.size());
+
+        for (ImportRow importRow : rows) {
+            try {
+                jdbcTemplate.update(INSERT_CAR, statement -> setCarParameters(statement, importRow));
+                insertedRows.add(importRow);
+            } catch (DataIntegrityViolationException e) {
+                report.reject(importRow.line, importRow.car.getPlate(), ErrorMessages.CAR_ALREADY_EXISTS);
+            }
+        }
+
+        return insertedRows;
+    }
+
+    private void setCarParameters(PreparedStatement statement, ImportRow importRow) throws SQLException {
+        CreateOrUpdateCarDto car = importRow.car;
+
+        statement.setInt(1, car.getBrand().ordinal());
+        statement.setString(2, car.getModelDescription());
+        statement.setInt(3, car.getCarSegment().ordinal());
+        statement.setTimestamp(4, new Timestamp(Objects.isNull(car.getDateOfPurchase())
+                ? System.currentTimeMillis()
+                : car.getDateOfPurchase().getTime()));
+        statement.setString(5, car.getPlate());
+    }
+
+    private String selectCarsByPlate(int plates) {
+        return String.format(SELECT_CARS_BY_PLATE, String.join(", ", Collections.nCopies(plates, "?")));
+    }
+
+    private Object[] platesOf(List<ImportRow> rows) {
+        return rows.stream()
+                .map(importRow -> importRow.car.getPlate())
+                .toArray();
+    }
+
+    private String validate(CreateOrUpdateCarDto car) {
+        Set<ConstraintViolation<CreateOrUpdateCarDto>> violations = validator.validate(car);
+
+        if (violations.isEmpty()) {
+            return null;
+        }
+
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + " " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
+    private boolean isCsvHeader(String header) {
+        List<String> fields = splitCsvRow(header);
+
+        if (fields.size() != CSV_HEADER.length) {
+            return false;
+        }
+
+        for (int i = 0; i < CSV_HEADER.length; i++) {
+            if (!CSV_HEADER[i].equalsIgnoreCase(fields.get(i).trim())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private CreateOrUpdateCarDto parseCsvRow(String row) {
+        List<String> fields = splitCsvRow(row);
+
+        if (fields.size() != CSV_HEADER.length) {
+            throw new IllegalArgumentException("Expected " + CSV_HEADER.length + " fields but found " + fields.size());
+        }
+
+        String brand = fields.get(0).trim();
+        String carSegment = fields.get(2).trim();
+        String dateOfPurchase = fields.get(3).trim();
+
+        return CreateOrUpdateCarDto.builder()
+                .brand(brand.isEmpty() ? null : CarBrands.valueOf(brand.toUpperCase()))
+                .modelDescription(fields.get(1).trim())
+                .carSegment(carSegment.isEmpty() ? null : CarSegment.valueOf(carSegment.toUpperCase()))
+                .dateOfPurchase(dateOfPurchase.isEmpty() ? null : parseDate(dateOfPurchase))
+                .plate(fields.get(4).trim())
+                .build();
+    }
+
+    private Date parseDate(String date) {
+        // Plain days like 2021-07-01 or instants like 2021-07-01T10:00:00Z
+        if (date.length() == 10) {
+            return Date.from(LocalDate.parse(date).atStartOfDay(zoneId).toInstant());
+        }
+        return Date.from(Instant.parse(date));
+    }
+
+    private List<String> splitCsvRow(String row) {
+        List<String> fields = new ArrayList<>(CSV_HEADER.length);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < row.length(); i++) {
+            char character = row.charAt(i);
+
+            if (quoted) {
+                if (character != '"') {
+                    field.append(character);
+                } else if (i + 1 < row.length() && row.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (character == '"') {
+                quoted = true;
+            } else if (character == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(character);
+            }
+        }
+        fields.add(field.toString());
+
+        return fields;
+    }
+
+    private static final class ImportRow {
+
+        private final long line;
+        private final CreateOrUpdateCarDto car;
+
+        private ImportRow(long line, CreateOrUpdateCarDto car) {
+            this.line = line;
+            this.car = car;
+        }
+    }
+
+    /**
+     * Counters of an import, keeping only the first rejected rows
+     */
+    private static final class ImportReport {
+
+        private final int maxErrors;
+        private final List<CarImportErrorDto> errors = new ArrayList<>();
+        private long importedCars;
+        private long rejectedRows;
+
+        private ImportReport(int maxErrors) {
+            this.maxErrors = maxErrors;
+        }
+
+        private void reject(long line, String plate, String message) {
+            rejectedRows++;
+
+            if (errors.size() < maxErrors) {
+                errors.add(CarImportErrorDto.builder()
+                        .line(line)
+                        .plate(plate)
+                        .message(message)
+                        .build());
+            }
+        }
+
+        private CarImportResultDto toDto() {
+            errors.sort(Comparator.comparingLong(CarImportErrorDto::getLine));
+
+            return CarImportResultDto.builder()
+                    .importedCars(importedCars)
+                    .rejectedRows(rejectedRows)
+                    .errorsTruncated(rejectedRows > errors.size())
+                    .errors(errors)
+                    .build();
+        }
+    }
+}
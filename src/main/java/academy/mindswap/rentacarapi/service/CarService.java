@@ -1,9 +1,14 @@
 package academy.mindswap.rentacarapi.service;
 
 
+import academy.mindswap.rentacarapi.command.KeysetPageDto;
 import academy.mindswap.rentacarapi.command.car.CarDetailsDto;
+import academy.mindswap.rentacarapi.command.car.CarSearchDto;
 import academy.mindswap.rentacarapi.command.car.CreateOrUpdateCarDto;
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
 
+import java.time.LocalDate;
 import java.util.List;
 
 /**
@@ -28,11 +33,48 @@ public interface CarService {
     CarDetailsDto getCarById(long carId);
 
     /**
-     * Get a list with all cars
+     * Get the version of a car, from the cache when possible
      *
+     * @param carId car we want to find
+     * @return the entity version
+     */
+    int getCarVersion(long carId);
+
+    /**
+     * Get car by plate, ignoring case, spaces and dashes
+     *
+     * @param plate the plate of the car
+     * @return {@link CarDetailsDto}
+     */
+    CarDetailsDto getCarByPlate(String plate);
+
+    /**
+     * Get the cars with plates starting with the given prefix, ignoring case, spaces and dashes
+     *
+     * @param prefix the beginning of the plate
+     * @param limit  max number of cars
+     * @return a list with {@link CarDetailsDto} sorted by plate
+     */
+    List<CarDetailsDto> getCarsByPlatePrefix(String prefix, int limit);
+
+    /**
+     * Get a page of cars matching the search filters, sorted by the requested field
+     *
+     * @param carSearchDto filters, sorting, cursor and page size
+     * @return {@link KeysetPageDto} with {@link CarDetailsDto}
+     */
+    KeysetPageDto<CarDetailsDto> searchCars(CarSearchDto carSearchDto);
+
+    /**
+     * Get a list with the cars without rents between the given days
+     *
+     * @param from        first day
+     * @param to          last day
+     * @param carSegments segments to include, all if empty
+     * @param brands      brands to include, all if empty
      * @return a list with {@link CarDetailsDto}
      */
-    List<CarDetailsDto> getCarsList();
+    List<CarDetailsDto> getAvailableCars(LocalDate from, LocalDate to, List<CarSegment> carSegments, List<CarBrands> brands);
 
     /**
      * Delete car by carID
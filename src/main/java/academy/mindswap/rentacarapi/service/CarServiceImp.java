@@ -1,21 +1,35 @@
 package academy.mindswap.rentacarapi.service;
 
+import academy.mindswap.rentacarapi.availability.FleetCalendar;
+import academy.mindswap.rentacarapi.cache.ResourceVersions;
+import academy.mindswap.rentacarapi.cache.VersionedEntityCache;
+import academy.mindswap.rentacarapi.catalog.PlateIndex;
+import academy.mindswap.rentacarapi.command.KeysetPageDto;
 import academy.mindswap.rentacarapi.command.car.CarDetailsDto;
+import academy.mindswap.rentacarapi.command.car.CarSearchDto;
 import academy.mindswap.rentacarapi.command.car.CreateOrUpdateCarDto;
 import academy.mindswap.rentacarapi.converter.CarDtoToCarEntityConverter;
 import academy.mindswap.rentacarapi.converter.CarEntityToCarDtoConverter;
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.enumerator.CarSortField;
+import academy.mindswap.rentacarapi.enumerator.ResourceCollection;
 import academy.mindswap.rentacarapi.exception.CarAlreadyExistsException;
 import academy.mindswap.rentacarapi.exception.CarNotFoundException;
 import academy.mindswap.rentacarapi.exception.DatabaseCommunicationException;
+import academy.mindswap.rentacarapi.exception.InvalidDateRangeException;
 import academy.mindswap.rentacarapi.persistence.entity.CarEntity;
 import academy.mindswap.rentacarapi.persistence.repository.CarRepository;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.*;
 
 /**
  * A {@link CarService} implementation
@@ -26,9 +40,25 @@ public class CarServiceImp implements CarService {
     private static final Logger LOGGER = LogManager.getLogger(CarService.class);
 
     private final CarRepository carRepository;
+    private final FleetCalendar fleetCalendar;
+    private final VersionedEntityCache<Long, CarEntity> carEntityCache;
+    private final PlateIndex plateIndex;
+    private final ResourceVersions resourceVersions;
+    private final int maxSearchDays;
+    private final int maxPageSize;
 
-    public CarServiceImp(CarRepository carRepository) {
+    public CarServiceImp(CarRepository carRepository, FleetCalendar fleetCalendar,
+                         VersionedEntityCache<Long, CarEntity> carEntityCache, PlateIndex plateIndex,
+                         ResourceVersions resourceVersions,
+                         @Value("${rentacar.fleet-calendar.max-search-days:366}") int maxSearchDays,
+                         @Value("${rentacar.cars.max-page-size:500}") int maxPageSize) {
         this.carRepository = carRepository;
+        this.fleetCalendar = fleetCalendar;
+        this.carEntityCache = carEntityCache;
+        this.plateIndex = plateIndex;
+        this.resourceVersions = resourceVersions;
+        this.maxSearchDays = maxSearchDays;
+        this.maxPageSize = maxPageSize;
     }
 
     /**
@@ -41,6 +71,12 @@ public class CarServiceImp implements CarService {
         CarEntity carEntity = CarDtoToCarEntityConverter.convert(carDetails);
         carEntity.setAvailable(true);
 
+        // Verify if the plate already exists without going to the database
+        if (plateIndex.isPlateTaken(carEntity.getPlate(), 0)) {
+            LOGGER.error("Car with plate {} already exists", carEntity.getPlate());
+            throw new CarAlreadyExistsException();
+        }
+
         // Persist car into database
         LOGGER.debug("Persisting new car into database");
 
@@ -54,6 +90,11 @@ public class CarServiceImp implements CarService {
             throw new DatabaseCommunicationException(e);
         }
 
+        // Add car to the fleet calendar and the plate index
+        fleetCalendar.addCar(carEntity.getCarId(), carEntity.getBrand(), carEntity.getCarSegment());
+        plateIndex.putCar(carEntity.getCarId(), carEntity.getPlate());
+        resourceVersions.increment(ResourceCollection.CARS);
+
         // Convert to CarDetailsDto and return created car
         return CarEntityToCarDtoConverter.convert(carEntity);
     }
@@ -73,21 +114,191 @@ public class CarServiceImp implements CarService {
     }
 
     /**
-     * @see CarService#getCarsList()
+     * @see CarService#getCarVersion(long)
+     */
+    @Override
+    public int getCarVersion(long carId) {
+        return getCachedCarEntityById(carId).getVersion();
+    }
+
+    /**
+     * @see CarService#getCarByPlate(String)
+     */
+    @Override
+    public CarDetailsDto getCarByPlate(String plate) {
+        LOGGER.debug("Getting car with plate {} from plate index", plate);
+
+        Long carId = plateIndex.findCarId(plate);
+
+        if (Objects.isNull(carId)) {
+            LOGGER.error("The car with plate {} does not exist", plate);
+            throw new CarNotFoundException();
+        }
+
+        // Get car from database
+        CarEntity carEntity = getCarEntityById(carId);
+
+        // Check the index against the plate column
+        if (!PlateIndex.normalize(carEntity.getPlate()).equals(PlateIndex.normalize(plate))) {
+            LOGGER.warn("Plate index has plate {} for car {} with plate {}", plate, carId, carEntity.getPlate());
+            plateIndex.putCar(carId, carEntity.getPlate());
+
+            carEntity = carRepository.findByNormalizedPlate(PlateIndex.normalize(plate)).stream()
+                    .findFirst()
+                    .orElseThrow(() -> {
+                        LOGGER.error("The car with plate {} does not exist in the database", plate);
+                        return new CarNotFoundException();
+                    });
+            plateIndex.putCar(carEntity.getCarId(), carEntity.getPlate());
+        }
+
+        // Convert to CarDetailsDto and return
+        return CarEntityToCarDtoConverter.convert(carEntity);
+    }
+
+    /**
+     * @see CarService#getCarsByPlatePrefix(String, int)
      */
     @Override
-    public List<CarDetailsDto> getCarsList() {
-        // Convert list items from CarEntity to CarDetailsDto
+    public List<CarDetailsDto> getCarsByPlatePrefix(String prefix, int limit) {
+        LOGGER.debug("Getting cars with plate starting with {} from plate index", prefix);
+
+        List<Long> carIds = plateIndex.findCarIdsByPrefix(prefix, Math.max(1, Math.min(limit, maxPageSize)));
+
+        // Get cars from database, keeping the plate order
+        Map<Long, CarEntity> carEntities = getCarEntitiesByIds(carIds);
         List<CarDetailsDto> carsListResponse = new ArrayList<>();
 
-        LOGGER.debug("Getting all cars from database");
+        for (Long carId : carIds) {
+            CarEntity carEntity = carEntities.get(carId);
+            if (Objects.nonNull(carEntity)) {
+                carsListResponse.add(CarEntityToCarDtoConverter.convert(carEntity));
+            }
+        }
+
+        return carsListResponse;
+    }
+
+    /**
+     * @see CarService#searchCars(CarSearchDto)
+     */
+    @Override
+    public KeysetPageDto<CarDetailsDto> searchCars(CarSearchDto carSearchDto) {
+        LocalDate purchasedFrom = carSearchDto.getPurchasedFrom();
+        LocalDate purchasedTo = carSearchDto.getPurchasedTo();
+
+        if (Objects.nonNull(purchasedFrom) && Objects.nonNull(purchasedTo) && purchasedFrom.isAfter(purchasedTo)) {
+            LOGGER.error("Invalid purchase date range {} - {} to search cars", purchasedFrom, purchasedTo);
+            throw new InvalidDateRangeException();
+        }
+
+        int limit = Math.max(1, Math.min(carSearchDto.getLimit(), maxPageSize));
+        ZoneId zoneId = ZoneId.systemDefault();
+
+        LOGGER.debug("Getting {} cars after id {} from database - {}", limit, carSearchDto.getAfterCarId(), carSearchDto);
+
+        Collection<CarBrands> brands = Objects.isNull(carSearchDto.getBrands()) || carSearchDto.getBrands().isEmpty()
+                ? EnumSet.allOf(CarBrands.class) : carSearchDto.getBrands();
+        Collection<CarSegment> carSegments = Objects.isNull(carSearchDto.getCarSegments()) || carSearchDto.getCarSegments().isEmpty()
+                ? EnumSet.allOf(CarSegment.class) : carSearchDto.getCarSegments();
+        Date purchasedFromDate = Objects.isNull(purchasedFrom) ? null : Date.from(purchasedFrom.atStartOfDay(zoneId).toInstant());
+        Date purchasedToDate = Objects.isNull(purchasedTo) ? null : Date.from(purchasedTo.plusDays(1).atStartOfDay(zoneId).toInstant());
+
+        Date afterDateOfPurchase = carSearchDto.getSort() == CarSortField.DATE_OF_PURCHASE
+                ? getAfterDateOfPurchase(carSearchDto) : null;
+
+        // Get one more car than the page size to know if there is a next page
+        List<CarDetailsDto> carsListDto;
+
         try {
+            if (carSearchDto.getSort() == CarSortField.DATE_OF_PURCHASE) {
+                carsListDto = carRepository.findCarDetailsPageByDateOfPurchase(brands, carSegments,
+                        carSearchDto.getAvailable(), purchasedFromDate, purchasedToDate,
+                        afterDateOfPurchase, carSearchDto.getAfterCarId(), PageRequest.of(0, limit + 1));
+            } else {
+                carsListDto = carRepository.findCarDetailsPageByCarId(brands, carSegments,
+                        carSearchDto.getAvailable(), purchasedFromDate, purchasedToDate,
+                        carSearchDto.getAfterCarId(), PageRequest.of(0, limit + 1));
+            }
+        } catch (Exception e) {
+            LOGGER.error("Failed getting cars page from database", e);
+            throw new DatabaseCommunicationException(e);
+        }
 
-            for (CarEntity car : carRepository.findAll()) {
+        boolean hasNextPage = carsListDto.size() > limit;
+        List<CarDetailsDto> content = hasNextPage ? carsListDto.subList(0, limit) : carsListDto;
+
+        return KeysetPageDto.<CarDetailsDto>builder()
+                .content(content)
+                .nextCursor(hasNextPage ? content.get(limit - 1).getCarId() : null)
+                .nextSortKey(hasNextPage && carSearchDto.getSort() == CarSortField.DATE_OF_PURCHASE
+                        ? content.get(limit - 1).getDateOfPurchase().getTime() : null)
+                .build();
+    }
+
+    /**
+     * Helper method to get the date of purchase of the cursor, from the cursor car
+     * if the sort key wasn't sent, like in cursors of older responses
+     *
+     * @param carSearchDto
+     * @return the date of purchase or null for the first page
+     */
+    private Date getAfterDateOfPurchase(CarSearchDto carSearchDto) {
+        if (Objects.nonNull(carSearchDto.getAfterSortKey())) {
+            return new Date(carSearchDto.getAfterSortKey());
+        }
+
+        if (carSearchDto.getAfterCarId() == 0) {
+            return null;
+        }
+
+        return carRepository.findDateOfPurchaseByCarId(carSearchDto.getAfterCarId())
+                .orElseThrow(() -> {
+                    LOGGER.error("The cursor car with id {} does not exist in the database", carSearchDto.getAfterCarId());
+                    return new CarNotFoundException();
+                });
+    }
+
+    /**
+     * @see CarService#getAvailableCars(LocalDate, LocalDate, List, List)
+     */
+    @Override
+    public List<CarDetailsDto> getAvailableCars(LocalDate from, LocalDate to,
+                                                List<CarSegment> carSegments, List<CarBrands> brands) {
+        if (from.isAfter(to) || from.plusDays(maxSearchDays).isBefore(to)) {
+            LOGGER.error("Invalid date range {} - {} to search available cars", from, to);
+            throw new InvalidDateRangeException();
+        }
+
+        List<CarDetailsDto> carsListResponse = new ArrayList<>();
+
+        try {
+            // Past days are pruned from the fleet calendar
+            if (fleetCalendar.isEnabled() && fleetCalendar.covers(from)) {
+                LOGGER.debug("Getting cars available between {} - {} from fleet calendar", from, to);
+
+                for (CarEntity car : carRepository.findAllById(fleetCalendar.findAvailableCarIds(from, to, carSegments, brands))) {
+                    carsListResponse.add(CarEntityToCarDtoConverter.convert(car));
+                }
+                carsListResponse.sort(Comparator.comparingLong(CarDetailsDto::getCarId));
+
+                return carsListResponse;
+            }
+
+            LOGGER.debug("Getting cars available between {} - {} from database", from, to);
+
+            ZoneId zoneId = ZoneId.systemDefault();
+            List<CarEntity> availableCars = carRepository.findAvailableCarsBetweenDates(
+                    carSegments == null || carSegments.isEmpty() ? EnumSet.allOf(CarSegment.class) : carSegments,
+                    brands == null || brands.isEmpty() ? EnumSet.allOf(CarBrands.class) : brands,
+                    Date.from(from.atStartOfDay(zoneId).toInstant()),
+                    new Date(to.plusDays(1).atStartOfDay(zoneId).toInstant().toEpochMilli() - 1));
+
+            for (CarEntity car : availableCars) {
                 carsListResponse.add(CarEntityToCarDtoConverter.convert(car));
             }
         } catch (Exception e) {
-            LOGGER.error("Failed getting all cars from database", e);
+            LOGGER.error("Failed getting available cars from database", e);
             throw new DatabaseCommunicationException(e);
         }
 
@@ -111,6 +322,12 @@ public class CarServiceImp implements CarService {
             LOGGER.error("Failed while deleting car with id {} from database", carId, e);
             throw new DatabaseCommunicationException(e);
         }
+
+        // Remove car from the fleet calendar, the plate index and the cache
+        fleetCalendar.removeCar(carId);
+        plateIndex.removeCar(carId);
+        carEntityCache.invalidateDeleted(carId);
+        resourceVersions.increment(ResourceCollection.CARS);
     }
 
     /**
@@ -123,6 +340,12 @@ public class CarServiceImp implements CarService {
         // Get car if it exists
         CarEntity carEntity = getCarEntityById(carId);
 
+        // Verify if the new plate belongs to another car
+        if (plateIndex.isPlateTaken(carDetails.getPlate(), carId)) {
+            LOGGER.error("Car with plate {} already exists", carDetails.getPlate());
+            throw new CarAlreadyExistsException();
+        }
+
         // Update data with carDetails received into carEntity
         carEntity.setBrand(carDetails.getBrand());
         carEntity.setModelDescription(carDetails.getModelDescription());
@@ -139,10 +362,64 @@ public class CarServiceImp implements CarService {
             LOGGER.error("Failed while updating car with id {} in database with new data - {}", carId, carEntity, e);
             throw new DatabaseCommunicationException(e);
         }
+
+        // Update car segment and brand in the fleet calendar and drop the cached car
+        fleetCalendar.addCar(carEntity.getCarId(), carEntity.getBrand(), carEntity.getCarSegment());
+        plateIndex.putCar(carId, carEntity.getPlate());
+        carEntityCache.invalidate(carId, carEntity.getVersion());
+        resourceVersions.increment(ResourceCollection.CARS);
+
         // Convert to CarDetailsDto and return updated car
         return CarEntityToCarDtoConverter.convert(carEntity);
     }
 
+    protected Map<Long, CarEntity> getCarEntitiesByIds(Collection<Long> carIds) {
+        Map<Long, CarEntity> carEntities = new HashMap<>();
+
+        try {
+            for (CarEntity car : carRepository.findAllById(carIds)) {
+                carEntities.put(car.getCarId(), car);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Failed getting cars {} from database", carIds, e);
+            throw new DatabaseCommunicationException(e);
+        }
+
+        return carEntities;
+    }
+
+    /**
+     * Get car from the cache, loading it from database on a miss.
+     * The returned entity is shared and must not be modified
+     * @param carId
+     * @return {@link CarEntity}
+     */
+    protected CarEntity getCachedCarEntityById(long carId) {
+        return carEntityCache.get(carId, carRepository::findById)
+                .orElseThrow(() -> {
+                    LOGGER.error("The car with id {} does not exist in the database", carId);
+                    return new CarNotFoundException();
+                });
+    }
+
+    /**
+     * Drop the cached car after it was changed by a bulk update, e.g. when it is delivered or returned.
+     * The version is read after the change, so older loads in flight are not cached
+     * @param carId
+     */
+    protected void refreshCachedCar(long carId) {
+        try {
+            carRepository.findVersionByCarId(carId).ifPresentOrElse(
+                    version -> carEntityCache.invalidate(carId, version),
+                    () -> carEntityCache.invalidateDeleted(carId));
+        } catch (Exception e) {
+            LOGGER.error("Failed getting version of car {} from database", carId, e);
+            throw new DatabaseCommunicationException(e);
+        }
+
+        resourceVersions.increment(ResourceCollection.CARS);
+    }
+
     protected CarEntity getCarEntityById(long carId) {
         return carRepository.findById(carId)
                 .orElseThrow(() -> {
@@ -0,0 +1,23 @@
+package academy.mindswap.rentacarapi.service;
+
+import academy.mindswap.rentacarapi.enumerator.ExportFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+
+/**
+ * Common interface for rent export service, provides methods to export the rent history
+ */
+public interface RentExportService {
+
+    /**
+     * Write all rents with id greater than afterRentId, sorted by id, into the output stream
+     * @param exportFormat format of the rows
+     * @param since only rents expected to begin at or after this date, all if null
+     * @param afterRentId the last rent id already exported, to resume an export
+     * @param outputStream where to write the rows
+     * @throws IOException if the output stream fails
+     */
+    void exportRents(ExportFormat exportFormat, Date since, long afterRentId, OutputStream outputStream) throws IOException;
+}
@@ -0,0 +1,187 @@
+package academy.mindswap.rentacarapi.service;
+
+import academy.mindswap.rentacarapi.enumerator.ExportFormat;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Date;
+import java.util.Objects;
+
+/**
+ * A {@link RentExportService} implementation that streams rows from a forward-only JDBC cursor
+ * straight into the output stream, so memory usage doesn't depend on the number of rents
+ */
+@Service
+public class RentExportServiceImp implements RentExportService {
+
+    private static final Logger LOGGER = LogManager.getLogger(RentExportServiceImp.class);
+
+    private static final String SELECT_RENTS = "SELECT rent_id, car_id, user_id, expected_begin_date, begin_date, " +
+            "expected_end_date, end_date, expected_price, final_price, status FROM rents WHERE rent_id > ? ";
+    private static final String SINCE_FILTER = "AND expected_begin_date >= ? ";
+    private static final String ORDER_BY_RENT_ID = "ORDER BY rent_id";
+
+    private static final String[] FIELDS = {"rentId", "carId", "userId", "expectedBeginDate", "beginDate",
+            "expectedEndDate", "endDate", "expectedPrice", "finalPrice", "status"};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final int fetchSize;
+
+    public RentExportServiceImp(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper,
+                                @Value("${rentacar.export.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.objectMapper = objectMapper;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * @see RentExportService#exportRents(ExportFormat, Date, long, OutputStream)
+     */
+    @Override
+    public void exportRents(ExportFormat exportFormat, Date since, long afterRentId, OutputStream outputStream) throws IOException {
+        LOGGER.debug("Exporting rents after id {} since {} as {}", afterRentId, since, exportFormat);
+
+        String sql = SELECT_RENTS + (Objects.isNull(since) ? "" : SINCE_FILTER) + ORDER_BY_RENT_ID;
+
+        // Forward-only, read-only cursor fetching fetchSize rows per round trip
+        PreparedStatementCreator statementCreator = connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize);
+            statement.setLong(1, afterRentId);
+
+            if (Objects.nonNull(since)) {
+                statement.setTimestamp(2, new Timestamp(since.getTime()));
+            }
+            return statement;
+        };
+
+        long[] exportedRows = {0};
+
+        try {
+            if (exportFormat == ExportFormat.CSV) {
+                Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+                writer.write(String.join(",", FIELDS));
+                writer.write('\n');
+
+                jdbcTemplate.query(statementCreator, (RowCallbackHandler) resultSet -> {
+                    writeCsvRow(writer, resultSet);
+                    exportedRows[0]++;
+                });
+                writer.flush();
+            } else {
+                JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+                generator.setRootValueSeparator(null);
+
+                jdbcTemplate.query(statementCreator, (RowCallbackHandler) resultSet -> {
+                    writeJsonRow(generator, resultSet);
+                    exportedRows[0]++;
+                });
+                generator.flush();
+            }
+        } catch (UncheckedIOException e) {
+            LOGGER.error("Rents export interrupted after {} rows", exportedRows[0], e);
+            throw e.getCause();
+        }
+
+        LOGGER.info("Exported {} rents after id {} as {}", exportedRows[0], afterRentId, exportFormat);
+    }
+
+    private void writeJsonRow(JsonGenerator generator, ResultSet resultSet) throws SQLException {
+        try {
+            generator.writeStartObject();
+            generator.writeNumberField(FIELDS[0], resultSet.getLong(1));
+            generator.writeNumberField(FIELDS[1], resultSet.getLong(2));
+            generator.writeNumberField(FIELDS[2], resultSet.getLong(3));
+
+            for (int column = 4; column <= 7; column++) {
+                generator.writeFieldName(FIELDS[column - 1]);
+                String date = formatDate(resultSet.getTimestamp(column));
+                if (Objects.isNull(date)) {
+                    generator.writeNull();
+                } else {
+                    generator.writeString(date);
+                }
+            }
+
+            for (int column = 8; column <= 9; column++) {
+                generator.writeFieldName(FIELDS[column - 1]);
+                BigDecimal price = resultSet.getBigDecimal(column);
+                if (Objects.isNull(price)) {
+                    generator.writeNull();
+                } else {
+                    generator.writeNumber(price);
+                }
+            }
+
+            generator.writeStringField(FIELDS[9], resultSet.getString(10));
+
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void writeCsvRow(Writer writer, ResultSet resultSet) throws SQLException {
+        try {
+            writer.write(Long.toString(resultSet.getLong(1)));
+            writer.write(',');
+            writer.write(Long.toString(resultSet.getLong(2)));
+            writer.write(',');
+            writer.write(Long.toString(resultSet.getLong(3)));
+
+            for (int column = 4; column <= 7; column++) {
+                writer.write(',');
+                writer.write(Objects.toString(formatDate(resultSet.getTimestamp(column)), ""));
+            }
+
+            for (int column = 8; column <= 9; column++) {
+                writer.write(',');
+                BigDecimal price = resultSet.getBigDecimal(column);
+                writer.write(Objects.isNull(price) ? "" : price.toPlainString());
+            }
+
+            writer.write(',');
+            writer.write(escapeCsv(resultSet.getString(10)));
+
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Quote a text value that holds a comma, a quote or a line break, doubling its quotes
+     */
+    private String escapeCsv(String value) {
+        if (Objects.isNull(value)) {
+            return "";
+        }
+
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private String formatDate(Timestamp timestamp) {
+        return Objects.isNull(timestamp) ? null : timestamp.toInstant().toString();
+    }
+}
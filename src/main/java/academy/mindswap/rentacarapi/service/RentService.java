@@ -1,7 +1,10 @@
 package academy.mindswap.rentacarapi.service;
 
+import academy.mindswap.rentacarapi.command.KeysetPageDto;
 import academy.mindswap.rentacarapi.command.rent.CreateOrUpdateRentDto;
+import academy.mindswap.rentacarapi.command.rent.RentBatchItemResultDto;
 import academy.mindswap.rentacarapi.command.rent.RentDetailsDto;
+import academy.mindswap.rentacarapi.command.rent.RentSearchDto;
 
 import java.util.List;
 
@@ -18,7 +21,15 @@ public interface RentService {
     RentDetailsDto addNewRent(CreateOrUpdateRentDto createRentDto);
 
     /**
-     * Get rent by rentId
+     * Add multiple rents, the rents of each car are checked and saved in a single transaction.
+     * Cars are committed one by one, a car whose rents can't be saved gets an error result for its items
+     * @param createRentDtos
+     * @return a {@link RentBatchItemResultDto} for each rent, in the same order
+     */
+    List<RentBatchItemResultDto> addNewRents(List<CreateOrUpdateRentDto> createRentDtos);
+
+    /**
+     * Get rent by rentId, only if it is a rent of the user
      * @param rentId
      * @param userId
      * @return {@link RentDetailsDto}
@@ -26,10 +37,19 @@ public interface RentService {
     RentDetailsDto getRentById(long rentId, long userId);
 
     /**
-     * Get all rents
-     * @return
+     * Get the version of a rent of the user
+     * @param rentId
+     * @param userId
+     * @return the entity version
      */
-    List<RentDetailsDto> getRentsList();
+    int getRentVersion(long rentId, long userId);
+
+    /**
+     * Get a page of rents matching the search filters, sorted by rentId
+     * @param rentSearchDto filters, cursor and page size
+     * @return {@link KeysetPageDto} with {@link RentDetailsDto}
+     */
+    KeysetPageDto<RentDetailsDto> getRentsList(RentSearchDto rentSearchDto);
 
     /**
      * Deliver car to the customer
@@ -45,6 +65,27 @@ public interface RentService {
      */
     RentDetailsDto returnCar(long rentId);
 
+    /**
+     * Cancel rent reservation, the car is released
+     * @param rentId
+     * @return {@link RentDetailsDto}
+     */
+    RentDetailsDto cancelRent(long rentId);
+
+    /**
+     * Mark rent reservation as no-show after the customer didn't pick the car, the car is released
+     * @param rentId
+     * @return {@link RentDetailsDto}
+     */
+    RentDetailsDto markRentAsNoShow(long rentId);
+
+    /**
+     * Get active rents past their expected end date, the longest overdue first
+     * @param limit max number of rents
+     * @return list of {@link RentDetailsDto}
+     */
+    List<RentDetailsDto> getOverdueRents(int limit);
+
     /**
      * Delete rent reservation
      * @param rentId
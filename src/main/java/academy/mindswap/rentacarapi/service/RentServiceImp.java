@@ -1,27 +1,43 @@
 package academy.mindswap.rentacarapi.service;
 
+import academy.mindswap.rentacarapi.availability.FleetCalendar;
+import academy.mindswap.rentacarapi.availability.RentIntervalIndex;
+import academy.mindswap.rentacarapi.booking.BookingSequencer;
+import academy.mindswap.rentacarapi.cache.ResourceVersions;
+import academy.mindswap.rentacarapi.command.KeysetPageDto;
 import academy.mindswap.rentacarapi.command.rent.CreateOrUpdateRentDto;
+import academy.mindswap.rentacarapi.command.rent.RentBatchItemResultDto;
 import academy.mindswap.rentacarapi.command.rent.RentDetailsDto;
+import academy.mindswap.rentacarapi.command.rent.RentSearchDto;
 import academy.mindswap.rentacarapi.converter.RentDtoToRentEntityConverter;
 import academy.mindswap.rentacarapi.converter.RentEntityToRentDtoConverter;
+import academy.mindswap.rentacarapi.converter.RentStateToRentDtoConverter;
+import academy.mindswap.rentacarapi.enumerator.ResourceCollection;
+import academy.mindswap.rentacarapi.enumerator.RentStatus;
 import academy.mindswap.rentacarapi.error.ErrorMessages;
 import academy.mindswap.rentacarapi.exception.*;
 import academy.mindswap.rentacarapi.persistence.entity.CarEntity;
 import academy.mindswap.rentacarapi.persistence.entity.RentEntity;
 import academy.mindswap.rentacarapi.persistence.entity.UserEntity;
+import academy.mindswap.rentacarapi.persistence.projection.RentIntervalProjection;
+import academy.mindswap.rentacarapi.persistence.projection.RentStateProjection;
+import academy.mindswap.rentacarapi.persistence.repository.CarRepository;
 import academy.mindswap.rentacarapi.persistence.repository.RentRepository;
+import academy.mindswap.rentacarapi.pricing.PricingEngine;
+import academy.mindswap.rentacarapi.report.RentAggregates;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
-import java.time.LocalDate;
 import java.time.ZoneId;
-import java.time.temporal.ChronoUnit;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
-import java.util.Objects;
+import java.util.*;
 
 /**
  * An {@link RentService} implementation
@@ -32,13 +48,35 @@ public class RentServiceImp implements RentService {
     private static final Logger LOGGER = LogManager.getLogger(RentServiceImp.class);
 
     private final RentRepository rentRepository;
+    private final CarRepository carRepository;
     private final UserServiceImp userServiceImp;
     private final CarServiceImp carServiceImp;
-
-    public RentServiceImp(RentRepository rentRepository, UserServiceImp userServiceImp, CarServiceImp carServiceImp) {
+    private final RentIntervalIndex rentIntervalIndex;
+    private final FleetCalendar fleetCalendar;
+    private final BookingSequencer bookingSequencer;
+    private final PricingEngine pricingEngine;
+    private final RentAggregates rentAggregates;
+    private final ResourceVersions resourceVersions;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxPageSize;
+
+    public RentServiceImp(RentRepository rentRepository, CarRepository carRepository, UserServiceImp userServiceImp, CarServiceImp carServiceImp,
+                          RentIntervalIndex rentIntervalIndex, FleetCalendar fleetCalendar,
+                          BookingSequencer bookingSequencer, PricingEngine pricingEngine, RentAggregates rentAggregates,
+                          ResourceVersions resourceVersions,
+                          TransactionTemplate transactionTemplate, @Value("${rentacar.rents.max-page-size:500}") int maxPageSize) {
         this.rentRepository = rentRepository;
+        this.carRepository = carRepository;
         this.userServiceImp = userServiceImp;
         this.carServiceImp = carServiceImp;
+        this.rentIntervalIndex = rentIntervalIndex;
+        this.fleetCalendar = fleetCalendar;
+        this.bookingSequencer = bookingSequencer;
+        this.pricingEngine = pricingEngine;
+        this.rentAggregates = rentAggregates;
+        this.resourceVersions = resourceVersions;
+        this.transactionTemplate = transactionTemplate;
+        this.maxPageSize = maxPageSize;
     }
 
     /**
@@ -46,11 +84,18 @@ public class RentServiceImp implements RentService {
      */
     @Override
     public RentDetailsDto addNewRent(CreateOrUpdateRentDto createRentDto) {
+        return bookingSequencer.execute(createRentDto::getCarId, () -> processNewRent(createRentDto));
+    }
+
+    /**
+     * Create the rent. Runs in the booking sequencer partition of the car
+     */
+    private RentDetailsDto processNewRent(CreateOrUpdateRentDto createRentDto) {
 
         LOGGER.debug("Getting car with id {}", createRentDto.getCarId());
 
-        // Get car from database
-        CarEntity carEntity = carServiceImp.getCarEntityById(createRentDto.getCarId());
+        // Get car from cache or database
+        CarEntity carEntity = carServiceImp.getCachedCarEntityById(createRentDto.getCarId());
 
         LOGGER.debug("Verifying if car id {} will be available between the given dates {} - {}",
                 createRentDto.getCarId(),
@@ -58,7 +103,7 @@ public class RentServiceImp implements RentService {
                 createRentDto.getExpectedEndDate());
 
         // Verify if the car will be available for the requested dates
-        boolean carAvailable = rentRepository.isCarAvailableBetweenDates(
+        boolean carAvailable = isCarAvailableBetweenDates(
                 createRentDto.getCarId(),
                 createRentDto.getExpectedBeginDate(),
                 createRentDto.getExpectedEndDate());
@@ -73,8 +118,8 @@ public class RentServiceImp implements RentService {
 
         LOGGER.debug("Getting user with id {}", createRentDto.getUserId());
 
-        // Get user from database
-        UserEntity userEntity = userServiceImp.getUserEntityById(createRentDto.getUserId());
+        // Get user from cache or database
+        UserEntity userEntity = userServiceImp.getCachedUserEntityById(createRentDto.getUserId());
 
         // Convert to RentEntity
         RentEntity rentEntity = RentDtoToRentEntityConverter.convert(createRentDto);
@@ -84,8 +129,8 @@ public class RentServiceImp implements RentService {
         rentEntity.setUserEntity(userEntity);
 
         // Calculate and set the expected price
-        rentEntity.setExpectedPrice(calculatePrice(createRentDto.getExpectedBeginDate(),
-                createRentDto.getExpectedEndDate(), carEntity.getCarSegment().getDailyPrice()));
+        rentEntity.setExpectedPrice(pricingEngine.calculatePrice(carEntity.getCarSegment(),
+                createRentDto.getExpectedBeginDate(), createRentDto.getExpectedEndDate()));
 
         LOGGER.debug("Saving rent into database");
 
@@ -96,9 +141,188 @@ public class RentServiceImp implements RentService {
             LOGGER.error("Failed while saving rent into database {}", rentEntity, e);
             throw new DatabaseCommunicationException(e);
         }
+
+        // Book the car in the availability index and fleet calendar, once the rent is committed
+        afterCommit(() -> {
+            rentIntervalIndex.addRent(rentEntity.getRentId(), carEntity.getCarId(),
+                    rentEntity.getExpectedBeginDate(), rentEntity.getExpectedEndDate());
+            fleetCalendar.refreshCarDays(carEntity.getCarId(),
+                    rentEntity.getExpectedBeginDate(), rentEntity.getExpectedEndDate());
+            rentAggregates.addRent(carEntity.getCarSegment(), rentEntity.getExpectedBeginDate(),
+                    rentEntity.getExpectedEndDate(), rentEntity.getExpectedPrice());
+            resourceVersions.increment(ResourceCollection.RENTS);
+        });
+
         return RentEntityToRentDtoConverter.convert(rentEntity);
     }
 
+    /**
+     * Each car gets its own transaction, run in the booking sequencer partition of the car like a single rent,
+     * since one partition thread can't hold a transaction over the cars of other partitions. Its booked
+     * periods are read in that partition too, to see the single rents booked for it meanwhile. A car whose
+     * rents fail to be saved doesn't undo the cars committed before it, its items get an error result instead
+     *
+     * @see RentService#addNewRents(List)
+     */
+    @Override
+    public List<RentBatchItemResultDto> addNewRents(List<CreateOrUpdateRentDto> createRentDtos) {
+        Set<Long> carIds = new HashSet<>();
+        Set<Long> userIds = new HashSet<>();
+
+        for (CreateOrUpdateRentDto createRentDto : createRentDtos) {
+            carIds.add(createRentDto.getCarId());
+            userIds.add(createRentDto.getUserId());
+        }
+
+        LOGGER.debug("Getting {} cars and {} users of the rents batch", carIds.size(), userIds.size());
+
+        // Get all cars and users of the batch from database, one query each
+        Map<Long, CarEntity> carEntities = carServiceImp.getCarEntitiesByIds(carIds);
+        Map<Long, UserEntity> userEntities = userServiceImp.getUserEntitiesByIds(userIds);
+
+        RentBatchItemResultDto[] results = new RentBatchItemResultDto[createRentDtos.size()];
+        Map<Long, List<Integer>> indexesByCar = new LinkedHashMap<>();
+
+        for (int index = 0; index < createRentDtos.size(); index++) {
+            CreateOrUpdateRentDto createRentDto = createRentDtos.get(index);
+
+            if (!carEntities.containsKey(createRentDto.getCarId())) {
+                results[index] = buildBatchItemResult(index, HttpStatus.NOT_FOUND, ErrorMessages.CAR_NOT_FOUND, null);
+                continue;
+            }
+
+            if (!userEntities.containsKey(createRentDto.getUserId())) {
+                results[index] = buildBatchItemResult(index, HttpStatus.NOT_FOUND, ErrorMessages.USER_NOT_FOUND, null);
+                continue;
+            }
+
+            indexesByCar.computeIfAbsent(createRentDto.getCarId(), carId -> new ArrayList<>()).add(index);
+        }
+
+        // Book the rents of each car in its booking sequencer partition, like a single rent
+        boolean rentsSaved = false;
+
+        for (Map.Entry<Long, List<Integer>> carIndexes : indexesByCar.entrySet()) {
+            CarEntity carEntity = carEntities.get(carIndexes.getKey());
+
+            try {
+                rentsSaved |= bookingSequencer.execute(carEntity::getCarId,
+                        () -> processNewCarRents(carEntity, userEntities, createRentDtos, carIndexes.getValue(), results));
+            } catch (BookingInterruptedException e) {
+                LOGGER.error("Rents batch was interrupted before booking car {}", carEntity.getCarId(), e);
+                setFailedBatchItemResults(carIndexes.getValue(), results, HttpStatus.SERVICE_UNAVAILABLE,
+                        ErrorMessages.BOOKING_INTERRUPTED);
+            } catch (Exception e) {
+                LOGGER.error("Failed while saving rents batch of car {} into database", carEntity.getCarId(), e);
+                setFailedBatchItemResults(carIndexes.getValue(), results, HttpStatus.INTERNAL_SERVER_ERROR,
+                        ErrorMessages.DATABASE_COMMUNICATION_ERROR);
+            }
+        }
+
+        if (rentsSaved) {
+            resourceVersions.increment(ResourceCollection.RENTS);
+        }
+
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Create the rents of a batch for one car, setting the result of each of its items.
+     * Runs in the booking sequencer partition of the car
+     *
+     * @return true if any rent was saved
+     */
+    private boolean processNewCarRents(CarEntity carEntity, Map<Long, UserEntity> userEntities,
+                                       List<CreateOrUpdateRentDto> createRentDtos, List<Integer> indexes,
+                                       RentBatchItemResultDto[] results) {
+        Date minBeginDate = null;
+        Date maxEndDate = null;
+
+        for (int index : indexes) {
+            CreateOrUpdateRentDto createRentDto = createRentDtos.get(index);
+            minBeginDate = minBeginDate == null || createRentDto.getExpectedBeginDate().before(minBeginDate)
+                    ? createRentDto.getExpectedBeginDate() : minBeginDate;
+            maxEndDate = maxEndDate == null || createRentDto.getExpectedEndDate().after(maxEndDate)
+                    ? createRentDto.getExpectedEndDate() : maxEndDate;
+        }
+
+        // Get the booked periods of the car, unless the availability index is used
+        List<long[]> carBookedPeriods = rentIntervalIndex.isEnabled()
+                ? new ArrayList<>()
+                : getBookedPeriodsBetweenDates(List.of(carEntity.getCarId()), minBeginDate, maxEndDate)
+                        .getOrDefault(carEntity.getCarId(), new ArrayList<>());
+
+        List<RentEntity> rentEntities = new ArrayList<>();
+        List<Integer> rentIndexes = new ArrayList<>();
+
+        for (int index : indexes) {
+            CreateOrUpdateRentDto createRentDto = createRentDtos.get(index);
+
+            // Verify if the car will be available, also against the rents accepted before in this batch
+            long beginDate = createRentDto.getExpectedBeginDate().getTime();
+            long endDate = createRentDto.getExpectedEndDate().getTime();
+
+            boolean carAvailable = (!rentIntervalIndex.isEnabled() || rentIntervalIndex.isCarAvailableBetweenDates(
+                    carEntity.getCarId(), createRentDto.getExpectedBeginDate(), createRentDto.getExpectedEndDate()))
+                    && carBookedPeriods.stream().noneMatch(period -> period[0] <= endDate && beginDate <= period[1]);
+
+            if (!carAvailable) {
+                LOGGER.info("Car {} of rents batch item {} will be unavailable between dates {} - {}",
+                        carEntity.getCarId(), index,
+                        createRentDto.getExpectedBeginDate(),
+                        createRentDto.getExpectedEndDate());
+                results[index] = buildBatchItemResult(index, HttpStatus.CONFLICT, ErrorMessages.CAR_NOT_AVAILABLE, null);
+                continue;
+            }
+
+            carBookedPeriods.add(new long[]{beginDate, endDate});
+
+            // Convert to RentEntity with car, user and expected price
+            RentEntity rentEntity = RentDtoToRentEntityConverter.convert(createRentDto);
+            rentEntity.setCarEntity(carEntity);
+            rentEntity.setUserEntity(userEntities.get(createRentDto.getUserId()));
+            rentEntity.setExpectedPrice(pricingEngine.calculatePrice(carEntity.getCarSegment(),
+                    createRentDto.getExpectedBeginDate(), createRentDto.getExpectedEndDate()));
+
+            rentEntities.add(rentEntity);
+            rentIndexes.add(index);
+        }
+
+        if (rentEntities.isEmpty()) {
+            return false;
+        }
+
+        LOGGER.debug("Saving {} rents of car {} of the batch into database", rentEntities.size(), carEntity.getCarId());
+
+        // Save the accepted rents of the car in one transaction, inserts are sent in JDBC batches
+        try {
+            transactionTemplate.execute(status -> rentRepository.saveAll(rentEntities));
+        } catch (Exception e) {
+            LOGGER.error("Failed while saving rents batch into database", e);
+            throw new DatabaseCommunicationException(e);
+        }
+
+        // Book the car in the availability index and fleet calendar, once the rents are committed
+        afterCommit(() -> {
+            for (RentEntity rentEntity : rentEntities) {
+                rentIntervalIndex.addRent(rentEntity.getRentId(), carEntity.getCarId(),
+                        rentEntity.getExpectedBeginDate(), rentEntity.getExpectedEndDate());
+                fleetCalendar.refreshCarDays(carEntity.getCarId(),
+                        rentEntity.getExpectedBeginDate(), rentEntity.getExpectedEndDate());
+                rentAggregates.addRent(carEntity.getCarSegment(), rentEntity.getExpectedBeginDate(),
+                        rentEntity.getExpectedEndDate(), rentEntity.getExpectedPrice());
+            }
+        });
+
+        for (int i = 0; i < rentEntities.size(); i++) {
+            int index = rentIndexes.get(i);
+            results[index] = buildBatchItemResult(index, HttpStatus.CREATED, null,
+                    RentEntityToRentDtoConverter.convert(rentEntities.get(i)));
+        }
+
+        return true;
+    }
+
     /**
      * @see RentService#getRentById(long, long)
      */
@@ -109,29 +333,63 @@ public class RentServiceImp implements RentService {
         // Get the car from database
         RentEntity rentEntity = getRentEntityById(rentId);
 
+        // Rents of other users don't exist for this one
+        if (rentEntity.getUserEntity().getUserId() != userId) {
+            LOGGER.error("The rent with id {} is not a rent of user with id {}", rentId, userId);
+            throw new RentNotFoundException();
+        }
+
         return RentEntityToRentDtoConverter.convert(rentEntity);
     }
 
     /**
-     * @see RentService#getRentsList()
+     * @see RentService#getRentVersion(long, long)
+     */
+    @Override
+    public int getRentVersion(long rentId, long userId) {
+        return rentRepository.findVersionByRentIdAndUserId(rentId, userId)
+                .orElseThrow(() -> {
+                    LOGGER.error("The rent with id {} of user with id {} does not exist in the database", rentId, userId);
+                    return new RentNotFoundException();
+                });
+    }
+
+    /**
+     * @see RentService#getRentsList(RentSearchDto)
      */
     @Override
-    public List<RentDetailsDto> getRentsList() {
-        LOGGER.debug("Getting all rents from database");
+    public KeysetPageDto<RentDetailsDto> getRentsList(RentSearchDto rentSearchDto) {
+        int limit = Math.max(1, Math.min(rentSearchDto.getLimit(), maxPageSize));
+        ZoneId zoneId = ZoneId.systemDefault();
 
-        // Convert the list from RentEntity to RentDetailsDto
-        List<RentDetailsDto> rentListDto = new ArrayList<>();
+        LOGGER.debug("Getting {} rents after id {} from database - {}", limit, rentSearchDto.getAfterRentId(), rentSearchDto);
+
+        // Get one more rent than the page size to know if there is a next page
+        List<RentDetailsDto> rentListDto;
 
         try {
-            for (RentEntity rent : rentRepository.findAll()) {
-                rentListDto.add(RentEntityToRentDtoConverter.convert(rent));
-            }
+            rentListDto = rentRepository.findRentDetailsPage(
+                    rentSearchDto.getAfterRentId(),
+                    rentSearchDto.getUserId(),
+                    rentSearchDto.getCarId(),
+                    rentSearchDto.getStatus(),
+                    Objects.isNull(rentSearchDto.getFrom()) ? null
+                            : Date.from(rentSearchDto.getFrom().atStartOfDay(zoneId).toInstant()),
+                    Objects.isNull(rentSearchDto.getTo()) ? null
+                            : Date.from(rentSearchDto.getTo().plusDays(1).atStartOfDay(zoneId).toInstant()),
+                    PageRequest.of(0, limit + 1));
         } catch (Exception e) {
-            LOGGER.error("Failed getting all rents from database", e);
+            LOGGER.error("Failed getting rents page from database", e);
             throw new DatabaseCommunicationException(e);
         }
 
-        return rentListDto;
+        boolean hasNextPage = rentListDto.size() > limit;
+        List<RentDetailsDto> content = hasNextPage ? rentListDto.subList(0, limit) : rentListDto;
+
+        return KeysetPageDto.<RentDetailsDto>builder()
+                .content(content)
+                .nextCursor(hasNextPage ? content.get(limit - 1).getRentId() : null)
+                .build();
     }
 
     /**
@@ -139,39 +397,57 @@ public class RentServiceImp implements RentService {
      */
     @Override
     public RentDetailsDto deliverCar(long rentId) {
+        return bookingSequencer.execute(() -> getCarIdByRentId(rentId), () -> processDelivery(rentId));
+    }
+
+    /**
+     * Deliver the car. Runs in the booking sequencer partition of the car
+     */
+    private RentDetailsDto processDelivery(long rentId) {
         LOGGER.debug("Getting rent with id {} from database", rentId);
 
         // Get rent from database
-        RentEntity rentEntity = getRentEntityById(rentId);
+        RentStateProjection rentState = getRentStateById(rentId);
 
-        LOGGER.debug("Checking if car was already picked");
-
-        // Verify if the car is available
-        if (!rentEntity.getCarEntity().isAvailable()) {
+        if (rentState.getStatus() == RentStatus.ACTIVE || rentState.getStatus() == RentStatus.RETURNED) {
             LOGGER.error("User {} already picked the car {} in the rent {}",
-                    rentEntity.getUserEntity().getUserId(),
-                    rentEntity.getCarEntity().getCarId(),
-                    rentId);
-            throw new CarNotAvailableException();
+                    rentState.getUserId(), rentState.getCarId(), rentId);
+            throw new InvalidRentStatusException(ErrorMessages.CAR_ALREADY_DELIVERED);
         }
 
-        // Set the beginDate
-        rentEntity.setBeginDate(new Date());
+        if (!rentState.getStatus().canChangeTo(RentStatus.ACTIVE)) {
+            LOGGER.error("Rent {} is {} and its car can't be delivered", rentId, rentState.getStatus());
+            throw new InvalidRentStatusException(ErrorMessages.INVALID_RENT_STATUS_CHANGE);
+        }
 
-        // Set car as unavailable
-        rentEntity.getCarEntity().setAvailable(false);
+        LOGGER.info("Marking car of rent {} as delivered in database", rentId);
 
-        LOGGER.info("Saving changes into database");
+        // Take the car first and then activate the rent, both are rolled back if either guard fails
+        Date beginDate = new Date();
 
-        // Save the changes in the database
-        try {
-            rentRepository.save(rentEntity);
-        } catch (Exception e) {
-            LOGGER.error("Failed while updating rent status in database", e);
-            throw new DatabaseCommunicationException(e);
-        }
+        executeGuardedUpdates(() -> {
+            if (carRepository.changeCarAvailability(rentState.getCarId(), true, false) == 0) {
+                LOGGER.error("Car {} of rent {} is not available to be delivered", rentState.getCarId(), rentId);
+                throw new CarNotAvailableException();
+            }
 
-        return RentEntityToRentDtoConverter.convert(rentEntity);
+            if (rentRepository.markRentAsActive(rentId, beginDate) == 0) {
+                LOGGER.error("Rent {} was changed by a concurrent request", rentId);
+                throw new InvalidRentStatusException(ErrorMessages.CAR_ALREADY_DELIVERED);
+            }
+        });
+
+        // The car availability changed too
+        afterCommit(() -> {
+            carServiceImp.refreshCachedCar(rentState.getCarId());
+            resourceVersions.increment(ResourceCollection.RENTS);
+        });
+
+        RentDetailsDto rentDetails = RentStateToRentDtoConverter.convert(rentState);
+        rentDetails.setBeginDate(beginDate);
+        rentDetails.setStatus(RentStatus.ACTIVE);
+
+        return rentDetails;
     }
 
     /**
@@ -179,40 +455,146 @@ public class RentServiceImp implements RentService {
      */
     @Override
     public RentDetailsDto returnCar(long rentId) {
+        return bookingSequencer.execute(() -> getCarIdByRentId(rentId), () -> processReturn(rentId));
+    }
+
+    /**
+     * Return the car. Runs in the booking sequencer partition of the car
+     */
+    private RentDetailsDto processReturn(long rentId) {
         LOGGER.debug("Getting rent with id {} from database", rentId);
 
         // Get rent from database
-        RentEntity rentEntity = getRentEntityById(rentId);
+        RentStateProjection rentState = getRentStateById(rentId);
 
-        // Verify if the car wasn't delivered and if it was already returned
-        if (Objects.isNull(rentEntity.getBeginDate()) || Objects.nonNull(rentEntity.getEndDate())) {
-            LOGGER.error("Current status (Picked: {}, Returned: {}) of rent {} doesn't allow car to be returned",
-                    Objects.nonNull(rentEntity.getBeginDate()),
-                    Objects.nonNull(rentEntity.getEndDate()),
-                    rentId);
+        // Verify if the car is currently with the customer
+        if (!rentState.getStatus().canChangeTo(RentStatus.RETURNED)) {
+            LOGGER.error("Current status {} of rent {} doesn't allow car to be returned", rentState.getStatus(), rentId);
             throw new InvalidRentStatusException(ErrorMessages.CAN_NOT_RETURN_CAR);
         }
 
-        // Set the endDate
-        rentEntity.setEndDate(new Date());
+        // Calculate the finalPrice
+        Date endDate = new Date();
+        BigDecimal finalPrice = pricingEngine.calculateFinalPrice(rentState.getCarSegment(),
+                rentState.getBeginDate(), endDate, rentState.getExpectedEndDate());
+
+        LOGGER.info("Marking car of rent {} as returned in database", rentId);
 
-        // Calculate and set the finalPrice
-        rentEntity.setFinalPrice(calculatePrice(rentEntity.getBeginDate(),
-                rentEntity.getEndDate(), rentEntity.getCarEntity().getCarSegment().getDailyPrice()));
+        // Set the endDate and the finalPrice, only if it wasn't returned meanwhile, and the car back to available
+        executeGuardedUpdates(() -> {
+            if (rentRepository.markRentAsReturned(rentId, endDate, finalPrice) == 0) {
+                LOGGER.error("Rent {} was returned by a concurrent request", rentId);
+                throw new InvalidRentStatusException(ErrorMessages.CAN_NOT_RETURN_CAR);
+            }
 
-        // Set the car back to available
-        rentEntity.getCarEntity().setAvailable(true);
+            if (carRepository.changeCarAvailability(rentState.getCarId(), false, true) == 0) {
+                LOGGER.warn("Car {} of rent {} was already available when returned", rentState.getCarId(), rentId);
+            }
+        });
+
+        afterCommit(() -> {
+            // The car availability changed too
+            carServiceImp.refreshCachedCar(rentState.getCarId());
+            resourceVersions.increment(ResourceCollection.RENTS);
+
+            // Release the remaining booked period in the availability index and fleet calendar
+            rentIntervalIndex.updateRentEnd(rentId, endDate);
+            fleetCalendar.refreshCarDays(rentState.getCarId(), rentState.getExpectedBeginDate(),
+                    endDate.after(rentState.getExpectedEndDate()) ? endDate : rentState.getExpectedEndDate());
+            rentAggregates.returnRent(rentState.getCarSegment(), rentState.getExpectedBeginDate(),
+                    rentState.getExpectedEndDate(), endDate, rentState.getExpectedPrice(), finalPrice);
+        });
+
+        RentDetailsDto rentDetails = RentStateToRentDtoConverter.convert(rentState);
+        rentDetails.setEndDate(endDate);
+        rentDetails.setFinalPrice(finalPrice);
+        rentDetails.setStatus(RentStatus.RETURNED);
+
+        return rentDetails;
+    }
 
-        LOGGER.info("Saving changes into database");
+    /**
+     * @see RentService#cancelRent(long)
+     */
+    @Override
+    public RentDetailsDto cancelRent(long rentId) {
+        return bookingSequencer.execute(() -> getCarIdByRentId(rentId),
+                () -> processStatusChange(rentId, RentStatus.CANCELLED));
+    }
+
+    /**
+     * @see RentService#markRentAsNoShow(long)
+     */
+    @Override
+    public RentDetailsDto markRentAsNoShow(long rentId) {
+        return bookingSequencer.execute(() -> getCarIdByRentId(rentId),
+                () -> processStatusChange(rentId, RentStatus.NO_SHOW));
+    }
+
+    /**
+     * Cancel the rent or mark it as no-show, releasing its booked period.
+     * Runs in the booking sequencer partition of the car
+     */
+    private RentDetailsDto processStatusChange(long rentId, RentStatus newStatus) {
+        LOGGER.debug("Getting rent with id {} from database", rentId);
+
+        // Get rent from database
+        RentStateProjection rentState = getRentStateById(rentId);
+
+        // Verify the transition and that the customer didn't show up before the expected begin date
+        if (!rentState.getStatus().canChangeTo(newStatus)
+                || (newStatus == RentStatus.NO_SHOW && rentState.getExpectedBeginDate().after(new Date()))) {
+            LOGGER.error("Rent {} can't change from {} to {}", rentId, rentState.getStatus(), newStatus);
+            throw new InvalidRentStatusException(ErrorMessages.INVALID_RENT_STATUS_CHANGE);
+        }
+
+        LOGGER.info("Changing status of rent {} to {} in database", rentId, newStatus);
+
+        // Change the status, only if it wasn't changed meanwhile
+        int updatedRows;
 
-        // Save the changes
         try {
-            rentRepository.save(rentEntity);
+            updatedRows = rentRepository.changeRentStatus(rentId, rentState.getStatus(), newStatus);
         } catch (Exception e) {
             LOGGER.error("Failed while updating rent status in database", e);
             throw new DatabaseCommunicationException(e);
         }
-        return RentEntityToRentDtoConverter.convert(rentEntity);
+
+        if (updatedRows == 0) {
+            LOGGER.error("Status of rent {} was changed by a concurrent request", rentId);
+            throw new InvalidRentStatusException(ErrorMessages.INVALID_RENT_STATUS_CHANGE);
+        }
+
+        // Release the booked period in the availability index and fleet calendar, once the change is committed
+        afterCommit(() -> {
+            resourceVersions.increment(ResourceCollection.RENTS);
+            rentIntervalIndex.removeRent(rentId);
+            fleetCalendar.refreshCarDays(rentState.getCarId(),
+                    rentState.getExpectedBeginDate(), rentState.getExpectedEndDate());
+            rentAggregates.removeRent(rentState.getCarSegment(), rentState.getExpectedBeginDate(),
+                    rentState.getExpectedEndDate(), rentState.getExpectedPrice());
+        });
+
+        RentDetailsDto rentDetails = RentStateToRentDtoConverter.convert(rentState);
+        rentDetails.setStatus(newStatus);
+
+        return rentDetails;
+    }
+
+    /**
+     * @see RentService#getOverdueRents(int)
+     */
+    @Override
+    public List<RentDetailsDto> getOverdueRents(int limit) {
+        LOGGER.debug("Getting {} overdue rents from database", limit);
+
+        try {
+            return rentRepository.findOverdueRents(new Date(),
+                    PageRequest.of(0, Math.max(1, Math.min(limit, maxPageSize))));
+        } catch (Exception e) {
+            LOGGER.error("Failed getting overdue rents from database", e);
+            throw new DatabaseCommunicationException(e);
+        }
     }
 
     /**
@@ -220,13 +602,23 @@ public class RentServiceImp implements RentService {
      */
     @Override
     public void deleteRent(long rentId) {
+        bookingSequencer.execute(() -> getCarIdByRentId(rentId), () -> {
+            processDeletion(rentId);
+            return null;
+        });
+    }
+
+    /**
+     * Delete the rent. Runs in the booking sequencer partition of the car
+     */
+    private void processDeletion(long rentId) {
         LOGGER.debug("Getting rent with id {} from database", rentId);
 
         // Get rent from database
         RentEntity rentEntity = getRentEntityById(rentId);
 
         // Verify if the car was already delivered
-        if (Objects.nonNull(rentEntity.getBeginDate())) {
+        if (rentEntity.getStatus() == RentStatus.ACTIVE || rentEntity.getStatus() == RentStatus.RETURNED) {
             LOGGER.error("Rent {} cannot be deleted after the car being picked", rentId);
             throw new InvalidRentStatusException(ErrorMessages.CAN_NOT_DELETE_CAR_ALREADY_DELIVERED);
         }
@@ -240,30 +632,170 @@ public class RentServiceImp implements RentService {
             LOGGER.error("Failed while deleting rent with id {} from database", rentId, e);
             throw new DatabaseCommunicationException(e);
         }
+
+        // Release the booked period in the availability index and fleet calendar, once the deletion is committed
+        afterCommit(() -> {
+            resourceVersions.increment(ResourceCollection.RENTS);
+            rentIntervalIndex.removeRent(rentId);
+            fleetCalendar.refreshCarDays(rentEntity.getCarEntity().getCarId(),
+                    rentEntity.getExpectedBeginDate(), rentEntity.getExpectedEndDate());
+
+            // Cancelled and no-show rents were already removed from the aggregates
+            if (rentEntity.getStatus() == RentStatus.RESERVED) {
+                rentAggregates.removeRent(rentEntity.getCarEntity().getCarSegment(), rentEntity.getExpectedBeginDate(),
+                        rentEntity.getExpectedEndDate(), rentEntity.getExpectedPrice());
+            }
+        });
     }
 
     /**
-     * Helper method to calculate the price considering the begin date, end date and the daily price
+     * Helper method to check if the car will be available between the given dates.
+     * Uses the in-memory index when enabled, and the database otherwise or to cross-check the index
      *
-     * @param beingDate
+     * @param carId
+     * @param beginDate
      * @param endDate
-     * @param dailyPrice
-     * @return {@link BigDecimal} the total price
+     * @return true if available and false if not
      */
-    private BigDecimal calculatePrice(Date beingDate, Date endDate, BigDecimal dailyPrice) {
-        // Convert to LocalDate
-        LocalDate beginLocalDate = LocalDate.ofInstant(beingDate.toInstant(), ZoneId.systemDefault());
-        LocalDate endLocalDate = LocalDate.ofInstant(endDate.toInstant(), ZoneId.systemDefault());
+    private boolean isCarAvailableBetweenDates(long carId, Date beginDate, Date endDate) {
+        if (!rentIntervalIndex.isEnabled()) {
+            return rentRepository.isCarAvailableBetweenDates(carId, beginDate, endDate);
+        }
 
-        // Get difference between beginDate & endDate in days
-        long numOfDaysBetween = ChronoUnit.DAYS.between(beginLocalDate, endLocalDate);
+        boolean carAvailable = rentIntervalIndex.isCarAvailableBetweenDates(carId, beginDate, endDate);
+
+        if (rentIntervalIndex.isVerify()) {
+            boolean carAvailableInDatabase = rentRepository.isCarAvailableBetweenDates(carId, beginDate, endDate);
+
+            if (carAvailable != carAvailableInDatabase) {
+                LOGGER.error("Rent index mismatch for car {} between dates {} - {}. Index: {}, database: {}",
+                        carId, beginDate, endDate, carAvailable, carAvailableInDatabase);
+                return carAvailableInDatabase;
+            }
+        }
+
+        return carAvailable;
+    }
+
+    /**
+     * Helper method to get the car of a rent, from the availability index when possible
+     *
+     * @param rentId
+     * @return the car id
+     */
+    private long getCarIdByRentId(long rentId) {
+        Long carId = rentIntervalIndex.getCarId(rentId);
+
+        if (carId != null) {
+            return carId;
+        }
 
-        // Calculate and return the totalCost
-        return dailyPrice.multiply(BigDecimal.valueOf(numOfDaysBetween != 0L ? numOfDaysBetween : 1L));
+        return rentRepository.findCarIdByRentId(rentId)
+                .orElseThrow(() -> {
+                    LOGGER.error("The rent with id {} does not exist in the database", rentId);
+                    return new RentNotFoundException();
+                });
+    }
+
+    /**
+     * Helper method to get the booked periods of the given cars overlapping the dates with a single query
+     *
+     * @param carIds
+     * @param beginDate
+     * @param endDate
+     * @return the booked periods, as begin and end epoch millis, by car id
+     */
+    private Map<Long, List<long[]>> getBookedPeriodsBetweenDates(Collection<Long> carIds, Date beginDate, Date endDate) {
+        Map<Long, List<long[]>> bookedPeriods = new HashMap<>();
+
+        try {
+            for (RentIntervalProjection rent : rentRepository.findRentIntervalsOfCarsBetweenDates(carIds, beginDate, endDate)) {
+                bookedPeriods.computeIfAbsent(rent.getCarId(), carId -> new ArrayList<>())
+                        .add(new long[]{rent.getBeginDate().getTime(), rent.getEndDate().getTime()});
+            }
+        } catch (Exception e) {
+            LOGGER.error("Failed getting booked periods of cars {} from database", carIds, e);
+            throw new DatabaseCommunicationException(e);
+        }
+
+        return bookedPeriods;
+    }
+
+    /**
+     * Helper method to run the guarded updates of a rent transition in one transaction.
+     * A guard that fails throws, which rolls back the updates already made
+     *
+     * @param updates
+     */
+    private void executeGuardedUpdates(Runnable updates) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> updates.run());
+        } catch (RentacarApiException e) {
+            throw e;
+        } catch (Exception e) {
+            LOGGER.error("Failed while updating rent status in database", e);
+            throw new DatabaseCommunicationException(e);
+        }
+    }
+
+    /**
+     * Helper method to update the in-memory state after the changes of a rent command are committed.
+     * With the booking sequencer the command runs in a transaction, which may still fail to commit after
+     * the command returned. Without one, the changes were already committed and the update runs now
+     *
+     * @param update
+     */
+    private void afterCommit(Runnable update) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            update.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                update.run();
+            }
+        });
+    }
+
+    /**
+     * Helper method to set the result of the items of a car whose rents were not committed.
+     * Items refused before saving keep their result
+     *
+     * @param indexes
+     * @param results
+     * @param status
+     * @param message
+     */
+    private void setFailedBatchItemResults(List<Integer> indexes, RentBatchItemResultDto[] results,
+                                           HttpStatus status, String message) {
+        for (int index : indexes) {
+            if (results[index] == null || results[index].getStatus() == HttpStatus.CREATED.value()) {
+                results[index] = buildBatchItemResult(index, status, message, null);
+            }
+        }
+    }
+
+    private RentBatchItemResultDto buildBatchItemResult(int index, HttpStatus status, String message, RentDetailsDto rent) {
+        return RentBatchItemResultDto.builder()
+                .index(index)
+                .status(status.value())
+                .message(message)
+                .rent(rent)
+                .build();
+    }
+
+    private RentStateProjection getRentStateById(long rentId) {
+        return rentRepository.findRentStateById(rentId)
+                .orElseThrow(() -> {
+                    LOGGER.error("The rent with id {} does not exist in the database", rentId);
+                    return new RentNotFoundException();
+                });
     }
 
     protected RentEntity getRentEntityById(long rentId) {
-        return rentRepository.findById(rentId)
+        return rentRepository.findWithCarAndUserByRentId(rentId)
                 .orElseThrow(() -> {
                     LOGGER.error("The rent with id {} does not exist in the database", rentId);
                     return new RentNotFoundException();
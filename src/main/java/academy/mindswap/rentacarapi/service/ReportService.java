@@ -0,0 +1,32 @@
+package academy.mindswap.rentacarapi.service;
+
+import academy.mindswap.rentacarapi.command.report.OccupancyReportDto;
+import academy.mindswap.rentacarapi.command.report.RevenueReportDto;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Common interface for report services, provides methods to get management reports
+ */
+public interface ReportService {
+
+    /**
+     * Get the revenue per segment and day
+     * @param from first day
+     * @param to last day
+     * @param carSegments segments to include, all if empty
+     * @return list of {@link RevenueReportDto} sorted by day and segment
+     */
+    List<RevenueReportDto> getRevenue(LocalDate from, LocalDate to, List<CarSegment> carSegments);
+
+    /**
+     * Get the occupancy per segment and day, over the current number of cars of each segment
+     * @param from first day
+     * @param to last day
+     * @param carSegments segments to include, all if empty
+     * @return list of {@link OccupancyReportDto} sorted by day and segment
+     */
+    List<OccupancyReportDto> getOccupancy(LocalDate from, LocalDate to, List<CarSegment> carSegments);
+}
@@ -0,0 +1,109 @@
+package academy.mindswap.rentacarapi.service;
+
+import academy.mindswap.rentacarapi.command.report.OccupancyReportDto;
+import academy.mindswap.rentacarapi.command.report.RevenueReportDto;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.exception.DatabaseCommunicationException;
+import academy.mindswap.rentacarapi.exception.InvalidDateRangeException;
+import academy.mindswap.rentacarapi.persistence.projection.SegmentCountProjection;
+import academy.mindswap.rentacarapi.persistence.repository.CarRepository;
+import academy.mindswap.rentacarapi.report.RentAggregates;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * An {@link ReportService} implementation backed by the incrementally maintained {@link RentAggregates}
+ */
+@Service
+public class ReportServiceImp implements ReportService {
+
+    private static final Logger LOGGER = LogManager.getLogger(ReportServiceImp.class);
+
+    private final RentAggregates rentAggregates;
+    private final CarRepository carRepository;
+    private final int maxReportDays;
+
+    public ReportServiceImp(RentAggregates rentAggregates, CarRepository carRepository,
+                            @Value("${rentacar.reports.max-days:366}") int maxReportDays) {
+        this.rentAggregates = rentAggregates;
+        this.carRepository = carRepository;
+        this.maxReportDays = maxReportDays;
+    }
+
+    /**
+     * @see ReportService#getRevenue(LocalDate, LocalDate, List)
+     */
+    @Override
+    public List<RevenueReportDto> getRevenue(LocalDate from, LocalDate to, List<CarSegment> carSegments) {
+        LOGGER.debug("Getting revenue between {} - {} from rent aggregates", from, to);
+
+        Collection<CarSegment> segments = getSegments(from, to, carSegments);
+        List<RevenueReportDto> revenueList = new ArrayList<>();
+
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            for (CarSegment carSegment : segments) {
+                revenueList.add(RevenueReportDto.builder()
+                        .day(day)
+                        .carSegment(carSegment)
+                        .revenue(BigDecimal.valueOf(rentAggregates.getRevenue(day, carSegment), 2))
+                        .build());
+            }
+        }
+
+        return revenueList;
+    }
+
+    /**
+     * @see ReportService#getOccupancy(LocalDate, LocalDate, List)
+     */
+    @Override
+    public List<OccupancyReportDto> getOccupancy(LocalDate from, LocalDate to, List<CarSegment> carSegments) {
+        LOGGER.debug("Getting occupancy between {} - {} from rent aggregates", from, to);
+
+        Collection<CarSegment> segments = getSegments(from, to, carSegments);
+        Map<CarSegment, Long> fleetCars = new EnumMap<>(CarSegment.class);
+
+        try {
+            for (SegmentCountProjection segmentCount : carRepository.countCarsBySegment()) {
+                fleetCars.put(segmentCount.getCarSegment(), segmentCount.getCars());
+            }
+        } catch (Exception e) {
+            LOGGER.error("Failed counting cars by segment in database", e);
+            throw new DatabaseCommunicationException(e);
+        }
+
+        List<OccupancyReportDto> occupancyList = new ArrayList<>();
+
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            for (CarSegment carSegment : segments) {
+                long bookedCars = rentAggregates.getBookedCars(day, carSegment);
+                long segmentCars = fleetCars.getOrDefault(carSegment, 0L);
+
+                occupancyList.add(OccupancyReportDto.builder()
+                        .day(day)
+                        .carSegment(carSegment)
+                        .bookedCars(bookedCars)
+                        .fleetCars(segmentCars)
+                        .occupancy(segmentCars == 0 ? 0 : (double) bookedCars / segmentCars)
+                        .build());
+            }
+        }
+
+        return occupancyList;
+    }
+
+    private Collection<CarSegment> getSegments(LocalDate from, LocalDate to, List<CarSegment> carSegments) {
+        if (from.isAfter(to) || from.plusDays(maxReportDays).isBefore(to)) {
+            LOGGER.error("Invalid date range {} - {} to get reports", from, to);
+            throw new InvalidDateRangeException();
+        }
+
+        return carSegments == null || carSegments.isEmpty() ? EnumSet.allOf(CarSegment.class) : EnumSet.copyOf(carSegments);
+    }
+}
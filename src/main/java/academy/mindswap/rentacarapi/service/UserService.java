@@ -1,6 +1,8 @@
 package academy.mindswap.rentacarapi.service;
 
+import academy.mindswap.rentacarapi.command.user.ChangePasswordDto;
 import academy.mindswap.rentacarapi.command.user.CreateOrUpdateUserDto;
+import academy.mindswap.rentacarapi.command.user.UpdateUserProfileDto;
 import academy.mindswap.rentacarapi.command.user.UserDetailsDto;
 
 import java.util.List;
@@ -24,6 +26,13 @@ public interface UserService {
      */
     UserDetailsDto getUserById(long userId);
 
+    /**
+     * Get the version of a user, from the cache when possible
+     * @param userId user we want to find
+     * @return the entity version
+     */
+    int getUserVersion(long userId);
+
     /**
      * Get a list with all users
      * @return a list with {@link UserDetailsDto}
@@ -43,4 +52,27 @@ public interface UserService {
      * @return user details updated
      */
     UserDetailsDto updateUser(long userId, CreateOrUpdateUserDto updateUserDto);
+
+    /**
+     * Update the given user profile fields, without touching the password
+     * @param userId user to be updated
+     * @param updateUserProfileDto fields to update, null fields are kept
+     * @return user details updated
+     */
+    UserDetailsDto updateUserProfile(long userId, UpdateUserProfileDto updateUserProfileDto);
+
+    /**
+     * Hash and save a new user password
+     * @param userId user to be updated
+     * @param changePasswordDto the new password
+     */
+    void changePassword(long userId, ChangePasswordDto changePasswordDto);
+
+    /**
+     * Replace the password hash of a user after a successful login, when the hash was made with an
+     * older cost factor. Failures are only logged, the hash is upgraded on a later login
+     * @param email the user email
+     * @param encodedPassword the same password hashed with the current cost factor
+     */
+    void upgradePasswordHash(String email, String encodedPassword);
 }
@@ -1,16 +1,23 @@
 package academy.mindswap.rentacarapi.service;
 
+import academy.mindswap.rentacarapi.cache.ResourceVersions;
+import academy.mindswap.rentacarapi.cache.VersionedEntityCache;
+import academy.mindswap.rentacarapi.command.user.ChangePasswordDto;
 import academy.mindswap.rentacarapi.command.user.CreateOrUpdateUserDto;
+import academy.mindswap.rentacarapi.command.user.UpdateUserProfileDto;
 import academy.mindswap.rentacarapi.command.user.UserAuthenticatedDto;
 import academy.mindswap.rentacarapi.command.user.UserDetailsDto;
 import academy.mindswap.rentacarapi.converter.UserDtoToUserEntityConverter;
 import academy.mindswap.rentacarapi.converter.UserEntityToUserDtoConverter;
+import academy.mindswap.rentacarapi.enumerator.ResourceCollection;
 import academy.mindswap.rentacarapi.exception.AuthenticationFailureException;
 import academy.mindswap.rentacarapi.exception.DatabaseCommunicationException;
 import academy.mindswap.rentacarapi.exception.UserAlreadyExistsException;
 import academy.mindswap.rentacarapi.exception.UserNotFoundException;
 import academy.mindswap.rentacarapi.persistence.entity.UserEntity;
 import academy.mindswap.rentacarapi.persistence.repository.UserRepository;
+import academy.mindswap.rentacarapi.security.CachingAuthenticationProvider;
+import academy.mindswap.rentacarapi.security.RegisteredEmailFilter;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,9 +26,7 @@ import org.springframework.security.authentication.event.AuthenticationFailureBa
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 
 /**
  * An {@link UserService} implementation
@@ -31,10 +36,23 @@ public class UserServiceImp implements UserService {
 
     private static final Logger LOGGER = LogManager.getLogger(UserServiceImp.class);
     private final UserRepository userRepository;
+    private final VersionedEntityCache<Long, UserEntity> userEntityCache;
+    private final VersionedEntityCache<String, UserEntity> principalCache;
+    private final ResourceVersions resourceVersions;
+    private final CachingAuthenticationProvider basicAuthenticationProvider;
+    private final RegisteredEmailFilter registeredEmailFilter;
     private PasswordEncoder passwordEncoder;
 
-    public UserServiceImp(UserRepository userRepository) {
+    public UserServiceImp(UserRepository userRepository, VersionedEntityCache<Long, UserEntity> userEntityCache,
+                          VersionedEntityCache<String, UserEntity> principalCache, ResourceVersions resourceVersions,
+                          CachingAuthenticationProvider basicAuthenticationProvider,
+                          RegisteredEmailFilter registeredEmailFilter) {
         this.userRepository = userRepository;
+        this.userEntityCache = userEntityCache;
+        this.principalCache = principalCache;
+        this.resourceVersions = resourceVersions;
+        this.basicAuthenticationProvider = basicAuthenticationProvider;
+        this.registeredEmailFilter = registeredEmailFilter;
     }
 
     /**
@@ -43,6 +61,12 @@ public class UserServiceImp implements UserService {
     @Override
     public UserDetailsDto createUser(CreateOrUpdateUserDto userRegistrationDto) {
 
+        // Reject duplicated emails before hashing the password. Emails the filter rules out skip the query
+        if (registeredEmailFilter.mightContain(userRegistrationDto.getEmail()) && isEmailRegistered(userRegistrationDto.getEmail())) {
+            LOGGER.error("Duplicated email - {}", userRegistrationDto.getEmail());
+            throw new UserAlreadyExistsException();
+        }
+
         // Build UserEntity
         UserEntity userEntity = UserDtoToUserEntityConverter.convert(userRegistrationDto);
 
@@ -66,6 +90,9 @@ public class UserServiceImp implements UserService {
             throw new DatabaseCommunicationException(e);
         }
 
+        registeredEmailFilter.addEmail(createdUser.getEmail());
+        resourceVersions.increment(ResourceCollection.USERS);
+
         // Build UserDetailsDto to return to the client
         return UserEntityToUserDtoConverter.convert(createdUser);
     }
@@ -84,6 +111,14 @@ public class UserServiceImp implements UserService {
         return UserEntityToUserDtoConverter.convert(userEntity);
     }
 
+    /**
+     * @see UserService#getUserVersion(long)
+     */
+    @Override
+    public int getUserVersion(long userId) {
+        return getCachedUserEntityById(userId).getVersion();
+    }
+
     /**
      * @see UserService#getUsersList()
      */
@@ -125,6 +160,13 @@ public class UserServiceImp implements UserService {
             LOGGER.error("Failed while deleting user with id {} from database", userId, e);
             throw new DatabaseCommunicationException(e);
         }
+
+        userEntityCache.invalidateDeleted(userId);
+        // Loads that started before the delete are not cached, a new user with the email is cached once updated
+        principalCache.invalidate(user.getEmail(), user.getVersion() + 1);
+        basicAuthenticationProvider.invalidate(user.getEmail());
+        registeredEmailFilter.removeEmail(user.getEmail());
+        resourceVersions.increment(ResourceCollection.USERS);
     }
 
     /**
@@ -137,6 +179,8 @@ public class UserServiceImp implements UserService {
         // Verify if the user exists
         UserEntity userEntity = getUserEntityById(userId);
 
+        String previousEmail = userEntity.getEmail();
+
         // Update data with userDetails received
         userEntity.setFirstName(updateUserDto.getFirstName());
         userEntity.setLastName(updateUserDto.getLastName());
@@ -144,15 +188,143 @@ public class UserServiceImp implements UserService {
         userEntity.setLicenseId(updateUserDto.getLicenseId());
         userEntity.setPassword(passwordEncoder.encode(updateUserDto.getPassword()));
 
-        // Save changes
+        UserEntity updatedUser = saveUpdatedUser(userEntity, previousEmail, true);
+
+        return UserEntityToUserDtoConverter.convert(updatedUser);
+    }
+
+    /**
+     * @see UserService#updateUserProfile(long, UpdateUserProfileDto)
+     */
+    @Override
+    public UserDetailsDto updateUserProfile(long userId, UpdateUserProfileDto updateUserProfileDto) {
+        LOGGER.debug("Verifying if user with id {} exists in database", userId);
+
+        UserEntity userEntity = getUserEntityById(userId);
+
+        String previousEmail = userEntity.getEmail();
+
+        // Only the fields received, the password hash is kept as is
+        if (updateUserProfileDto.getFirstName() != null) {
+            userEntity.setFirstName(updateUserProfileDto.getFirstName());
+        }
+        if (updateUserProfileDto.getLastName() != null) {
+            userEntity.setLastName(updateUserProfileDto.getLastName());
+        }
+        if (updateUserProfileDto.getLicenseId() != null) {
+            userEntity.setLicenseId(updateUserProfileDto.getLicenseId());
+        }
+        if (updateUserProfileDto.getEmail() != null) {
+            userEntity.setEmail(updateUserProfileDto.getEmail());
+        }
+
+        UserEntity updatedUser = saveUpdatedUser(userEntity, previousEmail, false);
+
+        return UserEntityToUserDtoConverter.convert(updatedUser);
+    }
+
+    /**
+     * @see UserService#changePassword(long, ChangePasswordDto)
+     */
+    @Override
+    public void changePassword(long userId, ChangePasswordDto changePasswordDto) {
+        LOGGER.debug("Verifying if user with id {} exists in database", userId);
+
+        UserEntity userEntity = getUserEntityById(userId);
+
+        userEntity.setPassword(passwordEncoder.encode(changePasswordDto.getPassword()));
+
+        saveUpdatedUser(userEntity, userEntity.getEmail(), true);
+    }
+
+    /**
+     * @see UserService#upgradePasswordHash(String, String)
+     */
+    @Override
+    public void upgradePasswordHash(String email, String encodedPassword) {
+        try {
+            userRepository.findByEmail(email).ifPresent(userEntity -> {
+                userEntity.setPassword(encodedPassword);
+                saveUpdatedUser(userEntity, email, false);
+                LOGGER.info("Upgraded the password hash of user with id {}", userEntity.getUserId());
+            });
+        } catch (Exception e) {
+            LOGGER.warn("Failed while upgrading the password hash of user with email {}", email, e);
+        }
+    }
+
+    /**
+     * Save the changes of a user and invalidate everything cached about it
+     * @param userEntity the changed user
+     * @param previousEmail the email before the change
+     * @param passwordChanged if cached basic authentications and access tokens issued with the old password
+     *                        must stop working
+     * @return the saved user
+     */
+    private UserEntity saveUpdatedUser(UserEntity userEntity, String previousEmail, boolean passwordChanged) {
+        UserEntity updatedUser;
+
+        if (passwordChanged) {
+            userEntity.setTokenVersion(userEntity.getTokenVersion() + 1);
+        }
+
         try {
-            userRepository.save(userEntity);
+            updatedUser = userRepository.save(userEntity);
+        } catch (DataIntegrityViolationException e) {
+            LOGGER.error("Duplicated email - {}", userEntity.getEmail(), e);
+            throw new UserAlreadyExistsException();
         } catch (Exception e) {
-            LOGGER.error("Failed while updating user with id {} in database with new data - {}", userId, userEntity, e);
+            LOGGER.error("Failed while updating user with id {} in database with new data - {}",
+                    userEntity.getUserId(), userEntity, e);
             throw new DatabaseCommunicationException(e);
         }
 
-        return UserEntityToUserDtoConverter.convert(userEntity);
+        userEntityCache.invalidate(updatedUser.getUserId(), updatedUser.getVersion());
+        principalCache.invalidate(previousEmail, updatedUser.getVersion());
+        principalCache.invalidate(updatedUser.getEmail(), updatedUser.getVersion());
+
+        if (passwordChanged || !previousEmail.equals(updatedUser.getEmail())) {
+            basicAuthenticationProvider.invalidate(previousEmail);
+            basicAuthenticationProvider.invalidate(updatedUser.getEmail());
+        }
+
+        if (!previousEmail.equals(updatedUser.getEmail())) {
+            registeredEmailFilter.addEmail(updatedUser.getEmail());
+            registeredEmailFilter.removeEmail(previousEmail);
+        }
+
+        resourceVersions.increment(ResourceCollection.USERS);
+
+        return updatedUser;
+    }
+
+    protected Map<Long, UserEntity> getUserEntitiesByIds(Collection<Long> userIds) {
+        Map<Long, UserEntity> userEntities = new HashMap<>();
+
+        try {
+            for (UserEntity user : userRepository.findAllById(userIds)) {
+                userEntities.put(user.getUserId(), user);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Failed getting users {} from database", userIds, e);
+            throw new DatabaseCommunicationException(e);
+        }
+
+        return userEntities;
+    }
+
+    /**
+     * Get user from the cache, loading it from database on a miss.
+     * The returned entity is shared and must not be modified
+     * @param userId
+     * @return {@link UserEntity}
+     */
+    protected UserEntity getCachedUserEntityById(long userId) {
+        return userEntityCache.get(userId, userRepository::findById)
+                .orElseThrow(() -> {
+                    LOGGER.error("The user with id {} does not exist in the database", userId);
+                    return new UserNotFoundException();
+                });
     }
 
     protected UserEntity getUserEntityById(long userId) {
@@ -174,14 +346,44 @@ public class UserServiceImp implements UserService {
 
     }*/
 
+    /**
+     * Get user by email from the principal cache, loading it from database on a miss.
+     * The returned entity is shared and must not be modified
+     * @param email
+     * @return {@link UserEntity}
+     */
     protected UserEntity findUserByEmail(String email){
-        return userRepository.findByEmail(email)
+        // Most unknown emails are ruled out without going to the database
+        if (!registeredEmailFilter.mightContain(email)) {
+            LOGGER.error("The user with email {} is not registered", email);
+            throw new UserNotFoundException();
+        }
+
+        return principalCache.get(email, userRepository::findByEmail)
                 .orElseThrow(() -> {
+                    registeredEmailFilter.recordFalsePositive();
                     LOGGER.error("The user with email {} does not exist in the database", email);
                     return new UserNotFoundException();
                 });
     }
 
+    private boolean isEmailRegistered(String email) {
+        boolean registered;
+
+        try {
+            registered = userRepository.existsByEmail(email);
+        } catch (Exception e) {
+            LOGGER.error("Failed while checking if email {} is registered", email, e);
+            throw new DatabaseCommunicationException(e);
+        }
+
+        if (!registered) {
+            registeredEmailFilter.recordFalsePositive();
+        }
+
+        return registered;
+    }
+
     @Autowired
     public void setPasswordEncoder(PasswordEncoder passwordEncoder) {
         this.passwordEncoder = passwordEncoder;
@@ -0,0 +1,132 @@
+package academy.mindswap.rentacarapi;
+
+import academy.mindswap.rentacarapi.persistence.repository.UserRepository;
+import academy.mindswap.rentacarapi.security.AccessTokenProvider;
+import academy.mindswap.rentacarapi.service.UserService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Asserts that the token issued on login authenticates the following requests with the user role,
+ * and that tampered, expired or revoked tokens are rejected
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class AccessTokenTests {
+
+    private static final String USER = "{\"firstName\":\"Ana\",\"lastName\":\"Silva\",\"licenseId\":\"AT-001\"," +
+            "\"email\":\"token@rentacar.pt\",\"password\":\"secret123\"}";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @AfterEach
+    void tearDown() {
+        userRepository.findAll().forEach(user -> userService.deleteUser(user.getUserId()));
+    }
+
+    @Test
+    void loginIssuesTokenAcceptedAsBearerCredentials() throws Exception {
+        mockMvc.perform(post("/api/users").contentType(MediaType.APPLICATION_JSON).content(USER))
+                .andExpect(status().isCreated());
+
+        JsonNode login = objectMapper.readTree(mockMvc.perform(post("/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"token@rentacar.pt\",\"password\":\"secret123\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString());
+
+        String token = login.get("accessToken").asText();
+        assertEquals("Bearer", login.get("tokenType").asText());
+        assertEquals("token@rentacar.pt", login.get("user").get("email").asText());
+
+        mockMvc.perform(get("/api/cars").header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(status().isOk());
+        // A customer token is no admin token
+        mockMvc.perform(delete("/api/cars/{carId}", 1).header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/users").header(HttpHeaders.AUTHORIZATION, "Bearer " + token))
+                .andExpect(status().isForbidden());
+
+        int signatureChar = token.length() - 10;
+        String tampered = token.substring(0, signatureChar) + (token.charAt(signatureChar) == 'A' ? 'B' : 'A') +
+                token.substring(signatureChar + 1);
+
+        mockMvc.perform(get("/api/cars").header(HttpHeaders.AUTHORIZATION, "Bearer " + tampered))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void passwordChangeOrDeletionRevokesIssuedTokens() throws Exception {
+        long userId = objectMapper.readTree(mockMvc.perform(post("/api/users")
+                        .contentType(MediaType.APPLICATION_JSON).content(USER))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString()).get("userId").asLong();
+
+        String firstToken = login("secret123");
+
+        mockMvc.perform(put("/api/users/{userId}/password", userId)
+                        .header(HttpHeaders.AUTHORIZATION, "Bearer " + firstToken)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"password\":\"changed123\"}"))
+                .andExpect(status().isNoContent());
+
+        mockMvc.perform(get("/api/users/{userId}", userId).header(HttpHeaders.AUTHORIZATION, "Bearer " + firstToken))
+                .andExpect(status().isUnauthorized());
+
+        String secondToken = login("changed123");
+        mockMvc.perform(get("/api/users/{userId}", userId).header(HttpHeaders.AUTHORIZATION, "Bearer " + secondToken))
+                .andExpect(status().isOk());
+
+        userService.deleteUser(userId);
+
+        mockMvc.perform(get("/api/cars").header(HttpHeaders.AUTHORIZATION, "Bearer " + secondToken))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void expiredTokenIsRejected() {
+        AccessTokenProvider expiring = new AccessTokenProvider(objectMapper, "", -1);
+        AccessTokenProvider valid = new AccessTokenProvider(objectMapper, "", 60);
+
+        assertTrue(expiring.verify(expiring.issue(1, "token@rentacar.pt", List.of("CUSTOMER"), 0)).isEmpty());
+        assertTrue(valid.verify(valid.issue(1, "token@rentacar.pt", List.of("CUSTOMER"), 0)).isPresent());
+        // Signed with a different random secret
+        assertTrue(valid.verify(expiring.issue(1, "token@rentacar.pt", List.of("CUSTOMER"), 0)).isEmpty());
+    }
+
+    private String login(String password) throws Exception {
+        return objectMapper.readTree(mockMvc.perform(post("/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"token@rentacar.pt\",\"password\":\"" + password + "\"}"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString()).get("accessToken").asText();
+    }
+}
@@ -0,0 +1,145 @@
+package academy.mindswap.rentacarapi;
+
+import academy.mindswap.rentacarapi.availability.FleetCalendar;
+import academy.mindswap.rentacarapi.command.car.CarDetailsDto;
+import academy.mindswap.rentacarapi.command.car.CreateOrUpdateCarDto;
+import academy.mindswap.rentacarapi.command.rent.CreateOrUpdateRentDto;
+import academy.mindswap.rentacarapi.command.user.CreateOrUpdateUserDto;
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.exception.CarNotAvailableException;
+import academy.mindswap.rentacarapi.persistence.entity.CarEntity;
+import academy.mindswap.rentacarapi.persistence.repository.CarRepository;
+import academy.mindswap.rentacarapi.persistence.repository.RentRepository;
+import academy.mindswap.rentacarapi.persistence.repository.UserRepository;
+import academy.mindswap.rentacarapi.service.CarService;
+import academy.mindswap.rentacarapi.service.RentService;
+import academy.mindswap.rentacarapi.service.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Asserts that the available cars answered from the fleet calendar are the ones found in the database,
+ * also after the calendar pruned its past days
+ */
+@SpringBootTest
+class AvailableCarsTests {
+
+    private static final ZoneId ZONE_ID = ZoneId.systemDefault();
+
+    @Autowired
+    private CarService carService;
+
+    @Autowired
+    private RentService rentService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Autowired
+    private RentRepository rentRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private FleetCalendar fleetCalendar;
+
+    @AfterEach
+    void tearDown() {
+        rentRepository.findAll().forEach(rent -> rentService.deleteRent(rent.getRentId()));
+        carRepository.findAll().forEach(car -> carService.deleteCar(car.getCarId()));
+        userRepository.findAll().forEach(user -> userService.deleteUser(user.getUserId()));
+    }
+
+    @Test
+    void fleetCalendarMatchesTheDatabase() {
+        Random random = new Random(42);
+        LocalDate today = LocalDate.now(ZONE_ID);
+        long userId = userService.createUser(CreateOrUpdateUserDto.builder()
+                .firstName("First")
+                .lastName("Last")
+                .licenseId("AC-001")
+                .email("available@rentacar.test")
+                .password("password")
+                .build()).getUserId();
+
+        List<Long> carIds = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            carIds.add(carService.addNewCar(CreateOrUpdateCarDto.builder()
+                    .brand(CarBrands.values()[random.nextInt(CarBrands.values().length)])
+                    .modelDescription("Model")
+                    .carSegment(CarSegment.values()[random.nextInt(CarSegment.values().length)])
+                    .dateOfPurchase(new Date())
+                    .plate(String.format("AC-%04d", i))
+                    .build()).getCarId());
+        }
+
+        for (int i = 0; i < 60; i++) {
+            LocalDate begin = today.plusDays(random.nextInt(30));
+
+            try {
+                long rentId = rentService.addNewRent(CreateOrUpdateRentDto.builder()
+                        .userId(userId)
+                        .carId(carIds.get(random.nextInt(carIds.size())))
+                        .expectedBeginDate(toDate(begin, 10))
+                        .expectedEndDate(toDate(begin.plusDays(random.nextInt(5)), 18))
+                        .build()).getRentId();
+
+                if (random.nextInt(5) == 0) {
+                    rentService.cancelRent(rentId);
+                }
+            } catch (CarNotAvailableException e) {
+                // Overlapping random rent
+            }
+        }
+
+        assertSameAvailableCars(random, today);
+
+        // Days before the first kept day are searched in the database
+        fleetCalendar.pruneDaysBefore(today.plusDays(10));
+        assertSameAvailableCars(random, today);
+    }
+
+    private void assertSameAvailableCars(Random random, LocalDate today) {
+        for (int i = 0; i < 100; i++) {
+            LocalDate from = today.plusDays(random.nextInt(35));
+            LocalDate to = from.plusDays(random.nextInt(7));
+            List<CarSegment> carSegments = random.nextBoolean()
+                    ? List.of() : List.of(CarSegment.values()[random.nextInt(CarSegment.values().length)]);
+
+            List<Long> expected = carRepository.findAvailableCarsBetweenDates(
+                            carSegments.isEmpty() ? EnumSet.allOf(CarSegment.class) : carSegments,
+                            EnumSet.allOf(CarBrands.class),
+                            toDate(from, 0),
+                            new Date(toDate(to.plusDays(1), 0).getTime() - 1)).stream()
+                    .map(CarEntity::getCarId)
+                    .collect(Collectors.toList());
+            List<Long> actual = carService.getAvailableCars(from, to, carSegments, List.of()).stream()
+                    .map(CarDetailsDto::getCarId)
+                    .collect(Collectors.toList());
+
+            assertEquals(expected, actual, from + " - " + to + " " + carSegments);
+        }
+    }
+
+    private static Date toDate(LocalDate day, int hour) {
+        return Date.from(day.atTime(hour, 0).atZone(ZONE_ID).toInstant());
+    }
+}
@@ -0,0 +1,195 @@
+package academy.mindswap.rentacarapi;
+
+import academy.mindswap.rentacarapi.availability.RentIntervalIndex;
+import academy.mindswap.rentacarapi.command.rent.CreateOrUpdateRentDto;
+import academy.mindswap.rentacarapi.command.rent.RentBatchItemResultDto;
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.exception.CarNotAvailableException;
+import academy.mindswap.rentacarapi.persistence.entity.CarEntity;
+import academy.mindswap.rentacarapi.persistence.entity.RentEntity;
+import academy.mindswap.rentacarapi.persistence.entity.UserEntity;
+import academy.mindswap.rentacarapi.persistence.repository.CarRepository;
+import academy.mindswap.rentacarapi.persistence.repository.RentRepository;
+import academy.mindswap.rentacarapi.persistence.repository.UserRepository;
+import academy.mindswap.rentacarapi.service.RentService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Asserts that rents booked in a batch are sequenced with the single rents of the same car,
+ * and that a car whose rents fail to be saved doesn't fail the cars committed before it
+ */
+@SpringBootTest(properties = {
+        "rentacar.booking-sequencer.enabled=true",
+        "rentacar.booking-sequencer.partitions=4"
+})
+class BookingConcurrencyTests {
+
+    private static final int ROUNDS = 50;
+
+    @Autowired
+    private RentService rentService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Autowired
+    private RentRepository rentRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private RentIntervalIndex rentIntervalIndex;
+
+    private UserEntity user;
+    private CarEntity car;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(UserEntity.builder()
+                .firstName("First")
+                .lastName("Last")
+                .licenseId("BC-001")
+                .email("concurrency@rentacar.test")
+                .password("password")
+                .build());
+
+        car = carRepository.save(CarEntity.builder()
+                .brand(CarBrands.SEAT)
+                .modelDescription("Ibiza")
+                .carSegment(CarSegment.SMALL)
+                .dateOfPurchase(new Date())
+                .plate("BC-00-01")
+                .available(true)
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("ALTER TABLE rents DROP CONSTRAINT IF EXISTS failing_car");
+        rentRepository.deleteAll();
+        carRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void batchAndSingleRentNeverDoubleBookACar() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                CreateOrUpdateRentDto rent = rent(round);
+                CountDownLatch start = new CountDownLatch(1);
+
+                Future<Boolean> batchBooked = executor.submit(() -> {
+                    start.await();
+                    List<RentBatchItemResultDto> results = rentService.addNewRents(List.of(rent));
+                    return results.get(0).getStatus() == HttpStatus.CREATED.value();
+                });
+                Future<Boolean> singleBooked = executor.submit(() -> {
+                    start.await();
+                    try {
+                        rentService.addNewRent(rent);
+                        return true;
+                    } catch (CarNotAvailableException e) {
+                        return false;
+                    }
+                });
+
+                start.countDown();
+
+                assertEquals(1, (batchBooked.get() ? 1 : 0) + (singleBooked.get() ? 1 : 0), "Round " + round);
+                assertEquals(1, countRentsOfCarAt(rent.getExpectedBeginDate()), "Round " + round);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void overlappingRentsOfOneBatchAreRefused() {
+        CreateOrUpdateRentDto rent = rent(0);
+
+        List<RentBatchItemResultDto> results = rentService.addNewRents(List.of(rent, rent));
+
+        assertEquals(HttpStatus.CREATED.value(), results.get(0).getStatus());
+        assertEquals(HttpStatus.CONFLICT.value(), results.get(1).getStatus());
+        assertEquals(1, countRentsOfCarAt(rent.getExpectedBeginDate()));
+    }
+
+    @Test
+    void failedCarOfABatchKeepsTheCommittedCars() {
+        CarEntity otherCar = carRepository.save(CarEntity.builder()
+                .brand(CarBrands.SEAT)
+                .modelDescription("Leon")
+                .carSegment(CarSegment.SMALL)
+                .dateOfPurchase(new Date())
+                .plate("BC-00-02")
+                .available(true)
+                .build());
+        CreateOrUpdateRentDto rent = rent(0);
+        CreateOrUpdateRentDto otherCarRent = rent(0);
+        otherCarRent.setCarId(otherCar.getCarId());
+
+        // The database refuses the rents of the other car
+        jdbcTemplate.execute("ALTER TABLE rents ADD CONSTRAINT failing_car CHECK (car_id <> " + otherCar.getCarId() + ")");
+
+        List<RentBatchItemResultDto> results = rentService.addNewRents(List.of(rent, otherCarRent));
+
+        assertEquals(HttpStatus.CREATED.value(), results.get(0).getStatus());
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR.value(), results.get(1).getStatus());
+        assertEquals(1, rentRepository.count());
+        assertFalse(rentIntervalIndex.isCarAvailableBetweenDates(car.getCarId(),
+                rent.getExpectedBeginDate(), rent.getExpectedEndDate()));
+        assertTrue(rentIntervalIndex.isCarAvailableBetweenDates(otherCar.getCarId(),
+                otherCarRent.getExpectedBeginDate(), otherCarRent.getExpectedEndDate()));
+
+        // Only the failed item is retried
+        jdbcTemplate.execute("ALTER TABLE rents DROP CONSTRAINT failing_car");
+        results = rentService.addNewRents(List.of(otherCarRent));
+
+        assertEquals(HttpStatus.CREATED.value(), results.get(0).getStatus());
+        assertEquals(2, rentRepository.count());
+    }
+
+    private CreateOrUpdateRentDto rent(int round) {
+        long begin = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(3L * round + 1);
+
+        return CreateOrUpdateRentDto.builder()
+                .userId(user.getUserId())
+                .carId(car.getCarId())
+                .expectedBeginDate(new Date(begin))
+                .expectedEndDate(new Date(begin + TimeUnit.DAYS.toMillis(2)))
+                .build();
+    }
+
+    private long countRentsOfCarAt(Date date) {
+        return StreamSupport.stream(rentRepository.findAll().spliterator(), false)
+                .map(RentEntity::getExpectedBeginDate)
+                .filter(beginDate -> beginDate.getTime() == date.getTime())
+                .count();
+    }
+}
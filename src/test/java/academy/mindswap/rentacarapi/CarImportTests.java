@@ -0,0 +1,101 @@
+package academy.mindswap.rentacarapi;
+
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.persistence.entity.CarEntity;
+import academy.mindswap.rentacarapi.persistence.repository.CarRepository;
+import academy.mindswap.rentacarapi.service.CarService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Asserts that the car import inserts the valid rows and reports each rejected row
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class CarImportTests {
+
+    private static final String AUTHORIZATION = "Basic " + Base64.getEncoder()
+            .encodeToString("admin:Caceteiros123".getBytes(StandardCharsets.UTF_8));
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Autowired
+    private CarService carService;
+
+    @AfterEach
+    void tearDown() {
+        carRepository.findAll().forEach(car -> carService.deleteCar(car.getCarId()));
+    }
+
+    @Test
+    void importCsvInsertsValidRowsAndReportsRejectedRows() throws Exception {
+        // Saved without going through the plate index, only the database knows it
+        carRepository.save(CarEntity.builder()
+                .brand(CarBrands.SEAT)
+                .modelDescription("Ibiza")
+                .carSegment(CarSegment.SMALL)
+                .dateOfPurchase(new Date())
+                .plate("IM-00-00")
+                .available(true)
+                .build());
+
+        String csv = "brand,modelDescription,carSegment,dateOfPurchase,plate\n" +
+                "SEAT,Leon,FAMILY,2021-01-15,IM-00-01\n" +
+                "toyota,\"Yaris, hybrid\",small,,IM-00-02\n" +
+                "SEAT,Leon,FAMILY,2021-01-15,im 00 01\n" +
+                "LADA,Niva,SUV,2021-01-15,IM-00-03\n" +
+                "SEAT,Leon,FAMILY,2021-01-15,\n" +
+                "SEAT,Ibiza,SMALL,2021-01-15,IM-00-00\n";
+
+        mockMvc.perform(post("/api/cars/import")
+                        .param("format", "csv")
+                        .header(HttpHeaders.AUTHORIZATION, AUTHORIZATION)
+                        .content(csv))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.importedCars").value(2))
+                .andExpect(jsonPath("$.rejectedRows").value(4))
+                .andExpect(jsonPath("$.errors[0].line").value(4))
+                .andExpect(jsonPath("$.errors[1].line").value(5))
+                .andExpect(jsonPath("$.errors[2].line").value(6))
+                .andExpect(jsonPath("$.errors[3].line").value(7));
+
+        assertEquals(3, carRepository.count());
+        assertTrue(carRepository.findByPlate("IM-00-02").isPresent());
+        assertEquals("Yaris, hybrid", carService.getCarByPlate("IM0002").getModelDescription());
+    }
+
+    @Test
+    void importNdjsonInsertsValidRows() throws Exception {
+        String ndjson = "{\"brand\":\"AUDI\",\"modelDescription\":\"A4\",\"carSegment\":\"PREMIUM\",\"plate\":\"IM-01-01\"}\n" +
+                "{\"brand\":\"AUDI\",\"modelDescription\":\"A4\",\"carSegment\":\"PREMIUM\"\n";
+
+        mockMvc.perform(post("/api/cars/import")
+                        .param("format", "ndjson")
+                        .header(HttpHeaders.AUTHORIZATION, AUTHORIZATION)
+                        .content(ndjson))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.importedCars").value(1))
+                .andExpect(jsonPath("$.rejectedRows").value(1))
+                .andExpect(jsonPath("$.errors[0].line").value(2));
+    }
+}
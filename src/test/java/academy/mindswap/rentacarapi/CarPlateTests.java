@@ -0,0 +1,76 @@
+package academy.mindswap.rentacarapi;
+
+import academy.mindswap.rentacarapi.command.car.CreateOrUpdateCarDto;
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.exception.CarAlreadyExistsException;
+import academy.mindswap.rentacarapi.persistence.entity.CarEntity;
+import academy.mindswap.rentacarapi.persistence.repository.CarRepository;
+import academy.mindswap.rentacarapi.service.CarService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Asserts that plates are unique ignoring case and punctuation, and that plate lookups
+ * find the car in the database when the plate index is out of date
+ */
+@SpringBootTest
+class CarPlateTests {
+
+    @Autowired
+    private CarService carService;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @AfterEach
+    void tearDown() {
+        carRepository.findAll().forEach(car -> carService.deleteCar(car.getCarId()));
+    }
+
+    @Test
+    void plateThatOnlyDiffersInPunctuationIsTaken() {
+        carService.addNewCar(car("AA-12-BB"));
+
+        assertThrows(CarAlreadyExistsException.class, () -> carService.addNewCar(car("aa 12 bb")));
+        assertEquals(1, carRepository.count());
+    }
+
+    @Test
+    void outdatedIndexFallsBackToTheNormalizedPlate() {
+        long indexedCarId = carService.addNewCar(car("AA-00-01")).getCarId();
+
+        // Change the plates behind the index
+        CarEntity indexedCar = carRepository.findById(indexedCarId).orElseThrow();
+        indexedCar.setPlate("ZZ-00-01");
+        carRepository.save(indexedCar);
+        CarEntity otherCar = carRepository.save(CarEntity.builder()
+                .brand(CarBrands.SEAT)
+                .modelDescription("Ibiza")
+                .carSegment(CarSegment.SMALL)
+                .dateOfPurchase(new Date())
+                .plate("AA 00 01")
+                .available(true)
+                .build());
+
+        assertEquals(otherCar.getCarId(), carService.getCarByPlate("aa0001").getCarId());
+        assertEquals(otherCar.getCarId(), carService.getCarByPlate("AA-00-01").getCarId());
+    }
+
+    private static CreateOrUpdateCarDto car(String plate) {
+        return CreateOrUpdateCarDto.builder()
+                .brand(CarBrands.SEAT)
+                .modelDescription("Ibiza")
+                .carSegment(CarSegment.SMALL)
+                .dateOfPurchase(new Date())
+                .plate(plate)
+                .build();
+    }
+}
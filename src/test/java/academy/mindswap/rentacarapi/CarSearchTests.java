@@ -0,0 +1,142 @@
+package academy.mindswap.rentacarapi;
+
+import academy.mindswap.rentacarapi.command.KeysetPageDto;
+import academy.mindswap.rentacarapi.command.car.CarDetailsDto;
+import academy.mindswap.rentacarapi.command.car.CarSearchDto;
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.enumerator.CarSortField;
+import academy.mindswap.rentacarapi.exception.CarNotFoundException;
+import academy.mindswap.rentacarapi.persistence.entity.CarEntity;
+import academy.mindswap.rentacarapi.persistence.repository.CarRepository;
+import academy.mindswap.rentacarapi.service.CarService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Asserts that the keyset pagination of the car search visits every car once in both sort orders,
+ * also when the car of the cursor is deleted between pages
+ */
+@SpringBootTest
+class CarSearchTests {
+
+    private static final int[] PURCHASE_DAYS_AGO = {3, 1, 2, 1, 3, 0, 2, 1};
+
+    @Autowired
+    private CarService carService;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    private final List<CarEntity> cars = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        long today = System.currentTimeMillis() / TimeUnit.DAYS.toMillis(1) * TimeUnit.DAYS.toMillis(1);
+
+        for (int i = 0; i < PURCHASE_DAYS_AGO.length; i++) {
+            cars.add(carRepository.save(CarEntity.builder()
+                    .brand(CarBrands.SEAT)
+                    .modelDescription("Ibiza")
+                    .carSegment(CarSegment.SMALL)
+                    .dateOfPurchase(new Date(today - TimeUnit.DAYS.toMillis(PURCHASE_DAYS_AGO[i])))
+                    .plate(String.format("CS-%04d", i))
+                    .available(true)
+                    .build()));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        carRepository.deleteAll();
+        cars.clear();
+    }
+
+    @Test
+    void pagesVisitEveryCarOnceInEachSortOrder() {
+        assertEquals(sortedCarIds(Comparator.comparingLong(CarEntity::getCarId)),
+                searchAll(CarSortField.CAR_ID, 3));
+        assertEquals(sortedCarIds(Comparator.comparing(CarEntity::getDateOfPurchase)
+                        .thenComparingLong(CarEntity::getCarId)),
+                searchAll(CarSortField.DATE_OF_PURCHASE, 3));
+    }
+
+    @Test
+    void deletedCursorCarDoesNotEndThePagination() {
+        for (CarSortField sort : CarSortField.values()) {
+            KeysetPageDto<CarDetailsDto> firstPage = carService.searchCars(search(sort, null, 0, 3));
+            List<Long> carIds = ids(firstPage);
+
+            carRepository.deleteById(firstPage.getNextCursor());
+
+            KeysetPageDto<CarDetailsDto> nextPage = carService.searchCars(
+                    search(sort, firstPage.getNextSortKey(), firstPage.getNextCursor(), PURCHASE_DAYS_AGO.length));
+            carIds.addAll(ids(nextPage));
+
+            assertNull(nextPage.getNextCursor());
+            assertEquals(PURCHASE_DAYS_AGO.length, carIds.size(), sort.name());
+
+            tearDown();
+            setUp();
+        }
+    }
+
+    @Test
+    void cursorWithoutSortKeyNeedsItsCar() {
+        KeysetPageDto<CarDetailsDto> firstPage = carService.searchCars(search(CarSortField.DATE_OF_PURCHASE, null, 0, 3));
+        List<Long> carIds = ids(firstPage);
+
+        carIds.addAll(ids(carService.searchCars(
+                search(CarSortField.DATE_OF_PURCHASE, null, firstPage.getNextCursor(), PURCHASE_DAYS_AGO.length))));
+        assertEquals(searchAll(CarSortField.DATE_OF_PURCHASE, PURCHASE_DAYS_AGO.length), carIds);
+
+        carRepository.deleteById(firstPage.getNextCursor());
+
+        assertThrows(CarNotFoundException.class, () -> carService.searchCars(
+                search(CarSortField.DATE_OF_PURCHASE, null, firstPage.getNextCursor(), PURCHASE_DAYS_AGO.length)));
+    }
+
+    private List<Long> searchAll(CarSortField sort, int limit) {
+        List<Long> carIds = new ArrayList<>();
+        KeysetPageDto<CarDetailsDto> page = carService.searchCars(search(sort, null, 0, limit));
+        carIds.addAll(ids(page));
+
+        while (page.getNextCursor() != null) {
+            page = carService.searchCars(search(sort, page.getNextSortKey(), page.getNextCursor(), limit));
+            carIds.addAll(ids(page));
+        }
+
+        return carIds;
+    }
+
+    private List<Long> sortedCarIds(Comparator<CarEntity> comparator) {
+        return cars.stream().sorted(comparator).map(CarEntity::getCarId).collect(Collectors.toList());
+    }
+
+    private static List<Long> ids(KeysetPageDto<CarDetailsDto> page) {
+        return page.getContent().stream().map(CarDetailsDto::getCarId).collect(Collectors.toList());
+    }
+
+    private static CarSearchDto search(CarSortField sort, Long afterSortKey, long afterCarId, int limit) {
+        return CarSearchDto.builder()
+                .sort(sort)
+                .afterSortKey(afterSortKey)
+                .afterCarId(afterCarId)
+                .limit(limit)
+                .build();
+    }
+}
@@ -0,0 +1,171 @@
+package academy.mindswap.rentacarapi;
+
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.persistence.repository.CarRepository;
+import academy.mindswap.rentacarapi.service.CarService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Asserts that polling clients get 304 responses from the entity tags until the resources change,
+ * and that the fleet snapshot follows the car changes
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class ConditionalGetTests {
+
+    private static final String AUTHORIZATION = "Basic " + Base64.getEncoder()
+            .encodeToString("admin:Caceteiros123".getBytes(StandardCharsets.UTF_8));
+
+    private static final String CAR = "{\"brand\":\"%s\",\"modelDescription\":\"%s\",\"carSegment\":\"%s\"," +
+            "\"dateOfPurchase\":\"2021-01-15T00:00:00Z\",\"plate\":\"%s\"}";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Autowired
+    private CarService carService;
+
+    @AfterEach
+    void tearDown() {
+        carRepository.findAll().forEach(car -> carService.deleteCar(car.getCarId()));
+    }
+
+    @Test
+    void getCarByIdIsNotModifiedUntilTheCarChanges() throws Exception {
+        long carId = createCar("CG-00-01");
+
+        String eTag = mockMvc.perform(get("/api/cars/{carId}", carId).header(HttpHeaders.AUTHORIZATION, AUTHORIZATION))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // The version is answered from the car cache
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        mockMvc.perform(get("/api/cars/{carId}", carId)
+                        .header(HttpHeaders.AUTHORIZATION, AUTHORIZATION)
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        assertEquals(0, statistics.getPrepareStatementCount());
+
+        mockMvc.perform(put("/api/cars/{carId}", carId)
+                        .header(HttpHeaders.AUTHORIZATION, AUTHORIZATION)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(String.format(CAR, "SEAT", "Ibiza FR", "SMALL", "CG-00-01")))
+                .andExpect(status().isOk());
+
+        String newETag = mockMvc.perform(get("/api/cars/{carId}", carId)
+                        .header(HttpHeaders.AUTHORIZATION, AUTHORIZATION)
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        assertNotEquals(eTag, newETag);
+    }
+
+    @Test
+    void searchCarsIsNotModifiedUntilACarIsAdded() throws Exception {
+        createCar("CG-00-02");
+
+        String eTag = mockMvc.perform(get("/api/cars").header(HttpHeaders.AUTHORIZATION, AUTHORIZATION))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/cars")
+                        .header(HttpHeaders.AUTHORIZATION, AUTHORIZATION)
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        createCar("CG-00-03");
+
+        mockMvc.perform(get("/api/cars")
+                        .header(HttpHeaders.AUTHORIZATION, AUTHORIZATION)
+                        .header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void fleetSnapshotIsRebuiltAfterACarIsAdded() throws Exception {
+        createCar("CG-00-04");
+
+        // The snapshot is rebuilt in the background
+        MockHttpServletResponse response = null;
+        for (int attempt = 0; attempt < 50; attempt++) {
+            response = mockMvc.perform(get("/api/cars/snapshot").header(HttpHeaders.AUTHORIZATION, AUTHORIZATION))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse();
+
+            if (response.getContentAsString().contains("CG-00-04")) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+
+        assertTrue(response.getContentAsString().contains("CG-00-04"));
+
+        mockMvc.perform(get("/api/cars/snapshot")
+                        .header(HttpHeaders.AUTHORIZATION, AUTHORIZATION)
+                        .header(HttpHeaders.IF_NONE_MATCH, response.getHeader(HttpHeaders.ETAG)))
+                .andExpect(status().isNotModified());
+
+        byte[] gzipBody = mockMvc.perform(get("/api/cars/snapshot")
+                        .header(HttpHeaders.AUTHORIZATION, AUTHORIZATION)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(gzipBody))) {
+            assertEquals(response.getContentAsString(), new String(gzipInputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        // gzip with q=0 is refused by the client
+        mockMvc.perform(get("/api/cars/snapshot")
+                        .header(HttpHeaders.AUTHORIZATION, AUTHORIZATION)
+                        .header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0, identity"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(header().string(HttpHeaders.ETAG, response.getHeader(HttpHeaders.ETAG)));
+    }
+
+    private long createCar(String plate) throws Exception {
+        mockMvc.perform(post("/api/cars")
+                        .header(HttpHeaders.AUTHORIZATION, AUTHORIZATION)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(String.format(CAR, "SEAT", "Ibiza", "SMALL", plate)))
+                .andExpect(status().isCreated());
+
+        return carRepository.findByPlate(plate).orElseThrow().getCarId();
+    }
+}
@@ -0,0 +1,265 @@
+package academy.mindswap.rentacarapi;
+
+import academy.mindswap.rentacarapi.command.user.CreateOrUpdateUserDto;
+import academy.mindswap.rentacarapi.enumerator.ExecutionMode;
+import academy.mindswap.rentacarapi.server.RequestExecutorCustomizer;
+import academy.mindswap.rentacarapi.service.UserService;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Compares the throughput and latency of requests handled on the Tomcat worker pool and on virtual
+ * threads, on the same workload. The application is started once per mode, on an H2 database whose
+ * statements wait a simulated round trip while holding their connection. Clients ask for the users list
+ * as admin, and a share of them log in, which hashes the password with BCrypt.
+ * Not a test, run the main method with the test classpath. Settings are system properties:
+ * benchmark.clients, benchmark.seconds, benchmark.warmup-seconds, benchmark.query-latency-ms and
+ * benchmark.login-percent. Application properties given as system properties override the defaults here,
+ * e.g. server.tomcat.threads.max or spring.datasource.hikari.maximum-pool-size
+ */
+public class ExecutionModeBenchmark {
+
+    private static final String ADMIN = "Basic " + Base64.getEncoder()
+            .encodeToString("admin:Caceteiros123".getBytes(StandardCharsets.UTF_8));
+    private static final String LOGIN = "{\"email\":\"benchmark@rentacar.pt\",\"password\":\"benchmark123\"}";
+    private static final int USERS = 50;
+
+    private static final int CLIENTS = Integer.getInteger("benchmark.clients", 400);
+    private static final int SECONDS = Integer.getInteger("benchmark.seconds", 20);
+    private static final int WARMUP_SECONDS = Integer.getInteger("benchmark.warmup-seconds", 5);
+    private static final long QUERY_LATENCY_MS = Long.getLong("benchmark.query-latency-ms", 10);
+    private static final int LOGIN_PERCENT = Integer.getInteger("benchmark.login-percent", 2);
+
+    public static void main(String[] args) throws Exception {
+        List<String> results = new ArrayList<>();
+
+        for (ExecutionMode executionMode : ExecutionMode.values()) {
+            results.add(run(executionMode));
+        }
+
+        System.out.printf("%n%d clients, %d s, %d ms per statement, %d%% logins%n", CLIENTS, SECONDS,
+                QUERY_LATENCY_MS, LOGIN_PERCENT);
+        results.forEach(System.out::println);
+    }
+
+    private static String run(ExecutionMode executionMode) throws Exception {
+        String name = executionMode.name().toLowerCase();
+
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(RentACarApiApplication.class)
+                .sources(BenchmarkConfig.class)
+                .properties(
+                        "server.port=0",
+                        "server.tomcat.threads.max=50",
+                        "spring.datasource.hikari.maximum-pool-size=100",
+                        "spring.jpa.properties.hibernate.generate_statistics=false",
+                        "rentacar.security.rate-limit.enabled=false",
+                        "logging.level.academy.mindswap=WARN",
+                        "logging.level.org.hibernate=WARN")
+                .run("--rentacar.server.execution-mode=" + name,
+                        "--spring.datasource.url=jdbc:h2:mem:benchmark-" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1")) {
+
+            ExecutionMode actualMode = context.getBean(RequestExecutorCustomizer.class).getExecutionMode();
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            seedUsers(context.getBean(UserService.class));
+
+            Workload workload = new Workload(port);
+            workload.run(WARMUP_SECONDS);
+            Result result = workload.run(SECONDS);
+
+            return String.format("%-8s (ran %-8s) %8.0f req/s  p50 %6.1f ms  p99 %7.1f ms  errors %d",
+                    name, actualMode.name().toLowerCase(), result.throughput, result.p50, result.p99, result.errors);
+        }
+    }
+
+    private static void seedUsers(UserService userService) {
+        for (int i = 0; i < USERS; i++) {
+            userService.createUser(CreateOrUpdateUserDto.builder()
+                    .firstName("Bench")
+                    .lastName("Mark")
+                    .licenseId("BM-" + i)
+                    .email(i == 0 ? "benchmark@rentacar.pt" : "benchmark" + i + "@rentacar.pt")
+                    .password("benchmark123")
+                    .build());
+        }
+    }
+
+    /**
+     * Clients sending requests one after the other, each on a thread of its own
+     */
+    private static final class Workload {
+
+        private final HttpClient httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        private final URI usersUri;
+        private final URI loginUri;
+
+        private Workload(int port) {
+            this.usersUri = URI.create("http://localhost:" + port + "/api/users");
+            this.loginUri = URI.create("http://localhost:" + port + "/login");
+        }
+
+        private Result run(int seconds) throws InterruptedException {
+            ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+            long[][] latencies = new long[CLIENTS][];
+            int[] counts = new int[CLIENTS];
+            LongAdder errors = new LongAdder();
+            long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+            for (int i = 0; i < CLIENTS; i++) {
+                int client = i;
+                clients.execute(() -> {
+                    long[] clientLatencies = new long[1024];
+                    int count = 0;
+
+                    while (System.nanoTime() < end) {
+                        boolean login = Math.floorMod(client * 31 + count, 100) < LOGIN_PERCENT;
+                        long start = System.nanoTime();
+
+                        if (!send(login)) {
+                            errors.increment();
+                        }
+
+                        if (count == clientLatencies.length) {
+                            clientLatencies = Arrays.copyOf(clientLatencies, count * 2);
+                        }
+                        clientLatencies[count++] = System.nanoTime() - start;
+                    }
+
+                    latencies[client] = clientLatencies;
+                    counts[client] = count;
+                });
+            }
+
+            clients.shutdown();
+            clients.awaitTermination(seconds + 60L, TimeUnit.SECONDS);
+
+            int total = Arrays.stream(counts).sum();
+            long[] all = new long[total];
+            int offset = 0;
+            for (int i = 0; i < CLIENTS; i++) {
+                System.arraycopy(latencies[i], 0, all, offset, counts[i]);
+                offset += counts[i];
+            }
+            Arrays.sort(all);
+
+            return new Result((double) total / seconds, percentile(all, 0.5), percentile(all, 0.99), errors.sum());
+        }
+
+        private boolean send(boolean login) {
+            HttpRequest request = login
+                    ? HttpRequest.newBuilder(loginUri)
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(LOGIN))
+                            .build()
+                    : HttpRequest.newBuilder(usersUri)
+                            .header("Authorization", ADMIN)
+                            .GET()
+                            .build();
+
+            try {
+                return httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (Exception e) {
+                return false;
+            }
+        }
+
+        private static double percentile(long[] sortedNanos, double percentile) {
+            if (sortedNanos.length == 0) {
+                return 0;
+            }
+            return sortedNanos[(int) Math.min(sortedNanos.length - 1, sortedNanos.length * percentile)] / 1_000_000.0;
+        }
+    }
+
+    private static final class Result {
+
+        private final double throughput;
+        private final double p50;
+        private final double p99;
+        private final long errors;
+
+        private Result(double throughput, double p50, double p99, long errors) {
+            this.throughput = throughput;
+            this.p50 = p50;
+            this.p99 = p99;
+            this.errors = errors;
+        }
+    }
+
+    /**
+     * Makes every statement wait the simulated database round trip, holding its connection. Not a
+     * configuration class, so the component scan of the tests doesn't pick it up
+     */
+    static class BenchmarkConfig {
+
+        @Bean
+        static BeanPostProcessor slowDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (!(bean instanceof DataSource) || QUERY_LATENCY_MS <= 0) {
+                        return bean;
+                    }
+
+                    return new DelegatingDataSource((DataSource) bean) {
+                        @Override
+                        public Connection getConnection() throws SQLException {
+                            return (Connection) slow(super.getConnection(), Connection.class);
+                        }
+                    };
+                }
+            };
+        }
+
+        private static Object slow(Object target, Class<?> type) {
+            return Proxy.newProxyInstance(ExecutionModeBenchmark.class.getClassLoader(), new Class<?>[]{type},
+                    (proxy, method, args) -> {
+                        if (method.getName().startsWith("execute")) {
+                            Thread.sleep(QUERY_LATENCY_MS);
+                        }
+
+                        Object result;
+                        try {
+                            result = method.invoke(target, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+
+                        // Statements are prepared from the connection, and executed later
+                        if (result instanceof Statement && method.getReturnType().isInterface()) {
+                            return slow(result, method.getReturnType());
+                        }
+                        return result;
+                    });
+        }
+    }
+}
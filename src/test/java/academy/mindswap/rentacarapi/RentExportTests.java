@@ -0,0 +1,241 @@
+package academy.mindswap.rentacarapi;
+
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.enumerator.RentStatus;
+import academy.mindswap.rentacarapi.persistence.entity.CarEntity;
+import academy.mindswap.rentacarapi.persistence.entity.RentEntity;
+import academy.mindswap.rentacarapi.persistence.entity.UserEntity;
+import academy.mindswap.rentacarapi.persistence.repository.CarRepository;
+import academy.mindswap.rentacarapi.persistence.repository.RentRepository;
+import academy.mindswap.rentacarapi.persistence.repository.UserRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Asserts the rows, filters and encodings of the streamed rents export
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class RentExportTests {
+
+    private static final String AUTHORIZATION = "Basic " + Base64.getEncoder()
+            .encodeToString("admin:Caceteiros123".getBytes(StandardCharsets.UTF_8));
+    private static final String CSV_HEADER = "rentId,carId,userId,expectedBeginDate,beginDate,expectedEndDate,endDate," +
+            "expectedPrice,finalPrice,status";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Autowired
+    private RentRepository rentRepository;
+
+    private final List<RentEntity> rents = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        UserEntity user = userRepository.save(UserEntity.builder()
+                .firstName("First")
+                .lastName("Last")
+                .licenseId("EX-001")
+                .email("export@rentacar.test")
+                .password("password")
+                .build());
+
+        CarEntity car = carRepository.save(CarEntity.builder()
+                .brand(CarBrands.SEAT)
+                .modelDescription("Ibiza")
+                .carSegment(CarSegment.SMALL)
+                .dateOfPurchase(new Date())
+                .plate("EX-00-01")
+                .available(true)
+                .build());
+
+        // One rent that began in the past, and two that begin in the future
+        for (int days : new int[]{-10, 1, 5}) {
+            long begin = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(days);
+
+            rents.add(rentRepository.save(RentEntity.builder()
+                    .userEntity(user)
+                    .carEntity(car)
+                    .expectedBeginDate(new Date(begin))
+                    .expectedEndDate(new Date(begin + TimeUnit.DAYS.toMillis(2)))
+                    .expectedPrice(new BigDecimal("60.00"))
+                    .status(RentStatus.RESERVED)
+                    .build()));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Rows with an invalid status can't be loaded as entities to be deleted
+        jdbcTemplate.update("DELETE FROM rents");
+        carRepository.deleteAll();
+        userRepository.deleteAll();
+        rents.clear();
+    }
+
+    @Test
+    void ndjsonExportHasOneRentPerLine() throws Exception {
+        MockHttpServletResponse response = export(get("/api/rents/export"));
+
+        assertEquals("application/x-ndjson", response.getContentType());
+        assertTrue(response.getHeader(HttpHeaders.CONTENT_DISPOSITION).contains("rents.ndjson"));
+
+        List<JsonNode> rows = readNdjson(response.getContentAsString());
+        assertEquals(rentIds(0), rows.stream().map(row -> row.get("rentId").asLong()).collect(Collectors.toList()));
+
+        JsonNode row = rows.get(0);
+        RentEntity rent = rents.get(0);
+        assertEquals(rent.getCarEntity().getCarId(), row.get("carId").asLong());
+        assertEquals(rent.getUserEntity().getUserId(), row.get("userId").asLong());
+        assertEquals(rent.getExpectedBeginDate().toInstant().toString(), row.get("expectedBeginDate").asText());
+        assertTrue(row.get("beginDate").isNull());
+        assertEquals(0, new BigDecimal("60").compareTo(row.get("expectedPrice").decimalValue()));
+        assertTrue(row.get("finalPrice").isNull());
+        assertEquals(RentStatus.RESERVED.name(), row.get("status").asText());
+    }
+
+    @Test
+    void csvExportHasAHeaderAndEscapesText() throws Exception {
+        jdbcTemplate.update("UPDATE rents SET status = ? WHERE rent_id = ?", "A,\"B\"", rents.get(2).getRentId());
+
+        MockHttpServletResponse response = export(get("/api/rents/export").param("format", "CSV"));
+
+        assertEquals("text/csv", response.getContentType());
+        assertTrue(response.getHeader(HttpHeaders.CONTENT_DISPOSITION).contains("rents.csv"));
+
+        String[] lines = response.getContentAsString().split("\n");
+        assertEquals(4, lines.length);
+        assertEquals(CSV_HEADER, lines[0]);
+
+        RentEntity rent = rents.get(0);
+        assertEquals(String.join(",", Long.toString(rent.getRentId()),
+                Long.toString(rent.getCarEntity().getCarId()),
+                Long.toString(rent.getUserEntity().getUserId()),
+                rent.getExpectedBeginDate().toInstant().toString(), "",
+                rent.getExpectedEndDate().toInstant().toString(), "",
+                "60.00", "", RentStatus.RESERVED.name()), lines[1]);
+
+        // Empty fields stay empty and text with a comma or a quote is quoted
+        assertTrue(lines[3].endsWith(",60.00,,\"A,\"\"B\"\"\""), lines[3]);
+    }
+
+    @Test
+    void exportIsGzipCompressedWhenAccepted() throws Exception {
+        String plain = export(get("/api/rents/export")).getContentAsString();
+
+        MockHttpServletResponse response = export(get("/api/rents/export")
+                .header(HttpHeaders.ACCEPT_ENCODING, "deflate, gzip;q=0.8"));
+
+        assertEquals("gzip", response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeader(HttpHeaders.VARY));
+        try (GZIPInputStream gzipInputStream = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertEquals(plain, new String(gzipInputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        // gzip with q=0 is refused by the client
+        response = export(get("/api/rents/export").header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0"));
+
+        assertNull(response.getHeader(HttpHeaders.CONTENT_ENCODING));
+        assertEquals(plain, response.getContentAsString());
+    }
+
+    @Test
+    void sinceFilterSkipsRentsExpectedToBeginBefore() throws Exception {
+        MockHttpServletResponse response = export(get("/api/rents/export")
+                .param("since", LocalDate.now().toString()));
+
+        assertEquals(rentIds(1), readNdjson(response.getContentAsString()).stream()
+                .map(row -> row.get("rentId").asLong()).collect(Collectors.toList()));
+    }
+
+    @Test
+    void exportResumesAfterTheGivenRent() throws Exception {
+        MockHttpServletResponse response = export(get("/api/rents/export")
+                .param("format", "csv")
+                .param("afterRentId", Long.toString(rents.get(1).getRentId())));
+
+        String[] lines = response.getContentAsString().split("\n");
+        assertEquals(2, lines.length);
+        assertEquals(CSV_HEADER, lines[0]);
+        assertTrue(lines[1].startsWith(rents.get(2).getRentId() + ","), lines[1]);
+    }
+
+    @Test
+    void unknownFormatIsRefused() throws Exception {
+        mockMvc.perform(get("/api/rents/export")
+                        .param("format", "xml")
+                        .header(HttpHeaders.AUTHORIZATION, AUTHORIZATION))
+                .andExpect(status().isBadRequest());
+    }
+
+    private MockHttpServletResponse export(MockHttpServletRequestBuilder request) throws Exception {
+        MvcResult mvcResult = mockMvc.perform(request.header(HttpHeaders.AUTHORIZATION, AUTHORIZATION))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        return mockMvc.perform(asyncDispatch(mvcResult))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andReturn().getResponse();
+    }
+
+    private List<JsonNode> readNdjson(String content) throws Exception {
+        List<JsonNode> rows = new ArrayList<>();
+
+        for (String line : content.split("\n")) {
+            rows.add(objectMapper.readTree(line));
+        }
+        return rows;
+    }
+
+    private List<Long> rentIds(int from) {
+        return rents.subList(from, rents.size()).stream().map(RentEntity::getRentId).collect(Collectors.toList());
+    }
+}
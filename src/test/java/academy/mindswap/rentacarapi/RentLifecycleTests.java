@@ -0,0 +1,249 @@
+package academy.mindswap.rentacarapi;
+
+import academy.mindswap.rentacarapi.availability.RentIntervalIndex;
+import academy.mindswap.rentacarapi.command.rent.CreateOrUpdateRentDto;
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.enumerator.RentStatus;
+import academy.mindswap.rentacarapi.persistence.entity.CarEntity;
+import academy.mindswap.rentacarapi.persistence.entity.RentEntity;
+import academy.mindswap.rentacarapi.persistence.entity.UserEntity;
+import academy.mindswap.rentacarapi.persistence.repository.CarRepository;
+import academy.mindswap.rentacarapi.persistence.repository.RentRepository;
+import academy.mindswap.rentacarapi.persistence.repository.UserRepository;
+import academy.mindswap.rentacarapi.service.RentService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Asserts the rent and car states left by the delivery and return of a car, and by refused transitions,
+ * and that the availability index only books committed rents
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class RentLifecycleTests {
+
+    private static final String AUTHORIZATION = "Basic " + Base64.getEncoder()
+            .encodeToString("admin:Caceteiros123".getBytes(StandardCharsets.UTF_8));
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Autowired
+    private RentRepository rentRepository;
+
+    @Autowired
+    private RentService rentService;
+
+    @Autowired
+    private RentIntervalIndex rentIntervalIndex;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private UserEntity user;
+    private CarEntity car;
+
+    @BeforeEach
+    void setUp() {
+        user = userRepository.save(UserEntity.builder()
+                .firstName("First")
+                .lastName("Last")
+                .licenseId("LC-001")
+                .email("lifecycle@rentacar.test")
+                .password("password")
+                .build());
+
+        car = carRepository.save(CarEntity.builder()
+                .brand(CarBrands.SEAT)
+                .modelDescription("Ibiza")
+                .carSegment(CarSegment.SMALL)
+                .dateOfPurchase(new Date())
+                .plate("LC-00-01")
+                .available(true)
+                .build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        rentRepository.deleteAll();
+        carRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void deliverActivatesTheRentAndTakesTheCar() throws Exception {
+        long rentId = createRent(RentStatus.RESERVED);
+
+        perform("/api/rents/{rentId}/deliver", rentId)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value(RentStatus.ACTIVE.name()));
+
+        RentEntity rent = rentRepository.findById(rentId).orElseThrow();
+        assertEquals(RentStatus.ACTIVE, rent.getStatus());
+        assertNotNull(rent.getBeginDate());
+        assertFalse(isCarAvailable());
+    }
+
+    @Test
+    void secondDeliverIsRefused() throws Exception {
+        long rentId = createRent(RentStatus.RESERVED);
+
+        perform("/api/rents/{rentId}/deliver", rentId).andExpect(status().isOk());
+        perform("/api/rents/{rentId}/deliver", rentId).andExpect(status().isConflict());
+
+        assertEquals(RentStatus.ACTIVE, rentRepository.findById(rentId).orElseThrow().getStatus());
+        assertFalse(isCarAvailable());
+    }
+
+    @Test
+    void deliverOfACarThatIsNotAvailableLeavesTheRentReserved() throws Exception {
+        long rentId = createRent(RentStatus.RESERVED);
+        car.setAvailable(false);
+        carRepository.save(car);
+
+        perform("/api/rents/{rentId}/deliver", rentId).andExpect(status().isConflict());
+
+        RentEntity rent = rentRepository.findById(rentId).orElseThrow();
+        assertEquals(RentStatus.RESERVED, rent.getStatus());
+        assertNull(rent.getBeginDate());
+    }
+
+    @Test
+    void returnClosesTheRentAndReleasesTheCar() throws Exception {
+        long rentId = createRent(RentStatus.RESERVED);
+
+        perform("/api/rents/{rentId}/deliver", rentId).andExpect(status().isOk());
+        perform("/api/rents/{rentId}/return", rentId)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value(RentStatus.RETURNED.name()));
+
+        RentEntity rent = rentRepository.findById(rentId).orElseThrow();
+        assertEquals(RentStatus.RETURNED, rent.getStatus());
+        assertNotNull(rent.getEndDate());
+        assertNotNull(rent.getFinalPrice());
+        assertTrue(isCarAvailable());
+    }
+
+    @Test
+    void returnOfARentThatIsNotActiveIsRefused() throws Exception {
+        long rentId = createRent(RentStatus.RESERVED);
+
+        perform("/api/rents/{rentId}/return", rentId).andExpect(status().isConflict());
+
+        RentEntity rent = rentRepository.findById(rentId).orElseThrow();
+        assertEquals(RentStatus.RESERVED, rent.getStatus());
+        assertNull(rent.getEndDate());
+        assertTrue(isCarAvailable());
+    }
+
+    @Test
+    void reservedRentCanBeCancelledOrMarkedAsNoShow() throws Exception {
+        long cancelledRentId = createRent(RentStatus.RESERVED);
+        long noShowRentId = createRent(RentStatus.RESERVED);
+
+        perform("/api/rents/{rentId}/cancel", cancelledRentId)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value(RentStatus.CANCELLED.name()));
+        perform("/api/rents/{rentId}/no-show", noShowRentId)
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value(RentStatus.NO_SHOW.name()));
+
+        assertEquals(RentStatus.CANCELLED, rentRepository.findById(cancelledRentId).orElseThrow().getStatus());
+        assertEquals(RentStatus.NO_SHOW, rentRepository.findById(noShowRentId).orElseThrow().getStatus());
+    }
+
+    @Test
+    void activeRentCanNotBeCancelled() throws Exception {
+        long rentId = createRent(RentStatus.ACTIVE);
+
+        perform("/api/rents/{rentId}/cancel", rentId).andExpect(status().isConflict());
+
+        assertEquals(RentStatus.ACTIVE, rentRepository.findById(rentId).orElseThrow().getStatus());
+    }
+
+    @Test
+    void returnedRentCanNotBeMarkedAsNoShow() throws Exception {
+        long rentId = createRent(RentStatus.RETURNED);
+
+        perform("/api/rents/{rentId}/no-show", rentId).andExpect(status().isConflict());
+
+        assertEquals(RentStatus.RETURNED, rentRepository.findById(rentId).orElseThrow().getStatus());
+    }
+
+    @Test
+    void rolledBackRentIsNotBooked() {
+        long now = System.currentTimeMillis();
+        Date beginDate = new Date(now + TimeUnit.DAYS.toMillis(1));
+        Date endDate = new Date(now + TimeUnit.DAYS.toMillis(3));
+        CreateOrUpdateRentDto rent = CreateOrUpdateRentDto.builder()
+                .userId(user.getUserId())
+                .carId(car.getCarId())
+                .expectedBeginDate(beginDate)
+                .expectedEndDate(endDate)
+                .build();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            rentService.addNewRent(rent);
+            status.setRollbackOnly();
+        });
+
+        assertEquals(0, rentRepository.count());
+        assertTrue(rentIntervalIndex.isCarAvailableBetweenDates(car.getCarId(), beginDate, endDate));
+
+        rentService.addNewRent(rent);
+
+        assertEquals(1, rentRepository.count());
+        assertFalse(rentIntervalIndex.isCarAvailableBetweenDates(car.getCarId(), beginDate, endDate));
+    }
+
+    private long createRent(RentStatus status) {
+        long now = System.currentTimeMillis();
+
+        return rentRepository.save(RentEntity.builder()
+                .userEntity(user)
+                .carEntity(car)
+                .expectedBeginDate(new Date(now))
+                .expectedEndDate(new Date(now + TimeUnit.DAYS.toMillis(2)))
+                .expectedPrice(new BigDecimal("60"))
+                .status(status)
+                .build()).getRentId();
+    }
+
+    private boolean isCarAvailable() {
+        return carRepository.findById(car.getCarId()).orElseThrow().isAvailable();
+    }
+
+    private ResultActions perform(String uriTemplate, long rentId) throws Exception {
+        return mockMvc.perform(put(uriTemplate, rentId).header(HttpHeaders.AUTHORIZATION, AUTHORIZATION));
+    }
+}
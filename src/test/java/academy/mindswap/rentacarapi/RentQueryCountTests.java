@@ -0,0 +1,217 @@
+package academy.mindswap.rentacarapi;
+
+import academy.mindswap.rentacarapi.catalog.FleetSnapshot;
+import academy.mindswap.rentacarapi.command.rent.CreateOrUpdateRentDto;
+import academy.mindswap.rentacarapi.command.rent.CreateRentBatchDto;
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.enumerator.RentStatus;
+import academy.mindswap.rentacarapi.persistence.entity.CarEntity;
+import academy.mindswap.rentacarapi.persistence.entity.RentEntity;
+import academy.mindswap.rentacarapi.persistence.entity.UserEntity;
+import academy.mindswap.rentacarapi.persistence.repository.CarRepository;
+import academy.mindswap.rentacarapi.persistence.repository.RentRepository;
+import academy.mindswap.rentacarapi.persistence.repository.UserRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultMatcher;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import javax.persistence.EntityManagerFactory;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Asserts the number of SQL statements executed by each rent endpoint,
+ * so lazy loads of the rent car and user can't creep back into the responses
+ * and the lifecycle commands keep their statement budget. The fleet snapshot is mocked,
+ * its rebuilds after a car change run in the background and would land in the count at random
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class RentQueryCountTests {
+
+    private static final int RENTS = 20;
+    private static final String AUTHORIZATION = "Basic " + Base64.getEncoder()
+            .encodeToString("admin:Caceteiros123".getBytes(StandardCharsets.UTF_8));
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @MockBean
+    private FleetSnapshot fleetSnapshot;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CarRepository carRepository;
+
+    @Autowired
+    private RentRepository rentRepository;
+
+    private final List<RentEntity> rents = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        long now = System.currentTimeMillis();
+
+        // Every rent gets its own user and car, so each lazy load would be a distinct select
+        for (int i = 0; i < RENTS; i++) {
+            UserEntity user = userRepository.save(UserEntity.builder()
+                    .firstName("First")
+                    .lastName("Last")
+                    .licenseId("L" + i)
+                    .email("user" + i + "@rentacar.test")
+                    .password("password")
+                    .build());
+
+            CarEntity car = carRepository.save(CarEntity.builder()
+                    .brand(CarBrands.SEAT)
+                    .modelDescription("Ibiza")
+                    .carSegment(CarSegment.SMALL)
+                    .dateOfPurchase(new Date(now))
+                    .plate(String.format("QC-%04d", i))
+                    .available(true)
+                    .build());
+
+            rents.add(rentRepository.save(RentEntity.builder()
+                    .userEntity(user)
+                    .carEntity(car)
+                    .expectedBeginDate(new Date(now + TimeUnit.DAYS.toMillis(1)))
+                    .expectedEndDate(new Date(now + TimeUnit.DAYS.toMillis(3)))
+                    .expectedPrice(new BigDecimal("90"))
+                    .status(RentStatus.RESERVED)
+                    .build()));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        rentRepository.deleteAll();
+        carRepository.deleteAll();
+        userRepository.deleteAll();
+        rents.clear();
+    }
+
+    @Test
+    void getRentByIdLoadsCarAndUserInOneSelect() throws Exception {
+        RentEntity rent = rents.get(0);
+
+        // The version select of the entity tag and the rent select
+        assertStatementCount(2, get("/api/rents/{rentId}/user/{userId}",
+                rent.getRentId(), rent.getUserEntity().getUserId()));
+    }
+
+    @Test
+    void getNotModifiedRentByIdOnlySelectsVersion() throws Exception {
+        RentEntity rent = rents.get(0);
+
+        assertStatementCount(1, get("/api/rents/{rentId}/user/{userId}",
+                rent.getRentId(), rent.getUserEntity().getUserId())
+                .header(HttpHeaders.IF_NONE_MATCH, "\"rents-" + rent.getRentId() + "-v" + rent.getVersion() + "\""),
+                status().isNotModified());
+    }
+
+    @Test
+    void getRentListRunsOneSelectPerPage() throws Exception {
+        assertStatementCount(1, get("/api/rents").param("limit", String.valueOf(RENTS)));
+    }
+
+    @Test
+    void deleteRentDoesNotLoadCarOrUserLazily() throws Exception {
+        assertStatementCount(2, delete("/api/rents/{rentId}", rents.get(0).getRentId()));
+    }
+
+    @Test
+    void deliverRunsTheTwoGuardedUpdates() throws Exception {
+        // The rent state, the car and rent updates and the car version
+        assertStatementCount(4, put("/api/rents/{rentId}/deliver", rents.get(0).getRentId()));
+    }
+
+    @Test
+    void returnRunsTheTwoGuardedUpdates() throws Exception {
+        RentEntity rent = rents.get(0);
+        rent.setStatus(RentStatus.ACTIVE);
+        rent.setBeginDate(new Date());
+        rentRepository.save(rent);
+
+        // The rent state, the rent and car updates and the car version
+        assertStatementCount(4, put("/api/rents/{rentId}/return", rent.getRentId()));
+    }
+
+    @Test
+    void cancelRunsOneGuardedUpdate() throws Exception {
+        // The rent state and the status update
+        assertStatementCount(2, put("/api/rents/{rentId}/cancel", rents.get(0).getRentId()));
+    }
+
+    @Test
+    void getOverdueRentsRunsOneSelect() throws Exception {
+        assertStatementCount(1, get("/api/rents/overdue"));
+    }
+
+    @Test
+    void batchSelectsCarsAndUsersOnce() throws Exception {
+        long now = System.currentTimeMillis();
+        List<CreateOrUpdateRentDto> batch = new ArrayList<>();
+
+        for (RentEntity rent : rents) {
+            batch.add(CreateOrUpdateRentDto.builder()
+                    .userId(rent.getUserEntity().getUserId())
+                    .carId(rent.getCarEntity().getCarId())
+                    .expectedBeginDate(new Date(now + TimeUnit.DAYS.toMillis(10)))
+                    .expectedEndDate(new Date(now + TimeUnit.DAYS.toMillis(12)))
+                    .build());
+        }
+
+        // The cars and the users of the batch, and one insert per rent
+        assertStatementCount(2 + RENTS, post("/api/rents/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(new CreateRentBatchDto(batch))));
+    }
+
+    private void assertStatementCount(long expected, MockHttpServletRequestBuilder request) throws Exception {
+        assertStatementCount(expected, request, status().is2xxSuccessful());
+    }
+
+    private void assertStatementCount(long expected, MockHttpServletRequestBuilder request,
+                                      ResultMatcher statusMatcher) throws Exception {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        mockMvc.perform(request.header(HttpHeaders.AUTHORIZATION, AUTHORIZATION)).andExpect(statusMatcher);
+
+        assertEquals(expected, statistics.getPrepareStatementCount(),
+                "Unexpected number of SQL statements for " + request);
+    }
+}
@@ -0,0 +1,106 @@
+package academy.mindswap.rentacarapi;
+
+import academy.mindswap.rentacarapi.persistence.repository.UserRepository;
+import academy.mindswap.rentacarapi.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Asserts that self-registered customers only reach their own user and rents and the fleet listing,
+ * and that everything else stays for admins
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class RoleAuthorizationTests {
+
+    private static final String USER = "{\"firstName\":\"Rui\",\"lastName\":\"Costa\",\"licenseId\":\"%s\"," +
+            "\"email\":\"%s\",\"password\":\"secret123\"}";
+    private static final String CUSTOMER = basic("customer@rentacar.pt", "secret123");
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @AfterEach
+    void tearDown() {
+        userRepository.findAll().forEach(user -> userService.deleteUser(user.getUserId()));
+    }
+
+    @Test
+    void customerCanNotWriteTheFleetOrOtherUsers() throws Exception {
+        long customerId = createUser("RA-001", "customer@rentacar.pt");
+        long otherId = createUser("RA-002", "other@rentacar.pt");
+
+        mockMvc.perform(delete("/api/cars/{carId}", 1).header(HttpHeaders.AUTHORIZATION, CUSTOMER))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(put("/api/users/{userId}/password", otherId)
+                        .header(HttpHeaders.AUTHORIZATION, CUSTOMER)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"password\":\"taken123\"}"))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/users/{userId}", otherId).header(HttpHeaders.AUTHORIZATION, CUSTOMER))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/users").header(HttpHeaders.AUTHORIZATION, CUSTOMER))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/rents").param("userId", String.valueOf(otherId))
+                        .header(HttpHeaders.AUTHORIZATION, CUSTOMER))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/rents/export").header(HttpHeaders.AUTHORIZATION, CUSTOMER))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(get("/api/reports/revenue").header(HttpHeaders.AUTHORIZATION, CUSTOMER))
+                .andExpect(status().isForbidden());
+
+        // Their own user and rents, and the fleet
+        mockMvc.perform(get("/api/users/{userId}", customerId).header(HttpHeaders.AUTHORIZATION, CUSTOMER))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/rents").param("userId", String.valueOf(customerId))
+                        .header(HttpHeaders.AUTHORIZATION, CUSTOMER))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/cars").header(HttpHeaders.AUTHORIZATION, CUSTOMER))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/rents/{rentId}/user/{userId}", 1, customerId).header(HttpHeaders.AUTHORIZATION, CUSTOMER))
+                .andExpect(status().isNotFound());
+        mockMvc.perform(put("/api/users/{userId}/password", customerId)
+                        .header(HttpHeaders.AUTHORIZATION, CUSTOMER)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"password\":\"changed123\"}"))
+                .andExpect(status().isNoContent());
+    }
+
+    private long createUser(String licenseId, String email) throws Exception {
+        return objectMapper.readTree(mockMvc.perform(post("/api/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(String.format(USER, licenseId, email)))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString()).get("userId").asLong();
+    }
+
+    private static String basic(String username, String password) {
+        return "Basic " + Base64.getEncoder()
+                .encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+}
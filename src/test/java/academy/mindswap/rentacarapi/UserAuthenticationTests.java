@@ -0,0 +1,164 @@
+package academy.mindswap.rentacarapi;
+
+import academy.mindswap.rentacarapi.persistence.entity.UserEntity;
+import academy.mindswap.rentacarapi.persistence.repository.UserRepository;
+import academy.mindswap.rentacarapi.security.RegisteredEmailFilter;
+import academy.mindswap.rentacarapi.service.UserService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Asserts that users of the users table authenticate with basic credentials, that a password
+ * change stops the cached old credentials, and that only password changes hash the password
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class UserAuthenticationTests {
+
+    private static final String ADMIN = basic("admin", "Caceteiros123");
+
+    private static final String USER = "{\"firstName\":\"Rui\",\"lastName\":\"Costa\",\"licenseId\":\"UA-001\"," +
+            "\"email\":\"basic@rentacar.pt\",\"password\":\"%s\"}";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private RegisteredEmailFilter registeredEmailFilter;
+
+    @AfterEach
+    void tearDown() {
+        userRepository.findAll().forEach(user -> userService.deleteUser(user.getUserId()));
+    }
+
+    @Test
+    void passwordChangeStopsTheCachedCredentials() throws Exception {
+        long userId = createUser("first123");
+
+        mockMvc.perform(get("/api/users/{userId}", userId)
+                        .header(HttpHeaders.AUTHORIZATION, basic("basic@rentacar.pt", "first123")))
+                .andExpect(status().isOk());
+        mockMvc.perform(get("/api/users/{userId}", userId)
+                        .header(HttpHeaders.AUTHORIZATION, basic("basic@rentacar.pt", "wrong")))
+                .andExpect(status().isUnauthorized());
+
+        mockMvc.perform(put("/api/users/{userId}", userId)
+                        .header(HttpHeaders.AUTHORIZATION, ADMIN)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(String.format(USER, "second123")))
+                .andExpect(status().isOk());
+
+        mockMvc.perform(get("/api/users/{userId}", userId)
+                        .header(HttpHeaders.AUTHORIZATION, basic("basic@rentacar.pt", "first123")))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/users/{userId}", userId)
+                        .header(HttpHeaders.AUTHORIZATION, basic("basic@rentacar.pt", "second123")))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void profileUpdateKeepsThePasswordHash() throws Exception {
+        long userId = createUser("first123");
+        String passwordHash = userRepository.findById(userId).orElseThrow().getPassword();
+
+        mockMvc.perform(patch("/api/users/{userId}", userId)
+                        .header(HttpHeaders.AUTHORIZATION, ADMIN)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"firstName\":\"Rita\"}"))
+                .andExpect(status().isOk());
+
+        UserEntity user = userRepository.findById(userId).orElseThrow();
+        assertEquals("Rita", user.getFirstName());
+        assertEquals("Costa", user.getLastName());
+        assertEquals(passwordHash, user.getPassword());
+
+        mockMvc.perform(put("/api/users/{userId}/password", userId)
+                        .header(HttpHeaders.AUTHORIZATION, ADMIN)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"password\":\"second123\"}"))
+                .andExpect(status().isNoContent());
+
+        mockMvc.perform(get("/api/users/{userId}", userId)
+                        .header(HttpHeaders.AUTHORIZATION, basic("basic@rentacar.pt", "first123")))
+                .andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/api/users/{userId}", userId)
+                        .header(HttpHeaders.AUTHORIZATION, basic("basic@rentacar.pt", "second123")))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void loginUpgradesHashesWithAnOlderCostFactor() throws Exception {
+        UserEntity user = userRepository.save(UserEntity.builder()
+                .firstName("Rui")
+                .lastName("Costa")
+                .licenseId("UA-002")
+                .email("legacy@rentacar.pt")
+                .password(new BCryptPasswordEncoder(4).encode("legacy123"))
+                .build());
+        // Saved past the user service, which tells the filter of new emails
+        registeredEmailFilter.addEmail(user.getEmail());
+
+        mockMvc.perform(post("/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"legacy@rentacar.pt\",\"password\":\"legacy123\"}"))
+                .andExpect(status().isOk());
+
+        assertTrue(userRepository.findById(user.getUserId()).orElseThrow().getPassword().startsWith("$2a$12$"));
+    }
+
+    @Test
+    void unregisteredEmailsAreRuledOutAndDuplicatesRejected() throws Exception {
+        createUser("first123");
+
+        mockMvc.perform(post("/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"email\":\"nobody@rentacar.pt\",\"password\":\"first123\"}"))
+                .andExpect(status().isNotFound());
+
+        mockMvc.perform(post("/api/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(String.format(USER, "other123")))
+                .andExpect(status().isConflict());
+    }
+
+    private long createUser(String password) throws Exception {
+        return objectMapper.readTree(mockMvc.perform(post("/api/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(String.format(USER, password)))
+                .andExpect(status().isCreated())
+                .andReturn().getResponse().getContentAsString()).get("userId").asLong();
+    }
+
+    private static String basic(String username, String password) {
+        return "Basic " + Base64.getEncoder()
+                .encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+}
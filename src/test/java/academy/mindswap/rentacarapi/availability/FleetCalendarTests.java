@@ -0,0 +1,116 @@
+package academy.mindswap.rentacarapi.availability;
+
+import academy.mindswap.rentacarapi.enumerator.CarBrands;
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.persistence.repository.CarRepository;
+import academy.mindswap.rentacarapi.persistence.repository.RentRepository;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Checks the fleet calendar answers against a linear scan of the booked periods, also after pruning
+ */
+class FleetCalendarTests {
+
+    private static final ZoneId ZONE_ID = ZoneId.systemDefault();
+    private static final int CARS = 40;
+
+    private final RentIntervalIndex rentIntervalIndex = new RentIntervalIndex(mock(RentRepository.class), true, false);
+    private final FleetCalendar fleetCalendar = new FleetCalendar(mock(CarRepository.class), mock(RentRepository.class),
+            rentIntervalIndex);
+    private final List<long[]> rents = new ArrayList<>();
+    private final LocalDate today = LocalDate.now(ZONE_ID);
+
+    @Test
+    void availableCarsMatchLinearScan() {
+        Random random = new Random(42);
+        bookRandomRents(random);
+
+        for (int i = 0; i < 500; i++) {
+            LocalDate from = today.plusDays(random.nextInt(60));
+            assertAvailableCars(from, from.plusDays(random.nextInt(10)));
+        }
+    }
+
+    @Test
+    void pruningDropsOnlyThePastDays() {
+        Random random = new Random(7);
+        bookRandomRents(random);
+        LocalDate firstDay = today.plusDays(20);
+        int days = fleetCalendar.dayCount();
+
+        fleetCalendar.pruneDaysBefore(firstDay);
+
+        assertTrue(fleetCalendar.dayCount() < days);
+        assertFalse(fleetCalendar.covers(firstDay.minusDays(1)));
+        assertTrue(fleetCalendar.covers(firstDay));
+
+        // An earlier day doesn't bring pruned days back
+        fleetCalendar.pruneDaysBefore(today);
+        assertFalse(fleetCalendar.covers(firstDay.minusDays(1)));
+
+        for (int i = 0; i < 500; i++) {
+            LocalDate from = firstDay.plusDays(random.nextInt(40));
+            assertAvailableCars(from, from.plusDays(random.nextInt(10)));
+        }
+
+        // Bookings of pruned days are not recorded again
+        long rentId = rents.size();
+        rentIntervalIndex.addRent(rentId, 0, toDate(today), toDate(firstDay.plusDays(1)));
+        fleetCalendar.refreshCarDays(0, toDate(today), toDate(firstDay.plusDays(1)));
+        rents.add(new long[]{0, today.toEpochDay(), firstDay.plusDays(1).toEpochDay()});
+
+        assertAvailableCars(firstDay, firstDay.plusDays(3));
+        assertEquals(days(firstDay, firstDay.plusDays(60)), fleetCalendar.dayCount());
+    }
+
+    private void bookRandomRents(Random random) {
+        for (long carId = 0; carId < CARS; carId++) {
+            fleetCalendar.addCar(carId, CarBrands.values()[random.nextInt(CarBrands.values().length)],
+                    CarSegment.values()[random.nextInt(CarSegment.values().length)]);
+        }
+
+        for (int i = 0; i < 200; i++) {
+            long carId = random.nextInt(CARS);
+            LocalDate begin = today.plusDays(random.nextInt(50));
+            LocalDate end = begin.plusDays(random.nextInt(10));
+
+            rentIntervalIndex.addRent(rents.size(), carId, toDate(begin), toDate(end));
+            fleetCalendar.refreshCarDays(carId, toDate(begin), toDate(end));
+            rents.add(new long[]{carId, begin.toEpochDay(), end.toEpochDay()});
+        }
+    }
+
+    private void assertAvailableCars(LocalDate from, LocalDate to) {
+        List<Long> expected = LongStream.range(0, CARS)
+                .filter(carId -> rents.stream().noneMatch(rent -> rent[0] == carId
+                        && rent[1] <= to.toEpochDay() && from.toEpochDay() <= rent[2]))
+                .boxed()
+                .collect(Collectors.toList());
+
+        assertEquals(expected, fleetCalendar.findAvailableCarIds(from, to, List.of(), List.of()), from + " - " + to);
+    }
+
+    private long days(LocalDate from, LocalDate to) {
+        return LongStream.rangeClosed(from.toEpochDay(), to.toEpochDay())
+                .filter(day -> rents.stream().anyMatch(rent -> rent[1] <= day && day <= rent[2]))
+                .count();
+    }
+
+    private static Date toDate(LocalDate day) {
+        return Date.from(day.atStartOfDay(ZONE_ID).toInstant());
+    }
+}
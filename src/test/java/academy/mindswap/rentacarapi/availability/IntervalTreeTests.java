@@ -0,0 +1,135 @@
+package academy.mindswap.rentacarapi.availability;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the balance and the max end augmentation of the interval tree, and its overlap
+ * answers against a linear scan
+ */
+class IntervalTreeTests {
+
+    @Test
+    void sortedInsertsAndRemovalsKeepTheTreeBalanced() {
+        IntervalTree ascending = new IntervalTree();
+        IntervalTree descending = new IntervalTree();
+
+        for (int i = 0; i < 1023; i++) {
+            ascending.insert(i, i * 10L, i * 10L + 5);
+            descending.insert(i, (1023 - i) * 10L, (1023 - i) * 10L + 5);
+        }
+
+        assertEquals(1023, ascending.size());
+        assertBalanced(ascending);
+        assertBalanced(descending);
+
+        // Removing the left half forces rotations towards the right one
+        for (int i = 0; i < 512; i++) {
+            assertTrue(ascending.remove(i, i * 10L));
+            assertBalanced(ascending);
+        }
+
+        assertEquals(511, ascending.size());
+        assertFalse(ascending.overlaps(0, 5_110));
+        assertTrue(ascending.overlaps(5_120, 5_120));
+    }
+
+    @Test
+    void maxEndFollowsTheRotations() {
+        IntervalTree intervalTree = new IntervalTree();
+
+        // The long interval is rotated down to the leftmost leaf by the following inserts
+        intervalTree.insert(0, 0, 1_000_000);
+        for (int i = 1; i <= 100; i++) {
+            intervalTree.insert(i, i * 10L, i * 10L + 1);
+        }
+
+        assertTrue(intervalTree.overlaps(500_000, 500_000));
+
+        // Removals rotate it again, and removing it lowers the max end of every ancestor
+        for (int i = 1; i <= 50; i++) {
+            intervalTree.remove(i, i * 10L);
+        }
+        assertTrue(intervalTree.overlaps(500_000, 500_000));
+
+        assertTrue(intervalTree.remove(0, 0));
+        assertFalse(intervalTree.overlaps(500_000, 500_000));
+        assertFalse(intervalTree.overlaps(0, 509));
+        assertTrue(intervalTree.overlaps(0, 510));
+    }
+
+    @Test
+    void closedIntervalsOverlapWhenTouchingOrContained() {
+        IntervalTree intervalTree = new IntervalTree();
+        intervalTree.insert(1, 10, 20);
+
+        assertTrue(intervalTree.overlaps(20, 30));
+        assertTrue(intervalTree.overlaps(0, 10));
+        assertTrue(intervalTree.overlaps(12, 15));
+        assertTrue(intervalTree.overlaps(0, 100));
+        assertFalse(intervalTree.overlaps(21, 30));
+        assertFalse(intervalTree.overlaps(0, 9));
+    }
+
+    @Test
+    void intervalsWithTheSameBeginAreRemovedById() {
+        IntervalTree intervalTree = new IntervalTree();
+        intervalTree.insert(1, 5, 10);
+        intervalTree.insert(2, 5, 10);
+
+        assertTrue(intervalTree.remove(1, 5));
+        assertFalse(intervalTree.remove(1, 5));
+        assertFalse(intervalTree.remove(2, 6));
+        assertTrue(intervalTree.overlaps(7, 7));
+
+        assertTrue(intervalTree.remove(2, 5));
+        assertTrue(intervalTree.isEmpty());
+        assertFalse(intervalTree.overlaps(7, 7));
+    }
+
+    @Test
+    void overlapsMatchesLinearScan() {
+        IntervalTree intervalTree = new IntervalTree();
+        List<long[]> intervals = new ArrayList<>();
+        Random random = new Random(42);
+        long nextId = 0;
+
+        for (int i = 0; i < 50_000; i++) {
+            int operation = random.nextInt(10);
+
+            if (operation < 4 || intervals.isEmpty()) {
+                long begin = random.nextInt(100_000);
+                long end = begin + random.nextInt(random.nextInt(10) == 0 ? 20_000 : 500);
+                intervalTree.insert(nextId, begin, end);
+                intervals.add(new long[]{nextId++, begin, end});
+            } else if (operation < 6) {
+                long[] interval = intervals.remove(random.nextInt(intervals.size()));
+                assertTrue(intervalTree.remove(interval[0], interval[1]));
+            } else {
+                long begin = random.nextInt(100_000);
+                long end = begin + random.nextInt(1_000);
+                boolean expected = intervals.stream().anyMatch(interval -> interval[1] <= end && begin <= interval[2]);
+
+                assertEquals(expected, intervalTree.overlaps(begin, end), "Query [" + begin + ", " + end + "]");
+            }
+
+            if (i % 1_000 == 0) {
+                assertEquals(intervals.size(), intervalTree.size());
+                assertBalanced(intervalTree);
+            }
+        }
+    }
+
+    private static void assertBalanced(IntervalTree intervalTree) {
+        double maxHeight = 1.45 * Math.log(intervalTree.size() + 2) / Math.log(2);
+        assertTrue(intervalTree.height() <= maxHeight,
+                "Height " + intervalTree.height() + " of " + intervalTree.size() + " intervals");
+    }
+}
@@ -0,0 +1,122 @@
+package academy.mindswap.rentacarapi.availability;
+
+import academy.mindswap.rentacarapi.persistence.projection.RentIntervalProjection;
+import academy.mindswap.rentacarapi.persistence.repository.RentRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class RentIntervalIndexTests {
+
+    @Test
+    void loadIndexesTheRentsOfTheDatabase() {
+        List<RentIntervalProjection> rents = List.of(rent(1, 10, 100, 200), rent(2, 20, 100, 200));
+        RentRepository rentRepository = mock(RentRepository.class);
+        when(rentRepository.findAllRentIntervals()).thenReturn(rents);
+        RentIntervalIndex rentIntervalIndex = new RentIntervalIndex(rentRepository, true, false);
+
+        rentIntervalIndex.load();
+
+        assertEquals(10L, rentIntervalIndex.getCarId(1));
+        assertTrue(rentIntervalIndex.hasRentBetween(10, 200, 300));
+        assertTrue(rentIntervalIndex.hasRentBetween(20, 0, 100));
+        assertFalse(rentIntervalIndex.hasRentBetween(10, 201, 300));
+        assertFalse(rentIntervalIndex.hasRentBetween(30, 0, 1_000));
+        assertTrue(rentIntervalIndex.isCarAvailableBetweenDates(10, new Date(0), new Date(99)));
+    }
+
+    @Test
+    void readdedUpdatedAndRemovedRentsMoveTheirPeriod() {
+        RentIntervalIndex rentIntervalIndex = new RentIntervalIndex(mock(RentRepository.class), true, false);
+
+        rentIntervalIndex.addRent(1, 10, new Date(100), new Date(200));
+        rentIntervalIndex.addRent(1, 10, new Date(300), new Date(400));
+        assertFalse(rentIntervalIndex.hasRentBetween(10, 100, 200));
+        assertTrue(rentIntervalIndex.hasRentBetween(10, 300, 300));
+
+        rentIntervalIndex.updateRentEnd(1, new Date(350));
+        assertFalse(rentIntervalIndex.hasRentBetween(10, 351, 400));
+        assertTrue(rentIntervalIndex.hasRentBetween(10, 350, 400));
+
+        rentIntervalIndex.removeRent(1);
+        assertFalse(rentIntervalIndex.hasRentBetween(10, 0, 1_000));
+        assertNull(rentIntervalIndex.getCarId(1));
+
+        // Unknown rents are ignored
+        rentIntervalIndex.updateRentEnd(2, new Date(500));
+        rentIntervalIndex.removeRent(2);
+        assertFalse(rentIntervalIndex.hasRentBetween(10, 0, 1_000));
+    }
+
+    @Test
+    void disabledIndexStaysEmpty() {
+        RentRepository rentRepository = mock(RentRepository.class);
+        RentIntervalIndex rentIntervalIndex = new RentIntervalIndex(rentRepository, false, false);
+
+        rentIntervalIndex.load();
+        rentIntervalIndex.addRent(1, 10, new Date(100), new Date(200));
+
+        verifyNoInteractions(rentRepository);
+        assertFalse(rentIntervalIndex.hasRentBetween(10, 0, 1_000));
+        assertNull(rentIntervalIndex.getCarId(1));
+    }
+
+    @Test
+    void availabilityMatchesLinearScan() {
+        RentIntervalIndex rentIntervalIndex = new RentIntervalIndex(mock(RentRepository.class), true, false);
+        Map<Long, long[]> rents = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 20_000; i++) {
+            long rentId = random.nextInt(2_000);
+            long carId = random.nextInt(20);
+            long begin = random.nextInt(100_000);
+            long end = begin + random.nextInt(2_000);
+
+            switch (random.nextInt(4)) {
+                case 0:
+                    rentIntervalIndex.addRent(rentId, carId, new Date(begin), new Date(end));
+                    rents.put(rentId, new long[]{carId, begin, end});
+                    break;
+                case 1:
+                    rentIntervalIndex.removeRent(rentId);
+                    rents.remove(rentId);
+                    break;
+                case 2:
+                    long[] rent = rents.get(rentId);
+                    if (rent != null) {
+                        long newEnd = rent[1] + random.nextInt(2_000);
+                        rentIntervalIndex.updateRentEnd(rentId, new Date(newEnd));
+                        rent[2] = newEnd;
+                    }
+                    break;
+                default:
+                    boolean expected = rents.values().stream()
+                            .anyMatch(period -> period[0] == carId && period[1] <= end && begin <= period[2]);
+                    assertEquals(expected, rentIntervalIndex.hasRentBetween(carId, begin, end),
+                            "Car " + carId + " between " + begin + " and " + end);
+            }
+        }
+    }
+
+    private static RentIntervalProjection rent(long rentId, long carId, long begin, long end) {
+        RentIntervalProjection projection = mock(RentIntervalProjection.class);
+        when(projection.getRentId()).thenReturn(rentId);
+        when(projection.getCarId()).thenReturn(carId);
+        when(projection.getBeginDate()).thenReturn(new Date(begin));
+        when(projection.getEndDate()).thenReturn(new Date(end));
+        return projection;
+    }
+}
@@ -0,0 +1,167 @@
+package academy.mindswap.rentacarapi.booking;
+
+import academy.mindswap.rentacarapi.exception.BookingInterruptedException;
+import academy.mindswap.rentacarapi.exception.CarNotAvailableException;
+import academy.mindswap.rentacarapi.exception.RentacarApiException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class BookingSequencerTests {
+
+    private final TransactionTemplate transactionTemplate = transactionTemplate();
+    private BookingSequencer bookingSequencer;
+
+    @AfterEach
+    void tearDown() {
+        if (bookingSequencer != null) {
+            bookingSequencer.shutdown();
+        }
+    }
+
+    @Test
+    void disabledSequencerRunsCommandsOnTheCallerThread() {
+        bookingSequencer = new BookingSequencer(transactionTemplate, false, 4);
+
+        String thread = bookingSequencer.execute(() -> fail("The car isn't needed"), () -> Thread.currentThread().getName());
+
+        assertEquals(Thread.currentThread().getName(), thread);
+        verifyNoInteractions(transactionTemplate);
+    }
+
+    @Test
+    void commandsAreRoutedByCarToTheirPartition() {
+        bookingSequencer = new BookingSequencer(transactionTemplate, true, 4);
+
+        assertEquals("booking-partition-1", threadOf(1));
+        assertEquals("booking-partition-1", threadOf(5));
+        assertEquals("booking-partition-1", threadOf(-3));
+        assertEquals("booking-partition-2", threadOf(2));
+        assertEquals("booking-partition-0", threadOf(0));
+        verify(transactionTemplate, times(5)).execute(any());
+    }
+
+    @Test
+    void commandsOfOnePartitionNeverRunConcurrently() throws Exception {
+        bookingSequencer = new BookingSequencer(transactionTemplate, true, 4);
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        try {
+            List<Future<?>> results = new ArrayList<>();
+            // Cars 3 and 7 share a partition
+            for (int i = 0; i < 200; i++) {
+                long carId = i % 2 == 0 ? 3 : 7;
+                results.add(callers.submit(() -> bookingSequencer.execute(() -> carId, () -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    Thread.yield();
+                    return running.decrementAndGet();
+                })));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } finally {
+            callers.shutdown();
+        }
+
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    void commandsIssuedFromAPartitionRunInlineOnIt() {
+        bookingSequencer = new BookingSequencer(transactionTemplate, true, 4);
+
+        List<String> threads = bookingSequencer.execute(() -> 1, () -> List.of(
+                Thread.currentThread().getName(),
+                bookingSequencer.execute(() -> 5, () -> Thread.currentThread().getName()),
+                bookingSequencer.execute(() -> 2, () -> Thread.currentThread().getName())));
+
+        assertEquals("booking-partition-1", threads.get(0));
+        assertEquals("booking-partition-1", threads.get(1));
+        assertEquals("booking-partition-2", threads.get(2));
+        verify(transactionTemplate, times(3)).execute(any());
+
+        // The partition of the caller is only known on partition threads
+        assertEquals("booking-partition-1", threadOf(5));
+    }
+
+    @Test
+    void exceptionsOfTheCommandReachTheCaller() {
+        bookingSequencer = new BookingSequencer(transactionTemplate, true, 4);
+        CarNotAvailableException carNotAvailable = new CarNotAvailableException();
+        StackOverflowError error = new StackOverflowError();
+        IOException checked = new IOException("Disk full");
+
+        assertSame(carNotAvailable, assertThrows(CarNotAvailableException.class,
+                () -> bookingSequencer.execute(() -> 1, () -> {
+                    throw carNotAvailable;
+                })));
+        assertSame(error, assertThrows(StackOverflowError.class,
+                () -> bookingSequencer.execute(() -> 1, () -> {
+                    throw error;
+                })));
+
+        RentacarApiException wrapped = assertThrows(RentacarApiException.class,
+                () -> bookingSequencer.execute(() -> 1, () -> sneakyThrow(checked)));
+        assertSame(checked, wrapped.getCause());
+        assertEquals("Disk full", wrapped.getMessage());
+
+        // The partition thread survives its failed commands
+        assertEquals("booking-partition-1", threadOf(1));
+    }
+
+    @Test
+    void interruptedCallerStopsWaiting() {
+        bookingSequencer = new BookingSequencer(transactionTemplate, true, 1);
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThrows(BookingInterruptedException.class, () -> bookingSequencer.execute(() -> 1, () -> "done"));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted();
+        }
+
+        assertEquals("booking-partition-0", threadOf(1));
+    }
+
+    private String threadOf(long carId) {
+        return bookingSequencer.execute(() -> carId, () -> Thread.currentThread().getName());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T, E extends Throwable> T sneakyThrow(Throwable throwable) throws E {
+        throw (E) throwable;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TransactionTemplate transactionTemplate() {
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                ((TransactionCallback<Object>) invocation.getArgument(0)).doInTransaction(null));
+        return transactionTemplate;
+    }
+}
@@ -0,0 +1,86 @@
+package academy.mindswap.rentacarapi.cache;
+
+import academy.mindswap.rentacarapi.persistence.entity.CarEntity;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks the read-through, eviction and stale load detection of the entity cache
+ */
+class VersionedEntityCacheTests {
+
+    @Test
+    void loadsOnMissAndHitsAfterwards() {
+        VersionedEntityCache<Long, CarEntity> cache = new VersionedEntityCache<>("cars", 10);
+        AtomicInteger loads = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            cache.get(1L, id -> {
+                loads.incrementAndGet();
+                return Optional.of(car(id, 0));
+            });
+        }
+
+        assertEquals(1, loads.get());
+        assertFalse(cache.get(2L, id -> Optional.empty()).isPresent());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        VersionedEntityCache<Long, CarEntity> cache = new VersionedEntityCache<>("cars", 2);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+
+        cache.get(1L, id -> Optional.of(car(id, 0)));
+        cache.get(2L, id -> Optional.of(car(id, 0)));
+        cache.get(1L, id -> fail("car 1 should be cached"));
+        cache.get(3L, id -> Optional.of(car(id, 0)));
+
+        assertTrue(cache.get(1L, id -> fail("car 1 was used recently")).isPresent());
+        assertEquals(1.0, registry.get("rentacar.cache.evictions").functionCounter().count());
+        assertEquals(2.0, registry.get("rentacar.cache.hits").functionCounter().count());
+    }
+
+    @Test
+    void doesNotCacheLoadsOlderThanInvalidation() {
+        VersionedEntityCache<Long, CarEntity> cache = new VersionedEntityCache<>("cars", 10);
+        AtomicInteger loads = new AtomicInteger();
+
+        // The car is updated to version 1 while a load still reads version 0
+        cache.get(1L, id -> {
+            cache.invalidate(id, 1);
+            return Optional.of(car(id, 0));
+        });
+        cache.get(1L, id -> {
+            loads.incrementAndGet();
+            return Optional.of(car(id, 1));
+        });
+        cache.get(1L, id -> {
+            loads.incrementAndGet();
+            return Optional.of(car(id, 1));
+        });
+
+        assertEquals(1, loads.get());
+
+        // A deleted car is never cached again
+        cache.invalidateDeleted(1L);
+        cache.get(1L, id -> Optional.of(car(id, 1)));
+        cache.get(1L, id -> {
+            loads.incrementAndGet();
+            return Optional.empty();
+        });
+
+        assertEquals(2, loads.get());
+    }
+
+    private static CarEntity car(long carId, int version) {
+        CarEntity car = CarEntity.builder().carId(carId).build();
+        car.setVersion(version);
+        return car;
+    }
+}
@@ -0,0 +1,84 @@
+package academy.mindswap.rentacarapi.catalog;
+
+import academy.mindswap.rentacarapi.persistence.projection.CarPlateProjection;
+import academy.mindswap.rentacarapi.persistence.repository.CarRepository;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PlateIndexTests {
+
+    @Test
+    void platesAreNormalizedToUpperCaseLettersAndDigits() {
+        assertEquals("AA12BB", PlateIndex.normalize("aa-12-bb"));
+        assertEquals("AA12BB", PlateIndex.normalize(" AA 12.BB "));
+        assertEquals("", PlateIndex.normalize("--"));
+    }
+
+    @Test
+    void loadIndexesThePlatesOfTheDatabase() {
+        List<CarPlateProjection> plates = List.of(plate(1, "AA-12-BB"), plate(2, "CC-34-DD"));
+        CarRepository carRepository = mock(CarRepository.class);
+        when(carRepository.findAllCarPlates()).thenReturn(plates);
+        PlateIndex plateIndex = new PlateIndex(carRepository);
+
+        plateIndex.load();
+
+        assertEquals(1L, plateIndex.findCarId("aa 12 bb"));
+        assertEquals(2L, plateIndex.findCarId("CC-34-DD"));
+        assertNull(plateIndex.findCarId("EE-56-FF"));
+    }
+
+    @Test
+    void platesThatOnlyDifferInCaseOrPunctuationAreTaken() {
+        PlateIndex plateIndex = new PlateIndex(mock(CarRepository.class));
+        plateIndex.putCar(1, "AA-12-BB");
+
+        assertTrue(plateIndex.isPlateTaken("AA-12-BB", 0));
+        assertTrue(plateIndex.isPlateTaken("aa 12 bb", 0));
+        assertTrue(plateIndex.isPlateTaken("AA12BB", 2));
+        assertFalse(plateIndex.isPlateTaken("aa.12.bb", 1));
+        assertFalse(plateIndex.isPlateTaken("AA-12-BC", 0));
+    }
+
+    @Test
+    void changedAndRemovedPlatesAreReleased() {
+        PlateIndex plateIndex = new PlateIndex(mock(CarRepository.class));
+        plateIndex.putCar(1, "AA-12-BB");
+
+        plateIndex.putCar(1, "AA-12-BC");
+        assertNull(plateIndex.findCarId("AA-12-BB"));
+        assertEquals(1L, plateIndex.findCarId("AA-12-BC"));
+
+        plateIndex.removeCar(1);
+        assertNull(plateIndex.findCarId("AA-12-BC"));
+        assertEquals(List.of(), plateIndex.findCarIdsByPrefix("AA", 10));
+    }
+
+    @Test
+    void prefixSearchIsSortedByPlateAndLimited() {
+        PlateIndex plateIndex = new PlateIndex(mock(CarRepository.class));
+        plateIndex.putCar(1, "AB-00-02");
+        plateIndex.putCar(2, "AA-00-01");
+        plateIndex.putCar(3, "AB-00-01");
+        plateIndex.putCar(4, "BA-00-01");
+
+        assertEquals(List.of(3L, 1L), plateIndex.findCarIdsByPrefix("ab", 10));
+        assertEquals(List.of(2L, 3L), plateIndex.findCarIdsByPrefix("A", 2));
+        assertEquals(List.of(), plateIndex.findCarIdsByPrefix("C", 10));
+    }
+
+    private static CarPlateProjection plate(long carId, String plate) {
+        CarPlateProjection projection = mock(CarPlateProjection.class);
+        when(projection.getCarId()).thenReturn(carId);
+        when(projection.getPlate()).thenReturn(plate);
+        return projection;
+    }
+}
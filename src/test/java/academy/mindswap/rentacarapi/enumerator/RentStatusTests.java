@@ -0,0 +1,29 @@
+package academy.mindswap.rentacarapi.enumerator;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RentStatusTests {
+
+    private static final Map<RentStatus, Set<RentStatus>> ALLOWED = Map.of(
+            RentStatus.RESERVED, EnumSet.of(RentStatus.ACTIVE, RentStatus.CANCELLED, RentStatus.NO_SHOW),
+            RentStatus.ACTIVE, EnumSet.of(RentStatus.RETURNED),
+            RentStatus.RETURNED, EnumSet.noneOf(RentStatus.class),
+            RentStatus.CANCELLED, EnumSet.noneOf(RentStatus.class),
+            RentStatus.NO_SHOW, EnumSet.noneOf(RentStatus.class));
+
+    @Test
+    void onlyLifecycleTransitionsAreAllowed() {
+        for (RentStatus current : RentStatus.values()) {
+            for (RentStatus next : RentStatus.values()) {
+                assertEquals(ALLOWED.get(current).contains(next), current.canChangeTo(next),
+                        current + " to " + next);
+            }
+        }
+    }
+}
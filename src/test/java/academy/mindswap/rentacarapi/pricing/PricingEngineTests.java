@@ -0,0 +1,84 @@
+package academy.mindswap.rentacarapi.pricing;
+
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the pricing engine against the original BigDecimal formula and the pricing rules
+ */
+class PricingEngineTests {
+
+    private static final ZoneId ZONE_ID = ZoneId.systemDefault();
+
+    @Test
+    void legacyRulesMatchOriginalFormula() {
+        PricingEngine pricingEngine = new PricingEngine(10_000, new int[0], 10_000, 0, 0, 0);
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+
+        for (int i = 0; i < 100_000; i++) {
+            CarSegment carSegment = CarSegment.values()[random.nextInt(CarSegment.values().length)];
+            Date beginDate = new Date(now + (long) (random.nextDouble() * 3_650 * 86_400_000L));
+            Date endDate = new Date(beginDate.getTime() + (long) (random.nextDouble() * 60 * 86_400_000L));
+            Date expectedEndDate = new Date(beginDate.getTime() + (long) (random.nextDouble() * 30 * 86_400_000L));
+
+            BigDecimal expected = originalPrice(beginDate, endDate, carSegment.getDailyPrice());
+
+            assertEquals(expected, pricingEngine.calculatePrice(carSegment, beginDate, endDate));
+            assertEquals(expected, pricingEngine.calculateFinalPrice(carSegment, beginDate, endDate, expectedEndDate));
+        }
+    }
+
+    @Test
+    void weekendAndSeasonMultipliersApplyPerDay() {
+        PricingEngine pricingEngine = new PricingEngine(15_000, new int[]{8}, 12_000, 0, 0, 0);
+
+        // Friday 2021-07-30 to Tuesday 2021-08-03: fri, sat, sun (season from sunday), mon
+        Date beginDate = toDate(LocalDate.of(2021, 7, 30));
+        Date endDate = toDate(LocalDate.of(2021, 8, 3));
+
+        // 30 + 45 + 45 * 1.2 + 30 * 1.2
+        assertEquals(new BigDecimal("165"), pricingEngine.calculatePrice(CarSegment.SMALL, beginDate, endDate));
+    }
+
+    @Test
+    void longRentalDiscountAndLateReturnPenalty() {
+        PricingEngine pricingEngine = new PricingEngine(10_000, new int[0], 10_000, 7, 1_000, 5_000);
+
+        Date beginDate = toDate(LocalDate.of(2021, 7, 1));
+        Date expectedEndDate = toDate(LocalDate.of(2021, 7, 8));
+        Date endDate = toDate(LocalDate.of(2021, 7, 10));
+
+        // 7 days of 50 with 10% discount
+        assertEquals(new BigDecimal("315"), pricingEngine.calculatePrice(CarSegment.FAMILY, beginDate, expectedEndDate));
+        // 9 days of 50 with 10% discount and 2 late days at 50% of the rate
+        assertEquals(new BigDecimal("455"),
+                pricingEngine.calculateFinalPrice(CarSegment.FAMILY, beginDate, endDate, expectedEndDate));
+        // Fractional results keep the cents
+        assertEquals(new BigDecimal("105.19"),
+                new PricingEngine(10_000, new int[0], 10_000, 1, 1_234, 0)
+                        .calculatePrice(CarSegment.SMALL, beginDate, toDate(LocalDate.of(2021, 7, 5))));
+    }
+
+    private static BigDecimal originalPrice(Date beginDate, Date endDate, BigDecimal dailyPrice) {
+        LocalDate beginLocalDate = LocalDate.ofInstant(beginDate.toInstant(), ZONE_ID);
+        LocalDate endLocalDate = LocalDate.ofInstant(endDate.toInstant(), ZONE_ID);
+        long numOfDaysBetween = ChronoUnit.DAYS.between(beginLocalDate, endLocalDate);
+        return dailyPrice.multiply(BigDecimal.valueOf(numOfDaysBetween != 0L ? numOfDaysBetween : 1L));
+    }
+
+    private static Date toDate(LocalDate localDate) {
+        return Date.from(LocalDateTime.of(localDate, LocalTime.NOON).atZone(ZONE_ID).toInstant());
+    }
+}
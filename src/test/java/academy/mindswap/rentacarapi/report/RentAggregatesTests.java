@@ -0,0 +1,118 @@
+package academy.mindswap.rentacarapi.report;
+
+import academy.mindswap.rentacarapi.enumerator.CarSegment;
+import academy.mindswap.rentacarapi.enumerator.RentStatus;
+import academy.mindswap.rentacarapi.persistence.projection.RentAggregateProjection;
+import academy.mindswap.rentacarapi.persistence.repository.RentRepository;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RentAggregatesTests {
+
+    private static final ZoneId ZONE_ID = ZoneId.systemDefault();
+    private static final LocalDate DAY = LocalDate.of(2021, 7, 1);
+
+    @Test
+    void rentChangesUpdateTheCounters() {
+        RentAggregates rentAggregates = new RentAggregates(mock(RentRepository.class));
+
+        rentAggregates.addRent(CarSegment.SMALL, toDate(DAY), toDate(DAY.plusDays(2)), new BigDecimal("90.5"));
+        rentAggregates.addRent(CarSegment.SMALL, toDate(DAY.plusDays(1)), toDate(DAY.plusDays(1)), new BigDecimal("30"));
+
+        assertEquals(9050, rentAggregates.getRevenue(DAY, CarSegment.SMALL));
+        assertEquals(3000, rentAggregates.getRevenue(DAY.plusDays(1), CarSegment.SMALL));
+        assertEquals(2, rentAggregates.getBookedCars(DAY.plusDays(1), CarSegment.SMALL));
+        assertEquals(0, rentAggregates.getBookedCars(DAY, CarSegment.SMALL_VAN));
+
+        // Returned a day late at the final price
+        rentAggregates.returnRent(CarSegment.SMALL, toDate(DAY), toDate(DAY.plusDays(2)), toDate(DAY.plusDays(3)),
+                new BigDecimal("90.5"), new BigDecimal("130"));
+        assertEquals(13000, rentAggregates.getRevenue(DAY, CarSegment.SMALL));
+        assertEquals(1, rentAggregates.getBookedCars(DAY.plusDays(3), CarSegment.SMALL));
+
+        rentAggregates.removeRent(CarSegment.SMALL, toDate(DAY.plusDays(1)), toDate(DAY.plusDays(1)), new BigDecimal("30"));
+        assertEquals(0, rentAggregates.getRevenue(DAY.plusDays(1), CarSegment.SMALL));
+        assertEquals(1, rentAggregates.getBookedCars(DAY.plusDays(1), CarSegment.SMALL));
+    }
+
+    @Test
+    void rebuildReplacesDriftedCounters() {
+        List<RentAggregateProjection> rents = List.of(
+                rent(RentStatus.RESERVED, DAY, DAY.plusDays(1), "60", null, null),
+                rent(RentStatus.RETURNED, DAY, DAY.plusDays(1), "60", DAY.plusDays(2), "95"));
+        RentRepository rentRepository = mock(RentRepository.class);
+        when(rentRepository.findAllRentAggregates()).thenReturn(rents);
+        RentAggregates rentAggregates = new RentAggregates(rentRepository);
+
+        rentAggregates.addRent(CarSegment.SMALL, toDate(DAY), toDate(DAY), new BigDecimal("1000"));
+        rentAggregates.rebuild();
+
+        assertEquals(15500, rentAggregates.getRevenue(DAY, CarSegment.SMALL));
+        assertEquals(2, rentAggregates.getBookedCars(DAY.plusDays(1), CarSegment.SMALL));
+        assertEquals(1, rentAggregates.getBookedCars(DAY.plusDays(2), CarSegment.SMALL));
+    }
+
+    @Test
+    void rebuildKeepsTheRentsChangedWhileReading() {
+        List<RentAggregateProjection> rents = List.of(rent(RentStatus.RESERVED, DAY, DAY.plusDays(1), "60", null, null));
+        RentRepository rentRepository = mock(RentRepository.class);
+        RentAggregates rentAggregates = new RentAggregates(rentRepository);
+
+        // A stale rent the table no longer has, and a new rent counted while the table is read
+        rentAggregates.addRent(CarSegment.SMALL, toDate(DAY), toDate(DAY), new BigDecimal("1000"));
+        when(rentRepository.findAllRentAggregates()).thenAnswer(invocation -> {
+            rentAggregates.addRent(CarSegment.FAMILY, toDate(DAY), toDate(DAY.plusDays(3)), new BigDecimal("200"));
+            return rents;
+        });
+
+        rentAggregates.rebuild();
+
+        assertEquals(6000, rentAggregates.getRevenue(DAY, CarSegment.SMALL));
+        assertEquals(20000, rentAggregates.getRevenue(DAY, CarSegment.FAMILY));
+        assertEquals(1, rentAggregates.getBookedCars(DAY.plusDays(3), CarSegment.FAMILY));
+
+        // Updates after the rebuild only go to the live counters
+        rentAggregates.removeRent(CarSegment.FAMILY, toDate(DAY), toDate(DAY.plusDays(3)), new BigDecimal("200"));
+        assertEquals(0, rentAggregates.getRevenue(DAY, CarSegment.FAMILY));
+    }
+
+    @Test
+    void failedRebuildKeepsTheLiveCounters() {
+        RentRepository rentRepository = mock(RentRepository.class);
+        when(rentRepository.findAllRentAggregates()).thenThrow(new IllegalStateException("Database down"));
+        RentAggregates rentAggregates = new RentAggregates(rentRepository);
+        rentAggregates.addRent(CarSegment.SMALL, toDate(DAY), toDate(DAY), new BigDecimal("10"));
+
+        assertThrows(IllegalStateException.class, rentAggregates::rebuild);
+
+        rentAggregates.addRent(CarSegment.SMALL, toDate(DAY), toDate(DAY), new BigDecimal("10"));
+        assertEquals(2000, rentAggregates.getRevenue(DAY, CarSegment.SMALL));
+    }
+
+    private static RentAggregateProjection rent(RentStatus status, LocalDate expectedBeginDay, LocalDate expectedEndDay,
+                                                String expectedPrice, LocalDate endDay, String finalPrice) {
+        RentAggregateProjection rent = mock(RentAggregateProjection.class);
+        when(rent.getStatus()).thenReturn(status);
+        when(rent.getCarSegment()).thenReturn(CarSegment.SMALL);
+        when(rent.getExpectedBeginDate()).thenReturn(toDate(expectedBeginDay));
+        when(rent.getExpectedEndDate()).thenReturn(toDate(expectedEndDay));
+        when(rent.getExpectedPrice()).thenReturn(new BigDecimal(expectedPrice));
+        when(rent.getEndDate()).thenReturn(endDay == null ? null : toDate(endDay));
+        when(rent.getFinalPrice()).thenReturn(finalPrice == null ? null : new BigDecimal(finalPrice));
+        return rent;
+    }
+
+    private static Date toDate(LocalDate day) {
+        return Date.from(day.atStartOfDay(ZONE_ID).toInstant());
+    }
+}
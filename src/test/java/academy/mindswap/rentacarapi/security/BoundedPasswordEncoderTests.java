@@ -0,0 +1,171 @@
+package academy.mindswap.rentacarapi.security;
+
+import academy.mindswap.rentacarapi.exception.PasswordHashingOverloadedException;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedPasswordEncoderTests {
+
+    @Test
+    void hashesRunOnThePool() {
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(plainEncoder(), 1, 1, 1000, 2);
+
+        try {
+            assertEquals("secret", encoder.encode("secret"));
+            assertTrue(encoder.matches("secret", "secret"));
+        } finally {
+            encoder.shutdown();
+        }
+    }
+
+    @Test
+    void fullQueueIsRejectedRightAway() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(blockingEncoder(started, release), 1, 1, 10_000, 3);
+
+        try {
+            // One hash running and one waiting fill the pool and the queue
+            CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> encoder.encode("running"));
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> encoder.encode("queued"));
+            waitForQueuedHash(encoder);
+
+            PasswordHashingOverloadedException e = assertThrows(PasswordHashingOverloadedException.class,
+                    () -> encoder.encode("rejected"));
+            assertEquals(3, e.getRetryAfterSeconds());
+
+            release.countDown();
+            assertEquals("running", running.get(5, TimeUnit.SECONDS));
+            assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            encoder.shutdown();
+        }
+    }
+
+    @Test
+    void slowHashTimesOut() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(blockingEncoder(new CountDownLatch(1), release),
+                1, 1, 50, 2);
+
+        try {
+            assertThrows(PasswordHashingOverloadedException.class, () -> encoder.encode("slow"));
+        } finally {
+            release.countDown();
+            encoder.shutdown();
+        }
+    }
+
+    @Test
+    void timedOutQueuedHashFreesItsSlot() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(uninterruptibleEncoder(started, release),
+                1, 1, 200, 2);
+
+        try {
+            // The running hash ignores the interrupt and keeps the only thread
+            PasswordHashingOverloadedException running = assertThrows(PasswordHashingOverloadedException.class,
+                    () -> encoder.encode("running"));
+            assertTrue(running.getCause() instanceof TimeoutException);
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+
+            // The waiting hash leaves the queue when it times out, so the next one is queued instead of rejected
+            for (String password : new String[]{"queued", "next"}) {
+                PasswordHashingOverloadedException e = assertThrows(PasswordHashingOverloadedException.class,
+                        () -> encoder.encode(password));
+                assertFalse(e.getCause() instanceof RejectedExecutionException);
+                assertEquals(0, encoder.getQueuedHashes());
+            }
+
+            release.countDown();
+            assertEquals("after", encoder.encode("after"));
+        } finally {
+            release.countDown();
+            encoder.shutdown();
+        }
+    }
+
+    private static void waitForQueuedHash(BoundedPasswordEncoder encoder) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+
+        while (encoder.getQueuedHashes() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static PasswordEncoder plainEncoder() {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                return rawPassword.toString();
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return rawPassword.toString().equals(encodedPassword);
+            }
+        };
+    }
+
+    private static PasswordEncoder uninterruptibleEncoder(CountDownLatch started, CountDownLatch release) {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                started.countDown();
+                boolean interrupted = false;
+
+                // Like BCrypt, doesn't stop when interrupted
+                while (release.getCount() > 0) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+                return rawPassword.toString();
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return encode(rawPassword).equals(encodedPassword);
+            }
+        };
+    }
+
+    private static PasswordEncoder blockingEncoder(CountDownLatch started, CountDownLatch release) {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                started.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return rawPassword.toString();
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return encode(rawPassword).equals(encodedPassword);
+            }
+        };
+    }
+}
@@ -0,0 +1,130 @@
+package academy.mindswap.rentacarapi.security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachingAuthenticationProviderTests {
+
+    @Test
+    void repeatedCredentialsAreCheckedOnce() {
+        CountingProvider delegate = new CountingProvider();
+        CachingAuthenticationProvider provider = new CachingAuthenticationProvider(delegate, 60, 100);
+
+        provider.authenticate(credentials("admin", "secret"));
+        Authentication second = provider.authenticate(credentials("admin", "secret"));
+
+        assertEquals(1, delegate.checks);
+        assertEquals("admin", second.getName());
+        assertNull(second.getCredentials());
+    }
+
+    @Test
+    void wrongPasswordIsNeverAnsweredFromCache() {
+        CountingProvider delegate = new CountingProvider();
+        CachingAuthenticationProvider provider = new CachingAuthenticationProvider(delegate, 60, 100);
+
+        provider.authenticate(credentials("admin", "secret"));
+
+        assertThrows(BadCredentialsException.class, () -> provider.authenticate(credentials("admin", "wrong")));
+        assertThrows(BadCredentialsException.class, () -> provider.authenticate(credentials("admin", "wrong")));
+        assertEquals(3, delegate.checks);
+    }
+
+    @Test
+    void invalidatedOrExpiredCredentialsAreCheckedAgain() {
+        CountingProvider delegate = new CountingProvider();
+        CachingAuthenticationProvider provider = new CachingAuthenticationProvider(delegate, 60, 100);
+
+        provider.authenticate(credentials("admin", "secret"));
+        provider.invalidate("admin");
+        provider.authenticate(credentials("admin", "secret"));
+
+        assertEquals(2, delegate.checks);
+
+        CountingProvider uncachedDelegate = new CountingProvider();
+        CachingAuthenticationProvider uncached = new CachingAuthenticationProvider(uncachedDelegate, 0, 100);
+
+        uncached.authenticate(credentials("admin", "secret"));
+        uncached.authenticate(credentials("admin", "secret"));
+
+        assertEquals(2, uncachedDelegate.checks);
+    }
+
+    @Test
+    void invalidationDuringTheCheckIsNotUndoneByItsResult() throws Exception {
+        CountDownLatch checking = new CountDownLatch(1);
+        CountDownLatch invalidated = new CountDownLatch(1);
+        CountingProvider delegate = new CountingProvider() {
+            @Override
+            public Authentication authenticate(Authentication authentication) {
+                // The first check is still running when the password changes
+                if (checking.getCount() > 0) {
+                    checking.countDown();
+                    try {
+                        invalidated.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.authenticate(authentication);
+            }
+        };
+        CachingAuthenticationProvider provider = new CachingAuthenticationProvider(delegate, 60, 100);
+
+        CompletableFuture<Authentication> inFlight = CompletableFuture.supplyAsync(
+                () -> provider.authenticate(credentials("admin", "secret")));
+        assertTrue(checking.await(5, TimeUnit.SECONDS));
+        provider.invalidate("admin");
+        invalidated.countDown();
+        inFlight.get(5, TimeUnit.SECONDS);
+
+        provider.authenticate(credentials("admin", "secret"));
+        assertEquals(2, delegate.checks);
+
+        // Later checks are cached again
+        provider.authenticate(credentials("admin", "secret"));
+        assertEquals(2, delegate.checks);
+    }
+
+    private static Authentication credentials(String username, String password) {
+        return new UsernamePasswordAuthenticationToken(username, password);
+    }
+
+    /**
+     * Accepts the password "secret" for any user and counts the checks
+     */
+    private static class CountingProvider implements AuthenticationProvider {
+
+        private volatile int checks;
+
+        @Override
+        public Authentication authenticate(Authentication authentication) {
+            checks++;
+
+            if (!"secret".equals(authentication.getCredentials())) {
+                throw new BadCredentialsException("Bad credentials");
+            }
+
+            return new UsernamePasswordAuthenticationToken(authentication.getName(), authentication.getCredentials(),
+                    AuthorityUtils.createAuthorityList("ROLE_ADMIN"));
+        }
+
+        @Override
+        public boolean supports(Class<?> authentication) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package academy.mindswap.rentacarapi.security;
+
+import academy.mindswap.rentacarapi.persistence.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RegisteredEmailFilterTests {
+
+    @Test
+    void everyEmailMayBeRegisteredUntilLoaded() {
+        RegisteredEmailFilter filter = new RegisteredEmailFilter(provider(mock(UserRepository.class)), 1000, 0.01, 0.2);
+
+        assertTrue(filter.mightContain("unknown@rentacar.pt"));
+    }
+
+    @Test
+    void registeredEmailsAreNeverRuledOut() {
+        List<String> emails = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            emails.add("User" + i + "@rentacar.pt");
+        }
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findAllEmails()).thenReturn(emails);
+        RegisteredEmailFilter filter = new RegisteredEmailFilter(provider(userRepository), 1000, 0.01, 0.2);
+
+        filter.load();
+        filter.addEmail("new@rentacar.pt");
+
+        emails.forEach(email -> assertTrue(filter.mightContain(email)));
+        assertTrue(filter.mightContain(" USER7@rentacar.pt "));
+        assertTrue(filter.mightContain("new@rentacar.pt"));
+
+        int ruledOut = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (!filter.mightContain("unknown" + i + "@rentacar.pt")) {
+                ruledOut++;
+            }
+        }
+        // One percent false positives expected, allow some slack
+        assertTrue(ruledOut > 9_700);
+    }
+
+    @Test
+    void tooManyStaleEmailsRebuildTheFilter() {
+        UserRepository userRepository = mock(UserRepository.class);
+        when(userRepository.findAllEmails()).thenReturn(List.of("a@rentacar.pt", "b@rentacar.pt"))
+                .thenReturn(List.of("b@rentacar.pt"));
+        RegisteredEmailFilter filter = new RegisteredEmailFilter(provider(userRepository), 1000, 0.01, 0.2);
+
+        filter.load();
+        filter.rebuildIfNeeded();
+        verify(userRepository, times(1)).findAllEmails();
+
+        filter.removeEmail("a@rentacar.pt");
+        filter.rebuildIfNeeded();
+        verify(userRepository, times(2)).findAllEmails();
+
+        assertFalse(filter.mightContain("a@rentacar.pt"));
+        assertTrue(filter.mightContain("b@rentacar.pt"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ObjectProvider<UserRepository> provider(UserRepository userRepository) {
+        ObjectProvider<UserRepository> provider = mock(ObjectProvider.class);
+        when(provider.getObject()).thenReturn(userRepository);
+        return provider;
+    }
+}
@@ -0,0 +1,74 @@
+package academy.mindswap.rentacarapi.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketLimiterTests {
+
+    @Test
+    void emptyBucketIsRefilledAtTheConfiguredRate() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucketLimiter limiter = new TokenBucketLimiter("test", 2, 60, 1000, clock::get);
+
+        assertEquals(0, limiter.tryAcquire("a@rentacar.pt"));
+        assertEquals(0, limiter.tryAcquire("a@rentacar.pt"));
+        assertEquals(1000, limiter.tryAcquire("a@rentacar.pt"));
+        // Other keys have their own bucket
+        assertEquals(0, limiter.tryAcquire("b@rentacar.pt"));
+
+        clock.set(400);
+        assertEquals(600, limiter.tryAcquire("a@rentacar.pt"));
+
+        clock.set(1000);
+        assertEquals(0, limiter.tryAcquire("a@rentacar.pt"));
+        assertTrue(limiter.tryAcquire("a@rentacar.pt") > 0);
+    }
+
+    @Test
+    void idleBucketsAreExpiredByTheWheel() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucketLimiter limiter = new TokenBucketLimiter("test", 2, 60, 1000, clock::get);
+
+        limiter.tryAcquire("idle");
+        limiter.tryAcquire("busy");
+
+        for (long now = 1000; now <= 6000; now += 1000) {
+            clock.set(now);
+            limiter.tryAcquire("busy");
+            limiter.expireIdle();
+        }
+
+        assertEquals(1, limiter.size());
+
+        // A dropped bucket starts full again
+        assertEquals(0, limiter.tryAcquire("idle"));
+        assertEquals(0, limiter.tryAcquire("idle"));
+    }
+
+    @Test
+    void concurrentAcquiresNeverExceedTheCapacity() throws Exception {
+        TokenBucketLimiter limiter = new TokenBucketLimiter("test", 100, 1, 1000, () -> 0);
+        AtomicInteger acquired = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        for (int i = 0; i < 1000; i++) {
+            executor.execute(() -> {
+                if (limiter.tryAcquire("key") == 0) {
+                    acquired.incrementAndGet();
+                }
+            });
+        }
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(100, acquired.get());
+    }
+}
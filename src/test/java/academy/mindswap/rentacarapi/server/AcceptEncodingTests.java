@@ -0,0 +1,40 @@
+package academy.mindswap.rentacarapi.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AcceptEncodingTests {
+
+    @Test
+    void gzipIsAcceptedWhenListedWithAPositiveQuality() {
+        assertTrue(AcceptEncoding.acceptsGzip("gzip"));
+        assertTrue(AcceptEncoding.acceptsGzip("deflate, GZIP;q=0.5"));
+        assertTrue(AcceptEncoding.acceptsGzip("br;q=1.0, x-gzip ; q=0.1"));
+    }
+
+    @Test
+    void gzipWithZeroQualityIsRefused() {
+        assertFalse(AcceptEncoding.acceptsGzip("gzip;q=0"));
+        assertFalse(AcceptEncoding.acceptsGzip("gzip; q=0.000, deflate"));
+        // A listed gzip takes precedence over the wildcard
+        assertFalse(AcceptEncoding.acceptsGzip("*, gzip;q=0"));
+    }
+
+    @Test
+    void wildcardStandsForGzipWhenItIsNotListed() {
+        assertTrue(AcceptEncoding.acceptsGzip("*"));
+        assertTrue(AcceptEncoding.acceptsGzip("br, *;q=0.2"));
+        assertFalse(AcceptEncoding.acceptsGzip("*;q=0"));
+    }
+
+    @Test
+    void codingsThatOnlyContainGzipAreNotGzip() {
+        assertFalse(AcceptEncoding.acceptsGzip(null));
+        assertFalse(AcceptEncoding.acceptsGzip(""));
+        assertFalse(AcceptEncoding.acceptsGzip("identity"));
+        assertFalse(AcceptEncoding.acceptsGzip("gzipped, not-gzip"));
+        assertFalse(AcceptEncoding.acceptsGzip("gzip;q=invalid"));
+    }
+}